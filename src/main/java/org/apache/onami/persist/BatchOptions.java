@@ -0,0 +1,114 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Options of a bulk write of the {@link BatchWriter}. Instances are immutable.
+ * <p>
+ * Usage example:
+ * <pre>
+ *  BatchOptions options = BatchOptions.chunksOf(500)
+ *      .commitEvery(20)
+ *      .withProgressListener((written, committed) -&gt; log.info("{} rows committed", committed));
+ * </pre>
+ */
+public final class BatchOptions {
+
+  /**
+   * Default number of entities per chunk.
+   */
+  static final int DEFAULT_CHUNK_SIZE = 50;
+
+  /**
+   * Listener which ignores the progress.
+   */
+  private static final BatchWriter.ProgressListener NO_LISTENER = (written, committed) -> {
+    // Do nothing
+  };
+
+  /**
+   * Options using the default chunk size and a single transaction.
+   */
+  static final BatchOptions DEFAULT = chunksOf(DEFAULT_CHUNK_SIZE);
+
+  private final int chunkSize;
+
+  private final int commitEvery;
+
+  private final BatchWriter.ProgressListener progressListener;
+
+  private BatchOptions(int chunkSize, int commitEvery, BatchWriter.ProgressListener progressListener) {
+    this.chunkSize = chunkSize;
+    this.commitEvery = commitEvery;
+    this.progressListener = progressListener;
+  }
+
+  /**
+   * Creates options which flush and clear the entity manager every given number of entities. The number is also
+   * used as JDBC batch size. All entities are written in a single transaction.
+   *
+   * @param chunkSize the number of entities per chunk. Must be positive.
+   * @return the options.
+   */
+  public static BatchOptions chunksOf(int chunkSize) {
+    checkArgument(chunkSize > 0, "chunkSize must be positive!");
+    return new BatchOptions(chunkSize, 0, NO_LISTENER);
+  }
+
+  /**
+   * Commits every given number of chunks in a transaction of its own. A running transaction of the caller is
+   * suspended meanwhile. If a transaction fails the chunks committed before stay committed.
+   *
+   * @param chunks the number of chunks per transaction. Must be positive.
+   * @return new options with the given value.
+   */
+  public BatchOptions commitEvery(int chunks) {
+    checkArgument(chunks > 0, "chunks must be positive!");
+    return new BatchOptions(chunkSize, chunks, progressListener);
+  }
+
+  /**
+   * Reports the progress after every chunk and after every commit.
+   *
+   * @param progressListener the listener. Must not be {@code null}.
+   * @return new options with the given listener.
+   */
+  public BatchOptions withProgressListener(BatchWriter.ProgressListener progressListener) {
+    return new BatchOptions(chunkSize, commitEvery, checkNotNull(progressListener, "progressListener is mandatory!"));
+  }
+
+  int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * @return the number of chunks per transaction. {@code 0} means a single transaction.
+   */
+  int getCommitEvery() {
+    return commitEvery;
+  }
+
+  BatchWriter.ProgressListener getProgressListener() {
+    return progressListener;
+  }
+}
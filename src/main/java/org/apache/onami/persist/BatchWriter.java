@@ -0,0 +1,90 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Writes large numbers of entities of a persistence unit with constant memory use.
+ * <p>
+ * The entities are consumed one by one from the given {@link Iterable}. Every chunk of entities is flushed and then
+ * cleared from the entity manager, so the persistence context never holds more than one chunk. The chunk size is
+ * used as JDBC batch size while writing if the persistence provider is hibernate. Other providers need batching to
+ * be enabled in the configuration of the persistence unit.
+ * <p>
+ * By default all entities are written in one transaction. A running transaction is joined and a new one is started
+ * otherwise. Note that joining clears the persistence context of the caller. With
+ * {@link BatchOptions#commitEvery(int)} every group of chunks is committed in a transaction of its own instead.
+ * <p>
+ * Usage example:
+ * <pre>
+ *  long written = batchWriter.persistAll(csvReader::readRows, BatchOptions.chunksOf(500).commitEvery(20));
+ * </pre>
+ */
+public interface BatchWriter {
+
+  /**
+   * Persists all given entities using {@link BatchOptions#chunksOf(int) chunks} of 50 entities in a single
+   * transaction.
+   *
+   * @param entities the entities to persist. Must not be {@code null}.
+   * @return the number of persisted entities.
+   */
+  long persistAll(Iterable<?> entities);
+
+  /**
+   * Persists all given entities.
+   *
+   * @param entities the entities to persist. Must not be {@code null}.
+   * @param options  the options of the write. Must not be {@code null}.
+   * @return the number of persisted entities.
+   */
+  long persistAll(Iterable<?> entities, BatchOptions options);
+
+  /**
+   * Merges all given entities using {@link BatchOptions#chunksOf(int) chunks} of 50 entities in a single transaction.
+   *
+   * @param entities the entities to merge. Must not be {@code null}.
+   * @return the number of merged entities.
+   */
+  long mergeAll(Iterable<?> entities);
+
+  /**
+   * Merges all given entities.
+   *
+   * @param entities the entities to merge. Must not be {@code null}.
+   * @param options  the options of the write. Must not be {@code null}.
+   * @return the number of merged entities.
+   */
+  long mergeAll(Iterable<?> entities, BatchOptions options);
+
+  /**
+   * Listener for the progress of a write.
+   */
+  @FunctionalInterface
+  interface ProgressListener {
+
+    /**
+     * Called after every chunk has been flushed and after every transaction has been committed.
+     *
+     * @param written   the number of entities flushed so far.
+     * @param committed the number of entities committed so far.
+     */
+    void progress(long written, long committed);
+  }
+}
@@ -0,0 +1,203 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.common.base.Throwables;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Implementation of {@link BatchWriter}.
+ * <p>
+ * The transactions are started over the {@link TxnParticipant} of the persistence unit, exactly like the
+ * {@link TxnInterceptor} does for an annotated method.
+ */
+class BatchWriterImpl implements BatchWriter {
+
+  /**
+   * Attribute of a write in a single transaction.
+   */
+  private static final TransactionAttribute SINGLE_TRANSACTION = new TransactionAttribute(Propagation.REQUIRED);
+
+  /**
+   * Attribute of a write committing every few chunks.
+   */
+  private static final TransactionAttribute SEPARATE_TRANSACTIONS = new TransactionAttribute(Propagation.REQUIRES_NEW);
+
+  /**
+   * The persistence unit to write to.
+   */
+  private final TxnParticipant participant;
+
+  /**
+   * Provider for the entity manager of the current unit of work.
+   */
+  private EntityManagerProvider emProvider;
+
+  /**
+   * Constructor.
+   *
+   * @param participant the persistence unit to write to.
+   */
+  BatchWriterImpl(TxnParticipant participant) {
+    this.participant = checkNotNull(participant, "participant is mandatory!");
+  }
+
+  /**
+   * @param emProvider provider for the entity manager of the current unit of work.
+   */
+  @Inject
+  void init(EntityManagerProvider emProvider) {
+    this.emProvider = checkNotNull(emProvider, "emProvider is mandatory!");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public long persistAll(Iterable<?> entities) {
+    return persistAll(entities, BatchOptions.DEFAULT);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public long persistAll(Iterable<?> entities, BatchOptions options) {
+    return writeAll(entities, options, EntityManager::persist);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public long mergeAll(Iterable<?> entities) {
+    return mergeAll(entities, BatchOptions.DEFAULT);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public long mergeAll(Iterable<?> entities, BatchOptions options) {
+    return writeAll(entities, options, EntityManager::merge);
+  }
+
+  private long writeAll(Iterable<?> entities, BatchOptions options, BiConsumer<EntityManager, Object> operation) {
+    checkNotNull(entities, "entities is mandatory!");
+    checkNotNull(options, "options is mandatory!");
+    final Iterator<?> iterator = entities.iterator();
+    if (options.getCommitEvery() == 0) {
+      final long written = inTransaction(SINGLE_TRANSACTION,
+          () -> writeChunks(iterator, Long.MAX_VALUE, options, operation, 0, 0));
+      options.getProgressListener()
+          .progress(written, written);
+      return written;
+    }
+
+    long committed = 0;
+    while (iterator.hasNext()) {
+      final long offset = committed;
+      committed += inTransaction(SEPARATE_TRANSACTIONS,
+          () -> writeChunks(iterator, options.getCommitEvery(), options, operation, offset, offset));
+      options.getProgressListener()
+          .progress(committed, committed);
+    }
+    return committed;
+  }
+
+  /**
+   * Writes chunks of entities with the entity manager of the current unit of work.
+   *
+   * @param iterator  the entities to write.
+   * @param maxChunks the maximum number of chunks to write.
+   * @param options   the options of the write.
+   * @param operation the operation to apply to every entity.
+   * @param written   the number of entities written before.
+   * @param committed the number of entities committed before.
+   * @return the number of entities written by this call.
+   */
+  private long writeChunks(Iterator<?> iterator, long maxChunks, BatchOptions options,
+      BiConsumer<EntityManager, Object> operation, long written, long committed) {
+    final EntityManager em = emProvider.get();
+    final JdbcBatchSession batchSession = JdbcBatchSession.applyTo(em, options.getChunkSize());
+    try {
+      long count = 0;
+      for (long chunk = 0; chunk < maxChunks && iterator.hasNext(); chunk++) {
+        for (int i = 0; i < options.getChunkSize() && iterator.hasNext(); i++) {
+          operation.accept(em, iterator.next());
+          count++;
+        }
+        em.flush();
+        em.clear();
+        options.getProgressListener()
+            .progress(written + count, committed);
+      }
+      return count;
+    } finally {
+      batchSession.restore();
+    }
+  }
+
+  /**
+   * Runs the given work in a unit of work and a transaction of the persistence unit.
+   *
+   * @param attribute the attribute of the transaction.
+   * @param work      the work to run.
+   * @return the result of the work.
+   */
+  private long inTransaction(TransactionAttribute attribute, Work work) {
+    final TxnParticipant.Frame frame;
+    try {
+      frame = participant.begin(attribute);
+    } catch (Throwable beginExc) {
+      throw propagate(beginExc);
+    }
+    long result = 0;
+    Throwable exc = null;
+    try {
+      result = work.run();
+    } catch (Throwable workExc) {
+      exc = workExc;
+    }
+    exc = participant.complete(frame, attribute, exc);
+    if (exc != null) {
+      throw propagate(exc);
+    }
+    return result;
+  }
+
+  private static RuntimeException propagate(Throwable exc) {
+    Throwables.throwIfUnchecked(exc);
+    throw new RuntimeException(exc);
+  }
+
+  /**
+   * Work to run within a transaction.
+   */
+  private interface Work {
+    long run();
+  }
+}
@@ -0,0 +1,86 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Storage for the state which the persistence units keep per thread. Such as the entity manager of the unit of work
+ * and the running transaction.
+ * <p>
+ * The storage is selected per {@link PersistenceModule}.
+ *
+ * @see ThreadLocalContextStorage
+ * @see ScopedContextStorage
+ */
+interface ContextStorage {
+
+  /**
+   * Creates a new slot. Slots are created while the injector is built and live as long as the injector.
+   *
+   * @param <T> the type of the value held by the slot.
+   * @return a new empty slot.
+   */
+  <T> Slot<T> newSlot();
+
+  /**
+   * Opens a scope for the current thread. The {@link TxnInterceptor} and the {@link PersistenceFilter} open a scope
+   * around every unit of work they manage. Opening a scope while another one is open has no effect.
+   *
+   * @return the scope to close when the unit of work has ended. Never {@code null}.
+   */
+  Scope openScope();
+
+  /**
+   * A value of the current thread.
+   *
+   * @param <T> the type of the value.
+   */
+  interface Slot<T> {
+
+    /**
+     * @return the value of the current thread. {@code null} if none has been set.
+     */
+    T get();
+
+    /**
+     * Sets the value of the current thread. Setting {@code null} is the same as {@link #remove()}.
+     *
+     * @param value the value to set.
+     */
+    void set(T value);
+
+    /**
+     * Removes the value of the current thread.
+     */
+    void remove();
+  }
+
+  /**
+   * A scope opened by {@link #openScope()}.
+   */
+  interface Scope extends AutoCloseable {
+
+    /**
+     * Closes the scope. Never throws.
+     */
+    @Override
+    void close();
+  }
+
+}
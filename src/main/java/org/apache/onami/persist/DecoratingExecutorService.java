@@ -0,0 +1,205 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.common.base.Throwables;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Executor service which decorates every task before passing it on to another executor service.
+ */
+final class DecoratingExecutorService implements ExecutorService {
+
+  /**
+   * The executor service running the decorated tasks.
+   */
+  private final ExecutorService delegate;
+
+  /**
+   * The decorator applied to every task.
+   */
+  private final TaskDecorator decorator;
+
+  /**
+   * Constructor.
+   *
+   * @param delegate  the executor service running the decorated tasks. Must not be {@code null}.
+   * @param decorator the decorator applied to every task. Must not be {@code null}.
+   */
+  DecoratingExecutorService(ExecutorService delegate, TaskDecorator decorator) {
+    this.delegate = checkNotNull(delegate, "delegate is mandatory!");
+    this.decorator = checkNotNull(decorator, "decorator is mandatory!");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public void execute(Runnable command) {
+    delegate.execute(decorator.decorate(command));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public <T> Future<T> submit(Callable<T> task) {
+    return delegate.submit(decorator.decorate(task));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public <T> Future<T> submit(Runnable task, T result) {
+    return delegate.submit(decorator.decorate(Executors.callable(checkNotNull(task, "task is mandatory!"), result)));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public Future<?> submit(Runnable task) {
+    return delegate.submit(decorator.decorate(task));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+    return delegate.invokeAll(decorateAll(tasks));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    return delegate.invokeAll(decorateAll(tasks), timeout, unit);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+    return delegate.invokeAny(decorateAll(tasks));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    return delegate.invokeAny(decorateAll(tasks), timeout, unit);
+  }
+
+  private <T> List<Callable<T>> decorateAll(Collection<? extends Callable<T>> tasks) {
+    final List<Callable<T>> result = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks) {
+      result.add(decorator.decorate(task));
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public List<Runnable> shutdownNow() {
+    return delegate.shutdownNow();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Decorates tasks. A task is decorated on the submitting thread and the decorated task runs on the worker thread.
+   */
+  interface TaskDecorator {
+
+    /**
+     * @param task the task to decorate. Must not be {@code null}.
+     * @param <T>  the result type of the task.
+     * @return the decorated task.
+     */
+    <T> Callable<T> decorate(Callable<T> task);
+
+    /**
+     * @param task the task to decorate. Must not be {@code null}.
+     * @return the decorated task.
+     */
+    default Runnable decorate(Runnable task) {
+      final Callable<Object> decorated = decorate(Executors.callable(checkNotNull(task, "task is mandatory!")));
+      return () -> {
+        try {
+          decorated.call();
+        } catch (Exception e) {
+          Throwables.throwIfUnchecked(e);
+          throw new RuntimeException(e);
+        }
+      };
+    }
+  }
+}
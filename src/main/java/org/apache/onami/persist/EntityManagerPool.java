@@ -0,0 +1,248 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.FlushModeType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bounded pool of idle entity managers. An entity manager which is released at the end of a unit of work is cleared
+ * and kept for the next unit of work instead of being closed.
+ * <p>
+ * The settings of an entity manager are recorded when it is created: the flush mode, the properties and, for
+ * hibernate, the session flush mode, the cache mode and the default read only mode. An entity manager is only
+ * released if it is open, not joined to a transaction and its settings are still the recorded ones. Otherwise a unit
+ * of work could pass settings it made on to the next, unrelated unit of work. It is validated again when it is
+ * acquired. An entity manager of a factory which has been replaced in the meantime, for example by restarting the
+ * persistence service, is closed instead of being reused.
+ * <p>
+ * The most recently released entity manager is acquired first. A pool with a capacity of {@code 0} is disabled.
+ */
+final class EntityManagerPool {
+
+  /**
+   * Pool which never keeps an entity manager.
+   */
+  static final EntityManagerPool DISABLED = new EntityManagerPool(0);
+
+  /**
+   * Maximum number of idle entity managers.
+   */
+  private final int capacity;
+
+  /**
+   * The idle entity managers. The most recently released one is first.
+   */
+  private final ConcurrentLinkedDeque<Entry> idle = new ConcurrentLinkedDeque<>();
+
+  /**
+   * Number of idle entity managers. Kept separately because the size of the deque is not a constant time operation.
+   */
+  private final AtomicInteger size = new AtomicInteger();
+
+  /**
+   * Constructor.
+   *
+   * @param capacity the maximum number of idle entity managers. {@code 0} disables the pool.
+   */
+  EntityManagerPool(int capacity) {
+    checkArgument(capacity >= 0, "capacity must not be negative!");
+    this.capacity = capacity;
+  }
+
+  /**
+   * Records the settings of a newly created entity manager so that it can be released later.
+   *
+   * @param em the new entity manager. Must not be {@code null}.
+   * @return the entry to pass to {@link #release(Entry)}. {@code null} if the pool is disabled.
+   */
+  Entry track(EntityManager em) {
+    checkNotNull(em, "em is mandatory!");
+    return capacity == 0 ? null : new Entry(em);
+  }
+
+  /**
+   * Takes an idle entity manager out of the pool. Invalid entity managers are closed on the way.
+   *
+   * @param emf the factory the entity manager must belong to. Must not be {@code null}.
+   * @return the entry of an idle entity manager of the given factory. {@code null} if there is none.
+   */
+  Entry acquire(EntityManagerFactory emf) {
+    checkNotNull(emf, "emf is mandatory!");
+    if (capacity == 0) {
+      return null;
+    }
+    Entry entry;
+    while ((entry = idle.pollFirst()) != null) {
+      size.decrementAndGet();
+      if (isValid(entry.entityManager, emf)) {
+        return entry;
+      }
+      closeQuietly(entry.entityManager);
+    }
+    return null;
+  }
+
+  /**
+   * Clears the entity manager of the given entry and puts it into the pool.
+   *
+   * @param entry the entry of the entity manager of an ended unit of work. Must not be {@code null}.
+   * @return {@code true} if the entity manager has been pooled. {@code false} if the caller has to close it.
+   */
+  boolean release(Entry entry) {
+    checkNotNull(entry, "entry is mandatory!");
+    if (capacity == 0 || !isRecyclable(entry)) {
+      return false;
+    }
+    if (size.incrementAndGet() > capacity) {
+      size.decrementAndGet();
+      return false;
+    }
+    idle.offerFirst(entry);
+    return true;
+  }
+
+  /**
+   * @return the number of idle entity managers.
+   */
+  int size() {
+    return size.get();
+  }
+
+  private static boolean isRecyclable(Entry entry) {
+    final EntityManager em = entry.entityManager;
+    try {
+      if (!em.isOpen() || em.isJoinedToTransaction() || !entry.hasRecordedSettings()) {
+        return false;
+      }
+      em.clear();
+      return true;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  private static boolean isValid(EntityManager em, EntityManagerFactory emf) {
+    try {
+      return em.isOpen() && em.getEntityManagerFactory() == emf;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  private static void closeQuietly(EntityManager em) {
+    try {
+      em.close();
+    } catch (RuntimeException e) {
+      // the entity manager is discarded anyway
+    }
+  }
+
+  /**
+   * An entity manager together with the settings it had when it was created.
+   */
+  static final class Entry {
+
+    final EntityManager entityManager;
+
+    private final FlushModeType flushMode;
+
+    private final Map<String, Object> properties;
+
+    /**
+     * The settings of the hibernate session. {@code null} for other persistence providers.
+     */
+    private final HibernateSettings hibernateSettings;
+
+    private Entry(EntityManager em) {
+      this.entityManager = em;
+      this.flushMode = em.getFlushMode();
+      this.properties = new HashMap<>(em.getProperties());
+      this.hibernateSettings = HibernateSettings.of(em);
+    }
+
+    /**
+     * @return {@code true} if the entity manager still has the settings it had when it was created.
+     */
+    boolean hasRecordedSettings() {
+      if (flushMode != entityManager.getFlushMode() || !properties.equals(entityManager.getProperties())) {
+        return false;
+      }
+      return hibernateSettings == null || hibernateSettings.equals(HibernateSettings.of(entityManager));
+    }
+  }
+
+  /**
+   * Settings of a hibernate session which JPA does not expose.
+   */
+  private static final class HibernateSettings {
+
+    private final FlushMode flushMode;
+
+    private final CacheMode cacheMode;
+
+    private final boolean defaultReadOnly;
+
+    private HibernateSettings(Session session) {
+      this.flushMode = session.getHibernateFlushMode();
+      this.cacheMode = session.getCacheMode();
+      this.defaultReadOnly = session.isDefaultReadOnly();
+    }
+
+    /**
+     * @param em the entity manager.
+     * @return the settings of the hibernate session of the entity manager. {@code null} if it is not backed by one.
+     */
+    static HibernateSettings of(EntityManager em) {
+      if (!ReadOnlySession.HIBERNATE_PRESENT) {
+        return null;
+      }
+      final Session session = ReadOnlySession.unwrapSession(em);
+      return session == null ? null : new HibernateSettings(session);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof HibernateSettings)) {
+        return false;
+      }
+      final HibernateSettings other = (HibernateSettings) obj;
+      return flushMode == other.flushMode && cacheMode == other.cacheMode && defaultReadOnly == other.defaultReadOnly;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(flushMode, cacheMode, defaultReadOnly);
+    }
+  }
+}
@@ -26,7 +26,10 @@ import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import java.lang.annotation.Annotation;
 import java.util.Properties;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -47,37 +50,76 @@ class EntityManagerProviderImpl implements EntityManagerProvider, UnitOfWork, Tr
   private final Properties properties;
 
   /**
-   * Thread local store of {@link EntityManager}s.
+   * Pool of idle entity managers which are recycled instead of being closed.
    */
-  private final ThreadLocal<EntityManager> entityManagers = new ThreadLocal<>();
+  private final EntityManagerPool entityManagerPool;
 
   /**
-   * Thread local store of {@link TransactionFacade} instances.
+   * Per thread store of the {@link EntityManager}s of the active units of work.
    */
-  private final ThreadLocal<TransactionFacade> transactionFacades = new ThreadLocal<>();
+  private final ContextStorage.Slot<LazyEntityManager> entityManagers;
+
+  /**
+   * Per thread store of the innermost transaction of the active units of work.
+   */
+  private final ContextStorage.Slot<ActiveTransaction> transactions;
+
+  /**
+   * Receiver of the measurements.
+   */
+  private PersistenceMetrics metrics = PersistenceMetrics.NOOP;
+
+  /**
+   * Annotation of the persistence unit. May be {@code null}.
+   */
+  private Class<? extends Annotation> puAnnotation;
 
   /**
    * Constructor.
    *
-   * @param emfProvider the provider for {@link EntityManagerFactory}. Must not be {@code null}.
-   * @param properties  additional properties to be set on every {@link EntityManager} which is created.
+   * @param emfProvider    the provider for {@link EntityManagerFactory}. Must not be {@code null}.
+   * @param properties     additional properties to be set on every {@link EntityManager} which is created.
+   * @param contextStorage the storage for the per thread state. Must not be {@code null}.
+   * @param entityManagerPool pool of idle entity managers. Must not be {@code null}.
    */
   @Inject
   public EntityManagerProviderImpl(EntityManagerFactoryProvider emfProvider,
       @Nullable
       @ForContainerManaged
-      Properties properties) {
+      Properties properties, ContextStorage contextStorage, EntityManagerPool entityManagerPool) {
     this.emfProvider = checkNotNull(emfProvider, "emfProvider is mandatory!");
     this.properties = properties;
+    this.entityManagerPool = checkNotNull(entityManagerPool, "entityManagerPool is mandatory!");
+    checkNotNull(contextStorage, "contextStorage is mandatory!");
+    this.entityManagers = contextStorage.newSlot();
+    this.transactions = contextStorage.newSlot();
+  }
+
+  /**
+   * @param metrics          receiver of the measurements.
+   * @param annotationHolder the annotation of the persistence unit.
+   */
+  @Inject
+  void setMetrics(PersistenceMetrics metrics, AnnotationHolder annotationHolder) {
+    this.metrics = checkNotNull(metrics, "metrics is mandatory!");
+    this.puAnnotation = annotationHolder.getAnnotation();
   }
 
   /**
    * {@inheritDoc}
+   * <p>
+   * Creates the entity manager of the unit of work on the first call. Starts the transaction of the current thread
+   * if its start has been deferred until the first use.
    */
   // @Override
   public EntityManager get() throws IllegalStateException {
-    final EntityManager entityManager = entityManagers.get();
-    if (entityManager != null) {
+    final LazyEntityManager lazyEntityManager = entityManagers.get();
+    if (lazyEntityManager != null) {
+      final EntityManager entityManager = lazyEntityManager.get();
+      final ActiveTransaction transaction = transactions.get();
+      if (transaction != null) {
+        transaction.transactionFacade.beforeEntityManagerUse();
+      }
       return entityManager;
     } else {
       throw new IllegalStateException("UnitOfWork is not running.");
@@ -86,23 +128,24 @@ class EntityManagerProviderImpl implements EntityManagerProvider, UnitOfWork, Tr
 
   /**
    * {@inheritDoc}
+   * <p>
+   * The entity manager is not created before it is retrieved for the first time.
    */
   // @Override
   public void begin() {
     if (isActive()) {
       throw new IllegalStateException("Unit of work has already been started.");
     } else {
-      final EntityManager em = createEntityManager();
-      entityManagers.set(em);
+      entityManagers.set(new LazyEntityManager(false));
     }
   }
 
   /**
+   * @param emf the factory to create the entity manager with.
    * @return a new entity manager instance.
    */
-  private EntityManager createEntityManager() {
-    final EntityManagerFactory emf = emfProvider.get();
-    if (null == properties) {
+  private EntityManager createEntityManager(EntityManagerFactory emf) {
+    if (null == properties || properties.isEmpty()) {
       return emf.createEntityManager();
     } else {
       return emf.createEntityManager(properties);
@@ -114,29 +157,114 @@ class EntityManagerProviderImpl implements EntityManagerProvider, UnitOfWork, Tr
    */
   @Override
   public TransactionHolder withTransaction(final TransactionFacade transactionFacade) {
-    final TransactionFacade original = transactionFacades.get();
-    transactionFacades.set(transactionFacade);
-    return new TransactionHolder() {
-      @Override
-      public TransactionFacade getTransaction() {
-        return transactionFacade;
-      }
+    final ActiveTransaction transaction = new ActiveTransaction(transactionFacade, transactions.get());
+    transactions.set(transaction);
+    return transaction;
+  }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public SuspendedUnitOfWork suspend() {
+    final LazyEntityManager em = entityManagers.get();
+    if (em == null) {
+      throw new IllegalStateException("UnitOfWork is not running.");
+    }
+    final ActiveTransaction transaction = transactions.get();
+    entityManagers.remove();
+    transactions.remove();
+    return new SuspendedUnitOfWork() {
       @Override
-      public void close() throws Exception {
-        transactionFacades.set(original);
+      public void resume() {
+        if (isActive()) {
+          throw new IllegalStateException("Unit of work has already been started.");
+        }
+        entityManagers.set(em);
+        transactions.set(transaction);
       }
     };
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void beginReadOnly() {
+    if (isActive()) {
+      throw new IllegalStateException("Unit of work has already been started.");
+    } else {
+      entityManagers.set(new LazyEntityManager(true));
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isEntityManagerCreated() {
+    final LazyEntityManager lazyEntityManager = entityManagers.get();
+    return lazyEntityManager != null && lazyEntityManager.entityManager != null;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public void addPostCommitCallback(Runnable callback) {
-    TransactionFacade transactionFacade = transactionFacades.get();
-    Preconditions.checkNotNull(transactionFacade, "Cannot add a callback outside the context of a transaction");
-    transactionFacade.addPostCommitCallback(callback);
+    final ActiveTransaction transaction = transactions.get();
+    Preconditions.checkNotNull(transaction, "Cannot add a callback outside the context of a transaction");
+    transaction.transactionFacade.addPostCommitCallback(callback);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addPostCommitCallback(Object key, Runnable callback) {
+    final ActiveTransaction transaction = transactions.get();
+    Preconditions.checkNotNull(transaction, "Cannot add a callback outside the context of a transaction");
+    transaction.transactionFacade.addPostCommitCallback(key, callback);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <K> void addAggregatePostCommitCallback(K key, Consumer<Set<K>> callback) {
+    final ActiveTransaction transaction = transactions.get();
+    Preconditions.checkNotNull(transaction, "Cannot add a callback outside the context of a transaction");
+    transaction.transactionFacade.addAggregatePostCommitCallback(key, callback);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addBeforeCommitCallback(Runnable callback) {
+    final ActiveTransaction transaction = transactions.get();
+    Preconditions.checkNotNull(transaction, "Cannot add a callback outside the context of a transaction");
+    transaction.transactionFacade.addBeforeCommitCallback(callback);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addAfterRollbackCallback(Runnable callback) {
+    final ActiveTransaction transaction = transactions.get();
+    Preconditions.checkNotNull(transaction, "Cannot add a callback outside the context of a transaction");
+    transaction.transactionFacade.addAfterRollbackCallback(callback);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addAfterCompletionCallback(CompletionCallback callback) {
+    final ActiveTransaction transaction = transactions.get();
+    Preconditions.checkNotNull(transaction, "Cannot add a callback outside the context of a transaction");
+    transaction.transactionFacade.addAfterCompletionCallback(callback);
   }
 
   /**
@@ -152,20 +280,33 @@ class EntityManagerProviderImpl implements EntityManagerProvider, UnitOfWork, Tr
    */
   // @Override
   public void end() {
-    final EntityManager em = entityManagers.get();
-    if (em != null) {
-      closeAndRemoveEntityManager(em);
+    final LazyEntityManager lazyEntityManager = entityManagers.get();
+    if (lazyEntityManager != null) {
+      try {
+        if (lazyEntityManager.readOnlySession != null) {
+          lazyEntityManager.readOnlySession.restore();
+        }
+      } finally {
+        closeAndRemoveEntityManager(lazyEntityManager.entityManager, lazyEntityManager.pooled);
+      }
+      final long now = System.nanoTime();
+      metrics.unitOfWorkEnded(puAnnotation, now - lazyEntityManager.begunAt,
+          lazyEntityManager.entityManager == null ? -1 : now - lazyEntityManager.createdAt);
     }
   }
 
   /**
-   * closes the entity manager and removes it from the internal storage.
+   * closes the entity manager and removes it from the internal storage. The entity manager is put into the pool
+   * instead of being closed if the pool accepts it.
    *
-   * @param em the entity manager to close
+   * @param em     the entity manager to close. {@code null} if it has never been created.
+   * @param pooled the pool entry of the entity manager. {@code null} if the pool is disabled.
    */
-  private void closeAndRemoveEntityManager(EntityManager em) {
+  private void closeAndRemoveEntityManager(@Nullable EntityManager em, @Nullable EntityManagerPool.Entry pooled) {
     try {
-      em.close();
+      if (em != null && (pooled == null || !entityManagerPool.release(pooled))) {
+        em.close();
+      }
     } finally {
       entityManagers.remove();
     }
@@ -178,4 +319,91 @@ class EntityManagerProviderImpl implements EntityManagerProvider, UnitOfWork, Tr
   public EntityManager getEntityManager() throws IllegalStateException {
     return get();
   }
+
+  /**
+   * The entity manager of a unit of work. Created on first access. Confined to the thread of the unit of work.
+   */
+  private final class LazyEntityManager {
+    private final boolean readOnly;
+
+    private final long begunAt = System.nanoTime();
+
+    private EntityManager entityManager;
+
+    private EntityManagerPool.Entry pooled;
+
+    private long createdAt;
+
+    private ReadOnlySession readOnlySession;
+
+    LazyEntityManager(boolean readOnly) {
+      this.readOnly = readOnly;
+    }
+
+    EntityManager get() {
+      if (entityManager == null) {
+        final EntityManagerFactory emf = emfProvider.get();
+        pooled = entityManagerPool.acquire(emf);
+        if (pooled == null) {
+          entityManager = createEntityManager(emf);
+          pooled = entityManagerPool.track(entityManager);
+        } else {
+          entityManager = pooled.entityManager;
+        }
+        createdAt = System.nanoTime();
+        if (readOnly) {
+          readOnlySession = ReadOnlySession.applyTo(entityManager);
+        }
+      }
+      return entityManager;
+    }
+  }
+
+  /**
+   * A transaction of a unit of work. Restores the enclosing transaction when closed.
+   */
+  private final class ActiveTransaction implements TransactionHolder {
+    private final TransactionFacade transactionFacade;
+
+    private final ActiveTransaction enclosing;
+
+    /**
+     * The number of transactions taking part in the transaction of this one. {@code 0} if there is none.
+     */
+    private final int nesting;
+
+    private final int depth;
+
+    ActiveTransaction(TransactionFacade transactionFacade, @Nullable ActiveTransaction enclosing) {
+      this.transactionFacade = transactionFacade;
+      this.enclosing = enclosing;
+      final int enclosingNesting = enclosing == null ? 0 : enclosing.nesting;
+      if (transactionFacade == NoTransactionFacade.INSTANCE) {
+        this.nesting = enclosingNesting;
+        this.depth = 0;
+      } else if (transactionFacade.joinsRunningTransaction()) {
+        // the joined transaction may have been started by someone else
+        this.nesting = Math.max(enclosingNesting, 1) + 1;
+        this.depth = nesting;
+      } else {
+        this.nesting = 1;
+        this.depth = 1;
+      }
+    }
+
+    @Override
+    public TransactionFacade getTransaction() {
+      return transactionFacade;
+    }
+
+    @Override
+    public int getDepth() {
+      return depth;
+    }
+
+    @Override
+    public void close() {
+      transactions.set(enclosing);
+    }
+  }
 }
@@ -0,0 +1,344 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link PersistenceMetrics} keeping counters and {@link LatencyHistogram histograms} per persistence unit in memory.
+ * <p>
+ * Transactions are counted and timed at the outermost level only. Nested transactions joining a running one are
+ * counted as joined and contribute to the nesting depth histogram.
+ * <p>
+ * Usage example:
+ * <pre>
+ *  InMemoryPersistenceMetrics metrics = new InMemoryPersistenceMetrics();
+ *  OptionalBinder.newOptionalBinder(binder(), PersistenceMetrics.class).setBinding().toInstance(metrics);
+ *  ...
+ *  metrics.writeTo(Paths.get("persistence-metrics.txt"));
+ * </pre>
+ */
+public class InMemoryPersistenceMetrics implements PersistenceMetrics {
+
+  /**
+   * Percentiles written by {@link #writeTo(Writer)}.
+   */
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  /**
+   * Statistics of the unannotated persistence unit.
+   */
+  private final UnitStatistics unannotated = new UnitStatistics();
+
+  /**
+   * Statistics of the annotated persistence units.
+   */
+  private final ConcurrentMap<Class<? extends Annotation>, UnitStatistics> annotated = new ConcurrentHashMap<>();
+
+  /**
+   * Number of retried invocations.
+   */
+  private final LongAdder retries = new LongAdder();
+
+  /**
+   * Returns the statistics of a persistence unit. A persistence unit without any measurements has empty statistics.
+   *
+   * @param puAnnotation the annotation of the persistence unit. {@code null} for the unannotated one.
+   * @return the statistics.
+   */
+  public UnitStatistics statisticsOf(Class<? extends Annotation> puAnnotation) {
+    if (puAnnotation == null) {
+      return unannotated;
+    }
+    final UnitStatistics statistics = annotated.get(puAnnotation);
+    if (statistics != null) {
+      return statistics;
+    }
+    return annotated.computeIfAbsent(puAnnotation, annotation -> new UnitStatistics());
+  }
+
+  /**
+   * @return the number of retried invocations of all persistence units.
+   */
+  public long getRetryCount() {
+    return retries.sum();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void transactionRetried(Method method, int attempt, Throwable cause, long backoffNanos) {
+    retries.increment();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void transactionBegun(Class<? extends Annotation> puAnnotation, int depth, long beginNanos) {
+    final UnitStatistics statistics = statisticsOf(puAnnotation);
+    statistics.nestingDepth.record(depth);
+    if (depth == 1) {
+      statistics.begun.increment();
+      statistics.begin.record(beginNanos);
+    } else {
+      statistics.joined.increment();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void transactionCommitted(Class<? extends Annotation> puAnnotation, int depth, long commitNanos,
+      long durationNanos) {
+    if (depth == 1) {
+      final UnitStatistics statistics = statisticsOf(puAnnotation);
+      statistics.committed.increment();
+      statistics.commit.record(commitNanos);
+      statistics.transaction.record(durationNanos);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void transactionRolledBack(Class<? extends Annotation> puAnnotation, int depth, long rollbackNanos,
+      long durationNanos) {
+    if (depth == 1) {
+      final UnitStatistics statistics = statisticsOf(puAnnotation);
+      statistics.rolledBack.increment();
+      statistics.rollback.record(rollbackNanos);
+      statistics.transaction.record(durationNanos);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void unitOfWorkEnded(Class<? extends Annotation> puAnnotation, long durationNanos,
+      long entityManagerLifetime) {
+    final UnitStatistics statistics = statisticsOf(puAnnotation);
+    statistics.unitOfWork.record(durationNanos);
+    if (entityManagerLifetime >= 0) {
+      statistics.entityManagerLifetime.record(entityManagerLifetime);
+    }
+  }
+
+  /**
+   * Writes the counters and percentiles of all persistence units to the given file. An existing file is replaced.
+   *
+   * @param file the file to write to. Must not be {@code null}.
+   * @throws IOException if the file could not be written.
+   */
+  public void writeTo(Path file) throws IOException {
+    checkNotNull(file, "file is mandatory!");
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writeTo(writer);
+    }
+  }
+
+  /**
+   * Writes the counters and percentiles of all persistence units. Durations are written in microseconds.
+   *
+   * @param writer the writer to write to. Must not be {@code null}.
+   * @throws IOException if writing fails.
+   */
+  public void writeTo(Writer writer) throws IOException {
+    checkNotNull(writer, "writer is mandatory!");
+    writer.write(String.format(Locale.ROOT, "retries=%d%n", getRetryCount()));
+    if (!unannotated.isEmpty()) {
+      writeUnit(writer, "<unannotated>", unannotated);
+    }
+    final List<Map.Entry<Class<? extends Annotation>, UnitStatistics>> units = new ArrayList<>(annotated.entrySet());
+    units.sort(Comparator.comparing(entry -> entry.getKey()
+        .getName()));
+    for (Map.Entry<Class<? extends Annotation>, UnitStatistics> unit : units) {
+      writeUnit(writer, unit.getKey()
+          .getName(), unit.getValue());
+    }
+    writer.flush();
+  }
+
+  private static void writeUnit(Writer writer, String name, UnitStatistics statistics) throws IOException {
+    writer.write(String.format(Locale.ROOT, "%npersistence unit %s%n", name));
+    writer.write(String.format(Locale.ROOT, "  transactions begun=%d joined=%d committed=%d rolledBack=%d%n",
+        statistics.getBegunCount(), statistics.getJoinedCount(), statistics.getCommittedCount(),
+        statistics.getRolledBackCount()));
+    writeHistogram(writer, "begin [us]", statistics.getBegin(), true);
+    writeHistogram(writer, "commit [us]", statistics.getCommit(), true);
+    writeHistogram(writer, "rollback [us]", statistics.getRollback(), true);
+    writeHistogram(writer, "transaction [us]", statistics.getTransaction(), true);
+    writeHistogram(writer, "unit of work [us]", statistics.getUnitOfWork(), true);
+    writeHistogram(writer, "entity manager [us]", statistics.getEntityManagerLifetime(), true);
+    writeHistogram(writer, "nesting depth", statistics.getNestingDepth(), false);
+  }
+
+  private static void writeHistogram(Writer writer, String name, LatencyHistogram histogram, boolean nanos)
+      throws IOException {
+    final StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "  %-20s count=%d mean=%.1f", name,
+        histogram.getCount(), nanos ? histogram.getMean() / 1000 : histogram.getMean()));
+    for (double percentile : PERCENTILES) {
+      line.append(String.format(Locale.ROOT, " p%s=%.1f", format(percentile),
+          scale(histogram.getValueAtPercentile(percentile), nanos)));
+    }
+    line.append(String.format(Locale.ROOT, " max=%.1f%n", scale(histogram.getMax(), nanos)));
+    writer.write(line.toString());
+  }
+
+  private static String format(double percentile) {
+    return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+  }
+
+  private static double scale(long value, boolean nanos) {
+    return nanos ? value / 1000.0 : value;
+  }
+
+  /**
+   * Counters and histograms of a single persistence unit. Durations are recorded in nanoseconds.
+   */
+  public static final class UnitStatistics {
+    private final LongAdder begun = new LongAdder();
+
+    private final LongAdder joined = new LongAdder();
+
+    private final LongAdder committed = new LongAdder();
+
+    private final LongAdder rolledBack = new LongAdder();
+
+    private final LatencyHistogram begin = new LatencyHistogram();
+
+    private final LatencyHistogram commit = new LatencyHistogram();
+
+    private final LatencyHistogram rollback = new LatencyHistogram();
+
+    private final LatencyHistogram transaction = new LatencyHistogram();
+
+    private final LatencyHistogram unitOfWork = new LatencyHistogram();
+
+    private final LatencyHistogram entityManagerLifetime = new LatencyHistogram();
+
+    private final LatencyHistogram nestingDepth = new LatencyHistogram();
+
+    private UnitStatistics() {
+    }
+
+    /**
+     * @return the number of outermost transactions begun.
+     */
+    public long getBegunCount() {
+      return begun.sum();
+    }
+
+    /**
+     * @return the number of nested transactions which joined a running one.
+     */
+    public long getJoinedCount() {
+      return joined.sum();
+    }
+
+    /**
+     * @return the number of outermost transactions committed.
+     */
+    public long getCommittedCount() {
+      return committed.sum();
+    }
+
+    /**
+     * @return the number of outermost transactions rolled back, including failed commits.
+     */
+    public long getRolledBackCount() {
+      return rolledBack.sum();
+    }
+
+    /**
+     * @return the time needed for beginning the outermost transactions.
+     */
+    public LatencyHistogram getBegin() {
+      return begin;
+    }
+
+    /**
+     * @return the time needed for committing the outermost transactions.
+     */
+    public LatencyHistogram getCommit() {
+      return commit;
+    }
+
+    /**
+     * @return the time needed for rolling back the outermost transactions.
+     */
+    public LatencyHistogram getRollback() {
+      return rollback;
+    }
+
+    /**
+     * @return the duration of the outermost transactions from begin to completion.
+     */
+    public LatencyHistogram getTransaction() {
+      return transaction;
+    }
+
+    /**
+     * @return the duration of the units of work.
+     */
+    public LatencyHistogram getUnitOfWork() {
+      return unitOfWork;
+    }
+
+    /**
+     * @return the lifetime of the entity managers from creation to the end of their unit of work.
+     */
+    public LatencyHistogram getEntityManagerLifetime() {
+      return entityManagerLifetime;
+    }
+
+    /**
+     * @return the depth of all begun and joined transactions.
+     */
+    public LatencyHistogram getNestingDepth() {
+      return nestingDepth;
+    }
+
+    private boolean isEmpty() {
+      return nestingDepth.getCount() == 0 && unitOfWork.getCount() == 0;
+    }
+  }
+
+}
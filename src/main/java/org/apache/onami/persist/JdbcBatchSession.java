@@ -0,0 +1,94 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.hibernate.Session;
+
+import jakarta.persistence.EntityManager;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Enables JDBC batching on an {@link EntityManager} for the duration of a bulk write.
+ * <p>
+ * If the entity manager is backed by a hibernate {@link Session} the JDBC batch size of the session is set. Other
+ * persistence providers only support batching through the configuration of the persistence unit, so nothing is
+ * changed for them.
+ * <p>
+ * The previous settings are restored by {@link #restore()}.
+ */
+abstract class JdbcBatchSession {
+
+  /**
+   * Session for which nothing has been changed.
+   */
+  private static final JdbcBatchSession UNCHANGED = new JdbcBatchSession() {
+    @Override
+    void restore() {
+      // Do nothing
+    }
+  };
+
+  /**
+   * Enables JDBC batching on the given entity manager.
+   *
+   * @param em        the entity manager. Must not be {@code null}.
+   * @param batchSize the number of statements to send to the database at once.
+   * @return handle for restoring the previous settings.
+   */
+  static JdbcBatchSession applyTo(EntityManager em, int batchSize) {
+    checkNotNull(em, "em is mandatory!");
+    if (ReadOnlySession.HIBERNATE_PRESENT) {
+      final Session session = ReadOnlySession.unwrapSession(em);
+      if (session != null) {
+        return new HibernateSession(session, batchSize);
+      }
+    }
+    return UNCHANGED;
+  }
+
+  /**
+   * Restores the settings which were active before {@link #applyTo(EntityManager, int)}.
+   */
+  abstract void restore();
+
+  /**
+   * JDBC batching of a hibernate session.
+   */
+  private static final class HibernateSession extends JdbcBatchSession {
+    private final Session session;
+
+    private final Integer previousBatchSize;
+
+    HibernateSession(Session session, int batchSize) {
+      this.session = session;
+      this.previousBatchSize = session.getJdbcBatchSize();
+      session.setJdbcBatchSize(batchSize);
+    }
+
+    @Override
+    void restore() {
+      if (session.isOpen()) {
+        session.setJdbcBatchSize(previousBatchSize);
+      }
+    }
+  }
+
+}
@@ -25,8 +25,8 @@ import javax.annotation.Nullable;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import jakarta.persistence.EntityManager;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -50,31 +50,80 @@ class JtaTransactionFacadeFactory implements TransactionFacadeFactory {
   /**
    * The outermost transaction facade associated with each thread, if any.
    */
-  private final ThreadLocal<Outer> outerTransactionFacade = new ThreadLocal<>();
+  private final ContextStorage.Slot<Outer> outerTransactionFacade;
+
+  /**
+   * The defaults for the transactions of the persistence unit.
+   */
+  private final TransactionDefaults defaults;
 
   /**
    * Constructor.
    *
-   * @param utFacade   the user transaction facade.
-   * @param emProvider the entity manager provider.
+   * @param utFacade       the user transaction facade.
+   * @param emProvider     the entity manager provider.
+   * @param defaults       the defaults for the transactions of the persistence unit.
+   * @param contextStorage the storage for the per thread state.
    */
   @Inject
-  public JtaTransactionFacadeFactory(UserTransactionFacade utFacade, EntityManagerProvider emProvider) {
+  public JtaTransactionFacadeFactory(UserTransactionFacade utFacade, EntityManagerProvider emProvider,
+      TransactionDefaults defaults, ContextStorage contextStorage) {
     this.utFacade = checkNotNull(utFacade, "utFacade is mandatory!");
     this.emProvider = checkNotNull(emProvider, "emProvider is mandatory!");
+    this.defaults = checkNotNull(defaults, "defaults is mandatory!");
+    this.outerTransactionFacade = checkNotNull(contextStorage, "contextStorage is mandatory!").newSlot();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public boolean isTransactionActive() {
+    return utFacade.isActive();
   }
 
   /**
    * {@inheritDoc}
+   * <p>
+   * Only possible if the user transaction is also a {@link javax.transaction.TransactionManager}.
    */
   // @Override
-  public TransactionFacade createTransactionFacade() {
+  public boolean canSuspendTransaction() {
+    return utFacade.canSuspend();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public SuspendedTransaction suspendTransaction() {
+    final SuspendedTransaction suspended = utFacade.suspend();
+    final Outer outer = outerTransactionFacade.get();
+    outerTransactionFacade.remove();
+    return () -> {
+      suspended.resume();
+      outerTransactionFacade.set(outer);
+    };
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public TransactionFacade createTransactionFacade(TransactionAttribute attribute) {
+    final Propagation propagation = attribute.getPropagation();
     if (utFacade.isActive()) {
+      if (propagation == Propagation.NEVER || propagation.suspendsRunningTransaction()) {
+        throw new IllegalStateException("Transaction is running. Propagation " + propagation + " not possible.");
+      }
       return new Inner(utFacade, emProvider.get(), outerTransactionFacade.get());
+    } else if (propagation.startsTransaction()) {
+      return new Outer(utFacade, emProvider.get(), attribute.isReadOnly(), defaults.timeoutFor(attribute),
+          outerTransactionFacade, defaults.getPostCommitDispatcher());
+    } else if (propagation == Propagation.MANDATORY) {
+      throw new IllegalStateException("No transaction is running. Propagation " + propagation + " not possible.");
     } else {
-      Outer outer = new Outer(utFacade, emProvider.get());
-      outerTransactionFacade.set(outer);
-      return outer;
+      return NoTransactionFacade.INSTANCE;
     }
   }
 
@@ -120,29 +169,89 @@ class JtaTransactionFacadeFactory implements TransactionFacadeFactory {
       txn.setRollbackOnly();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean joinsRunningTransaction() {
+      return true;
+    }
+
     @Override
     public void addPostCommitCallback(Runnable callback) {
       Preconditions.checkNotNull(parent);
       parent.addPostCommitCallback(callback);
     }
+
+    @Override
+    public void addPostCommitCallback(Object key, Runnable callback) {
+      Preconditions.checkNotNull(parent);
+      parent.addPostCommitCallback(key, callback);
+    }
+
+    @Override
+    public <K> void addAggregatePostCommitCallback(K key, Consumer<Set<K>> callback) {
+      Preconditions.checkNotNull(parent);
+      parent.addAggregatePostCommitCallback(key, callback);
+    }
+
+    @Override
+    public void addBeforeCommitCallback(Runnable callback) {
+      Preconditions.checkNotNull(parent);
+      parent.addBeforeCommitCallback(callback);
+    }
+
+    @Override
+    public void addAfterRollbackCallback(Runnable callback) {
+      Preconditions.checkNotNull(parent);
+      parent.addAfterRollbackCallback(callback);
+    }
+
+    @Override
+    public void addAfterCompletionCallback(TransactionHookManager.CompletionCallback callback) {
+      Preconditions.checkNotNull(parent);
+      parent.addAfterCompletionCallback(callback);
+    }
   }
 
 
   /**
-   * TransactionFacade representing an outer transaction. This Facade starts
-   * and ends the transaction. If an inner transaction has set the rollbackOnly
-   * flag the transaction will be rolled back in any case.
+   * TransactionFacade representing an outer transaction. This Facade starts and ends the transaction. If an inner
+   * transaction has set the rollbackOnly flag the transaction will be rolled back in any case. A read only transaction
+   * puts the entity manager into read only mode until the transaction has ended. A transaction with a timeout passes
+   * it to the user transaction and is watched by the {@link TransactionWatchdog}. While running the facade is
+   * registered as the outer transaction of the current thread. The {@link TransactionHooks} are run before the commit
+   * and after the transaction has been completed.
    */
   private static class Outer implements TransactionFacade {
     private final UserTransactionFacade txn;
 
     private final EntityManager em;
 
-    private final List<Runnable> postCommitCallbacks = new ArrayList<>();
+    private final boolean readOnly;
+
+    private final int timeout;
+
+    private final ContextStorage.Slot<Outer> outerTransactionFacade;
+
+    private final TransactionHooks hooks;
 
-    Outer(UserTransactionFacade txn, EntityManager em) {
+    private ReadOnlySession readOnlySession;
+
+    private TransactionTimeout transactionTimeout;
+
+    private Outer previousOuter;
+
+    private boolean committed;
+
+    Outer(UserTransactionFacade txn, EntityManager em, boolean readOnly, int timeout,
+        ContextStorage.Slot<Outer> outerTransactionFacade, PostCommitDispatcher postCommitDispatcher) {
       this.txn = checkNotNull(txn, "txn is mandatory!");
       this.em = checkNotNull(em, "em is mandatory!");
+      this.readOnly = readOnly;
+      this.timeout = timeout;
+      this.outerTransactionFacade = checkNotNull(outerTransactionFacade, "outerTransactionFacade is mandatory!");
+      this.hooks = new TransactionHooks(postCommitDispatcher);
     }
 
     /**
@@ -150,32 +259,81 @@ class JtaTransactionFacadeFactory implements TransactionFacadeFactory {
      */
     // @Override
     public void begin() {
-      txn.begin();
+      if (timeout > 0) {
+        txn.setTransactionTimeout(timeout);
+        try {
+          txn.begin();
+        } finally {
+          txn.setTransactionTimeout(0);
+        }
+      } else {
+        txn.begin();
+      }
+      previousOuter = outerTransactionFacade.get();
+      outerTransactionFacade.set(this);
       em.joinTransaction();
+      if (timeout > 0) {
+        transactionTimeout = TransactionTimeout.start(em, timeout);
+      }
+      if (readOnly) {
+        readOnlySession = ReadOnlySession.applyTo(em);
+      }
     }
 
     /**
      * {@inheritDoc}
      */
     // @Override
-    public synchronized void commit() {
+    public void commit() {
+      final TransactionTimeout timeout = transactionTimeout;
+      if (timeout != null && timeout.isExpired()) {
+        rollback();
+        throw timeout.newException();
+      }
       if (txn.getRollbackOnly()) {
-        txn.rollback();
-      } else {
-        txn.commit();
-        List<RuntimeException> exceptions = new ArrayList<>();
-        for (Runnable callback : postCommitCallbacks) {
-          try {
-            callback.run();
-          } catch (RuntimeException e) {
-            exceptions.add(e);
-          }
+        rollback();
+        return;
+      }
+      if (runBeforeCommitCallbacks() && txn.getRollbackOnly()) {
+        rollback();
+        return;
+      }
+      try {
+        try {
+          txn.commit();
+        } finally {
+          restoreState();
         }
-        if (exceptions.size() >= 1) {
-          RuntimeException e = exceptions.get(0);
-          exceptions.subList(1, exceptions.size()).forEach(e::addSuppressed);
-          throw e;
+      } catch (RuntimeException e) {
+        throw hooks.rolledBackAfter(e);
+      }
+      committed = true;
+      hooks.committed();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCommitted() {
+      return committed;
+    }
+
+    /**
+     * Runs the before commit callbacks. If one of them fails the transaction is rolled back.
+     *
+     * @return {@code true} if at least one callback was run.
+     */
+    private boolean runBeforeCommitCallbacks() {
+      try {
+        return hooks.beforeCommit();
+      } catch (RuntimeException e) {
+        try {
+          rollback();
+        } catch (RuntimeException rollbackException) {
+          e.addSuppressed(rollbackException);
         }
+        throw e;
       }
     }
 
@@ -184,13 +342,68 @@ class JtaTransactionFacadeFactory implements TransactionFacadeFactory {
      */
     // @Override
     public void rollback() {
-      txn.rollback();
+      try {
+        try {
+          txn.rollback();
+        } finally {
+          restoreState();
+        }
+      } catch (RuntimeException e) {
+        throw hooks.rolledBackAfter(e);
+      }
+      hooks.rolledBack();
+    }
+
+    private void restoreState() {
+      if (previousOuter == null) {
+        outerTransactionFacade.remove();
+      } else {
+        outerTransactionFacade.set(previousOuter);
+      }
+      if (transactionTimeout != null) {
+        transactionTimeout.end();
+        transactionTimeout = null;
+      }
+      if (readOnlySession != null) {
+        readOnlySession.restore();
+        readOnlySession = null;
+      }
+    }
+
+    @Override
+    public void addPostCommitCallback(Runnable callback) {
+      Preconditions.checkState(txn.isActive(), "Cannot add a commit callback with no transaction active");
+      hooks.addPostCommit(callback);
+    }
+
+    @Override
+    public void addPostCommitCallback(Object key, Runnable callback) {
+      Preconditions.checkState(txn.isActive(), "Cannot add a commit callback with no transaction active");
+      hooks.addPostCommit(key, callback);
+    }
+
+    @Override
+    public <K> void addAggregatePostCommitCallback(K key, Consumer<Set<K>> callback) {
+      Preconditions.checkState(txn.isActive(), "Cannot add a commit callback with no transaction active");
+      hooks.addAggregatePostCommit(key, callback);
     }
 
     @Override
-    public synchronized void addPostCommitCallback(Runnable callback) {
+    public void addBeforeCommitCallback(Runnable callback) {
       Preconditions.checkState(txn.isActive(), "Cannot add a commit callback with no transaction active");
-      postCommitCallbacks.add(callback);
+      hooks.addBeforeCommit(callback);
+    }
+
+    @Override
+    public void addAfterRollbackCallback(Runnable callback) {
+      Preconditions.checkState(txn.isActive(), "Cannot add a rollback callback with no transaction active");
+      hooks.addAfterRollback(callback);
+    }
+
+    @Override
+    public void addAfterCompletionCallback(TransactionHookManager.CompletionCallback callback) {
+      Preconditions.checkState(txn.isActive(), "Cannot add a completion callback with no transaction active");
+      hooks.addAfterCompletion(callback);
     }
   }
 
@@ -0,0 +1,144 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Histogram of non negative values with a relative precision of about 3 percent, similar to an HdrHistogram with
+ * fixed range.
+ * <p>
+ * Values are counted in buckets. Values below 32 have a bucket of their own. Every further power of two is split into
+ * 32 buckets of equal width. This covers the whole range of {@code long} with less than 2000 buckets. Recording a
+ * value is lock free and does not allocate.
+ */
+public final class LatencyHistogram {
+
+  /**
+   * Number of bits of a value which are kept exactly.
+   */
+  private static final int SUB_BUCKET_BITS = 5;
+
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+  private final AtomicLong totalCount = new AtomicLong();
+
+  private final AtomicLong sum = new AtomicLong();
+
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a value. Negative values are recorded as {@code 0}.
+   *
+   * @param value the value to record.
+   */
+  public void record(long value) {
+    final long v = Math.max(0, value);
+    counts.incrementAndGet(bucketOf(v));
+    totalCount.incrementAndGet();
+    sum.addAndGet(v);
+    long currentMax = max.get();
+    while (v > currentMax && !max.compareAndSet(currentMax, v)) {
+      currentMax = max.get();
+    }
+  }
+
+  /**
+   * @return the number of recorded values.
+   */
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  /**
+   * @return the largest recorded value. {@code 0} if no value has been recorded.
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @return the arithmetic mean of the recorded values. {@code 0} if no value has been recorded.
+   */
+  public double getMean() {
+    final long count = totalCount.get();
+    return count == 0 ? 0 : (double) sum.get() / count;
+  }
+
+  /**
+   * Returns the value below or at which the given percentage of the recorded values lies. The result is the middle of
+   * the bucket containing the value. For the highest bucket it is {@link #getMax()}.
+   *
+   * @param percentile the percentile between {@code 0} and {@code 100}.
+   * @return the value at the percentile. {@code 0} if no value has been recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    checkArgument(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100!");
+    final long count = totalCount.get();
+    if (count == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= count) {
+        return max.get();
+      }
+      if (seen >= rank) {
+        return Math.min(max.get(), middleOf(i));
+      }
+    }
+    return max.get();
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int shift = exponent - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+  }
+
+  static long lowerBoundOf(int bucket) {
+    if (bucket < SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+    final int shift = bucket / SUB_BUCKET_COUNT - 1;
+    return (long) (SUB_BUCKET_COUNT + bucket % SUB_BUCKET_COUNT) << shift;
+  }
+
+  private static long middleOf(int bucket) {
+    if (bucket < 2 * SUB_BUCKET_COUNT) {
+      return lowerBoundOf(bucket);
+    }
+    final int shift = bucket / SUB_BUCKET_COUNT - 1;
+    return lowerBoundOf(bucket) + ((1L << shift) >>> 1);
+  }
+
+}
@@ -0,0 +1,89 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * TransactionFacade for methods running without a transaction.
+ * Starting, committing and rolling back have no effect.
+ */
+final class NoTransactionFacade implements TransactionFacade {
+
+  static final NoTransactionFacade INSTANCE = new NoTransactionFacade();
+
+  private NoTransactionFacade() {
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public void begin() {
+    // Do nothing
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public void commit() {
+    // Do nothing
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public void rollback() {
+    // Do nothing
+  }
+
+  @Override
+  public void addPostCommitCallback(Runnable callback) {
+    throw new IllegalStateException("Cannot add a callback outside the context of a transaction");
+  }
+
+  @Override
+  public void addPostCommitCallback(Object key, Runnable callback) {
+    throw new IllegalStateException("Cannot add a callback outside the context of a transaction");
+  }
+
+  @Override
+  public <K> void addAggregatePostCommitCallback(K key, Consumer<Set<K>> callback) {
+    throw new IllegalStateException("Cannot add a callback outside the context of a transaction");
+  }
+
+  @Override
+  public void addBeforeCommitCallback(Runnable callback) {
+    throw new IllegalStateException("Cannot add a callback outside the context of a transaction");
+  }
+
+  @Override
+  public void addAfterRollbackCallback(Runnable callback) {
+    throw new IllegalStateException("Cannot add a callback outside the context of a transaction");
+  }
+
+  @Override
+  public void addAfterCompletionCallback(TransactionHookManager.CompletionCallback callback) {
+    throw new IllegalStateException("Cannot add a callback outside the context of a transaction");
+  }
+}
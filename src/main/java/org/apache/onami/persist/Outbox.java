@@ -0,0 +1,59 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Records events in the same transaction as the changes they describe and relays them to an {@link OutboxSink}
+ * after the commit.
+ * <p>
+ * Recorded events are stored as {@link OutboxEvent} entities in the table {@code ONAMI_OUTBOX} of the persistence
+ * unit. An event therefore exists if and only if the transaction which recorded it has been committed. A background
+ * relay reads the table in batches, passes every batch to the sink and deletes it in one transaction. The relay runs
+ * while the {@link PersistenceService} of the persistence unit is running. It is woken up by every commit which
+ * recorded events and polls the table in between, so events left behind by a crashed process are delivered after a
+ * restart.
+ * <p>
+ * The delivery is at least once: a batch is published again if it could not be deleted after the sink accepted it.
+ * The {@link OutboxEvent#getId() id} allows the receiver to detect duplicates.
+ * <p>
+ * The outbox is enabled with {@link UnconfiguredPersistenceUnitBuilder#useOutbox(OutboxOptions)}. The entity class
+ * {@link OutboxEvent} must be listed in the persistence.xml of the persistence unit.
+ * <p>
+ * Usage example:
+ * <pre>
+ *  &#64;Transactional
+ *  public void placeOrder(Order order) {
+ *    emProvider.get().persist(order);
+ *    outbox.record("order-placed", toJson(order));
+ *  }
+ * </pre>
+ */
+public interface Outbox {
+
+  /**
+   * Records an event in the current transaction. If the transaction is rolled back the event is discarded.
+   *
+   * @param topic   the topic of the event. Must not be {@code null}.
+   * @param payload the payload of the event. Must not be {@code null}.
+   * @throws RuntimeException if no transaction is active.
+   */
+  void record(String topic, String payload);
+
+}
@@ -0,0 +1,112 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * An event recorded with the {@link Outbox}.
+ * <p>
+ * The ids are taken from a sequence with an allocation size of 50 so the events of a transaction are inserted in
+ * JDBC batches.
+ */
+@Entity
+@Table(name = "ONAMI_OUTBOX")
+public class OutboxEvent implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "onamiOutboxSequence")
+  @SequenceGenerator(name = "onamiOutboxSequence", sequenceName = "ONAMI_OUTBOX_SEQ", allocationSize = 50)
+  private Long id;
+
+  @Column(name = "TOPIC", nullable = false)
+  private String topic;
+
+  @Lob
+  @Column(name = "PAYLOAD", nullable = false)
+  private String payload;
+
+  @Column(name = "RECORDED_AT", nullable = false)
+  private long recordedAt;
+
+  /**
+   * Constructor for the persistence provider.
+   */
+  protected OutboxEvent() {
+    // used by the persistence provider
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param topic      the topic of the event.
+   * @param payload    the payload of the event.
+   * @param recordedAt the time of recording in milliseconds since the epoch.
+   */
+  OutboxEvent(String topic, String payload, long recordedAt) {
+    this.topic = topic;
+    this.payload = payload;
+    this.recordedAt = recordedAt;
+  }
+
+  /**
+   * @return the id of the event. Unique within the outbox table.
+   */
+  public Long getId() {
+    return id;
+  }
+
+  /**
+   * @return the topic of the event.
+   */
+  public String getTopic() {
+    return topic;
+  }
+
+  /**
+   * @return the payload of the event.
+   */
+  public String getPayload() {
+    return payload;
+  }
+
+  /**
+   * @return the time of recording in milliseconds since the epoch.
+   */
+  public long getRecordedAt() {
+    return recordedAt;
+  }
+
+  @Override
+  public String toString() {
+    return "OutboxEvent{id=" + id + ", topic=" + topic + ", recordedAt=" + recordedAt + "}";
+  }
+
+}
@@ -0,0 +1,88 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jakarta.inject.Inject;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Implementation of {@link Outbox}.
+ * <p>
+ * The events are persisted with the entity manager of the current unit of work right away. They are inserted when
+ * the transaction is flushed together with the other changes. A single post commit callback per transaction wakes up
+ * the relay, no matter how many events have been recorded.
+ */
+class OutboxImpl implements Outbox {
+
+  /**
+   * The relay delivering the events.
+   */
+  private final OutboxRelay relay;
+
+  /**
+   * Post commit callback waking up the relay.
+   */
+  private final Runnable wakeUpRelay;
+
+  /**
+   * Provider for the entity manager of the current unit of work.
+   */
+  private EntityManagerProvider emProvider;
+
+  /**
+   * Hook manager of the current transaction.
+   */
+  private TransactionHookManager hookManager;
+
+  /**
+   * Constructor.
+   *
+   * @param relay the relay delivering the events.
+   */
+  OutboxImpl(OutboxRelay relay) {
+    this.relay = checkNotNull(relay, "relay is mandatory!");
+    this.wakeUpRelay = relay::wakeUp;
+  }
+
+  /**
+   * @param emProvider  provider for the entity manager of the current unit of work.
+   * @param hookManager hook manager of the current transaction.
+   */
+  @Inject
+  void init(EntityManagerProvider emProvider, TransactionHookManager hookManager) {
+    this.emProvider = checkNotNull(emProvider, "emProvider is mandatory!");
+    this.hookManager = checkNotNull(hookManager, "hookManager is mandatory!");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public void record(String topic, String payload) {
+    checkNotNull(topic, "topic is mandatory!");
+    checkNotNull(payload, "payload is mandatory!");
+    // fails if no transaction is active
+    hookManager.addPostCommitCallback(relay, wakeUpRelay);
+    emProvider.get()
+        .persist(new OutboxEvent(topic, payload, System.currentTimeMillis()));
+  }
+
+}
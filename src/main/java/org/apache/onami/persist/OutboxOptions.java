@@ -0,0 +1,109 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Options for the {@link Outbox} of a persistence unit. Instances are immutable.
+ * <p>
+ * Usage example:
+ * <pre>
+ *  bindApplicationManagedPersistenceUnit("puName")
+ *      .useOutbox(OutboxOptions.to(kafkaSink)
+ *          .withBatchSize(1000)
+ *          .withPollInterval(5, TimeUnit.SECONDS));
+ * </pre>
+ */
+public final class OutboxOptions {
+
+  /**
+   * Default maximum number of events passed to the sink at once.
+   */
+  static final int DEFAULT_BATCH_SIZE = 500;
+
+  /**
+   * Default time between two polls of the outbox table.
+   */
+  static final long DEFAULT_POLL_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final OutboxSink sink;
+
+  private final int batchSize;
+
+  private final long pollIntervalNanos;
+
+  private OutboxOptions(OutboxSink sink, int batchSize, long pollIntervalNanos) {
+    this.sink = sink;
+    this.batchSize = batchSize;
+    this.pollIntervalNanos = pollIntervalNanos;
+  }
+
+  /**
+   * Creates options relaying the events to the given sink. By default up to 500 events are relayed at once and the
+   * table is polled every second.
+   *
+   * @param sink the receiver of the events. Must not be {@code null}.
+   * @return the options.
+   */
+  public static OutboxOptions to(OutboxSink sink) {
+    checkNotNull(sink, "sink is mandatory!");
+    return new OutboxOptions(sink, DEFAULT_BATCH_SIZE, DEFAULT_POLL_INTERVAL_NANOS);
+  }
+
+  /**
+   * @param events the maximum number of events passed to the sink at once. Must be positive.
+   * @return new options with the given batch size.
+   */
+  public OutboxOptions withBatchSize(int events) {
+    checkArgument(events > 0, "events must be positive!");
+    return new OutboxOptions(sink, events, pollIntervalNanos);
+  }
+
+  /**
+   * Defines the time between two polls of the outbox table. This is also the delay before a batch which the sink
+   * rejected is published again.
+   *
+   * @param duration the interval. Must be positive.
+   * @param unit     the unit of the interval. Must not be {@code null}.
+   * @return new options with the given interval.
+   */
+  public OutboxOptions withPollInterval(long duration, TimeUnit unit) {
+    checkArgument(duration > 0, "duration must be positive!");
+    checkNotNull(unit, "unit is mandatory!");
+    return new OutboxOptions(sink, batchSize, unit.toNanos(duration));
+  }
+
+  OutboxSink getSink() {
+    return sink;
+  }
+
+  int getBatchSize() {
+    return batchSize;
+  }
+
+  long getPollIntervalNanos() {
+    return pollIntervalNanos;
+  }
+
+}
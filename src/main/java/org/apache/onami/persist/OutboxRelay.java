@@ -0,0 +1,234 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+import jakarta.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Relays the events of the {@link Outbox} to the {@link OutboxSink}.
+ * <p>
+ * The relay takes the place of the {@link PersistenceService} of the persistence unit and starts and stops a daemon
+ * thread together with it. The thread repeatedly reads a batch of events, publishes it and deletes it in a
+ * transaction of its own until a batch is not full. Then it waits until it is woken up by a commit or the poll
+ * interval has passed. After a failure it waits for the full poll interval.
+ * <p>
+ * The transactions are started over the {@link TxnParticipant} of the persistence unit, exactly like the
+ * {@link TxnInterceptor} does for an annotated method.
+ */
+class OutboxRelay implements PersistenceService {
+
+  private static final Logger LOG = Logger.getLogger(OutboxRelay.class.getName());
+
+  /**
+   * Attribute of the transaction relaying a batch.
+   */
+  private static final TransactionAttribute RELAY_TRANSACTION = new TransactionAttribute(Propagation.REQUIRES_NEW);
+
+  /**
+   * The persistence service which is started and stopped together with the relay.
+   */
+  private final Provider<? extends PersistenceService> persistenceService;
+
+  /**
+   * The persistence unit holding the outbox table.
+   */
+  private final TxnParticipant participant;
+
+  private final OutboxOptions options;
+
+  /**
+   * Set by a commit which recorded events. Cleared by the relay thread when it wakes up.
+   */
+  private final AtomicBoolean wakeUpRequested = new AtomicBoolean();
+
+  /**
+   * Provider for the entity manager of the current unit of work.
+   */
+  private EntityManagerProvider emProvider;
+
+  /**
+   * The relay thread. {@code null} if the relay is not running. A thread which is no longer referenced terminates.
+   */
+  private volatile Thread worker;
+
+  /**
+   * Constructor.
+   *
+   * @param persistenceService the persistence service to start and stop together with the relay.
+   * @param participant        the persistence unit holding the outbox table.
+   * @param options            the options of the outbox.
+   */
+  OutboxRelay(Provider<? extends PersistenceService> persistenceService, TxnParticipant participant,
+      OutboxOptions options) {
+    this.persistenceService = checkNotNull(persistenceService, "persistenceService is mandatory!");
+    this.participant = checkNotNull(participant, "participant is mandatory!");
+    this.options = checkNotNull(options, "options is mandatory!");
+  }
+
+  /**
+   * @param emProvider provider for the entity manager of the current unit of work.
+   */
+  @Inject
+  void init(EntityManagerProvider emProvider) {
+    this.emProvider = checkNotNull(emProvider, "emProvider is mandatory!");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public synchronized void start() {
+    persistenceService.get()
+        .start();
+    final Thread thread = new Thread(this::run, "onami-persist-outbox-relay");
+    thread.setDaemon(true);
+    worker = thread;
+    thread.start();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public boolean isRunning() {
+    return persistenceService.get()
+        .isRunning();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Waits for the relay thread to finish the batch it is currently relaying.
+   */
+  // @Override
+  public synchronized void stop() {
+    final Thread thread = worker;
+    worker = null;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      Uninterruptibles.joinUninterruptibly(thread);
+    }
+    persistenceService.get()
+        .stop();
+  }
+
+  /**
+   * Wakes up the relay thread. Called after a transaction which recorded events has been committed.
+   */
+  void wakeUp() {
+    wakeUpRequested.set(true);
+    LockSupport.unpark(worker);
+  }
+
+  private void run() {
+    final Thread self = Thread.currentThread();
+    while (worker == self) {
+      boolean failed = false;
+      try {
+        while (worker == self && relayBatch() == options.getBatchSize()) {
+          // a full batch: more events may be waiting
+        }
+      } catch (RuntimeException e) {
+        failed = true;
+        LOG.log(Level.WARNING, "Relaying the outbox failed. Retrying in "
+            + TimeUnit.NANOSECONDS.toMillis(options.getPollIntervalNanos()) + " ms", e);
+      }
+      waitForWork(self, failed);
+    }
+  }
+
+  /**
+   * Waits until the poll interval has passed or the relay is stopped. Unless backing off after a failure a wake up
+   * request ends the wait early.
+   *
+   * @param self    the relay thread.
+   * @param backOff {@code true} to ignore wake up requests.
+   */
+  private void waitForWork(Thread self, boolean backOff) {
+    final long deadline = System.nanoTime() + options.getPollIntervalNanos();
+    long remaining = options.getPollIntervalNanos();
+    while (worker == self && remaining > 0 && (backOff || !wakeUpRequested.getAndSet(false))) {
+      LockSupport.parkNanos(this, remaining);
+      remaining = deadline - System.nanoTime();
+    }
+  }
+
+  /**
+   * Publishes and deletes the oldest events in a transaction of its own.
+   *
+   * @return the number of relayed events.
+   */
+  private int relayBatch() {
+    final TxnParticipant.Frame frame;
+    try {
+      frame = participant.begin(RELAY_TRANSACTION);
+    } catch (Throwable beginExc) {
+      throw propagate(beginExc);
+    }
+    int relayed = 0;
+    Throwable exc = null;
+    try {
+      final EntityManager em = emProvider.get();
+      final List<OutboxEvent> events = em.createQuery("SELECT e FROM OutboxEvent e ORDER BY e.id", OutboxEvent.class)
+          .setMaxResults(options.getBatchSize())
+          .getResultList();
+      if (!events.isEmpty()) {
+        options.getSink()
+            .publish(Collections.unmodifiableList(events));
+        final List<Long> ids = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+          ids.add(event.getId());
+        }
+        em.createQuery("DELETE FROM OutboxEvent e WHERE e.id IN :ids")
+            .setParameter("ids", ids)
+            .executeUpdate();
+        relayed = events.size();
+      }
+    } catch (Throwable relayExc) {
+      exc = relayExc;
+    }
+    exc = participant.complete(frame, RELAY_TRANSACTION, exc);
+    if (exc != null) {
+      throw propagate(exc);
+    }
+    return relayed;
+  }
+
+  private static RuntimeException propagate(Throwable exc) {
+    Throwables.throwIfUnchecked(exc);
+    throw new RuntimeException(exc);
+  }
+
+}
@@ -0,0 +1,40 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.List;
+
+/**
+ * Receiver of the events relayed from the {@link Outbox}.
+ */
+@FunctionalInterface
+public interface OutboxSink {
+
+  /**
+   * Publishes a batch of events. Called by the relay thread of the outbox within the transaction which deletes the
+   * events afterwards. If this method throws an exception none of the events is deleted and the whole batch is
+   * published again after the poll interval.
+   *
+   * @param events the events in the order of their ids. Never empty. The list must not be kept after the call.
+   * @throws Exception if the events could not be published.
+   */
+  void publish(List<OutboxEvent> events) throws Exception;
+
+}
@@ -0,0 +1,69 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jakarta.persistence.EntityManager;
+import java.util.List;
+
+/**
+ * Runs independent reads of a persistence unit in parallel. The duration of a batch of reads is close to the
+ * duration of the slowest one instead of the sum of all of them.
+ * <p>
+ * Every read gets an entity manager of its own which is closed when the read has completed. The reads do not take
+ * part in the unit of work or the transaction of the calling thread. They neither see changes which the caller has
+ * not committed yet nor write anything to the database. The entity managers are in read only mode.
+ * <p>
+ * Usage example:
+ * <pre>
+ *  List&lt;Long&gt; counts = parallelReads.readAll(Arrays.asList(
+ *      em -&gt; em.createQuery("select count(o) from Order o", Long.class).getSingleResult(),
+ *      em -&gt; em.createQuery("select count(c) from Customer c", Long.class).getSingleResult()));
+ * </pre>
+ */
+public interface ParallelReads {
+
+  /**
+   * Runs the given reads in parallel and waits until all of them have completed. The number of concurrent reads is
+   * limited by {@link UnconfiguredPersistenceUnitBuilder#useParallelReadLimit(int)}.
+   *
+   * @param reads the reads to run. Must not be {@code null}.
+   * @param <T>   the result type of the reads.
+   * @return the results in the order of the reads.
+   * @throws RuntimeException if a read failed. If more than one read failed or the failure is a checked exception
+   *                          an {@link AggregatedException} holding all failures is thrown.
+   */
+  <T> List<T> readAll(List<? extends Read<? extends T>> reads);
+
+  /**
+   * A read to run with an entity manager of its own.
+   *
+   * @param <T> the result type of the read.
+   */
+  @FunctionalInterface
+  interface Read<T> {
+
+    /**
+     * @param em the entity manager of the read. Must not be used after the method returned.
+     * @return the result of the read.
+     * @throws Exception if the read failed.
+     */
+    T read(EntityManager em) throws Exception;
+  }
+}
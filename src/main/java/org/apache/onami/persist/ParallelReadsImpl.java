@@ -0,0 +1,172 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.Nullable;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Implementation of {@link ParallelReads}.
+ * <p>
+ * The reads run on a pool of daemon threads which is bounded by the read limit. Idle threads terminate after a while
+ * so that the pool needs no lifecycle of its own.
+ */
+class ParallelReadsImpl implements ParallelReads {
+
+  /**
+   * Default for the maximum number of concurrent reads.
+   */
+  static final int DEFAULT_LIMIT = 4;
+
+  /**
+   * Time after which an idle thread of the pool terminates.
+   */
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  /**
+   * The pool running the reads.
+   */
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * Provider for {@link EntityManagerFactory}.
+   */
+  private EntityManagerFactoryProvider emfProvider;
+
+  /**
+   * Additional properties to be set on every {@link EntityManager} which is created.
+   */
+  private Properties properties;
+
+  /**
+   * Constructor.
+   *
+   * @param limit the maximum number of reads running at the same time. Must be positive.
+   */
+  ParallelReadsImpl(int limit) {
+    checkArgument(limit > 0, "limit must be positive!");
+    this.executor = new ThreadPoolExecutor(limit, limit, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setNameFormat("onami-persist-read-%d")
+        .setDaemon(true)
+        .build());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @param emfProvider the provider for {@link EntityManagerFactory}. Must not be {@code null}.
+   * @param properties  additional properties to be set on every {@link EntityManager} which is created.
+   */
+  @Inject
+  void init(EntityManagerFactoryProvider emfProvider, @Nullable @ForContainerManaged Properties properties) {
+    this.emfProvider = checkNotNull(emfProvider, "emfProvider is mandatory!");
+    this.properties = properties;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public <T> List<T> readAll(List<? extends Read<? extends T>> reads) {
+    checkNotNull(reads, "reads is mandatory!");
+    if (reads.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<Future<? extends T>> futures = new ArrayList<>(reads.size());
+    try {
+      for (Read<? extends T> read : reads) {
+        checkNotNull(read, "reads must not contain null!");
+        futures.add(executor.submit(() -> runWithOwnEntityManager(read)));
+      }
+    } catch (RuntimeException e) {
+      cancelAll(futures);
+      throw e;
+    }
+
+    final AggregatedException.Builder exceptionBuilder = new AggregatedException.Builder();
+    final List<T> results = new ArrayList<>(reads.size());
+    for (Future<? extends T> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (ExecutionException e) {
+        exceptionBuilder.add(e.getCause());
+      } catch (InterruptedException e) {
+        cancelAll(futures);
+        Thread.currentThread()
+            .interrupt();
+        exceptionBuilder.add(e);
+        break;
+      }
+    }
+    exceptionBuilder.throwRuntimeExceptionIfHasCauses("multiple exceptions occurred while reading in parallel");
+    return results;
+  }
+
+  private static void cancelAll(List<? extends Future<?>> futures) {
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * Runs a read with an entity manager of its own in read only mode.
+   *
+   * @param read the read to run.
+   * @param <T>  the result type of the read.
+   * @return the result of the read.
+   * @throws Exception if the read failed.
+   */
+  private <T> T runWithOwnEntityManager(Read<T> read) throws Exception {
+    final EntityManager em = createEntityManager();
+    try {
+      ReadOnlySession.applyTo(em);
+      return read.read(em);
+    } finally {
+      em.close();
+    }
+  }
+
+  /**
+   * @return a new entity manager instance.
+   */
+  private EntityManager createEntityManager() {
+    final EntityManagerFactory emf = emfProvider.get();
+    if (null == properties) {
+      return emf.createEntityManager();
+    } else {
+      return emf.createEntityManager(properties);
+    }
+  }
+}
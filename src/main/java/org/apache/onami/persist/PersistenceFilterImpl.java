@@ -44,16 +44,24 @@ class PersistenceFilterImpl implements PersistenceFilter {
    */
   private final AllUnitsOfWork allUnitsOfWork;
 
+  /**
+   * Storage of the per thread state of the units of work.
+   */
+  private final ContextStorage contextStorage;
+
   /**
    * Constructor.
    *
    * @param allPersistenceServices container of all known persistence services.
    * @param allUnitsOfWork         container of all known units of work.
+   * @param contextStorage         storage of the per thread state of the units of work.
    */
   @Inject
-  PersistenceFilterImpl(AllPersistenceServices allPersistenceServices, AllUnitsOfWork allUnitsOfWork) {
+  PersistenceFilterImpl(AllPersistenceServices allPersistenceServices, AllUnitsOfWork allUnitsOfWork,
+      ContextStorage contextStorage) {
     this.allPersistenceServices = checkNotNull(allPersistenceServices, "allPersistenceServices is mandatory!");
     this.allUnitsOfWork = checkNotNull(allUnitsOfWork, "allUnitsOfWork is mandatory!");
+    this.contextStorage = checkNotNull(contextStorage, "contextStorage is mandatory!");
   }
 
   /**
@@ -62,11 +70,13 @@ class PersistenceFilterImpl implements PersistenceFilter {
   // @Override
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
       throws IOException, ServletException {
-    try {
-      allUnitsOfWork.beginAllInactiveUnitsOfWork();
-      chain.doFilter(request, response);
-    } finally {
-      allUnitsOfWork.endAllUnitsOfWork();
+    try (ContextStorage.Scope scope = contextStorage.openScope()) {
+      try {
+        allUnitsOfWork.beginAllInactiveUnitsOfWork();
+        chain.doFilter(request, response);
+      } finally {
+        allUnitsOfWork.endAllUnitsOfWork();
+      }
     }
   }
 
@@ -0,0 +1,116 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+/**
+ * Receives measurements of the transactions and units of work of all persistence units.
+ * <p>
+ * A persistence unit is identified by its annotation. The unannotated persistence unit is reported with
+ * {@code null}. Durations are measured in nanoseconds.
+ * <p>
+ * By default the measurements are discarded. To record them bind an implementation using guice's
+ * {@link com.google.inject.multibindings.OptionalBinder}:
+ * <pre>
+ * OptionalBinder.newOptionalBinder(binder(), PersistenceMetrics.class).setBinding().to(MyMetrics.class);
+ * </pre>
+ * The methods are called on the thread running the transaction and must therefore be cheap and thread safe.
+ * {@link InMemoryPersistenceMetrics} is a ready to use implementation keeping histograms in memory.
+ */
+public interface PersistenceMetrics {
+
+  /**
+   * Implementation discarding all measurements.
+   */
+  PersistenceMetrics NOOP = new PersistenceMetrics() {
+  };
+
+  /**
+   * Called before a failed invocation is attempted again.
+   *
+   * @param method       the invoked method.
+   * @param attempt      the number of the upcoming attempt. The first retry is attempt {@code 2}.
+   * @param cause        the exception which caused the retry.
+   * @param backoffNanos the time waited before the retry in nanoseconds.
+   */
+  default void transactionRetried(Method method, int attempt, Throwable cause, long backoffNanos) {
+    // discard
+  }
+
+  /**
+   * Called after a transaction has been begun or a running transaction has been joined. Methods running without a
+   * transaction are not reported.
+   *
+   * @param puAnnotation the annotation of the persistence unit. May be {@code null}.
+   * @param depth        the number of transactions of the unit of work taking part in the same transaction including
+   *                     this one. {@code 1} for a transaction which was started, greater values for nested
+   *                     transactions joining a running one.
+   * @param beginNanos   the time needed for beginning the transaction.
+   */
+  default void transactionBegun(Class<? extends Annotation> puAnnotation, int depth, long beginNanos) {
+    // discard
+  }
+
+  /**
+   * Called after a transaction has been committed. A nested transaction only completes its part of the outer one. A
+   * transaction whose post commit callbacks failed has still been committed.
+   *
+   * @param puAnnotation   the annotation of the persistence unit. May be {@code null}.
+   * @param depth          the depth of the transaction as reported to
+   *                       {@link #transactionBegun(Class, int, long)}.
+   * @param commitNanos    the time needed for the commit.
+   * @param durationNanos  the time from the begin of the transaction until the end of the commit.
+   */
+  default void transactionCommitted(Class<? extends Annotation> puAnnotation, int depth, long commitNanos,
+      long durationNanos) {
+    // discard
+  }
+
+  /**
+   * Called after a transaction has been rolled back or its commit has failed. A nested transaction only marks the
+   * outer one for rollback.
+   *
+   * @param puAnnotation   the annotation of the persistence unit. May be {@code null}.
+   * @param depth          the depth of the transaction as reported to
+   *                       {@link #transactionBegun(Class, int, long)}.
+   * @param rollbackNanos  the time needed for the rollback or the failed commit.
+   * @param durationNanos  the time from the begin of the transaction until the end of the rollback.
+   */
+  default void transactionRolledBack(Class<? extends Annotation> puAnnotation, int depth, long rollbackNanos,
+      long durationNanos) {
+    // discard
+  }
+
+  /**
+   * Called after a unit of work has ended.
+   *
+   * @param puAnnotation          the annotation of the persistence unit. May be {@code null}.
+   * @param durationNanos         the time from the begin until the end of the unit of work.
+   * @param entityManagerLifetime the time from the creation of the entity manager until the end of the unit of work.
+   *                              {@code -1} if the unit of work never used its entity manager.
+   */
+  default void unitOfWorkEnded(Class<? extends Annotation> puAnnotation, long durationNanos,
+      long entityManagerLifetime) {
+    // discard
+  }
+
+}
@@ -23,14 +23,15 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Key;
 import com.google.inject.Scopes;
 import com.google.inject.TypeLiteral;
+import com.google.inject.multibindings.OptionalBinder;
 
 import jakarta.inject.Provider;
 import jakarta.persistence.EntityManagerFactory;
+import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.inject.matcher.Matchers.annotatedWith;
 import static com.google.inject.matcher.Matchers.any;
 
 /**
@@ -43,6 +44,16 @@ public abstract class PersistenceModule extends AbstractModule {
    */
   private List<PersistenceUnitModuleConfiguration> configurations;
 
+  /**
+   * Whether to use the index written by the {@link org.apache.onami.persist.processor.TransactionalIndexProcessor}.
+   */
+  private boolean useTransactionalIndex;
+
+  /**
+   * Whether to keep the per thread state in a {@link ScopedContextStorage}.
+   */
+  private boolean useScopedContextStorage;
+
   /**
    * {@inheritDoc}
    */
@@ -56,6 +67,8 @@ public abstract class PersistenceModule extends AbstractModule {
       configurePersistenceUnits();
     } finally {
       configurations = null;
+      useTransactionalIndex = false;
+      useScopedContextStorage = false;
     }
   }
 
@@ -65,6 +78,11 @@ public abstract class PersistenceModule extends AbstractModule {
   private void configurePersistenceUnits() {
     configurePersistence();
 
+    final ContextStorage contextStorage = useScopedContextStorage ?
+        new ScopedContextStorage() :
+        new ThreadLocalContextStorage();
+    bind(ContextStorage.class).toInstance(contextStorage);
+
     bind(PersistenceFilter.class).to(PersistenceFilterImpl.class)
         .in(Scopes.SINGLETON);
 
@@ -73,13 +91,32 @@ public abstract class PersistenceModule extends AbstractModule {
     bind(AllPersistenceServices.class).toInstance(allPersistenceUnits);
     bind(AllUnitsOfWork.class).toInstance(allPersistenceUnits);
 
+    final List<TxnParticipant> txnParticipants = new ArrayList<>();
+    final List<Class<? extends Annotation>> puAnnotations = new ArrayList<>();
     for (PersistenceUnitModuleConfiguration config : configurations) {
-      final TxnInterceptor txnInterceptor = new TxnInterceptor();
+      final TxnParticipant txnParticipant = new TxnParticipant();
 
-      install(new PersistenceUnitModule(config, txnInterceptor, allPersistenceUnits));
+      install(new PersistenceUnitModule(config, txnParticipant, allPersistenceUnits));
+
+      txnParticipants.add(txnParticipant);
+      puAnnotations.add(config.getAnnotation());
+    }
+    bind(UnitOfWorkExecutors.class).toInstance(new UnitOfWorkExecutorsImpl(txnParticipants, contextStorage));
 
-      bindInterceptor(any(), annotatedWith(Transactional.class), txnInterceptor);
-      bindInterceptor(annotatedWith(Transactional.class), any(), txnInterceptor);
+    if (!txnParticipants.isEmpty()) {
+      final TransactionalAnnotationSource annotationSource = useTransactionalIndex ?
+          TransactionalIndex.load(getClass().getClassLoader()) :
+          TransactionalAnnotationSource.REFLECTION;
+      final TxnInterceptor txnInterceptor =
+          new TxnInterceptor(txnParticipants, new TransactionalAnnotationReader(annotationSource), contextStorage);
+      OptionalBinder.newOptionalBinder(binder(), PersistenceMetrics.class)
+          .setDefault()
+          .toInstance(PersistenceMetrics.NOOP);
+      requestInjection(txnInterceptor);
+      final TransactionalMatchers matchers = new TransactionalMatchers(puAnnotations, annotationSource);
+      bindInterceptor(any(), matchers.annotatedMethodsWithParticipatingUnits(), txnInterceptor);
+      bindInterceptor(matchers.annotatedClassesWithParticipatingUnits(), matchers.unannotatedMethods(),
+          txnInterceptor);
     }
   }
 
@@ -88,6 +125,27 @@ public abstract class PersistenceModule extends AbstractModule {
    */
   protected abstract void configurePersistence();
 
+  /**
+   * Uses the index written at compile time by the
+   * {@link org.apache.onami.persist.processor.TransactionalIndexProcessor} for finding the
+   * {@link Transactional @Transactional} annotations instead of reflecting on every class and method.
+   * Classes which are not part of the index are still inspected by reflection.
+   */
+  protected void useTransactionalIndex() {
+    checkNotNull(configurations, "calling useTransactionalIndex outside of configurePersistence is not supported");
+    useTransactionalIndex = true;
+  }
+
+  /**
+   * Keeps the per thread state of all persistence units of this module in a single carrier which is bound to the
+   * thread only while a unit of work is running. Suited for applications running large numbers of (virtual) threads.
+   * By default every persistence unit keeps its state in thread locals of its own.
+   */
+  protected void useScopedContextStorage() {
+    checkNotNull(configurations, "calling useScopedContextStorage outside of configurePersistence is not supported");
+    useScopedContextStorage = true;
+  }
+
   /**
    * Binds an application managed persistence unit.
    *
@@ -43,9 +43,9 @@ class PersistenceUnitModule extends PrivateModule {
   private final PersistenceUnitModuleConfiguration config;
 
   /**
-   * Transaction interceptor for this persistence unit.
+   * Participant in the transactions of the transaction interceptor for this persistence unit.
    */
-  private final TxnInterceptor transactionInterceptor;
+  private final TxnParticipant txnParticipant;
 
   /**
    * Container for adding this persistence unit.
@@ -55,14 +55,14 @@ class PersistenceUnitModule extends PrivateModule {
   /**
    * Constructor.
    *
-   * @param configurator           the configuration holding all configs.
-   * @param transactionInterceptor interceptor for the transactional annotation.
-   * @param allPersistenceUnits    container holding all persistence units.
+   * @param configurator        the configuration holding all configs.
+   * @param txnParticipant      participant in the transactions of the transactional annotation.
+   * @param allPersistenceUnits container holding all persistence units.
    */
-  PersistenceUnitModule(PersistenceUnitModuleConfiguration configurator, TxnInterceptor transactionInterceptor,
+  PersistenceUnitModule(PersistenceUnitModuleConfiguration configurator, TxnParticipant txnParticipant,
       AllPersistenceUnits allPersistenceUnits) {
     this.config = checkNotNull(configurator, "config is mandatory!");
-    this.transactionInterceptor = checkNotNull(transactionInterceptor, "transactionInterceptor is mandatory!");
+    this.txnParticipant = checkNotNull(txnParticipant, "txnParticipant is mandatory!");
     this.allPersistenceUnits = checkNotNull(allPersistenceUnits, "allPersistenceUnits is mandatory!");
   }
 
@@ -72,6 +72,8 @@ class PersistenceUnitModule extends PrivateModule {
   @Override
   protected void configure() {
     bind(AnnotationHolder.class).toInstance(config.getAnnotationHolder());
+    bind(TransactionDefaults.class).toInstance(config.getTransactionDefaults());
+    bind(EntityManagerPool.class).toInstance(config.getEntityManagerPool());
 
     bindPersistenceServiceAndEntityManagerFactoryProviderAndProperties();
     bindTransactionFacadeFactory();
@@ -80,13 +82,14 @@ class PersistenceUnitModule extends PrivateModule {
     bind(UnitOfWork.class).to(EntityManagerProviderImpl.class);
     bind(TransactionStateObserver.class).to(EntityManagerProviderImpl.class);
     bind(TransactionHookManager.class).to(EntityManagerProviderImpl.class);
+    bind(ParallelReads.class).toInstance(new ParallelReadsImpl(config.getParallelReadLimit()));
+    bind(BatchWriter.class).toInstance(new BatchWriterImpl(txnParticipant));
+    bind(StreamingQueries.class).toInstance(new StreamingQueriesImpl());
 
     exposePersistenceServiceAndEntityManagerProviderAndUnitOfWork();
 
-    // request injection into transaction interceptor - this adds the required dependencies to the interceptor.
-    if (transactionInterceptor != null) {
-      requestInjection(transactionInterceptor);
-    }
+    // request injection into transaction participant - this adds the required dependencies to the participant.
+    requestInjection(txnParticipant);
 
     allPersistenceUnits.add(getPersistenceKey(), getUnitOfWorkKey());
   }
@@ -98,6 +101,10 @@ class PersistenceUnitModule extends PrivateModule {
    * <li>{@link EntityManagerProvider}</li>
    * <li>{@link UnitOfWork}</li>
    * <li>{@link TransactionHookManager}</li>
+   * <li>{@link ParallelReads}</li>
+   * <li>{@link BatchWriter}</li>
+   * <li>{@link StreamingQueries}</li>
+   * <li>{@link Outbox} if enabled</li>
    * </ul>
    */
   private void exposePersistenceServiceAndEntityManagerProviderAndUnitOfWork() {
@@ -106,11 +113,23 @@ class PersistenceUnitModule extends PrivateModule {
       bindAndExposedAnnotated(EntityManagerProvider.class);
       bindAndExposedAnnotated(UnitOfWork.class);
       bindAndExposedAnnotated(TransactionHookManager.class);
+      bindAndExposedAnnotated(ParallelReads.class);
+      bindAndExposedAnnotated(BatchWriter.class);
+      bindAndExposedAnnotated(StreamingQueries.class);
+      if (config.isOutboxEnabled()) {
+        bindAndExposedAnnotated(Outbox.class);
+      }
     } else {
       expose(PersistenceService.class);
       expose(EntityManagerProvider.class);
       expose(UnitOfWork.class);
       expose(TransactionHookManager.class);
+      expose(ParallelReads.class);
+      expose(BatchWriter.class);
+      expose(StreamingQueries.class);
+      if (config.isOutboxEnabled()) {
+        expose(Outbox.class);
+      }
     }
   }
 
@@ -151,8 +170,24 @@ class PersistenceUnitModule extends PrivateModule {
     }
   }
 
+  /**
+   * Binds the persistence service. If the outbox is enabled the service is taken over by the relay of the outbox
+   * which is started and stopped together with it.
+   *
+   * @param serviceClass the implementation of the persistence service.
+   */
+  private void bindPersistenceService(Class<? extends PersistenceService> serviceClass) {
+    if (config.isOutboxEnabled()) {
+      final OutboxRelay relay = new OutboxRelay(getProvider(serviceClass), txnParticipant, config.getOutboxOptions());
+      bind(PersistenceService.class).toInstance(relay);
+      bind(Outbox.class).toInstance(new OutboxImpl(relay));
+    } else {
+      bind(PersistenceService.class).to(serviceClass);
+    }
+  }
+
   private void bindApplicationManagedPersistenceServiceAndEntityManagerFactoryProviderAndProperties() {
-    bind(PersistenceService.class).to(ApplicationManagedEntityManagerFactoryProvider.class);
+    bindPersistenceService(ApplicationManagedEntityManagerFactoryProvider.class);
     bind(EntityManagerFactoryProvider.class).to(ApplicationManagedEntityManagerFactoryProvider.class);
     bind(Properties.class).annotatedWith(ForContainerManaged.class)
         .toProvider(Providers.of(new Properties()));
@@ -167,7 +202,7 @@ class PersistenceUnitModule extends PrivateModule {
   }
 
   private void bindContainerManagedPersistenceServiceAndEntityManagerFactoryProviderAndProperties() {
-    bind(PersistenceService.class).to(ContainerManagedEntityManagerFactoryProvider.class);
+    bindPersistenceService(ContainerManagedEntityManagerFactoryProvider.class);
     bind(EntityManagerFactoryProvider.class).to(ContainerManagedEntityManagerFactoryProvider.class);
     bind(Properties.class).annotatedWith(ForContainerManaged.class)
         .toProvider(Providers.of(config.getProperties()));
@@ -28,6 +28,9 @@ import javax.transaction.UserTransaction;
 import java.lang.annotation.Annotation;
 import java.util.Properties;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * Class holding the configuration for a single persistence unit.
  */
@@ -48,6 +51,18 @@ class PersistenceUnitModuleConfiguration
 
   private Properties properties;
 
+  private int defaultTransactionTimeout = 0;
+
+  private boolean lazyTransactionBegin = false;
+
+  private int parallelReadLimit = ParallelReadsImpl.DEFAULT_LIMIT;
+
+  private int maxIdleEntityManagers = 0;
+
+  private PostCommitDispatcher postCommitDispatcher = PostCommitDispatcher.INLINE;
+
+  private OutboxOptions outboxOptions;
+
   private String puName;
 
   private EntityManagerFactory emf;
@@ -127,6 +142,57 @@ class PersistenceUnitModuleConfiguration
     return this;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public UnconfiguredPersistenceUnitBuilder useDefaultTransactionTimeout(int timeoutSeconds) {
+    checkArgument(timeoutSeconds >= 0, "timeoutSeconds must not be negative!");
+    this.defaultTransactionTimeout = timeoutSeconds;
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public UnconfiguredPersistenceUnitBuilder useLazyTransactionBegin() {
+    this.lazyTransactionBegin = true;
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public UnconfiguredPersistenceUnitBuilder useParallelReadLimit(int maxParallelReads) {
+    checkArgument(maxParallelReads > 0, "maxParallelReads must be positive!");
+    this.parallelReadLimit = maxParallelReads;
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public UnconfiguredPersistenceUnitBuilder useEntityManagerRecycling(int maxIdleEntityManagers) {
+    checkArgument(maxIdleEntityManagers > 0, "maxIdleEntityManagers must be positive!");
+    this.maxIdleEntityManagers = maxIdleEntityManagers;
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public UnconfiguredPersistenceUnitBuilder useAsyncPostCommitCallbacks(PostCommitDispatch dispatch) {
+    this.postCommitDispatcher = PostCommitDispatcher.async(dispatch);
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public UnconfiguredPersistenceUnitBuilder useOutbox(OutboxOptions options) {
+    this.outboxOptions = checkNotNull(options, "options is mandatory!");
+    return this;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -183,6 +249,26 @@ class PersistenceUnitModuleConfiguration
     return utProviderKey;
   }
 
+  TransactionDefaults getTransactionDefaults() {
+    return new TransactionDefaults(defaultTransactionTimeout, lazyTransactionBegin, postCommitDispatcher);
+  }
+
+  int getParallelReadLimit() {
+    return parallelReadLimit;
+  }
+
+  boolean isOutboxEnabled() {
+    return outboxOptions != null;
+  }
+
+  OutboxOptions getOutboxOptions() {
+    return outboxOptions;
+  }
+
+  EntityManagerPool getEntityManagerPool() {
+    return maxIdleEntityManagers == 0 ? EntityManagerPool.DISABLED : new EntityManagerPool(maxIdleEntityManagers);
+  }
+
   Properties getProperties() {
     return properties;
   }
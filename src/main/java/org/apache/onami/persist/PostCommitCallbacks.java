@@ -0,0 +1,190 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The callbacks registered on an outer transaction which are run after it has been committed.
+ * <p>
+ * A {@link ReentrantLock} guards the list instead of the monitor of the facade. It is held only while the list is
+ * accessed, never during the commit or while the callbacks are run. A virtual thread committing a transaction
+ * therefore never blocks while holding a monitor and is not pinned to its carrier thread.
+ * <p>
+ * Keyed and aggregate callbacks take a single place in the list, namely the one of their first registration. The keys
+ * and aggregates are forgotten once the callbacks have been passed to the dispatcher.
+ */
+final class PostCommitCallbacks {
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final PostCommitDispatcher dispatcher;
+
+  private List<Runnable> callbacks = new ArrayList<>();
+
+  /**
+   * Keys of the keyed callbacks in {@link #callbacks}. Created on first use.
+   */
+  private Set<Object> keys;
+
+  /**
+   * Aggregate callbacks in {@link #callbacks} by the consumer they pass the keys to. Created on first use.
+   */
+  private Map<Consumer<?>, Aggregate<?>> aggregates;
+
+  /**
+   * Constructor.
+   *
+   * @param dispatcher runs the callbacks after the commit. Must not be {@code null}.
+   */
+  PostCommitCallbacks(PostCommitDispatcher dispatcher) {
+    this.dispatcher = checkNotNull(dispatcher, "dispatcher is mandatory!");
+  }
+
+  /**
+   * Adds a callback.
+   *
+   * @param callback the callback to add. Must not be {@code null}.
+   */
+  void add(Runnable callback) {
+    checkNotNull(callback, "callback is mandatory!");
+    lock.lock();
+    try {
+      callbacks.add(callback);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Adds a callback unless a callback with an equal key has been added before.
+   *
+   * @param key      the key of the callback. Must not be {@code null}.
+   * @param callback the callback to add. Must not be {@code null}.
+   */
+  void add(Object key, Runnable callback) {
+    checkNotNull(key, "key is mandatory!");
+    checkNotNull(callback, "callback is mandatory!");
+    lock.lock();
+    try {
+      if (keys == null) {
+        keys = new HashSet<>();
+      }
+      if (keys.add(key)) {
+        callbacks.add(callback);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Adds a key to the aggregate of the given callback. The first key adds the aggregate as a callback.
+   *
+   * @param key      the key to add. Must not be {@code null}.
+   * @param callback the callback receiving all keys at once. Must not be {@code null}.
+   * @param <K>      the type of the keys.
+   */
+  @SuppressWarnings("unchecked")
+  <K> void addAggregate(K key, Consumer<Set<K>> callback) {
+    checkNotNull(key, "key is mandatory!");
+    checkNotNull(callback, "callback is mandatory!");
+    lock.lock();
+    try {
+      if (aggregates == null) {
+        aggregates = new HashMap<>();
+      }
+      Aggregate<K> aggregate = (Aggregate<K>) aggregates.get(callback);
+      if (aggregate == null) {
+        aggregate = new Aggregate<>(callback);
+        aggregates.put(callback, aggregate);
+        callbacks.add(aggregate);
+      }
+      aggregate.keys.add(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Passes all callbacks added so far to the dispatcher and removes them. A callback throwing an exception does not
+   * prevent the others from being run.
+   *
+   * @throws RuntimeException if the callbacks are run inline: the exception of the first failed callback. The
+   *                          exceptions of the other failed callbacks are added as suppressed.
+   */
+  void runAll() {
+    final List<Runnable> toRun;
+    lock.lock();
+    try {
+      if (callbacks.isEmpty()) {
+        return;
+      }
+      toRun = callbacks;
+      callbacks = new ArrayList<>();
+      keys = null;
+      aggregates = null;
+    } finally {
+      lock.unlock();
+    }
+
+    dispatcher.dispatch(toRun);
+  }
+
+  /**
+   * Callback passing the keys collected within a transaction to a consumer.
+   *
+   * @param <K> the type of the keys.
+   */
+  private static final class Aggregate<K> implements Runnable {
+    private final Consumer<Set<K>> callback;
+
+    /**
+     * Guarded by the lock of the callbacks until the aggregate has been passed to the dispatcher.
+     */
+    private final Set<K> keys = new LinkedHashSet<>();
+
+    Aggregate(Consumer<Set<K>> callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public void run() {
+      callback.accept(Collections.unmodifiableSet(keys));
+    }
+
+    @Override
+    public String toString() {
+      return "Aggregate{callback=" + callback + ", keys=" + keys.size() + "}";
+    }
+  }
+
+}
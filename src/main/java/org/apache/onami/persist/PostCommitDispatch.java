@@ -0,0 +1,175 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Options for running the post commit callbacks of a persistence unit on an executor instead of the committing thread.
+ * Instances are immutable.
+ * <p>
+ * The callbacks of one transaction are passed to the executor as a single task and run in the order in which they
+ * were added. Callbacks of different transactions may run concurrently depending on the executor. A failing
+ * callback does not prevent the following ones from being run and is reported to the {@link FailureHandler} instead
+ * of the caller.
+ * <p>
+ * The number of transactions whose callbacks are queued or running is bounded. If the bound is reached the
+ * {@link OverflowPolicy} decides what happens.
+ * <p>
+ * Usage example:
+ * <pre>
+ *  bindApplicationManagedPersistenceUnit("puName")
+ *      .useAsyncPostCommitCallbacks(PostCommitDispatch.to(executor)
+ *          .withQueueCapacity(10000)
+ *          .onOverflow(PostCommitDispatch.OverflowPolicy.BLOCK));
+ * </pre>
+ */
+public final class PostCommitDispatch {
+
+  /**
+   * Default maximum number of transactions whose callbacks are queued or running.
+   */
+  static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+  /**
+   * Handler logging the failures.
+   */
+  private static final FailureHandler LOGGING_HANDLER = new FailureHandler() {
+    private final Logger log = Logger.getLogger(PostCommitDispatch.class.getName());
+
+    @Override
+    public void callbackFailed(Runnable callback, Throwable failure) {
+      log.log(Level.WARNING, "Post commit callback " + callback + " failed", failure);
+    }
+  };
+
+  private final Executor executor;
+
+  private final int queueCapacity;
+
+  private final OverflowPolicy overflowPolicy;
+
+  private final FailureHandler failureHandler;
+
+  private PostCommitDispatch(Executor executor, int queueCapacity, OverflowPolicy overflowPolicy,
+      FailureHandler failureHandler) {
+    this.executor = executor;
+    this.queueCapacity = queueCapacity;
+    this.overflowPolicy = overflowPolicy;
+    this.failureHandler = failureHandler;
+  }
+
+  /**
+   * Creates options running the callbacks on the given executor. By default the callbacks of up to 1000 transactions
+   * are queued, the committing thread runs the callbacks itself if the queue is full and failures are logged.
+   *
+   * @param executor the executor to run the callbacks. Must not be {@code null}.
+   * @return the options.
+   */
+  public static PostCommitDispatch to(Executor executor) {
+    checkNotNull(executor, "executor is mandatory!");
+    return new PostCommitDispatch(executor, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.CALLER_RUNS, LOGGING_HANDLER);
+  }
+
+  /**
+   * @param transactions the maximum number of transactions whose callbacks are queued or running. Must be positive.
+   * @return new options with the given capacity.
+   */
+  public PostCommitDispatch withQueueCapacity(int transactions) {
+    checkArgument(transactions > 0, "transactions must be positive!");
+    return new PostCommitDispatch(executor, transactions, overflowPolicy, failureHandler);
+  }
+
+  /**
+   * @param overflowPolicy what to do if the queue is full. Must not be {@code null}.
+   * @return new options with the given policy.
+   */
+  public PostCommitDispatch onOverflow(OverflowPolicy overflowPolicy) {
+    return new PostCommitDispatch(executor, queueCapacity,
+        checkNotNull(overflowPolicy, "overflowPolicy is mandatory!"), failureHandler);
+  }
+
+  /**
+   * @param failureHandler the handler for failed and discarded callbacks. Must not be {@code null}.
+   * @return new options with the given handler.
+   */
+  public PostCommitDispatch withFailureHandler(FailureHandler failureHandler) {
+    return new PostCommitDispatch(executor, queueCapacity, overflowPolicy,
+        checkNotNull(failureHandler, "failureHandler is mandatory!"));
+  }
+
+  Executor getExecutor() {
+    return executor;
+  }
+
+  int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  FailureHandler getFailureHandler() {
+    return failureHandler;
+  }
+
+  /**
+   * What to do with the callbacks of a transaction if the queue is full.
+   */
+  public enum OverflowPolicy {
+
+    /**
+     * The committing thread waits until the callbacks of another transaction have been run.
+     */
+    BLOCK,
+
+    /**
+     * The committing thread runs the callbacks itself. Failures are still passed to the handler.
+     */
+    CALLER_RUNS,
+
+    /**
+     * The callbacks are not run. Each of them is passed to the handler with a
+     * {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    DISCARD
+  }
+
+  /**
+   * Receives the callbacks which failed or could not be run.
+   */
+  @FunctionalInterface
+  public interface FailureHandler {
+
+    /**
+     * Called on the thread which ran or discarded the callback. Must not throw.
+     *
+     * @param callback the callback.
+     * @param failure  the exception thrown by the callback or the reason why it was not run.
+     */
+    void callbackFailed(Runnable callback, Throwable failure);
+  }
+}
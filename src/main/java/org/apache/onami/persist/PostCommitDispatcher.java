@@ -0,0 +1,168 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs the post commit callbacks of a committed transaction.
+ */
+abstract class PostCommitDispatcher {
+
+  /**
+   * Runs the callbacks on the committing thread and throws the exception of the first failed callback.
+   */
+  static final PostCommitDispatcher INLINE = new PostCommitDispatcher() {
+    @Override
+    void dispatch(List<Runnable> callbacks) {
+      RuntimeException exception = null;
+      for (Runnable callback : callbacks) {
+        try {
+          callback.run();
+        } catch (RuntimeException e) {
+          if (exception == null) {
+            exception = e;
+          } else {
+            exception.addSuppressed(e);
+          }
+        }
+      }
+      if (exception != null) {
+        throw exception;
+      }
+    }
+  };
+
+  /**
+   * Creates a dispatcher running the callbacks as configured.
+   *
+   * @param dispatch the options. Must not be {@code null}.
+   * @return the dispatcher.
+   */
+  static PostCommitDispatcher async(PostCommitDispatch dispatch) {
+    return new Async(checkNotNull(dispatch, "dispatch is mandatory!"));
+  }
+
+  /**
+   * Runs the callbacks of a transaction in the given order. A failing callback does not prevent the following ones
+   * from being run.
+   *
+   * @param callbacks the callbacks. Not empty.
+   */
+  abstract void dispatch(List<Runnable> callbacks);
+
+  /**
+   * Passes the callbacks of every transaction as one task to an executor.
+   */
+  private static final class Async extends PostCommitDispatcher {
+    private final PostCommitDispatch dispatch;
+
+    /**
+     * One permit per transaction whose callbacks may be queued or running.
+     */
+    private final Semaphore permits;
+
+    Async(PostCommitDispatch dispatch) {
+      this.dispatch = dispatch;
+      this.permits = new Semaphore(dispatch.getQueueCapacity());
+    }
+
+    @Override
+    void dispatch(List<Runnable> callbacks) {
+      if (!permits.tryAcquire()) {
+        switch (dispatch.getOverflowPolicy()) {
+          case BLOCK:
+            if (!acquirePermit()) {
+              reject(callbacks, "post commit callbacks were discarded because the committing thread was interrupted");
+              return;
+            }
+            break;
+          case CALLER_RUNS:
+            runAll(callbacks);
+            return;
+          default:
+            reject(callbacks, "post commit callbacks were discarded because the queue is full");
+            return;
+        }
+      }
+
+      try {
+        dispatch.getExecutor()
+            .execute(() -> {
+              try {
+                runAll(callbacks);
+              } finally {
+                permits.release();
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        permits.release();
+        for (Runnable callback : callbacks) {
+          dispatch.getFailureHandler()
+              .callbackFailed(callback, e);
+        }
+      }
+    }
+
+    /**
+     * Waits for a permit. Gives up if the thread is interrupted and keeps the interrupt for the caller.
+     *
+     * @return {@code false} if the thread was interrupted while waiting.
+     */
+    private boolean acquirePermit() {
+      try {
+        permits.acquire();
+        return true;
+      } catch (InterruptedException e) {
+        Thread.currentThread()
+            .interrupt();
+        return false;
+      }
+    }
+
+    /**
+     * Runs the callbacks. An exception of a callback is passed to the failure handler and the remaining callbacks are
+     * run anyway. Errors are not caught.
+     */
+    private void runAll(List<Runnable> callbacks) {
+      for (Runnable callback : callbacks) {
+        try {
+          callback.run();
+        } catch (Exception e) {
+          dispatch.getFailureHandler()
+              .callbackFailed(callback, e);
+        }
+      }
+    }
+
+    private void reject(List<Runnable> callbacks, String message) {
+      final RejectedExecutionException exception = new RejectedExecutionException(message);
+      for (Runnable callback : callbacks) {
+        dispatch.getFailureHandler()
+            .callbackFailed(callback, exception);
+      }
+    }
+  }
+
+}
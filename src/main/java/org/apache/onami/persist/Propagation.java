@@ -0,0 +1,80 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Defines how a {@link Transactional @Transactional} method relates to a transaction which is already running on the
+ * current thread. The propagation is evaluated for each participating persistence unit on its own.
+ */
+public enum Propagation {
+
+  /**
+   * Join the running transaction. Start a new one if none is running. This is the default.
+   */
+  REQUIRED,
+
+  /**
+   * Always start a new transaction. A running transaction and its entity manager are suspended until the new
+   * transaction has completed.
+   * <p>
+   * Suspending a JTA transaction requires the {@link javax.transaction.UserTransaction} to also implement
+   * {@link javax.transaction.TransactionManager}.
+   */
+  REQUIRES_NEW,
+
+  /**
+   * Join the running transaction. Run without a transaction if none is running.
+   */
+  SUPPORTS,
+
+  /**
+   * Always run without a transaction. A running transaction and its entity manager are suspended until the method
+   * has completed.
+   * <p>
+   * Suspending a JTA transaction requires the {@link javax.transaction.UserTransaction} to also implement
+   * {@link javax.transaction.TransactionManager}.
+   */
+  NOT_SUPPORTED,
+
+  /**
+   * Join the running transaction. Throw an {@link IllegalStateException} if none is running.
+   */
+  MANDATORY,
+
+  /**
+   * Run without a transaction. Throw an {@link IllegalStateException} if a transaction is running.
+   */
+  NEVER;
+
+  /**
+   * @return {@code true} if a running transaction has to be suspended.
+   */
+  boolean suspendsRunningTransaction() {
+    return this == REQUIRES_NEW || this == NOT_SUPPORTED;
+  }
+
+  /**
+   * @return {@code true} if a new transaction is started in case none is running.
+   */
+  boolean startsTransaction() {
+    return this == REQUIRED || this == REQUIRES_NEW;
+  }
+
+}
@@ -0,0 +1,137 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.PersistenceException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Switches an {@link EntityManager} into read only mode for the duration of a transaction.
+ * <p>
+ * If the entity manager is backed by a hibernate {@link Session} the flush mode is set to {@link FlushMode#MANUAL}
+ * and entities are loaded read only. For other persistence providers only the flush mode is set to
+ * {@link FlushModeType#COMMIT} which is the closest JPA allows.
+ * <p>
+ * The previous settings are restored by {@link #restore()}.
+ */
+abstract class ReadOnlySession {
+
+  /**
+   * Whether hibernate is available on the class path.
+   */
+  static final boolean HIBERNATE_PRESENT = isHibernatePresent();
+
+  /**
+   * Switches the given entity manager into read only mode.
+   *
+   * @param em the entity manager. Must not be {@code null}.
+   * @return handle for restoring the previous settings.
+   */
+  static ReadOnlySession applyTo(EntityManager em) {
+    checkNotNull(em, "em is mandatory!");
+    if (HIBERNATE_PRESENT) {
+      final Session session = unwrapSession(em);
+      if (session != null) {
+        return new HibernateSession(session);
+      }
+    }
+    return new JpaSession(em);
+  }
+
+  /**
+   * Restores the settings which were active before {@link #applyTo(EntityManager)}.
+   * Entities loaded in the meantime stay read only.
+   */
+  abstract void restore();
+
+  static Session unwrapSession(EntityManager em) {
+    try {
+      return em.unwrap(Session.class);
+    } catch (PersistenceException e) {
+      return null;
+    }
+  }
+
+  private static boolean isHibernatePresent() {
+    try {
+      Class.forName("org.hibernate.Session", false, ReadOnlySession.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Read only mode of a hibernate session.
+   */
+  private static final class HibernateSession extends ReadOnlySession {
+    private final Session session;
+
+    private final FlushMode previousFlushMode;
+
+    private final boolean previousDefaultReadOnly;
+
+    HibernateSession(Session session) {
+      this.session = session;
+      this.previousFlushMode = session.getHibernateFlushMode();
+      this.previousDefaultReadOnly = session.isDefaultReadOnly();
+      session.setHibernateFlushMode(FlushMode.MANUAL);
+      session.setDefaultReadOnly(true);
+    }
+
+    @Override
+    void restore() {
+      if (session.isOpen()) {
+        session.setDefaultReadOnly(previousDefaultReadOnly);
+        session.setHibernateFlushMode(previousFlushMode);
+      }
+    }
+  }
+
+
+  /**
+   * Read only mode of an entity manager of any other persistence provider.
+   */
+  private static final class JpaSession extends ReadOnlySession {
+    private final EntityManager em;
+
+    private final FlushModeType previousFlushMode;
+
+    JpaSession(EntityManager em) {
+      this.em = em;
+      this.previousFlushMode = em.getFlushMode();
+      em.setFlushMode(FlushModeType.COMMIT);
+    }
+
+    @Override
+    void restore() {
+      if (em.isOpen() && previousFlushMode != null) {
+        em.setFlushMode(previousFlushMode);
+      }
+    }
+  }
+
+}
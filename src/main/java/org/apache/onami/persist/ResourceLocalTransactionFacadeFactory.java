@@ -24,10 +24,12 @@ import com.google.common.base.Preconditions;
 import javax.annotation.Nullable;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -41,31 +43,122 @@ class ResourceLocalTransactionFacadeFactory implements TransactionFacadeFactory
    */
   private final EntityManagerProvider emProvider;
 
-  private final ThreadLocal<Outer> outerTransactionFacade = new ThreadLocal<>();
+  /**
+   * Tells whether the unit of work has already created its entity manager.
+   */
+  private final TransactionStateObserver unitOfWorkState;
+
+  /**
+   * The defaults for the transactions of the persistence unit.
+   */
+  private final TransactionDefaults defaults;
+
+  private final ContextStorage.Slot<Outer> outerTransactionFacade;
 
   /**
    * Constructor.
    *
-   * @param emProvider the provider for the entity manager
+   * @param emProvider      the provider for the entity manager
+   * @param unitOfWorkState tells whether the unit of work has already created its entity manager
+   * @param defaults        the defaults for the transactions of the persistence unit
+   * @param contextStorage  the storage for the per thread state
    */
   @Inject
-  ResourceLocalTransactionFacadeFactory(EntityManagerProvider emProvider) {
+  ResourceLocalTransactionFacadeFactory(EntityManagerProvider emProvider, TransactionStateObserver unitOfWorkState,
+      TransactionDefaults defaults, ContextStorage contextStorage) {
     this.emProvider = checkNotNull(emProvider, "emProvider is mandatory!");
+    this.unitOfWorkState = checkNotNull(unitOfWorkState, "unitOfWorkState is mandatory!");
+    this.defaults = checkNotNull(defaults, "defaults is mandatory!");
+    this.outerTransactionFacade = checkNotNull(contextStorage, "contextStorage is mandatory!").newSlot();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * A resource local transaction belongs to its entity manager. No transaction is active as long as the entity
+   * manager has not been created.
+   */
+  // @Override
+  public boolean isTransactionActive() {
+    final Outer outer = outerTransactionFacade.get();
+    if (outer != null && outer.isDeferred()) {
+      return true;
+    }
+    if (!unitOfWorkState.isEntityManagerCreated()) {
+      return false;
+    }
+    return emProvider.get()
+        .getTransaction()
+        .isActive();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public boolean canSuspendTransaction() {
+    return true;
   }
 
   /**
    * {@inheritDoc}
+   * <p>
+   * A resource local transaction belongs to its entity manager which is suspended separately. Only the outer
+   * transaction facade of the current thread is detached so that a deferred transaction is not joined while
+   * suspended.
    */
   // @Override
-  public TransactionFacade createTransactionFacade() {
-    final EntityTransaction txn = emProvider.get()
-        .getTransaction();
+  public SuspendedTransaction suspendTransaction() {
+    final Outer outer = outerTransactionFacade.get();
+    if (outer == null) {
+      return () -> {
+        // Do nothing
+      };
+    }
+    outerTransactionFacade.remove();
+    return () -> outerTransactionFacade.set(outer);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * With lazy begin the entity manager is not retrieved before it is used if the unit of work has not created it
+   * yet. Pooled entity managers and connections are then only taken for transactions which actually use them.
+   */
+  // @Override
+  public TransactionFacade createTransactionFacade(TransactionAttribute attribute) {
+    final Propagation propagation = attribute.getPropagation();
+    final Outer outer = outerTransactionFacade.get();
+    if (outer != null && outer.isDeferred()) {
+      // retrieving the entity manager would start the deferred transaction
+      checkJoinable(propagation);
+      return new Inner(null, outer);
+    }
+    if (defaults.isLazyBegin() && propagation.startsTransaction() && !unitOfWorkState.isEntityManagerCreated()) {
+      return newOuter(null, attribute);
+    }
+    final EntityManager em = emProvider.get();
+    final EntityTransaction txn = em.getTransaction();
     if (txn.isActive()) {
-      return new Inner(txn, outerTransactionFacade.get());
+      checkJoinable(propagation);
+      return new Inner(txn, outer);
+    } else if (propagation.startsTransaction()) {
+      return newOuter(em, attribute);
+    } else if (propagation == Propagation.MANDATORY) {
+      throw new IllegalStateException("No transaction is running. Propagation " + propagation + " not possible.");
     } else {
-      Outer outer = new Outer(txn);
-      outerTransactionFacade.set(outer);
-      return outer;
+      return NoTransactionFacade.INSTANCE;
+    }
+  }
+
+  private Outer newOuter(@Nullable EntityManager em, TransactionAttribute attribute) {
+    return new Outer(emProvider, em, attribute.isReadOnly(), defaults.timeoutFor(attribute), defaults.isLazyBegin(),
+        outerTransactionFacade, defaults.getPostCommitDispatcher());
+  }
+
+  private static void checkJoinable(Propagation propagation) {
+    if (propagation == Propagation.NEVER || propagation.suspendsRunningTransaction()) {
+      throw new IllegalStateException("Transaction is running. Propagation " + propagation + " not possible.");
     }
   }
 
@@ -73,14 +166,19 @@ class ResourceLocalTransactionFacadeFactory implements TransactionFacadeFactory
    * TransactionFacade representing an inner (nested) transaction.
    * Starting and committing a transaction has no effect.
    * This facade will set the rollbackOnly flag in case of a roll back.
+   * Using the entity manager starts a deferred outer transaction.
    */
   private static class Inner implements TransactionFacade {
+    /**
+     * The joined transaction. {@code null} if the parent was deferred when this facade was created.
+     */
     private final EntityTransaction txn;
 
-    private final TransactionFacade parent;
+    private final Outer parent;
 
-    Inner(EntityTransaction txn, @Nullable TransactionFacade parent) {
-      this.txn = checkNotNull(txn, "txn is mandatory!");
+    Inner(@Nullable EntityTransaction txn, @Nullable Outer parent) {
+      checkArgument(txn != null || parent != null, "txn or parent is mandatory!");
+      this.txn = txn;
       this.parent = parent;
     }
 
@@ -105,7 +203,21 @@ class ResourceLocalTransactionFacadeFactory implements TransactionFacadeFactory
      */
     // @Override
     public void rollback() {
-      txn.setRollbackOnly();
+      if (parent != null && parent.isDeferred()) {
+        parent.setRollbackOnly();
+      } else if (txn != null) {
+        txn.setRollbackOnly();
+      } else {
+        parent.txn.setRollbackOnly();
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean joinsRunningTransaction() {
+      return true;
     }
 
     @Override
@@ -113,6 +225,43 @@ class ResourceLocalTransactionFacadeFactory implements TransactionFacadeFactory
       Preconditions.checkNotNull(parent);
       parent.addPostCommitCallback(callback);
     }
+
+    @Override
+    public void addPostCommitCallback(Object key, Runnable callback) {
+      Preconditions.checkNotNull(parent);
+      parent.addPostCommitCallback(key, callback);
+    }
+
+    @Override
+    public <K> void addAggregatePostCommitCallback(K key, Consumer<Set<K>> callback) {
+      Preconditions.checkNotNull(parent);
+      parent.addAggregatePostCommitCallback(key, callback);
+    }
+
+    @Override
+    public void addBeforeCommitCallback(Runnable callback) {
+      Preconditions.checkNotNull(parent);
+      parent.addBeforeCommitCallback(callback);
+    }
+
+    @Override
+    public void addAfterRollbackCallback(Runnable callback) {
+      Preconditions.checkNotNull(parent);
+      parent.addAfterRollbackCallback(callback);
+    }
+
+    @Override
+    public void addAfterCompletionCallback(TransactionHookManager.CompletionCallback callback) {
+      Preconditions.checkNotNull(parent);
+      parent.addAfterCompletionCallback(callback);
+    }
+
+    @Override
+    public void beforeEntityManagerUse() {
+      if (parent != null) {
+        parent.beforeEntityManagerUse();
+      }
+    }
   }
 
 
@@ -120,17 +269,62 @@ class ResourceLocalTransactionFacadeFactory implements TransactionFacadeFactory
    * TransactionFacade representing an outer transaction.
    * This facade starts and ends the transaction.
    * If an inner transaction has set the rollbackOnly flag the transaction will be rolled back in any case.
+   * A read only transaction puts the entity manager into read only mode until the transaction has ended.
+   * A transaction with a timeout is watched by the {@link TransactionWatchdog}.
+   * While running the facade is registered as the outer transaction of the current thread.
+   * With lazy begin the transaction is started when the entity manager is used for the first time. The entity manager
+   * and its transaction are only retrieved then. A transaction which was never started is neither committed nor
+   * rolled back. Its timeout counts from the actual start.
+   * The {@link TransactionHooks} are run before the commit and after the transaction has been completed, even if it
+   * was never started.
    */
   private static class Outer implements TransactionFacade {
-    private final EntityTransaction txn;
+    private final EntityManagerProvider emProvider;
 
-    private final List<Runnable> postCommitCallbacks = new ArrayList<>();
+    /**
+     * The entity manager. {@code null} until a deferred transaction is started.
+     */
+    private EntityManager em;
 
     /**
-     * {@inheritDoc}
+     * The transaction of the entity manager. {@code null} until a deferred transaction is started.
      */
-    Outer(EntityTransaction txn) {
-      this.txn = checkNotNull(txn, "txn is mandatory!");
+    private EntityTransaction txn;
+
+    private final boolean readOnly;
+
+    private final int timeout;
+
+    private final boolean lazyBegin;
+
+    private final ContextStorage.Slot<Outer> outerTransactionFacade;
+
+    private final TransactionHooks hooks;
+
+    private ReadOnlySession readOnlySession;
+
+    private TransactionTimeout transactionTimeout;
+
+    private Outer previousOuter;
+
+    private boolean committed;
+
+    private boolean deferred;
+
+    private boolean rollbackOnly;
+
+    Outer(EntityManagerProvider emProvider, @Nullable EntityManager em, boolean readOnly, int timeout,
+        boolean lazyBegin, ContextStorage.Slot<Outer> outerTransactionFacade,
+        PostCommitDispatcher postCommitDispatcher) {
+      checkArgument(em != null || lazyBegin, "em is mandatory without lazy begin!");
+      this.emProvider = checkNotNull(emProvider, "emProvider is mandatory!");
+      this.em = em;
+      this.txn = em == null ? null : em.getTransaction();
+      this.readOnly = readOnly;
+      this.timeout = timeout;
+      this.lazyBegin = lazyBegin;
+      this.outerTransactionFacade = checkNotNull(outerTransactionFacade, "outerTransactionFacade is mandatory!");
+      this.hooks = new TransactionHooks(postCommitDispatcher);
     }
 
     /**
@@ -138,31 +332,127 @@ class ResourceLocalTransactionFacadeFactory implements TransactionFacadeFactory
      */
     // @Override
     public void begin() {
+      if (lazyBegin) {
+        deferred = true;
+      } else {
+        start();
+      }
+      previousOuter = outerTransactionFacade.get();
+      outerTransactionFacade.set(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeEntityManagerUse() {
+      if (deferred) {
+        // reset first as retrieving the entity manager in start() calls back into this method
+        deferred = false;
+        try {
+          start();
+        } catch (RuntimeException e) {
+          deferred = true;
+          throw e;
+        }
+        if (rollbackOnly) {
+          txn.setRollbackOnly();
+        }
+      }
+    }
+
+    private void start() {
+      if (em == null) {
+        em = emProvider.get();
+        txn = em.getTransaction();
+      }
       txn.begin();
+      if (timeout > 0) {
+        transactionTimeout = TransactionTimeout.start(em, timeout);
+      }
+      if (readOnly) {
+        readOnlySession = ReadOnlySession.applyTo(em);
+      }
+    }
+
+    /**
+     * @return {@code true} if the start of the transaction is deferred until the entity manager is used.
+     */
+    boolean isDeferred() {
+      return deferred;
+    }
+
+    /**
+     * Sets the rollbackOnly flag on a transaction which has not been started yet.
+     */
+    void setRollbackOnly() {
+      rollbackOnly = true;
     }
 
     /**
      * {@inheritDoc}
      */
     // @Override
-    public synchronized void commit() {
-      if (txn.getRollbackOnly()) {
-        txn.rollback();
-      } else {
-        txn.commit();
-        List<RuntimeException> exceptions = new ArrayList<>();
-        for (Runnable callback : postCommitCallbacks) {
-          try {
-            callback.run();
-          } catch (RuntimeException e) {
-            exceptions.add(e);
-          }
+    public void commit() {
+      final TransactionTimeout timeout = transactionTimeout;
+      if (timeout != null && timeout.isExpired()) {
+        rollback();
+        throw timeout.newException();
+      }
+      if (isRollbackOnly()) {
+        rollback();
+        return;
+      }
+      if (runBeforeCommitCallbacks() && isRollbackOnly()) {
+        rollback();
+        return;
+      }
+      if (deferred) {
+        restoreState();
+        committed = true;
+        hooks.committed();
+        return;
+      }
+      try {
+        try {
+          txn.commit();
+        } finally {
+          restoreState();
         }
-        if (exceptions.size() >= 1) {
-          RuntimeException e = exceptions.get(0);
-          exceptions.subList(1, exceptions.size()).forEach(e::addSuppressed);
-          throw e;
+      } catch (RuntimeException e) {
+        throw hooks.rolledBackAfter(e);
+      }
+      committed = true;
+      hooks.committed();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCommitted() {
+      return committed;
+    }
+
+    private boolean isRollbackOnly() {
+      return deferred ? rollbackOnly : txn.getRollbackOnly();
+    }
+
+    /**
+     * Runs the before commit callbacks. If one of them fails the transaction is rolled back.
+     *
+     * @return {@code true} if at least one callback was run.
+     */
+    private boolean runBeforeCommitCallbacks() {
+      try {
+        return hooks.beforeCommit();
+      } catch (RuntimeException e) {
+        try {
+          rollback();
+        } catch (RuntimeException rollbackException) {
+          e.addSuppressed(rollbackException);
         }
+        throw e;
       }
     }
 
@@ -171,13 +461,71 @@ class ResourceLocalTransactionFacadeFactory implements TransactionFacadeFactory
      */
     // @Override
     public void rollback() {
-      txn.rollback();
+      try {
+        try {
+          if (!deferred) {
+            txn.rollback();
+          }
+        } finally {
+          restoreState();
+        }
+      } catch (RuntimeException e) {
+        throw hooks.rolledBackAfter(e);
+      }
+      hooks.rolledBack();
+    }
+
+    private void restoreState() {
+      if (previousOuter == null) {
+        outerTransactionFacade.remove();
+      } else {
+        outerTransactionFacade.set(previousOuter);
+      }
+      if (transactionTimeout != null) {
+        transactionTimeout.end();
+        transactionTimeout = null;
+      }
+      if (readOnlySession != null) {
+        readOnlySession.restore();
+        readOnlySession = null;
+      }
+    }
+
+    @Override
+    public void addPostCommitCallback(Runnable callback) {
+      Preconditions.checkState(deferred || txn.isActive(), "Cannot add a commit callback with no transaction active");
+      hooks.addPostCommit(callback);
+    }
+
+    @Override
+    public void addPostCommitCallback(Object key, Runnable callback) {
+      Preconditions.checkState(deferred || txn.isActive(), "Cannot add a commit callback with no transaction active");
+      hooks.addPostCommit(key, callback);
+    }
+
+    @Override
+    public <K> void addAggregatePostCommitCallback(K key, Consumer<Set<K>> callback) {
+      Preconditions.checkState(deferred || txn.isActive(), "Cannot add a commit callback with no transaction active");
+      hooks.addAggregatePostCommit(key, callback);
+    }
+
+    @Override
+    public void addBeforeCommitCallback(Runnable callback) {
+      Preconditions.checkState(deferred || txn.isActive(), "Cannot add a commit callback with no transaction active");
+      hooks.addBeforeCommit(callback);
+    }
+
+    @Override
+    public void addAfterRollbackCallback(Runnable callback) {
+      Preconditions.checkState(deferred || txn.isActive(), "Cannot add a rollback callback with no transaction active");
+      hooks.addAfterRollback(callback);
     }
 
     @Override
-    public synchronized void addPostCommitCallback(Runnable callback) {
-      Preconditions.checkState(txn.isActive(), "Cannot add a commit callback with no transaction active");
-      postCommitCallbacks.add(callback);
+    public void addAfterCompletionCallback(TransactionHookManager.CompletionCallback callback) {
+      Preconditions.checkState(deferred || txn.isActive(),
+          "Cannot add a completion callback with no transaction active");
+      hooks.addAfterCompletion(callback);
     }
   }
 
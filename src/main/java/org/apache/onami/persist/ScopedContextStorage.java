@@ -0,0 +1,180 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ContextStorage} keeping all slots of a {@link PersistenceModule} in a single carrier per thread.
+ * <p>
+ * The carrier is bound to the thread for the duration of a scope or, outside of a scope, as long as any slot holds a
+ * value. It is removed from the thread as soon as it is no longer needed. A thread therefore holds at most one entry
+ * regardless of the number of persistence units, and no entry at all while it does not run a unit of work. This
+ * suits applications running large numbers of short lived (virtual) threads.
+ * <p>
+ * The carrier follows the shape of a scoped value: it is bound when the unit of work is entered and unbound when it
+ * is left, it is never inherited by other threads and it is confined to the thread which bound it.
+ */
+class ScopedContextStorage implements ContextStorage {
+
+  /**
+   * The scope returned by {@link #openScope()} if a carrier is already bound.
+   */
+  private static final Scope NO_SCOPE = () -> {
+    // Do nothing
+  };
+
+  /**
+   * The carrier bound to the current thread.
+   */
+  private final ThreadLocal<Carrier> carriers = new ThreadLocal<>();
+
+  /**
+   * Number of slots created so far.
+   */
+  private final AtomicInteger slotCount = new AtomicInteger();
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public <T> Slot<T> newSlot() {
+    return new CarrierSlot<>(slotCount.getAndIncrement());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public Scope openScope() {
+    if (carriers.get() != null) {
+      return NO_SCOPE;
+    }
+    final Carrier carrier = new Carrier(slotCount.get(), true);
+    carriers.set(carrier);
+    return () -> {
+      carrier.scoped = false;
+      if (carrier.isEmpty()) {
+        carriers.remove();
+      }
+    };
+  }
+
+  /**
+   * @return {@code true} if a carrier is bound to the current thread.
+   */
+  boolean isBound() {
+    return carriers.get() != null;
+  }
+
+  /**
+   * Slot stored at a fixed index of the carrier.
+   */
+  private class CarrierSlot<T> implements Slot<T> {
+    private final int index;
+
+    CarrierSlot(int index) {
+      this.index = index;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    // @Override
+    @SuppressWarnings("unchecked")
+    public T get() {
+      final Carrier carrier = carriers.get();
+      return carrier == null ? null : (T) carrier.get(index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    // @Override
+    public void set(T value) {
+      if (value == null) {
+        remove();
+        return;
+      }
+      Carrier carrier = carriers.get();
+      if (carrier == null) {
+        carrier = new Carrier(slotCount.get(), false);
+        carriers.set(carrier);
+      }
+      carrier.set(index, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    // @Override
+    public void remove() {
+      final Carrier carrier = carriers.get();
+      if (carrier != null) {
+        carrier.set(index, null);
+        if (!carrier.scoped && carrier.isEmpty()) {
+          carriers.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * The values of all slots of one thread. Confined to that thread.
+   */
+  private static final class Carrier {
+    private Object[] values;
+
+    private int size;
+
+    private boolean scoped;
+
+    Carrier(int capacity, boolean scoped) {
+      this.values = new Object[Math.max(capacity, 1)];
+      this.scoped = scoped;
+    }
+
+    Object get(int index) {
+      return index < values.length ? values[index] : null;
+    }
+
+    void set(int index, Object value) {
+      if (index >= values.length) {
+        if (value == null) {
+          return;
+        }
+        values = Arrays.copyOf(values, index + 1);
+      }
+      final Object previous = values[index];
+      values[index] = value;
+      if (previous == null && value != null) {
+        size++;
+      } else if (previous != null && value == null) {
+        size--;
+      }
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+  }
+
+}
@@ -0,0 +1,67 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jakarta.persistence.TypedQuery;
+import java.util.stream.Stream;
+
+/**
+ * Streams the results of large queries of a persistence unit with bounded memory.
+ * <p>
+ * The rows are read from the database over a forward only cursor which fetches a window of rows at once. Every time a
+ * window has been consumed the entity manager of the current unit of work is cleared, so the persistence context
+ * never holds more than one window of entities. The entities are loaded read only if the persistence provider is
+ * hibernate. Other providers ignore the hints for the fetch size and the read only mode.
+ * <p>
+ * The query must have been created by the entity manager of the current {@link UnitOfWork} which must stay active
+ * until the stream has been closed. If a transaction is running pending changes are flushed before the first row is
+ * read and before every clear, so entities which the consumer persists or modifies while streaming are written.
+ * Entities which were managed before are detached by the first clear. With hibernate changes made to the streamed
+ * entities themselves are not written to the database because they are loaded read only.
+ * <p>
+ * The stream holds an open cursor and connection. It must be closed, preferably with try-with-resources:
+ * <pre>
+ *  try (Stream&lt;Order&gt; orders = streamingQueries.stream(em.createQuery("SELECT o FROM Order o", Order.class))) {
+ *    orders.forEach(exporter::write);
+ *  }
+ * </pre>
+ */
+public interface StreamingQueries {
+
+  /**
+   * Streams the results of the given query in windows of 500 rows.
+   *
+   * @param query the query. Must not be {@code null}.
+   * @param <T>   the type of the results.
+   * @return the results. Must be closed after use.
+   */
+  <T> Stream<T> stream(TypedQuery<T> query);
+
+  /**
+   * Streams the results of the given query.
+   *
+   * @param query      the query. Must not be {@code null}.
+   * @param windowSize the number of rows fetched at once and kept in the persistence context. Must be positive.
+   * @param <T>        the type of the results.
+   * @return the results. Must be closed after use.
+   */
+  <T> Stream<T> stream(TypedQuery<T> query, int windowSize);
+
+}
@@ -0,0 +1,135 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Implementation of {@link StreamingQueries}.
+ */
+class StreamingQueriesImpl implements StreamingQueries {
+
+  /**
+   * Default number of rows per window.
+   */
+  static final int DEFAULT_WINDOW_SIZE = 500;
+
+  /**
+   * Hibernate hint for the JDBC fetch size.
+   */
+  static final String FETCH_SIZE_HINT = "org.hibernate.fetchSize";
+
+  /**
+   * Hibernate hint for loading the entities read only.
+   */
+  static final String READ_ONLY_HINT = "org.hibernate.readOnly";
+
+  /**
+   * Provider for the entity manager of the current unit of work.
+   */
+  private EntityManagerProvider emProvider;
+
+  /**
+   * @param emProvider provider for the entity manager of the current unit of work.
+   */
+  @Inject
+  void init(EntityManagerProvider emProvider) {
+    this.emProvider = checkNotNull(emProvider, "emProvider is mandatory!");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public <T> Stream<T> stream(TypedQuery<T> query) {
+    return stream(query, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public <T> Stream<T> stream(TypedQuery<T> query, int windowSize) {
+    checkNotNull(query, "query is mandatory!");
+    checkArgument(windowSize > 0, "windowSize must be positive!");
+    final EntityManager em = emProvider.get();
+    if (em.isJoinedToTransaction()) {
+      em.flush();
+    }
+    query.setHint(FETCH_SIZE_HINT, windowSize);
+    query.setHint(READ_ONLY_HINT, true);
+
+    final Stream<T> results = query.getResultStream();
+    final Spliterator<T> windowed = new WindowSpliterator<>(results.spliterator(), em, windowSize);
+    return StreamSupport.stream(windowed, false)
+        .onClose(results::close);
+  }
+
+  /**
+   * Clears the entity manager before the first row of every window but the first one is handed out. The previous
+   * window has been consumed at this point. Pending changes are flushed before if a transaction is running.
+   *
+   * @param <T> the type of the results.
+   */
+  static final class WindowSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+    private final Spliterator<T> rows;
+
+    private final EntityManager em;
+
+    private final int windowSize;
+
+    private long consumed;
+
+    WindowSpliterator(Spliterator<T> rows, EntityManager em, int windowSize) {
+      super(Long.MAX_VALUE, ORDERED);
+      this.rows = rows;
+      this.em = em;
+      this.windowSize = windowSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      if (consumed > 0 && consumed % windowSize == 0) {
+        // the consumer may have written something within the running transaction
+        if (em.isJoinedToTransaction()) {
+          em.flush();
+        }
+        em.clear();
+      }
+      final boolean advanced = rows.tryAdvance(action);
+      if (advanced) {
+        consumed++;
+      }
+      return advanced;
+    }
+  }
+
+}
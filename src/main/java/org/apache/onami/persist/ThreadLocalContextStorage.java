@@ -0,0 +1,87 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * {@link ContextStorage} keeping every slot in a {@link ThreadLocal} of its own. This is the default.
+ * <p>
+ * Scopes have no effect.
+ */
+class ThreadLocalContextStorage implements ContextStorage {
+
+  /**
+   * The scope returned by {@link #openScope()}.
+   */
+  private static final Scope NO_SCOPE = () -> {
+    // Do nothing
+  };
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public <T> Slot<T> newSlot() {
+    return new ThreadLocalSlot<>();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public Scope openScope() {
+    return NO_SCOPE;
+  }
+
+  /**
+   * Slot backed by a thread local.
+   */
+  private static class ThreadLocalSlot<T> implements Slot<T> {
+    private final ThreadLocal<T> values = new ThreadLocal<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    // @Override
+    public T get() {
+      return values.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    // @Override
+    public void set(T value) {
+      if (value == null) {
+        values.remove();
+      } else {
+        values.set(value);
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    // @Override
+    public void remove() {
+      values.remove();
+    }
+  }
+
+}
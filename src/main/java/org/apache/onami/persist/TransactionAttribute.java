@@ -0,0 +1,275 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable, resolved view of a {@link Transactional @Transactional} annotation.
+ * <p>
+ * Reading the members of an annotation allocates a copy of every array member on each call.
+ * This class copies them once so that the values can be used on the hot path without reflection or allocation.
+ * <p>
+ * The rollback decision is memoized per exception class. The table is an immutable map which is replaced on every
+ * new entry. Concurrent writers may lose an entry which is then simply computed again.
+ */
+final class TransactionAttribute {
+
+  /**
+   * Maximum number of exception classes for which the rollback decision is memoized.
+   */
+  private static final int MAX_ROLLBACK_DECISIONS = 64;
+
+  /**
+   * Annotations of the persistence units on which to start a transaction. Empty means all units.
+   */
+  private final Set<Class<? extends Annotation>> onUnits;
+
+  /**
+   * Exceptions to rollback on.
+   */
+  private final Class<? extends Throwable>[] rollbackOn;
+
+  /**
+   * Exceptions to not rollback on.
+   */
+  private final Class<? extends Throwable>[] ignore;
+
+  /**
+   * Whether the transaction is read only.
+   */
+  private final boolean readOnly;
+
+  /**
+   * How to relate to a running transaction.
+   */
+  private final Propagation propagation;
+
+  /**
+   * Timeout in seconds. Negative means the default of the persistence unit.
+   */
+  private final int timeout;
+
+  /**
+   * Exceptions to retry on. Empty means no retry.
+   */
+  private final Class<? extends Throwable>[] retryOn;
+
+  /**
+   * Maximum number of attempts including the first one.
+   */
+  private final int maxAttempts;
+
+  /**
+   * Backoff in milliseconds before the first retry.
+   */
+  private final long retryBackoff;
+
+  /**
+   * Memoized rollback decisions per exception class. Never modified after publication.
+   */
+  private volatile Map<Class<?>, Boolean> rollbackDecisions = Collections.emptyMap();
+
+  /**
+   * Constructor.
+   *
+   * @param transactional the annotation to resolve. Must not be {@code null}.
+   */
+  TransactionAttribute(Transactional transactional) {
+    checkNotNull(transactional, "transactional is mandatory!");
+    this.onUnits = asSet(transactional.onUnits());
+    this.rollbackOn = nullToEmpty(transactional.rollbackOn());
+    this.ignore = nullToEmpty(transactional.ignore());
+    this.readOnly = transactional.readOnly();
+    this.propagation = transactional.propagation() == null ? Propagation.REQUIRED : transactional.propagation();
+    this.timeout = transactional.timeout();
+    this.retryOn = nullToEmpty(transactional.retryOn());
+    this.maxAttempts = transactional.maxAttempts();
+    this.retryBackoff = transactional.retryBackoff();
+  }
+
+  /**
+   * Constructor for transactions which are started programmatically instead of by an annotation. The transaction
+   * takes place on all persistence units, is rolled back on any exception, uses the default timeout of the
+   * persistence unit and is not retried.
+   *
+   * @param propagation how to relate to a running transaction. Must not be {@code null}.
+   */
+  @SuppressWarnings("unchecked")
+  TransactionAttribute(Propagation propagation) {
+    this.onUnits = Collections.emptySet();
+    this.rollbackOn = (Class<? extends Throwable>[]) new Class<?>[] {Throwable.class};
+    this.ignore = (Class<? extends Throwable>[]) new Class<?>[0];
+    this.readOnly = false;
+    this.propagation = checkNotNull(propagation, "propagation is mandatory!");
+    this.timeout = -1;
+    this.retryOn = (Class<? extends Throwable>[]) new Class<?>[0];
+    this.maxAttempts = 1;
+    this.retryBackoff = 0;
+  }
+
+  /**
+   * @return the annotations of the persistence units on which to start a transaction. Empty means all units.
+   * Never {@code null}.
+   */
+  Set<Class<? extends Annotation>> getOnUnits() {
+    return onUnits;
+  }
+
+  /**
+   * @return {@code true} if the transaction is read only.
+   */
+  boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * @return how to relate to a running transaction. Never {@code null}.
+   */
+  Propagation getPropagation() {
+    return propagation;
+  }
+
+  /**
+   * @return the timeout in seconds. Negative means the default of the persistence unit. {@code 0} means no timeout.
+   */
+  int getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * @return {@code true} if a failed invocation may be retried.
+   */
+  boolean isRetryEnabled() {
+    return retryOn.length > 0 && maxAttempts > 1;
+  }
+
+  /**
+   * @return the maximum number of attempts including the first one.
+   */
+  int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * @return the backoff in milliseconds before the first retry.
+   */
+  long getRetryBackoff() {
+    return retryBackoff;
+  }
+
+  /**
+   * Decides if an invocation which failed with the given exception should be retried.
+   *
+   * @param exc the exception which was thrown
+   * @return {@code true} if the exception or one of its causes is an instance of one of the exceptions to retry on.
+   */
+  boolean isRetryNecessaryFor(Throwable exc) {
+    for (Throwable t = exc; t != null; t = t.getCause() == t ? null : t.getCause()) {
+      if (containsSuper(retryOn, t.getClass())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Decides if the persistence unit with the given annotation participates in a transaction.
+   * For a detailed description of when a persistence unit participates see the documentation at the
+   * {@link Transactional @Transactional} annotation.
+   *
+   * @param puAnnotation the annotation of the persistence unit. May be {@code null}.
+   * @return {@code true} if the persistence unit participates in the transaction.
+   */
+  boolean participates(Class<? extends Annotation> puAnnotation) {
+    return puAnnotation == null || onUnits.isEmpty() || onUnits.contains(puAnnotation);
+  }
+
+  /**
+   * Decides if a rollback is necessary for the given exception.
+   *
+   * @param exc the exception which was thrown
+   * @return {@code true} if the transaction needs to be rolled back.
+   */
+  boolean isRollbackNecessaryFor(Throwable exc) {
+    final Class<?> excClass = exc.getClass();
+    final Map<Class<?>, Boolean> decisions = rollbackDecisions;
+    final Boolean memoized = decisions.get(excClass);
+    if (memoized != null) {
+      return memoized;
+    }
+
+    final boolean decision = containsSuper(rollbackOn, excClass) && !containsSuper(ignore, excClass);
+    if (decisions.size() < MAX_ROLLBACK_DECISIONS) {
+      final Map<Class<?>, Boolean> copy = new HashMap<>(decisions);
+      copy.put(excClass, decision);
+      rollbackDecisions = copy;
+    }
+    return decision;
+  }
+
+  /**
+   * Decides if the array of classes contains a super class of excClass.
+   *
+   * @param classes  the classes in which to look fore
+   * @param excClass the class to search for
+   * @return {@code true} when the array contains a super class of excClass.
+   */
+  private static boolean containsSuper(Class<? extends Throwable>[] classes, Class<?> excClass) {
+    for (Class<? extends Throwable> c : classes) {
+      if (c.isAssignableFrom(excClass)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Set<Class<? extends Annotation>> asSet(Class<? extends Annotation>[] array) {
+    if (array == null || array.length == 0) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(array)));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Class<? extends Throwable>[] nullToEmpty(Class<? extends Throwable>[] array) {
+    return array == null ? (Class<? extends Throwable>[]) new Class<?>[0] : array;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "TransactionAttribute{onUnits=" + onUnits + ", rollbackOn=" + Arrays.toString(rollbackOn) + ", ignore="
+        + Arrays.toString(ignore) + ", readOnly=" + readOnly
+        + ", propagation=" + propagation + ", timeout=" + timeout + ", retryOn=" + Arrays.toString(retryOn)
+        + ", maxAttempts=" + maxAttempts + ", retryBackoff=" + retryBackoff + "}";
+  }
+
+}
@@ -0,0 +1,102 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Defaults for the transactions of a persistence unit. Applied where the {@link Transactional @Transactional}
+ * annotation does not define a value.
+ */
+class TransactionDefaults {
+
+  /**
+   * Default timeout in seconds. {@code 0} means no timeout.
+   */
+  private final int timeout;
+
+  /**
+   * Whether resource local transactions are started on the first use of the entity manager.
+   */
+  private final boolean lazyBegin;
+
+  /**
+   * Runs the post commit callbacks.
+   */
+  private final PostCommitDispatcher postCommitDispatcher;
+
+  /**
+   * Constructor. Post commit callbacks are run on the committing thread.
+   *
+   * @param timeout   the default timeout in seconds. {@code 0} means no timeout.
+   * @param lazyBegin whether resource local transactions are started on the first use of the entity manager.
+   */
+  TransactionDefaults(int timeout, boolean lazyBegin) {
+    this(timeout, lazyBegin, PostCommitDispatcher.INLINE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param timeout              the default timeout in seconds. {@code 0} means no timeout.
+   * @param lazyBegin            whether resource local transactions are started on the first use of the entity
+   *                             manager.
+   * @param postCommitDispatcher runs the post commit callbacks. Must not be {@code null}.
+   */
+  TransactionDefaults(int timeout, boolean lazyBegin, PostCommitDispatcher postCommitDispatcher) {
+    checkArgument(timeout >= 0, "timeout must not be negative!");
+    this.timeout = timeout;
+    this.lazyBegin = lazyBegin;
+    this.postCommitDispatcher = checkNotNull(postCommitDispatcher, "postCommitDispatcher is mandatory!");
+  }
+
+  /**
+   * @return the default timeout in seconds. {@code 0} means no timeout.
+   */
+  int getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * @return {@code true} if resource local transactions are started on the first use of the entity manager.
+   */
+  boolean isLazyBegin() {
+    return lazyBegin;
+  }
+
+  /**
+   * @return runs the post commit callbacks of the transactions.
+   */
+  PostCommitDispatcher getPostCommitDispatcher() {
+    return postCommitDispatcher;
+  }
+
+  /**
+   * @param attribute the resolved {@link Transactional @Transactional} of the invoked method.
+   * @return the timeout in seconds which applies to a transaction with the given attribute. {@code 0} means no
+   * timeout.
+   */
+  int timeoutFor(TransactionAttribute attribute) {
+    final int attributeTimeout = attribute.getTimeout();
+    return attributeTimeout < 0 ? timeout : attributeTimeout;
+  }
+
+}
@@ -19,6 +19,8 @@ package org.apache.onami.persist;
  * under the License.
  */
 
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Interface which hides away the details of inner (nested) and outer transactions as well as the details between
@@ -57,4 +59,66 @@ interface TransactionFacade {
    *                 the others will be marked as suppressed in that exception.)
    */
   void addPostCommitCallback(Runnable callback);
+
+  /**
+   * Adds a callback that will be called after the outer transaction has been committed unless a callback with an
+   * equal key has already been added to the outer transaction.
+   * @param key      the key of the callback within the outer transaction.
+   * @param callback a callback to invoke. Exceptions are handled like those of the other post commit callbacks.
+   */
+  void addPostCommitCallback(Object key, Runnable callback);
+
+  /**
+   * Adds a key to pass to the given callback after the outer transaction has been committed. The callback is called
+   * once with all keys added for it.
+   * @param key      the key to pass.
+   * @param callback a callback to invoke. Exceptions are handled like those of the other post commit callbacks.
+   * @param <K>      the type of the keys.
+   */
+  <K> void addAggregatePostCommitCallback(K key, Consumer<Set<K>> callback);
+
+  /**
+   * Adds a callback that will be called inside the outer transaction right before it is committed.
+   * @param callback a callback to invoke. If this callback throws an exception the transaction is rolled back and
+   *                 the exception is thrown by the commit.
+   */
+  void addBeforeCommitCallback(Runnable callback);
+
+  /**
+   * Adds a callback that will be called after the outer transaction has been rolled back or its commit failed.
+   * @param callback a callback to invoke. If this callback throws an exception the other callbacks are still invoked.
+   */
+  void addAfterRollbackCallback(Runnable callback);
+
+  /**
+   * Adds a callback that will be called after the outer transaction has been completed.
+   * @param callback a callback to invoke. If this callback throws an exception the other callbacks are still invoked.
+   */
+  void addAfterCompletionCallback(TransactionHookManager.CompletionCallback callback);
+
+  /**
+   * Called each time the entity manager is retrieved while this facade is the current transaction of the thread.
+   * A facade which deferred the start of the transaction starts it now. Does nothing by default.
+   */
+  default void beforeEntityManagerUse() {
+    // Do nothing
+  }
+
+  /**
+   * Tells if the last call to {@link #commit()} has committed the transaction or completed its part of it. This is
+   * also the case if the commit threw an exception of a callback after the transaction had been committed. It is not
+   * the case if the transaction was rolled back instead. Returns {@code true} by default.
+   *
+   * @return {@code true} if the transaction has been committed.
+   */
+  default boolean isCommitted() {
+    return true;
+  }
+
+  /**
+   * @return {@code true} if this facade takes part in a transaction which was started by someone else.
+   */
+  default boolean joinsRunningTransaction() {
+    return false;
+  }
 }
@@ -26,10 +26,46 @@ package org.apache.onami.persist;
 interface TransactionFacadeFactory {
 
   /**
-   * Creates a new transaction facade.
+   * Handle to a transaction which has been detached from the current thread.
+   */
+  interface SuspendedTransaction {
+    /**
+     * Attaches the transaction to the current thread again.
+     */
+    void resume();
+  }
+
+  /**
+   * The unit of work of the current thread must be active.
+   *
+   * @return {@code true} if a transaction is running on the current thread.
+   */
+  boolean isTransactionActive();
+
+  /**
+   * @return {@code true} if {@link #suspendTransaction()} is supported.
+   */
+  boolean canSuspendTransaction();
+
+  /**
+   * Detaches the running transaction from the current thread.
+   * <p>
+   * The entity manager of the unit of work is not touched. It has to be suspended separately using
+   * {@link TransactionStateObserver#suspend()}.
+   *
+   * @return handle for resuming the transaction.
+   * @throws IllegalStateException if the transaction cannot be suspended.
+   */
+  SuspendedTransaction suspendTransaction();
+
+  /**
+   * Creates a new transaction facade according to the {@link TransactionAttribute#getPropagation() propagation}.
+   * A running transaction which has to be suspended must have been suspended before calling this method.
    *
+   * @param attribute the resolved {@link Transactional @Transactional} of the invoked method.
    * @return the transaction facade
+   * @throws IllegalStateException if the propagation does not allow the current state of the transaction.
    */
-  TransactionFacade createTransactionFacade();
+  TransactionFacade createTransactionFacade(TransactionAttribute attribute);
 
 }
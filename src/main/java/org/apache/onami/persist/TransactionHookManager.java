@@ -1,9 +1,87 @@
 package org.apache.onami.persist;
 
+import java.util.Set;
+import java.util.function.Consumer;
+
 public interface TransactionHookManager {
   /**
    * Adds a callback to run upon successful completion of the current transaction.
    * @param callback the callback to run
    */
   void addPostCommitCallback(Runnable callback);
+
+  /**
+   * Adds a callback to run upon successful completion of the current transaction unless a callback with an equal key
+   * has already been added to it. A transaction changing many rows then runs a callback like a cache invalidation
+   * only once.
+   * @param key the key of the callback within the transaction
+   * @param callback the callback to run
+   */
+  void addPostCommitCallback(Object key, Runnable callback);
+
+  /**
+   * Adds a key to pass to the given callback upon successful completion of the current transaction. The callback runs
+   * once per transaction and receives the distinct keys added for it in the order in which they were added. Callbacks
+   * are told apart by {@link Object#equals(Object)}, so the same instance should be passed for every key.
+   * <p>
+   * Usage example:
+   * <pre>
+   *  private final Consumer&lt;Set&lt;Long&gt;&gt; invalidateOrders = cache::invalidateAll;
+   *
+   *  hookManager.addAggregatePostCommitCallback(order.getId(), invalidateOrders);
+   * </pre>
+   * @param key the key to pass
+   * @param callback the callback receiving the keys
+   * @param <K> the type of the keys
+   */
+  <K> void addAggregatePostCommitCallback(K key, Consumer<Set<K>> callback);
+
+  /**
+   * Adds a callback to run inside the current transaction right before it is committed. The callback may still use
+   * the entity manager and add further before commit callbacks. If it throws an exception the transaction is rolled
+   * back and the exception is thrown by the commit. The callback is not run if the transaction is rolled back.
+   * @param callback the callback to run
+   */
+  void addBeforeCommitCallback(Runnable callback);
+
+  /**
+   * Adds a callback to run after the current transaction has been rolled back. This includes a transaction whose
+   * commit failed. A failing callback does not prevent the others from being run.
+   * @param callback the callback to run
+   */
+  void addAfterRollbackCallback(Runnable callback);
+
+  /**
+   * Adds a callback to run after the current transaction has been completed, no matter how. The callback runs after
+   * the post commit or after rollback callbacks. A failing callback does not prevent the others from being run.
+   * @param callback the callback to run
+   */
+  void addAfterCompletionCallback(CompletionCallback callback);
+
+  /**
+   * The outcome of a transaction.
+   */
+  enum CompletionStatus {
+    /**
+     * The transaction has been committed.
+     */
+    COMMITTED,
+
+    /**
+     * The transaction has been rolled back or its commit failed.
+     */
+    ROLLED_BACK
+  }
+
+  /**
+   * Callback invoked after a transaction has been completed.
+   */
+  @FunctionalInterface
+  interface CompletionCallback {
+
+    /**
+     * @param status the outcome of the transaction.
+     */
+    void afterCompletion(CompletionStatus status);
+  }
 }
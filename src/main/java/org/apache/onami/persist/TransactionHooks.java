@@ -0,0 +1,248 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.onami.persist.TransactionHookManager.CompletionCallback;
+import org.apache.onami.persist.TransactionHookManager.CompletionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The lifecycle hooks registered on an outer transaction.
+ * <p>
+ * Like {@link PostCommitCallbacks} the lists are guarded by a {@link ReentrantLock} which is held only while they are
+ * accessed and never while the hooks are run.
+ */
+final class TransactionHooks {
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final PostCommitCallbacks postCommitCallbacks;
+
+  private List<Runnable> beforeCommitCallbacks = new ArrayList<>();
+
+  private List<Runnable> afterRollbackCallbacks = new ArrayList<>();
+
+  private List<CompletionCallback> afterCompletionCallbacks = new ArrayList<>();
+
+  /**
+   * Constructor.
+   *
+   * @param postCommitDispatcher runs the post commit callbacks. Must not be {@code null}.
+   */
+  TransactionHooks(PostCommitDispatcher postCommitDispatcher) {
+    this.postCommitCallbacks = new PostCommitCallbacks(postCommitDispatcher);
+  }
+
+  /**
+   * @param callback the callback to run after the commit. Must not be {@code null}.
+   */
+  void addPostCommit(Runnable callback) {
+    postCommitCallbacks.add(callback);
+  }
+
+  /**
+   * @param key      the key of the callback. Must not be {@code null}.
+   * @param callback the callback to run after the commit unless one with an equal key was added before. Must not be
+   *                 {@code null}.
+   */
+  void addPostCommit(Object key, Runnable callback) {
+    postCommitCallbacks.add(key, callback);
+  }
+
+  /**
+   * @param key      the key to pass. Must not be {@code null}.
+   * @param callback the callback receiving all keys after the commit. Must not be {@code null}.
+   * @param <K>      the type of the keys.
+   */
+  <K> void addAggregatePostCommit(K key, Consumer<Set<K>> callback) {
+    postCommitCallbacks.addAggregate(key, callback);
+  }
+
+  /**
+   * @param callback the callback to run before the commit. Must not be {@code null}.
+   */
+  void addBeforeCommit(Runnable callback) {
+    checkNotNull(callback, "callback is mandatory!");
+    lock.lock();
+    try {
+      beforeCommitCallbacks.add(callback);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param callback the callback to run after a rollback. Must not be {@code null}.
+   */
+  void addAfterRollback(Runnable callback) {
+    checkNotNull(callback, "callback is mandatory!");
+    lock.lock();
+    try {
+      afterRollbackCallbacks.add(callback);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param callback the callback to run after the completion. Must not be {@code null}.
+   */
+  void addAfterCompletion(CompletionCallback callback) {
+    checkNotNull(callback, "callback is mandatory!");
+    lock.lock();
+    try {
+      afterCompletionCallbacks.add(callback);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Runs the before commit callbacks including those added by a before commit callback. Stops at the first failing
+   * callback.
+   *
+   * @return {@code true} if at least one callback was run.
+   * @throws RuntimeException the exception of the failed callback.
+   */
+  boolean beforeCommit() {
+    List<Runnable> toRun = takeBeforeCommit();
+    final boolean any = !toRun.isEmpty();
+    while (!toRun.isEmpty()) {
+      for (Runnable callback : toRun) {
+        callback.run();
+      }
+      toRun = takeBeforeCommit();
+    }
+    return any;
+  }
+
+  /**
+   * Runs the post commit callbacks followed by the after completion callbacks.
+   *
+   * @throws RuntimeException the exception of the first failed callback. The exceptions of the other failed callbacks
+   *                          are added as suppressed.
+   */
+  void committed() {
+    RuntimeException exception = null;
+    try {
+      postCommitCallbacks.runAll();
+    } catch (RuntimeException e) {
+      exception = e;
+    }
+    exception = runAfterCompletion(CompletionStatus.COMMITTED, exception);
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Runs the after rollback callbacks followed by the after completion callbacks. The post commit callbacks are
+   * dropped.
+   *
+   * @throws RuntimeException the exception of the first failed callback. The exceptions of the other failed callbacks
+   *                          are added as suppressed.
+   */
+  void rolledBack() {
+    final List<Runnable> toRun;
+    lock.lock();
+    try {
+      toRun = afterRollbackCallbacks;
+      afterRollbackCallbacks = new ArrayList<>();
+    } finally {
+      lock.unlock();
+    }
+
+    RuntimeException exception = null;
+    for (Runnable callback : toRun) {
+      try {
+        callback.run();
+      } catch (RuntimeException e) {
+        exception = addSuppressed(exception, e);
+      }
+    }
+    exception = runAfterCompletion(CompletionStatus.ROLLED_BACK, exception);
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Runs the after rollback and after completion callbacks of a transaction which failed with the given exception.
+   *
+   * @param cause the exception the transaction failed with. Must not be {@code null}.
+   * @return the given exception with the exceptions of the failed callbacks added as suppressed.
+   */
+  RuntimeException rolledBackAfter(RuntimeException cause) {
+    try {
+      rolledBack();
+    } catch (RuntimeException e) {
+      cause.addSuppressed(e);
+    }
+    return cause;
+  }
+
+  private List<Runnable> takeBeforeCommit() {
+    lock.lock();
+    try {
+      final List<Runnable> toRun = beforeCommitCallbacks;
+      beforeCommitCallbacks = new ArrayList<>();
+      return toRun;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private RuntimeException runAfterCompletion(CompletionStatus status, RuntimeException exception) {
+    final List<CompletionCallback> toRun;
+    lock.lock();
+    try {
+      toRun = afterCompletionCallbacks;
+      afterCompletionCallbacks = new ArrayList<>();
+    } finally {
+      lock.unlock();
+    }
+
+    RuntimeException result = exception;
+    for (CompletionCallback callback : toRun) {
+      try {
+        callback.afterCompletion(status);
+      } catch (RuntimeException e) {
+        result = addSuppressed(result, e);
+      }
+    }
+    return result;
+  }
+
+  private static RuntimeException addSuppressed(RuntimeException exception, RuntimeException e) {
+    if (exception == null) {
+      return e;
+    }
+    exception.addSuppressed(e);
+    return exception;
+  }
+
+}
@@ -3,10 +3,45 @@ package org.apache.onami.persist;
 interface TransactionStateObserver {
   interface TransactionHolder extends AutoCloseable {
     TransactionFacade getTransaction();
+
+    /**
+     * @return the number of transactions of the unit of work taking part in the same transaction including this one.
+     * {@code 1} for the facade which started the transaction, greater values for facades joining a running one.
+     * {@code 0} if the facade runs without a transaction.
+     */
+    int getDepth();
+  }
+
+  /**
+   * Handle to a unit of work which has been detached from its thread.
+   */
+  interface SuspendedUnitOfWork {
+    /**
+     * Attaches the unit of work to the current thread again. The current thread must not have an active unit of
+     * work.
+     */
+    void resume();
   }
 
   /**
    * Sets the current transaction for the unit of work on the current thread
    */
   TransactionHolder withTransaction(TransactionFacade transactionFacade);
+
+  /**
+   * Detaches the active unit of work and its current transaction from the current thread. Afterwards a new unit of
+   * work can be started on the thread.
+   */
+  SuspendedUnitOfWork suspend();
+
+  /**
+   * Begins a unit of work on the current thread whose entity manager is switched into read only mode when it is
+   * created. The read only mode is undone before the entity manager is closed or pooled by {@link UnitOfWork#end()}.
+   */
+  void beginReadOnly();
+
+  /**
+   * @return {@code true} if the active unit of work on the current thread has already created its entity manager.
+   */
+  boolean isEntityManagerCreated();
 }
@@ -0,0 +1,113 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jakarta.persistence.EntityManager;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Timeout of a running transaction.
+ * <p>
+ * Bounds the queries of the entity manager using the {@value #QUERY_TIMEOUT_HINT} hint and registers the
+ * transaction with the {@link TransactionWatchdog}. Once the timeout has passed the transaction is reported and must
+ * be rolled back instead of committed.
+ */
+final class TransactionTimeout {
+
+  private static final Logger LOG = Logger.getLogger(TransactionTimeout.class.getName());
+
+  /**
+   * Hint for the query timeout in milliseconds.
+   */
+  static final String QUERY_TIMEOUT_HINT = "jakarta.persistence.query.timeout";
+
+  private final EntityManager em;
+
+  private final int timeoutSeconds;
+
+  private final Object previousQueryTimeout;
+
+  private final TransactionWatchdog.Timeout watch;
+
+  private volatile boolean expired;
+
+  private TransactionTimeout(EntityManager em, int timeoutSeconds, String threadName, TransactionWatchdog watchdog) {
+    this.em = em;
+    this.timeoutSeconds = timeoutSeconds;
+    this.previousQueryTimeout = em.getProperties()
+        .get(QUERY_TIMEOUT_HINT);
+    em.setProperty(QUERY_TIMEOUT_HINT, (int) TimeUnit.SECONDS.toMillis(timeoutSeconds));
+    this.watch = watchdog.schedule(() -> expire(threadName), timeoutSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Starts watching the transaction of the current thread.
+   *
+   * @param em             the entity manager taking part in the transaction. Must not be {@code null}.
+   * @param timeoutSeconds the timeout in seconds. Must be positive.
+   * @return the started timeout.
+   */
+  static TransactionTimeout start(EntityManager em, int timeoutSeconds) {
+    return start(em, timeoutSeconds, TransactionWatchdog.INSTANCE);
+  }
+
+  static TransactionTimeout start(EntityManager em, int timeoutSeconds, TransactionWatchdog watchdog) {
+    checkNotNull(em, "em is mandatory!");
+    checkArgument(timeoutSeconds > 0, "timeoutSeconds must be positive!");
+    return new TransactionTimeout(em, timeoutSeconds, Thread.currentThread()
+        .getName(), watchdog);
+  }
+
+  private void expire(String threadName) {
+    expired = true;
+    LOG.warning("Transaction of thread " + threadName + " exceeded its timeout of " + timeoutSeconds
+        + " seconds. It will be rolled back.");
+  }
+
+  /**
+   * @return {@code true} if the timeout has passed.
+   */
+  boolean isExpired() {
+    return expired;
+  }
+
+  /**
+   * @return the exception to throw for an expired transaction.
+   */
+  TransactionTimedOutException newException() {
+    return new TransactionTimedOutException(
+        "Transaction exceeded its timeout of " + timeoutSeconds + " seconds and has been rolled back.");
+  }
+
+  /**
+   * Stops watching the transaction and restores the query timeout of the entity manager.
+   */
+  void end() {
+    watch.cancel();
+    if (em.isOpen()) {
+      em.setProperty(QUERY_TIMEOUT_HINT, previousQueryTimeout == null ? 0 : previousQueryTimeout);
+    }
+  }
+
+}
@@ -0,0 +1,292 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Watchdog for overdue transactions.
+ * <p>
+ * All persistence units share a single hashed timer wheel which is driven by one daemon thread. Scheduling and
+ * cancelling only enqueue the timeout, so starting and completing a transaction never blocks and never touches the
+ * wheel itself. The wheel is only modified by its thread.
+ * <p>
+ * The resolution is one tick. Timeouts expire at most one tick late.
+ */
+final class TransactionWatchdog {
+
+  private static final Logger LOG = Logger.getLogger(TransactionWatchdog.class.getName());
+
+  /**
+   * The watchdog shared by all persistence units.
+   */
+  static final TransactionWatchdog INSTANCE = new TransactionWatchdog(100, TimeUnit.MILLISECONDS, 512);
+
+  /**
+   * Maximum number of newly scheduled timeouts which are moved into the wheel per tick.
+   */
+  private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+  private final long tickNanos;
+
+  private final Bucket[] wheel;
+
+  private final int mask;
+
+  /**
+   * Timeouts which have been scheduled but not yet been moved into the wheel.
+   */
+  private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Timeouts which have been cancelled but not yet been removed from the wheel.
+   */
+  private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+
+  private final long startNanos = System.nanoTime();
+
+  private volatile boolean started;
+
+  /**
+   * Number of ticks since start. Only accessed by the worker thread.
+   */
+  private long tick;
+
+  /**
+   * Constructor.
+   *
+   * @param tickDuration the duration of a tick.
+   * @param unit         the unit of the tick duration.
+   * @param wheelSize    the number of buckets of the wheel. Must be a power of two.
+   */
+  TransactionWatchdog(long tickDuration, TimeUnit unit, int wheelSize) {
+    checkArgument(tickDuration > 0, "tickDuration must be positive!");
+    checkArgument(wheelSize > 0 && Integer.bitCount(wheelSize) == 1, "wheelSize must be a power of two!");
+    this.tickNanos = unit.toNanos(tickDuration);
+    this.wheel = new Bucket[wheelSize];
+    for (int i = 0; i < wheelSize; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = wheelSize - 1;
+  }
+
+  /**
+   * Schedules a task to run once the given delay has passed.
+   *
+   * @param task  the task to run. Runs on the thread of the watchdog and must therefore be short.
+   * @param delay the delay.
+   * @param unit  the unit of the delay.
+   * @return handle for cancelling the task.
+   */
+  Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    checkNotNull(task, "task is mandatory!");
+    startIfNecessary();
+    final Timeout timeout = new Timeout(this, task, System.nanoTime() - startNanos + unit.toNanos(delay));
+    pending.add(timeout);
+    return timeout;
+  }
+
+  private void startIfNecessary() {
+    if (!started) {
+      synchronized (this) {
+        if (!started) {
+          final Thread worker = new Thread(this::run, "onami-persist-transaction-watchdog");
+          worker.setDaemon(true);
+          worker.start();
+          started = true;
+        }
+      }
+    }
+  }
+
+  private void run() {
+    while (true) {
+      waitForNextTick();
+      removeCancelled();
+      transferPending();
+      wheel[(int) (tick & mask)].expire();
+      tick++;
+    }
+  }
+
+  private void waitForNextTick() {
+    final long deadline = (tick + 1) * tickNanos;
+    long sleepNanos = deadline - (System.nanoTime() - startNanos);
+    while (sleepNanos > 0) {
+      LockSupport.parkNanos(this, sleepNanos);
+      sleepNanos = deadline - (System.nanoTime() - startNanos);
+    }
+  }
+
+  private void removeCancelled() {
+    Timeout timeout;
+    while ((timeout = cancelled.poll()) != null) {
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+      }
+    }
+  }
+
+  private void transferPending() {
+    for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+      final Timeout timeout = pending.poll();
+      if (timeout == null) {
+        return;
+      }
+      if (timeout.isCancelled()) {
+        continue;
+      }
+      final long expiryTick = Math.max(timeout.deadlineNanos / tickNanos, tick);
+      timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+      wheel[(int) (expiryTick & mask)].add(timeout);
+    }
+  }
+
+  /**
+   * Handle of a scheduled task.
+   */
+  static final class Timeout {
+
+    private static final int SCHEDULED = 0;
+
+    private static final int CANCELLED = 1;
+
+    private static final int EXPIRED = 2;
+
+    private final TransactionWatchdog watchdog;
+
+    private final Runnable task;
+
+    private final long deadlineNanos;
+
+    private final AtomicInteger state = new AtomicInteger(SCHEDULED);
+
+    // the following fields are only accessed by the thread of the watchdog
+
+    private long remainingRounds;
+
+    private Bucket bucket;
+
+    private Timeout next;
+
+    private Timeout prev;
+
+    private Timeout(TransactionWatchdog watchdog, Runnable task, long deadlineNanos) {
+      this.watchdog = watchdog;
+      this.task = task;
+      this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Cancels the task. Has no effect if the task has already run.
+     *
+     * @return {@code true} if the task was cancelled before it ran.
+     */
+    boolean cancel() {
+      if (state.compareAndSet(SCHEDULED, CANCELLED)) {
+        watchdog.cancelled.add(this);
+        return true;
+      }
+      return false;
+    }
+
+    boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+    private void expire() {
+      if (state.compareAndSet(SCHEDULED, EXPIRED)) {
+        try {
+          task.run();
+        } catch (Throwable e) {
+          LOG.log(Level.WARNING, "Task of transaction watchdog failed", e);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Doubly linked list of the timeouts of one slot of the wheel.
+   */
+  private static final class Bucket {
+
+    private Timeout head;
+
+    private Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = timeout;
+        tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    void remove(Timeout timeout) {
+      final Timeout next = timeout.next;
+      if (timeout.prev != null) {
+        timeout.prev.next = next;
+      }
+      if (next != null) {
+        next.prev = timeout.prev;
+      }
+      if (timeout == head) {
+        head = next;
+      }
+      if (timeout == tail) {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+
+    void expire() {
+      Timeout timeout = head;
+      while (timeout != null) {
+        final Timeout next = timeout.next;
+        if (timeout.remainingRounds <= 0) {
+          remove(timeout);
+          timeout.expire();
+        } else if (timeout.isCancelled()) {
+          remove(timeout);
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+  }
+
+}
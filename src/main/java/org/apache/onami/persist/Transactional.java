@@ -34,10 +34,24 @@ import java.lang.annotation.Target;
  * Marks a method or class to be executed within a transaction.
  * <p>
  * This will span a new transaction around the method unless there is already a running transaction.
- * In the case that there is a running transaction no new transaction is started.
+ * In the case that there is a running transaction no new transaction is started. This behavior can be changed with
+ * {@link #propagation()}.
  * If a rollback happens for a method which did not start the transaction the already existing
  * transaction will be marked as rollbackOnly.
  * <p>
+ * A method declared to return a {@link java.util.concurrent.CompletionStage} or
+ * {@link java.util.concurrent.CompletableFuture} which starts its own unit of work keeps the unit of work and the
+ * transaction open until the returned stage has completed. The transaction is then committed or rolled back by the
+ * thread completing the stage and the caller receives a stage which completes afterwards. A method which joins a
+ * running unit of work completes when it returns, like any other method.
+ * <p>
+ * The stages themselves do not run within the unit of work. It is detached from the invoking thread when the method
+ * returns and only attached again to commit or roll back. All work with the entity manager must therefore be done
+ * before the method returns. A continuation running on another thread finds no unit of work and
+ * {@link EntityManagerProvider#get()} throws an {@link IllegalStateException}. Continuations which need an entity
+ * manager can be run on an executor decorated by {@link UnitOfWorkExecutors}. They get a unit of work of their own
+ * which does not take part in the transaction.
+ * <p>
  * Guice uses AOP to enhance a method annotated with {@link Transactional @Transactional} with a wrapper.
  * This means the {@link Transactional @Transactional} only works as expected when:
  * <ul>
@@ -71,4 +85,61 @@ public @interface Transactional {
    * the exceptions defined in rollbackOn(). Default is none.
    */
   Class<? extends Throwable>[] ignore() default {};
+
+  /**
+   * Marks the transaction as read only. Default is {@code false}.
+   * <p>
+   * If the persistence provider is hibernate a read only transaction does not flush the entity manager, neither
+   * before queries nor at commit, and the entities are loaded read only so no snapshots for the dirty checking are
+   * kept. Changes made to entities within such a transaction are not written to the database.
+   * <p>
+   * JPA offers no equivalent. For other persistence providers the flush mode is only set to
+   * {@link jakarta.persistence.FlushModeType#COMMIT}. The entity manager is then not flushed before queries but it
+   * is still flushed at commit, so changes made to entities are written to the database.
+   * <p>
+   * The flag only has an effect on the transaction which is actually started. Nested transactions take part in the
+   * running transaction regardless of their flag.
+   */
+  boolean readOnly() default false;
+
+  /**
+   * How the method relates to a transaction which is already running. Default is {@link Propagation#REQUIRED}.
+   */
+  Propagation propagation() default Propagation.REQUIRED;
+
+  /**
+   * Timeout in seconds of the transaction. Default is {@code -1} which uses the default of the persistence unit.
+   * {@code 0} means no timeout.
+   * <p>
+   * Queries are bound by the timeout. A transaction which exceeds its timeout is rolled back instead of committed and
+   * a {@link TransactionTimedOutException} is thrown. Like {@link #readOnly()} the timeout only has an effect on the
+   * transaction which is actually started.
+   */
+  int timeout() default -1;
+
+  /**
+   * A list of exceptions on which to retry the method. Default is none which disables retrying.
+   * <p>
+   * An exception matches if it or one of its causes is an instance of one of the listed classes. This allows
+   * retrying on exceptions which the persistence provider wraps, like a deadlock reported as cause of a
+   * {@link jakarta.persistence.PersistenceException}.
+   * <p>
+   * Retrying only takes place at the outermost transaction boundary. This is where every participating persistence
+   * unit starts its own transaction. Each attempt runs in a new unit of work with a fresh entity manager. A unit of
+   * work which is already active, like the one of a {@link PersistenceFilter}, is suspended meanwhile. A method which
+   * joins a running transaction is never retried. The exception is passed on to the boundary instead.
+   */
+  Class<? extends Throwable>[] retryOn() default {};
+
+  /**
+   * The maximum number of attempts including the first one. Default is {@code 3}. Only used if {@link #retryOn()}
+   * is not empty.
+   */
+  int maxAttempts() default 3;
+
+  /**
+   * The backoff in milliseconds before the first retry. Default is {@code 50}. The backoff is doubled for every
+   * further retry and randomized by up to half of its value.
+   */
+  long retryBackoff() default 50;
 }
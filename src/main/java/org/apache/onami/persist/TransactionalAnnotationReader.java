@@ -23,19 +23,85 @@ import org.aopalliance.intercept.MethodInvocation;
 
 import jakarta.inject.Singleton;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Reader which obtains the concrete {@link Transactional @Transactional} annotation of a method.
+ * <p>
+ * The resolved {@link TransactionAttribute} of every method and target class is cached so the reflective lookup
+ * only happens on the first invocation.
  */
 @Singleton
 class TransactionalAnnotationReader {
 
+  /**
+   * Marker which guice adds to the name of the classes it generates for AOP.
+   */
+  private static final String GUICE_ENHANCER_MARKER = "$$EnhancerByGuice$$";
+
   /**
    * Constant holding a transactional instance with all default values.
    */
   private static final Transactional DEFAULT_TRANSACTIONAL =
       DefaultTransactional.class.getAnnotation(Transactional.class);
 
+  /**
+   * Source of the annotations.
+   */
+  private final TransactionalAnnotationSource annotationSource;
+
+  /**
+   * Cache of the resolved attributes per target class and method.
+   * A {@link ClassValue} gives a lock free lookup of the entries of a target class. Entries are never evicted and the
+   * method keys strongly reference their declaring classes, so the target classes stay reachable as long as this
+   * reader is in use.
+   */
+  private final ClassValue<ConcurrentMap<Method, TransactionAttribute>> attributes =
+      new ClassValue<ConcurrentMap<Method, TransactionAttribute>>() {
+        @Override
+        protected ConcurrentMap<Method, TransactionAttribute> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  /**
+   * Constructor for a reader which obtains the annotations by reflection.
+   */
+  TransactionalAnnotationReader() {
+    this(TransactionalAnnotationSource.REFLECTION);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param annotationSource the source of the annotations.
+   */
+  TransactionalAnnotationReader(TransactionalAnnotationSource annotationSource) {
+    this.annotationSource = checkNotNull(annotationSource, "annotationSource is mandatory!");
+  }
+
+  /**
+   * Reads the resolved {@link TransactionAttribute} of a given method invocation.
+   *
+   * @param methodInvocation the method invocation for which to obtain the {@link TransactionAttribute}.
+   * @return the {@link TransactionAttribute} of the given method invocation. Never {@code null}.
+   */
+  TransactionAttribute readAttributeFrom(MethodInvocation methodInvocation) {
+    final Method method = methodInvocation.getMethod();
+    final Class<?> targetClass = unenhanced(methodInvocation.getThis()
+        .getClass());
+    final ConcurrentMap<Method, TransactionAttribute> attributesOfClass = attributes.get(targetClass);
+    final TransactionAttribute result = attributesOfClass.get(method);
+    if (result != null) {
+      return result;
+    }
+    return attributesOfClass.computeIfAbsent(method,
+        m -> new TransactionAttribute(readAnnotationFrom(m, targetClass)));
+  }
+
   /**
    * Reads the {@link Transactional @Transactional} of a given method invocation.
    *
@@ -43,13 +109,22 @@ class TransactionalAnnotationReader {
    * @return the {@link Transactional @Transactional} of the given method invocation. Never {@code null}.
    */
   Transactional readAnnotationFrom(MethodInvocation methodInvocation) {
+    return readAnnotationFrom(methodInvocation.getMethod(), methodInvocation.getThis()
+        .getClass());
+  }
+
+  /**
+   * Reads the {@link Transactional @Transactional} of a given method on a given target class.
+   *
+   * @param method      the method for which to obtain the {@link Transactional @Transactional}.
+   * @param targetClass the class of the object on which the method is invoked.
+   * @return the {@link Transactional @Transactional} of the given method. Never {@code null}.
+   */
+  private Transactional readAnnotationFrom(Method method, Class<?> targetClass) {
     Transactional result;
-    final Method method = methodInvocation.getMethod();
-    result = method.getAnnotation(Transactional.class);
+    result = annotationSource.onMethod(method);
     if (null == result) {
-      final Class<?> targetClass = methodInvocation.getThis()
-          .getClass();
-      result = targetClass.getAnnotation(Transactional.class);
+      result = annotationSource.onClass(targetClass);
     }
     if (null == result) {
       result = DEFAULT_TRANSACTIONAL;
@@ -57,6 +132,21 @@ class TransactionalAnnotationReader {
     return result;
   }
 
+  /**
+   * Returns the class which was enhanced by guice if the given class has been generated by guice.
+   * The generated subclass inherits the class level annotation so both resolve to the same attributes.
+   *
+   * @param type the class of the object on which a method is invoked.
+   * @return the class written by the user.
+   */
+  private static Class<?> unenhanced(Class<?> type) {
+    if (type.getName()
+        .contains(GUICE_ENHANCER_MARKER)) {
+      return type.getSuperclass();
+    }
+    return type;
+  }
+
   /**
    * Helper class for obtaining the default of {@link Transactional @Transactional}.
    */
@@ -0,0 +1,59 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+
+/**
+ * Source of the {@link Transactional @Transactional} annotations of methods and classes.
+ */
+interface TransactionalAnnotationSource {
+
+  /**
+   * Source reading the annotations by reflection.
+   */
+  TransactionalAnnotationSource REFLECTION = new TransactionalAnnotationSource() {
+    // @Override
+    public Transactional onMethod(Method method) {
+      return method.getAnnotation(Transactional.class);
+    }
+
+    // @Override
+    public Transactional onClass(Class<?> type) {
+      return type.getAnnotation(Transactional.class);
+    }
+  };
+
+  /**
+   * @param method the method to inspect.
+   * @return the annotation present on the method or {@code null}.
+   */
+  @Nullable
+  Transactional onMethod(Method method);
+
+  /**
+   * @param type the class to inspect.
+   * @return the annotation present on the class or inherited from a super class or {@code null}.
+   */
+  @Nullable
+  Transactional onClass(Class<?> type);
+
+}
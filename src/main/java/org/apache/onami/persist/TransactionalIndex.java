@@ -0,0 +1,373 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.onami.persist.processor.TransactionalIndexProcessor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Source of {@link Transactional @Transactional} annotations backed by the index written by the
+ * {@link TransactionalIndexProcessor}.
+ * <p>
+ * Types which are not part of the index are inspected by reflection. Therefore the index may cover only a part of
+ * the application.
+ * <p>
+ * Only annotations found in the index are taken from it. A method or type which the index records as not annotated is
+ * inspected by reflection as well. An index which is stale because a class has been recompiled without the processor
+ * therefore does not hide annotations added in the meantime.
+ */
+final class TransactionalIndex implements TransactionalAnnotationSource {
+
+  /**
+   * Values of the class level annotation by binary type name. Empty if the type is not annotated.
+   */
+  private final Map<String, String> types;
+
+  /**
+   * Values of the method level annotation by method key.
+   */
+  private final Map<String, String> methods;
+
+  /**
+   * Constructor.
+   *
+   * @param types   values of the class level annotation by binary type name.
+   * @param methods values of the method level annotation by method key.
+   */
+  private TransactionalIndex(Map<String, String> types, Map<String, String> methods) {
+    this.types = types;
+    this.methods = methods;
+  }
+
+  /**
+   * Loads and merges all indices visible to the given class loader.
+   *
+   * @param classLoader the class loader to use for finding the indices. Must not be {@code null}.
+   * @return the loaded index.
+   */
+  static TransactionalIndex load(ClassLoader classLoader) {
+    checkNotNull(classLoader, "classLoader is mandatory!");
+    final Map<String, String> types = new HashMap<>();
+    final Map<String, String> methods = new HashMap<>();
+    try {
+      final Enumeration<URL> resources = classLoader.getResources(TransactionalIndexProcessor.INDEX_RESOURCE);
+      while (resources.hasMoreElements()) {
+        read(resources.nextElement(), types, methods);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("could not read " + TransactionalIndexProcessor.INDEX_RESOURCE, e);
+    }
+    return new TransactionalIndex(types, methods);
+  }
+
+  private static void read(URL url, Map<String, String> types, Map<String, String> methods) throws IOException {
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.length() < 2) {
+          continue;
+        }
+        final int tab = line.indexOf('\t');
+        final String key = tab < 0 ? line.substring(2) : line.substring(2, tab);
+        final String values = tab < 0 ? "" : line.substring(tab + 1);
+        if (line.charAt(0) == 'T') {
+          types.put(key, values);
+        } else if (line.charAt(0) == 'M') {
+          methods.put(key, values);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param type the type to check.
+   * @return {@code true} if the type has been indexed.
+   */
+  boolean covers(Class<?> type) {
+    return types.containsKey(type.getName());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public Transactional onMethod(Method method) {
+    final Class<?> declaringClass = method.getDeclaringClass();
+    if (covers(declaringClass)) {
+      final String values = methods.get(declaringClass.getName() + "#" + signatureOf(method));
+      if (values != null) {
+        return annotation(values, declaringClass.getClassLoader());
+      }
+    }
+    return method.getAnnotation(Transactional.class);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public Transactional onClass(Class<?> type) {
+    for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+      final String values = types.get(current.getName());
+      if (values != null && !values.isEmpty()) {
+        return annotation(values, current.getClassLoader());
+      }
+      final Transactional transactional = current.getDeclaredAnnotation(Transactional.class);
+      if (transactional != null) {
+        return transactional;
+      }
+    }
+    return null;
+  }
+
+  private static String signatureOf(Method method) {
+    final List<String> parameterTypes = new ArrayList<>();
+    for (Class<?> parameterType : method.getParameterTypes()) {
+      parameterTypes.add(parameterType.getTypeName());
+    }
+    return method.getName() + "(" + String.join(",", parameterTypes) + ")";
+  }
+
+  /**
+   * Creates an instance of {@link Transactional @Transactional} holding the given values.
+   *
+   * @param values      the encoded values as written by the {@link TransactionalIndexProcessor}.
+   * @param classLoader the class loader for resolving class values.
+   * @return the annotation.
+   */
+  private static Transactional annotation(String values, ClassLoader classLoader) {
+    final Map<String, Object> decoded = new HashMap<>();
+    for (String entry : values.split(";")) {
+      final int eq = entry.indexOf('=');
+      final String name = entry.substring(0, eq);
+      final String payload = entry.substring(entry.indexOf(':', eq) + 1);
+      try {
+        final Method member = Transactional.class.getMethod(name);
+        decoded.put(name, decode(payload, member.getReturnType(), classLoader));
+      } catch (NoSuchMethodException e) {
+        // written by a different version of the library. the default value is used instead.
+      }
+    }
+    return (Transactional) Proxy.newProxyInstance(Transactional.class.getClassLoader(),
+        new Class<?>[] {Transactional.class}, new IndexedAnnotationHandler(decoded));
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object decode(String payload, Class<?> type, ClassLoader classLoader) {
+    if (type.isArray()) {
+      final String[] elements = payload.isEmpty() ? new String[0] : payload.split(",");
+      final Object result = Array.newInstance(type.getComponentType(), elements.length);
+      for (int i = 0; i < elements.length; i++) {
+        Array.set(result, i, decode(elements[i], type.getComponentType(), classLoader));
+      }
+      return result;
+    }
+    if (type == Class.class) {
+      try {
+        return Class.forName(payload, false, classLoader);
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException("the transactional index refers to the unknown class " + payload, e);
+      }
+    }
+    if (type.isEnum()) {
+      return Enum.valueOf((Class<? extends Enum>) type, payload);
+    }
+    if (type == boolean.class) {
+      return Boolean.valueOf(payload);
+    }
+    if (type == int.class) {
+      return Integer.valueOf(payload);
+    }
+    if (type == long.class) {
+      return Long.valueOf(payload);
+    }
+    throw new IllegalArgumentException("unsupported annotation member type " + type);
+  }
+
+  /**
+   * Invocation handler backing an indexed {@link Transactional @Transactional}. Implements {@code equals},
+   * {@code hashCode} and {@code toString} as specified by {@link java.lang.annotation.Annotation}, so the proxy is
+   * interchangeable with the annotation obtained by reflection.
+   */
+  private static final class IndexedAnnotationHandler implements InvocationHandler {
+
+    /**
+     * The members of {@link Transactional @Transactional} ordered by name.
+     */
+    private static final Method[] MEMBERS = members();
+
+    /**
+     * Values of all members including the defaults, in the order of {@link #MEMBERS}.
+     */
+    private final Object[] values;
+
+    IndexedAnnotationHandler(Map<String, Object> values) {
+      this.values = new Object[MEMBERS.length];
+      for (int i = 0; i < MEMBERS.length; i++) {
+        final String name = MEMBERS[i].getName();
+        this.values[i] = values.containsKey(name) ? values.get(name) : MEMBERS[i].getDefaultValue();
+      }
+    }
+
+    private static Method[] members() {
+      final Method[] members = Transactional.class.getDeclaredMethods();
+      Arrays.sort(members, Comparator.comparing(Method::getName));
+      return members;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    // @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+      final String name = method.getName();
+      if ("equals".equals(name) && method.getParameterCount() == 1) {
+        return equalTo(proxy, args[0]);
+      }
+      if (method.getParameterCount() != 0) {
+        throw new AssertionError("unexpected method " + method);
+      }
+      if ("annotationType".equals(name)) {
+        return Transactional.class;
+      }
+      if ("hashCode".equals(name)) {
+        return hash();
+      }
+      if ("toString".equals(name)) {
+        return describe();
+      }
+      for (int i = 0; i < MEMBERS.length; i++) {
+        if (MEMBERS[i].getName()
+            .equals(name)) {
+          return copyOf(values[i]);
+        }
+      }
+      throw new AssertionError("unexpected method " + method);
+    }
+
+    private boolean equalTo(Object proxy, Object other) throws Exception {
+      if (proxy == other) {
+        return true;
+      }
+      if (!(other instanceof Transactional)) {
+        return false;
+      }
+      for (int i = 0; i < MEMBERS.length; i++) {
+        if (!Objects.deepEquals(values[i], MEMBERS[i].invoke(other))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int hash() {
+      int result = 0;
+      for (int i = 0; i < MEMBERS.length; i++) {
+        result += (127 * MEMBERS[i].getName()
+            .hashCode()) ^ hashOf(values[i]);
+      }
+      return result;
+    }
+
+    private String describe() {
+      final StringBuilder sb = new StringBuilder("@").append(Transactional.class.getName())
+          .append('(');
+      for (int i = 0; i < MEMBERS.length; i++) {
+        if (i > 0) {
+          sb.append(", ");
+        }
+        sb.append(MEMBERS[i].getName())
+            .append('=');
+        if (values[i].getClass()
+            .isArray()) {
+          sb.append('{');
+          for (int j = 0; j < Array.getLength(values[i]); j++) {
+            if (j > 0) {
+              sb.append(", ");
+            }
+            sb.append(describe(Array.get(values[i], j)));
+          }
+          sb.append('}');
+        } else {
+          sb.append(describe(values[i]));
+        }
+      }
+      return sb.append(')')
+          .toString();
+    }
+
+    private static String describe(Object value) {
+      return value instanceof Class ? ((Class<?>) value).getName() + ".class" : String.valueOf(value);
+    }
+
+    /**
+     * @param value a member value.
+     * @return the hash code of the value. For arrays the same as {@link Arrays#hashCode(Object[])} and its primitive
+     * overloads.
+     */
+    private static int hashOf(Object value) {
+      if (!value.getClass()
+          .isArray()) {
+        return value.hashCode();
+      }
+      int result = 1;
+      for (int i = 0; i < Array.getLength(value); i++) {
+        result = 31 * result + Objects.hashCode(Array.get(value, i));
+      }
+      return result;
+    }
+
+    /**
+     * @param value a member value.
+     * @return a copy of the value if it is an array, otherwise the value itself.
+     */
+    private static Object copyOf(Object value) {
+      if (value != null && value.getClass()
+          .isArray()) {
+        final int length = Array.getLength(value);
+        final Object copy = Array.newInstance(value.getClass()
+            .getComponentType(), length);
+        System.arraycopy(value, 0, copy, 0, length);
+        return copy;
+      }
+      return value;
+    }
+  }
+
+}
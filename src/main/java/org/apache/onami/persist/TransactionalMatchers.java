@@ -0,0 +1,137 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.matcher.Matcher;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Matchers for binding the {@link TxnInterceptor} only to classes and methods for which at least one of the
+ * configured persistence units participates in a transaction.
+ * <p>
+ * The {@link Transactional#onUnits()} are evaluated when the injector is created. Methods for which no configured
+ * unit participates are not enhanced by guice at all.
+ */
+final class TransactionalMatchers {
+
+  /**
+   * The annotations of all configured persistence units. Contains {@code null} for an unannotated unit.
+   */
+  private final List<Class<? extends Annotation>> puAnnotations;
+
+  /**
+   * Source of the annotations.
+   */
+  private final TransactionalAnnotationSource annotationSource;
+
+  /**
+   * Constructor.
+   *
+   * @param puAnnotations    the annotations of all configured persistence units. May contain {@code null} for an
+   *                         unannotated unit.
+   * @param annotationSource the source of the annotations.
+   */
+  TransactionalMatchers(Collection<Class<? extends Annotation>> puAnnotations,
+      TransactionalAnnotationSource annotationSource) {
+    this.puAnnotations = new ArrayList<>(checkNotNull(puAnnotations, "puAnnotations is mandatory!"));
+    this.annotationSource = checkNotNull(annotationSource, "annotationSource is mandatory!");
+  }
+
+  /**
+   * @return matcher for classes annotated with {@link Transactional @Transactional} on which at least one configured
+   * persistence unit participates.
+   */
+  Matcher<Class<?>> annotatedClassesWithParticipatingUnits() {
+    return new Matcher<Class<?>>() {
+      @Override
+      public boolean matches(Class<?> type) {
+        return anyUnitParticipatesIn(annotationSource.onClass(type));
+      }
+
+      @Override
+      public String toString() {
+        return "annotatedClassesWithParticipatingUnits(" + puAnnotations + ")";
+      }
+    };
+  }
+
+  /**
+   * @return matcher for methods annotated with {@link Transactional @Transactional} on which at least one configured
+   * persistence unit participates.
+   */
+  Matcher<Method> annotatedMethodsWithParticipatingUnits() {
+    return new Matcher<Method>() {
+      @Override
+      public boolean matches(Method method) {
+        return anyUnitParticipatesIn(annotationSource.onMethod(method));
+      }
+
+      @Override
+      public String toString() {
+        return "annotatedMethodsWithParticipatingUnits(" + puAnnotations + ")";
+      }
+    };
+  }
+
+  /**
+   * The method level annotation takes precedence over the class level annotation. Annotated methods of an annotated
+   * class are therefore left to {@link #annotatedMethodsWithParticipatingUnits()}.
+   *
+   * @return matcher for methods not annotated with {@link Transactional @Transactional}.
+   */
+  Matcher<Method> unannotatedMethods() {
+    return new Matcher<Method>() {
+      @Override
+      public boolean matches(Method method) {
+        return annotationSource.onMethod(method) == null;
+      }
+
+      @Override
+      public String toString() {
+        return "unannotatedMethods()";
+      }
+    };
+  }
+
+  /**
+   * @param transactional the annotation to evaluate. May be {@code null}.
+   * @return {@code true} if the annotation is present and at least one configured persistence unit participates.
+   */
+  private boolean anyUnitParticipatesIn(Transactional transactional) {
+    if (transactional == null) {
+      return false;
+    }
+    final TransactionAttribute attribute = new TransactionAttribute(transactional);
+    for (Class<? extends Annotation> puAnnotation : puAnnotations) {
+      if (attribute.participates(puAnnotation)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -19,42 +19,93 @@ package org.apache.onami.persist;
  * under the License.
  */
 
-import com.google.common.annotations.VisibleForTesting;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
-import org.apache.onami.persist.TransactionStateObserver.TransactionHolder;
 
 import jakarta.inject.Inject;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Interceptor for methods and classes annotated with {@link Transactional @Transactional} annotation.
+ * <p>
+ * A single interceptor handles all persistence units of a {@link PersistenceModule}. The participating units are
+ * resolved once per distinct {@link Transactional#onUnits()} and are then begun and completed within one frame.
+ * The units are completed in reverse order as if each one had its own nested interceptor.
+ * <p>
+ * A failed invocation is retried according to {@link Transactional#retryOn()} if every participating unit started a
+ * unit of work of its own.
+ * <p>
+ * A method declared to return a {@link CompletionStage} or {@link CompletableFuture} keeps its units of work and
+ * transactions open until the returned stage has completed, provided every participating unit started a unit of work
+ * of its own. They are completed by the thread completing the stage. The caller receives a stage which completes
+ * after the transactions have been committed or rolled back.
  */
 class TxnInterceptor implements MethodInterceptor {
 
   /**
-   * Unit of work.
+   * All persistence units which may take part in a transaction.
+   */
+  private final TxnParticipant[] participants;
+
+  /**
+   * Reader for the resolved {@link Transactional @Transactional} of the invoked methods.
+   */
+  private final TransactionalAnnotationReader txnAnnoReader;
+
+  /**
+   * Storage of the per thread state of the persistence units.
+   */
+  private final ContextStorage contextStorage;
+
+  /**
+   * Upper bound of the backoff between two attempts in milliseconds.
    */
-  private UnitOfWork unitOfWork;
+  private static final long MAX_RETRY_BACKOFF = TimeUnit.SECONDS.toMillis(10);
 
-  private TransactionStateObserver transactionStateObserver;
   /**
-   * Factory for {@link TransactionFacade}.
+   * Receiver of the measurements.
    */
-  private TransactionFacadeFactory tfProvider;
+  private PersistenceMetrics metrics = PersistenceMetrics.NOOP;
 
   /**
-   * Helper for working with the concrete transactional annotations on methods and classes.
+   * The participating persistence units per value of {@link Transactional#onUnits()}.
    */
-  private TransactionalAnnotationHelper txnAnnotationHelper;
+  private final ConcurrentMap<Set<Class<? extends Annotation>>, TxnParticipant[]> participantsByUnits =
+      new ConcurrentHashMap<>();
 
+  /**
+   * Constructor.
+   *
+   * @param participants   all persistence units which may take part in a transaction.
+   * @param txnAnnoReader  reader for {@link Transactional @Transactional} annotations.
+   * @param contextStorage storage of the per thread state of the persistence units.
+   */
+  TxnInterceptor(List<TxnParticipant> participants, TransactionalAnnotationReader txnAnnoReader,
+      ContextStorage contextStorage) {
+    this.participants = checkNotNull(participants, "participants is mandatory!").toArray(new TxnParticipant[0]);
+    this.txnAnnoReader = checkNotNull(txnAnnoReader, "txnAnnoReader is mandatory!");
+    this.contextStorage = checkNotNull(contextStorage, "contextStorage is mandatory!");
+  }
+
+  /**
+   * @param metrics receiver of the measurements.
+   */
   @Inject
-  @VisibleForTesting
-  void init(UnitOfWork unitOfWork, TransactionStateObserver transactionStateObserver, TransactionFacadeFactory tfProvider,
-      TransactionalAnnotationHelper txnAnnotationHelper) {
-    this.unitOfWork = unitOfWork;
-    this.transactionStateObserver = transactionStateObserver;
-    this.tfProvider = tfProvider;
-    this.txnAnnotationHelper = txnAnnotationHelper;
+  void setMetrics(PersistenceMetrics metrics) {
+    this.metrics = checkNotNull(metrics, "metrics is mandatory!");
   }
 
   /**
@@ -62,138 +113,219 @@ class TxnInterceptor implements MethodInterceptor {
    */
   // @Override
   public final Object invoke(MethodInvocation methodInvocation) throws Throwable {
-    if (persistenceUnitParticipatesInTransactionFor(methodInvocation)) {
-      return invokeInTransactionAndUnitOfWork(methodInvocation);
-    } else {
+    final TransactionAttribute attribute = txnAnnoReader.readAttributeFrom(methodInvocation);
+    final TxnParticipant[] participating = participantsFor(attribute);
+    if (participating.length == 0) {
       return methodInvocation.proceed();
     }
-
+    try (ContextStorage.Scope scope = contextStorage.openScope()) {
+      if (attribute.isRetryEnabled() && allStartOwnTransaction(attribute, participating)) {
+        return invokeWithRetry(methodInvocation, attribute, participating);
+      }
+      return invokeInTransactionAndUnitOfWork(methodInvocation, attribute, participating, false);
+    }
   }
 
-  /**
-   * Decides if the current persistence unit participates in a transaction for the given method invocation.
-   * For a detailed description of when a persistence unit participates see the documentation at the
-   * {@link Transactional @Transactional} annotation.
-   *
-   * @param methodInvocation the method invocation which may be wrapped in a transaction.
-   * @return {@code true} if the current persistence unit participates in a transaction for the given method.
-   */
-  private boolean persistenceUnitParticipatesInTransactionFor(MethodInvocation methodInvocation) {
-    return txnAnnotationHelper.persistenceUnitParticipatesInTransactionFor(methodInvocation);
+  private static boolean allStartOwnTransaction(TransactionAttribute attribute, TxnParticipant[] participating) {
+    for (TxnParticipant participant : participating) {
+      if (!participant.startsOwnTransaction(attribute)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
-   * Invokes the original method within a unit of work and a transaction.
+   * Invokes the original method until it succeeds, fails with an exception which is not retried or the maximum
+   * number of attempts has been reached. Every attempt runs in new units of work and transactions. Units of work of
+   * the caller are suspended meanwhile.
    *
    * @param methodInvocation the method to be executed within the transaction
+   * @param attribute        the resolved {@link Transactional @Transactional} of the invoked method.
+   * @param participating    the persistence units participating in the transaction.
    * @return the result of the invocation of the original method.
-   * @throws Throwable if an exception occurs during the call to the original method.
+   * @throws Throwable the exception of the last attempt.
    */
-  private Object invokeInTransactionAndUnitOfWork(MethodInvocation methodInvocation) throws Throwable {
-    final boolean weStartedTheUnitOfWork = !unitOfWork.isActive();
-    if (weStartedTheUnitOfWork) {
-      unitOfWork.begin();
-    }
-
-    Throwable originalException = null;
-    try {
-      return invokeInTransaction(methodInvocation);
-    } catch (Throwable exc) {
-      originalException = exc;
-      throw exc;
-    } finally {
-      if (weStartedTheUnitOfWork) {
-        endUnitOfWork(originalException);
+  private Object invokeWithRetry(MethodInvocation methodInvocation, TransactionAttribute attribute,
+      TxnParticipant[] participating) throws Throwable {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return invokeInTransactionAndUnitOfWork(methodInvocation, attribute, participating, true);
+      } catch (Throwable exc) {
+        if (attempt >= attribute.getMaxAttempts() || !attribute.isRetryNecessaryFor(exc)) {
+          throw exc;
+        }
+        final long start = System.nanoTime();
+        try {
+          TimeUnit.MILLISECONDS.sleep(backoffFor(attribute, attempt));
+        } catch (InterruptedException e) {
+          Thread.currentThread()
+              .interrupt();
+          throw exc;
+        }
+        metrics.transactionRetried(methodInvocation.getMethod(), attempt + 1, exc, System.nanoTime() - start);
       }
     }
   }
 
   /**
-   * Ends the unit of work. If an exception occurs while ending the unit of work it is neglected in preference of an
-   * original exception.
+   * Exponential backoff with jitter. The backoff is doubled for every attempt and then reduced by a random amount
+   * of up to half of its value, so that concurrent callers which failed together do not retry together.
    *
-   * @param originalException the original exception. will be thrown in preference to an exception occurring during
-   *                          execution of this method.
-   * @throws Throwable if an exception happened while ending the unit of work.
+   * @param attribute the resolved {@link Transactional @Transactional} of the invoked method.
+   * @param attempt   the number of the failed attempt.
+   * @return the backoff in milliseconds.
    */
-  private void endUnitOfWork(Throwable originalException) throws Throwable {
-    try {
-      unitOfWork.end();
-    } catch (Throwable exc) {
-      if (originalException != null) {
-        throw originalException;
-      } else {
-        throw exc;
-      }
+  static long backoffFor(TransactionAttribute attribute, int attempt) {
+    final long base = Math.max(0, attribute.getRetryBackoff());
+    final long backoff = Math.min(MAX_RETRY_BACKOFF, base << Math.min(attempt - 1, 20));
+    if (backoff <= 1) {
+      return backoff;
     }
+    return backoff - ThreadLocalRandom.current()
+        .nextLong(backoff / 2 + 1);
   }
 
   /**
-   * Invoke the original method within a transaction.
+   * Returns the persistence units which participate in a transaction with the given attribute.
+   * For a detailed description of when a persistence unit participates see the documentation at the
+   * {@link Transactional @Transactional} annotation.
    *
-   * @param methodInvocation the original method invocation.
-   * @return the result of the invocation of the original method.
-   * @throws Throwable if an exception occurs during the call to the original method.
+   * @param attribute the resolved {@link Transactional @Transactional} of the invoked method.
+   * @return the participating persistence units in the order in which they were configured.
    */
-  private Object invokeInTransaction(MethodInvocation methodInvocation) throws Throwable {
-    final TransactionFacade transactionFacade = tfProvider.createTransactionFacade();
-    try (TransactionHolder ignored = transactionStateObserver.withTransaction(transactionFacade)) {
-      transactionFacade.begin();
-      final Object result = invokeAndHandleException(methodInvocation, transactionFacade);
-      transactionFacade.commit();
+  private TxnParticipant[] participantsFor(TransactionAttribute attribute) {
+    final Set<Class<? extends Annotation>> onUnits = attribute.getOnUnits();
+    final TxnParticipant[] result = participantsByUnits.get(onUnits);
+    if (result != null) {
       return result;
     }
+    return participantsByUnits.computeIfAbsent(onUnits, units -> resolveParticipants(attribute));
+  }
+
+  private TxnParticipant[] resolveParticipants(TransactionAttribute attribute) {
+    final List<TxnParticipant> result = new ArrayList<>();
+    for (TxnParticipant participant : participants) {
+      if (participant.participatesIn(attribute)) {
+        result.add(participant);
+      }
+    }
+    return result.toArray(new TxnParticipant[0]);
   }
 
   /**
-   * Invoke the original method assuming a transaction has already been started.
-   * This method is responsible of calling rollback if necessary.
-   *
-   * @param methodInvocation  the original method invocation.
-   * @param transactionFacade the facade to the underlying resource local or jta transaction.
-   * @return the result of the invocation of the original method.
-   * @throws Throwable if an exception occurs during the call to the original method.
+   * @param method the invoked method.
+   * @return {@code true} if the method is declared to return a {@link CompletionStage} which can be replaced by a
+   * {@link CompletableFuture}.
    */
-  private Object invokeAndHandleException(MethodInvocation methodInvocation, TransactionFacade transactionFacade)
-      throws Throwable {
-    try {
-      return methodInvocation.proceed();
-    } catch (Throwable exc) {
-      handleException(methodInvocation, transactionFacade, exc);
-      throw exc;
+  private static boolean returnsCompletionStage(Method method) {
+    final Class<?> returnType = method.getReturnType();
+    return CompletionStage.class.isAssignableFrom(returnType) && returnType.isAssignableFrom(CompletableFuture.class);
+  }
+
+  private static boolean allDetachable(TxnParticipant[] participating, TxnParticipant.Frame[] frames) {
+    for (int i = 0; i < participating.length; i++) {
+      if (!participating[i].isDetachable(frames[i])) {
+        return false;
+      }
     }
+    return true;
   }
 
   /**
-   * Handles the case that an exception was thrown by the original method.
+   * Keeps the units of work and transactions open until the stage returned by the original method has completed.
+   * They are detached from the current thread and completed by the thread which completes the stage.
    *
-   * @param methodInvocation  the original method invocation.
-   * @param transactionFacade the facade to the underlying resource local or jta transaction.
-   * @param exc               the exception thrown by the original method.
+   * @param stage         the stage returned by the original method.
+   * @param attribute     the resolved {@link Transactional @Transactional} of the invoked method.
+   * @param participating the persistence units participating in the transaction.
+   * @param frames        the transactions begun for the participating persistence units.
+   * @return a stage which completes after the transactions have been completed.
+   * @throws Throwable if the transactions could not be detached. They have been completed in this case.
    */
-  private void handleException(MethodInvocation methodInvocation, TransactionFacade transactionFacade, Throwable exc)
+  private static CompletionStage<Object> completeOnCompletionOf(CompletionStage<?> stage,
+      TransactionAttribute attribute, TxnParticipant[] participating, TxnParticipant.Frame[] frames)
       throws Throwable {
+    final TxnParticipant.DetachedFrame[] detached = new TxnParticipant.DetachedFrame[frames.length];
+    int i = 0;
     try {
-      if (isRollbackNecessaryFor(methodInvocation, exc)) {
-        transactionFacade.rollback();
-      } else {
-        transactionFacade.commit();
+      for (; i < participating.length; i++) {
+        detached[i] = participating[i].detach(frames[i]);
+      }
+    } catch (Throwable detachExc) {
+      Throwable exc = detachExc;
+      for (int j = participating.length - 1; j >= i; j--) {
+        exc = participating[j].complete(frames[j], attribute, exc);
+      }
+      for (int j = i - 1; j >= 0; j--) {
+        exc = participating[j].completeDetached(detached[j], attribute, exc);
       }
-    } catch (Exception swallowedException) {
-      // swallow exception from transaction facade in favor of th exception thrown by the original method.
       throw exc;
     }
+
+    final CompletableFuture<Object> completion = new CompletableFuture<>();
+    stage.whenComplete((value, failure) -> {
+      Throwable exc = failure instanceof CompletionException && failure.getCause() != null ?
+          failure.getCause() :
+          failure;
+      for (int j = participating.length - 1; j >= 0; j--) {
+        exc = participating[j].completeDetached(detached[j], attribute, exc);
+      }
+      if (exc == null) {
+        completion.complete(value);
+      } else {
+        completion.completeExceptionally(exc);
+      }
+    });
+    return completion;
   }
 
   /**
-   * Decides if a rollback is necessary for the given method invocation and a thrown exception.
+   * Invokes the original method within a unit of work and a transaction of every participating persistence unit.
    *
-   * @param methodInvocation the method invocation during which an exception was thrown.
-   * @param exc              the exception which was thrown
-   * @return {@code true} if the transaction needs to be rolled back.
+   * @param methodInvocation the method to be executed within the transaction
+   * @param attribute        the resolved {@link Transactional @Transactional} of the invoked method.
+   * @param participating    the persistence units participating in the transaction.
+   * @param ownUnitOfWork    {@code true} to run in new units of work even if units of work are active.
+   * @return the result of the invocation of the original method.
+   * @throws Throwable if an exception occurs during the call to the original method or while completing the
+   *                   transactions.
    */
-  private boolean isRollbackNecessaryFor(MethodInvocation methodInvocation, Throwable exc) {
-    return txnAnnotationHelper.isRollbackNecessaryFor(methodInvocation, exc);
+  private Object invokeInTransactionAndUnitOfWork(MethodInvocation methodInvocation, TransactionAttribute attribute,
+      TxnParticipant[] participating, boolean ownUnitOfWork) throws Throwable {
+    final TxnParticipant.Frame[] frames = new TxnParticipant.Frame[participating.length];
+    Throwable exc = null;
+    int begun = 0;
+    try {
+      for (; begun < participating.length; begun++) {
+        frames[begun] = participating[begun].begin(attribute, ownUnitOfWork);
+      }
+    } catch (Throwable beginExc) {
+      exc = beginExc;
+    }
+
+    Object result = null;
+    if (exc == null) {
+      try {
+        result = methodInvocation.proceed();
+      } catch (Throwable originalExc) {
+        exc = originalExc;
+      }
+    }
+
+    if (result instanceof CompletionStage && returnsCompletionStage(methodInvocation.getMethod())
+        && allDetachable(participating, frames)) {
+      return completeOnCompletionOf((CompletionStage<?>) result, attribute, participating, frames);
+    }
+
+    for (int i = begun - 1; i >= 0; i--) {
+      exc = participating[i].complete(frames[i], attribute, exc);
+    }
+
+    if (exc != null) {
+      throw exc;
+    }
+    return result;
   }
 
 }
@@ -0,0 +1,426 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.onami.persist.TransactionFacadeFactory.SuspendedTransaction;
+import org.apache.onami.persist.TransactionStateObserver.SuspendedUnitOfWork;
+import org.apache.onami.persist.TransactionStateObserver.TransactionHolder;
+
+import jakarta.inject.Inject;
+import java.lang.annotation.Annotation;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A single persistence unit taking part in the transactions started by the {@link TxnInterceptor}.
+ * <p>
+ * One instance exists per persistence unit. The dependencies are injected from within the private module of the
+ * persistence unit.
+ */
+class TxnParticipant {
+
+  /**
+   * Unit of work.
+   */
+  private UnitOfWork unitOfWork;
+
+  private TransactionStateObserver transactionStateObserver;
+
+  /**
+   * Factory for {@link TransactionFacade}.
+   */
+  private TransactionFacadeFactory tfProvider;
+
+  /**
+   * Annotation of the persistence unit. May be {@code null}.
+   */
+  private Class<? extends Annotation> puAnnotation;
+
+  /**
+   * Receiver of the measurements.
+   */
+  private PersistenceMetrics metrics = PersistenceMetrics.NOOP;
+
+  @Inject
+  @VisibleForTesting
+  void init(UnitOfWork unitOfWork, TransactionStateObserver transactionStateObserver, TransactionFacadeFactory tfProvider,
+      AnnotationHolder annotationHolder) {
+    this.unitOfWork = unitOfWork;
+    this.transactionStateObserver = transactionStateObserver;
+    this.tfProvider = tfProvider;
+    this.puAnnotation = annotationHolder.getAnnotation();
+  }
+
+  /**
+   * @param metrics receiver of the measurements.
+   */
+  @Inject
+  void setMetrics(PersistenceMetrics metrics) {
+    this.metrics = checkNotNull(metrics, "metrics is mandatory!");
+  }
+
+  /**
+   * @return the unit of work of this persistence unit.
+   */
+  UnitOfWork getUnitOfWork() {
+    return unitOfWork;
+  }
+
+  /**
+   * Begins a unit of work on the current thread whose entity manager is in read only mode.
+   */
+  void beginReadOnlyUnitOfWork() {
+    transactionStateObserver.beginReadOnly();
+  }
+
+  /**
+   * Decides if this persistence unit participates in a transaction with the given attributes.
+   *
+   * @param attribute the resolved {@link Transactional @Transactional} of the invoked method.
+   * @return {@code true} if this persistence unit participates in the transaction.
+   */
+  boolean participatesIn(TransactionAttribute attribute) {
+    return attribute.participates(puAnnotation);
+  }
+
+  /**
+   * Decides if {@link #begin(TransactionAttribute)} would start a transaction of its own instead of joining a running
+   * one. This is the case if no transaction is running or if the running transaction is suspended.
+   *
+   * @param attribute the resolved {@link Transactional @Transactional} of the invoked method.
+   * @return {@code true} if the invocation is the outermost transaction boundary of this persistence unit.
+   */
+  boolean startsOwnTransaction(TransactionAttribute attribute) {
+    return !unitOfWork.isActive() || !tfProvider.isTransactionActive() || attribute.getPropagation()
+        .suspendsRunningTransaction();
+  }
+
+  /**
+   * Begins the unit of work (if not already active) and the transaction of this persistence unit.
+   * A running transaction is suspended together with its unit of work if the propagation requires it.
+   * If beginning fails everything which has been started is cleaned up before the exception is thrown.
+   *
+   * @param attribute the resolved {@link Transactional @Transactional} of the invoked method.
+   * @return the started transaction which must be passed to {@link #complete(Frame, TransactionAttribute, Throwable)}.
+   * @throws Throwable if the unit of work or the transaction could not be started.
+   */
+  Frame begin(TransactionAttribute attribute) throws Throwable {
+    return begin(attribute, false);
+  }
+
+  /**
+   * Begins the transaction of this persistence unit like {@link #begin(TransactionAttribute)}. Optionally an active
+   * unit of work is suspended, even if no transaction is running, so that the transaction runs with a fresh entity
+   * manager.
+   *
+   * @param attribute     the resolved {@link Transactional @Transactional} of the invoked method.
+   * @param ownUnitOfWork {@code true} to always begin a unit of work of its own.
+   * @return the started transaction which must be passed to {@link #complete(Frame, TransactionAttribute, Throwable)}.
+   * @throws Throwable if the unit of work or the transaction could not be started.
+   */
+  Frame begin(TransactionAttribute attribute, boolean ownUnitOfWork) throws Throwable {
+    final long begunAt = System.nanoTime();
+    boolean weStartedTheUnitOfWork = !unitOfWork.isActive();
+    if (weStartedTheUnitOfWork) {
+      unitOfWork.begin();
+    }
+
+    SuspendedTransaction suspendedTransaction = null;
+    SuspendedUnitOfWork suspendedUnitOfWork = null;
+    TransactionHolder holder = null;
+    try {
+      final boolean suspendsTransaction = attribute.getPropagation()
+          .suspendsRunningTransaction() && tfProvider.isTransactionActive();
+      if (suspendsTransaction) {
+        suspendedTransaction = tfProvider.suspendTransaction();
+      }
+      if ((suspendsTransaction || ownUnitOfWork) && !weStartedTheUnitOfWork) {
+        suspendedUnitOfWork = transactionStateObserver.suspend();
+        unitOfWork.begin();
+        weStartedTheUnitOfWork = true;
+      }
+
+      final TransactionFacade transactionFacade = tfProvider.createTransactionFacade(attribute);
+      holder = transactionStateObserver.withTransaction(transactionFacade);
+      transactionFacade.begin();
+      final Frame frame = new Frame(weStartedTheUnitOfWork, transactionFacade, holder, suspendedUnitOfWork,
+          suspendedTransaction, begunAt);
+      if (holder.getDepth() > 0) {
+        metrics.transactionBegun(puAnnotation, holder.getDepth(), System.nanoTime() - begunAt);
+      }
+      return frame;
+    } catch (Throwable exc) {
+      Throwable result = closeHolder(holder, exc);
+      if (weStartedTheUnitOfWork) {
+        result = endUnitOfWork(result);
+      }
+      throw resume(suspendedUnitOfWork, suspendedTransaction, result);
+    }
+  }
+
+  /**
+   * Completes the transaction and ends the unit of work if it was started by {@link #begin(TransactionAttribute)}.
+   * A transaction suspended by {@link #begin(TransactionAttribute)} is resumed afterwards.
+   * <p>
+   * The transaction is committed if no exception was thrown. Otherwise it is rolled back or committed depending on
+   * the rollback rules of the given attribute. Exceptions occurring while completing are neglected in preference of
+   * the given exception.
+   *
+   * @param frame     the frame returned by {@link #begin(TransactionAttribute)}.
+   * @param attribute the resolved {@link Transactional @Transactional} of the invoked method.
+   * @param exc       the exception thrown by the original method or by an inner participant. May be {@code null}.
+   * @return the exception to propagate to the caller. {@code null} if the invocation completed successfully.
+   */
+  Throwable complete(Frame frame, TransactionAttribute attribute, Throwable exc) {
+    Throwable result = exc;
+    final long completingAt = System.nanoTime();
+    // the outcome of the transaction, which may have been committed even if the commit threw an exception
+    boolean committed = false;
+    if (exc == null) {
+      try {
+        frame.transactionFacade.commit();
+      } catch (Throwable commitExc) {
+        result = commitExc;
+      }
+      committed = frame.transactionFacade.isCommitted();
+    } else {
+      try {
+        if (attribute.isRollbackNecessaryFor(exc)) {
+          frame.transactionFacade.rollback();
+        } else {
+          frame.transactionFacade.commit();
+          committed = frame.transactionFacade.isCommitted();
+        }
+      } catch (Exception swallowedException) {
+        // swallow exception from transaction facade in favor of the exception thrown by the original method.
+        committed = frame.transactionFacade.isCommitted();
+      }
+    }
+    reportCompletion(frame, committed, completingAt);
+
+    result = closeHolder(frame.holder, result);
+    if (frame.weStartedTheUnitOfWork) {
+      result = endUnitOfWork(result);
+    }
+    return resume(frame.suspendedUnitOfWork, frame.suspendedTransaction, result);
+  }
+
+  /**
+   * Reports the completion of a transaction to the metrics. Frames running without a transaction are not reported.
+   *
+   * @param frame        the completed frame.
+   * @param committed    {@code true} if the transaction has been committed.
+   * @param completingAt the time when the completion started.
+   */
+  private void reportCompletion(Frame frame, boolean committed, long completingAt) {
+    final int depth = frame.holder.getDepth();
+    if (depth == 0) {
+      return;
+    }
+    final long completedAt = System.nanoTime();
+    if (committed) {
+      metrics.transactionCommitted(puAnnotation, depth, completedAt - completingAt, completedAt - frame.begunAt);
+    } else {
+      metrics.transactionRolledBack(puAnnotation, depth, completedAt - completingAt, completedAt - frame.begunAt);
+    }
+  }
+
+  /**
+   * Decides if the transaction of the given frame can be detached from the current thread. This is the case if the
+   * unit of work was started by {@link #begin(TransactionAttribute)}, nothing was suspended, no transaction of
+   * someone else was joined and the transaction facade factory is able to suspend transactions.
+   *
+   * @param frame the frame returned by {@link #begin(TransactionAttribute)}.
+   * @return {@code true} if {@link #detach(Frame)} may be called.
+   */
+  boolean isDetachable(Frame frame) {
+    return frame.weStartedTheUnitOfWork && frame.suspendedUnitOfWork == null && frame.suspendedTransaction == null
+        && !frame.transactionFacade.joinsRunningTransaction() && tfProvider.canSuspendTransaction();
+  }
+
+  /**
+   * Detaches the unit of work and the transaction of the given frame from the current thread. Afterwards no unit of
+   * work of this persistence unit is active on the current thread.
+   *
+   * @param frame the frame returned by {@link #begin(TransactionAttribute)}. Must be detachable.
+   * @return the detached transaction which must be passed to
+   * {@link #completeDetached(DetachedFrame, TransactionAttribute, Throwable)}.
+   * @throws Throwable if the transaction could not be detached. The frame is still attached in this case.
+   */
+  DetachedFrame detach(Frame frame) throws Throwable {
+    final SuspendedTransaction transaction = tfProvider.suspendTransaction();
+    try {
+      return new DetachedFrame(frame, transactionStateObserver.suspend(), transaction);
+    } catch (Throwable exc) {
+      transaction.resume();
+      throw exc;
+    }
+  }
+
+  /**
+   * Completes a detached transaction on the current thread, which may be any thread. A unit of work running on the
+   * current thread is suspended meanwhile.
+   *
+   * @param detached  the frame returned by {@link #detach(Frame)}.
+   * @param attribute the resolved {@link Transactional @Transactional} of the invoked method.
+   * @param exc       the exception the invocation completed with. May be {@code null}.
+   * @return the exception to propagate to the caller. {@code null} if the invocation completed successfully.
+   */
+  Throwable completeDetached(DetachedFrame detached, TransactionAttribute attribute, Throwable exc) {
+    SuspendedTransaction runningTransaction = null;
+    SuspendedUnitOfWork runningUnitOfWork = null;
+    try {
+      if (unitOfWork.isActive()) {
+        if (tfProvider.isTransactionActive()) {
+          runningTransaction = tfProvider.suspendTransaction();
+        }
+        runningUnitOfWork = transactionStateObserver.suspend();
+      }
+      detached.unitOfWork.resume();
+      detached.transaction.resume();
+    } catch (Throwable attachExc) {
+      return resume(runningUnitOfWork, runningTransaction, addSuppressed(exc, attachExc));
+    }
+    final Throwable result = complete(detached.frame, attribute, exc);
+    return resume(runningUnitOfWork, runningTransaction, result);
+  }
+
+  /**
+   * Resumes a suspended unit of work and transaction.
+   *
+   * @param suspendedUnitOfWork  the unit of work to resume. May be {@code null}.
+   * @param suspendedTransaction the transaction to resume. May be {@code null}.
+   * @param originalException    the original exception. Takes precedence over an exception thrown while resuming.
+   * @return the exception to propagate.
+   */
+  private Throwable resume(SuspendedUnitOfWork suspendedUnitOfWork, SuspendedTransaction suspendedTransaction,
+      Throwable originalException) {
+    Throwable result = originalException;
+    if (suspendedUnitOfWork != null) {
+      try {
+        suspendedUnitOfWork.resume();
+      } catch (Throwable exc) {
+        result = addSuppressed(result, exc);
+      }
+    }
+    if (suspendedTransaction != null) {
+      try {
+        suspendedTransaction.resume();
+      } catch (Throwable exc) {
+        result = addSuppressed(result, exc);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Restores the previous transaction of the transaction state observer.
+   *
+   * @param holder            the holder to close. May be {@code null}.
+   * @param originalException the original exception. Takes precedence over an exception thrown while closing.
+   * @return the exception to propagate.
+   */
+  private Throwable closeHolder(TransactionHolder holder, Throwable originalException) {
+    if (holder == null) {
+      return originalException;
+    }
+    try {
+      holder.close();
+    } catch (Throwable exc) {
+      return addSuppressed(originalException, exc);
+    }
+    return originalException;
+  }
+
+  private static Throwable addSuppressed(Throwable originalException, Throwable exc) {
+    if (originalException == null) {
+      return exc;
+    }
+    originalException.addSuppressed(exc);
+    return originalException;
+  }
+
+  /**
+   * Ends the unit of work. If an exception occurs while ending the unit of work it is neglected in preference of an
+   * original exception.
+   *
+   * @param originalException the original exception. will be returned in preference to an exception occurring during
+   *                          execution of this method.
+   * @return the exception to propagate.
+   */
+  private Throwable endUnitOfWork(Throwable originalException) {
+    try {
+      unitOfWork.end();
+    } catch (Throwable exc) {
+      if (originalException == null) {
+        return exc;
+      }
+    }
+    return originalException;
+  }
+
+  /**
+   * State of a transaction started by {@link TxnParticipant#begin(TransactionAttribute)}.
+   */
+  static final class Frame {
+
+    private final boolean weStartedTheUnitOfWork;
+
+    private final TransactionFacade transactionFacade;
+
+    private final TransactionHolder holder;
+
+    private final SuspendedUnitOfWork suspendedUnitOfWork;
+
+    private final SuspendedTransaction suspendedTransaction;
+
+    private final long begunAt;
+
+    private Frame(boolean weStartedTheUnitOfWork, TransactionFacade transactionFacade, TransactionHolder holder,
+        SuspendedUnitOfWork suspendedUnitOfWork, SuspendedTransaction suspendedTransaction, long begunAt) {
+      this.weStartedTheUnitOfWork = weStartedTheUnitOfWork;
+      this.transactionFacade = transactionFacade;
+      this.holder = holder;
+      this.suspendedUnitOfWork = suspendedUnitOfWork;
+      this.suspendedTransaction = suspendedTransaction;
+      this.begunAt = begunAt;
+    }
+  }
+
+  /**
+   * A transaction which has been detached from the thread which started it by {@link TxnParticipant#detach(Frame)}.
+   */
+  static final class DetachedFrame {
+
+    private final Frame frame;
+
+    private final SuspendedUnitOfWork unitOfWork;
+
+    private final SuspendedTransaction transaction;
+
+    private DetachedFrame(Frame frame, SuspendedUnitOfWork unitOfWork, SuspendedTransaction transaction) {
+      this.frame = frame;
+      this.unitOfWork = unitOfWork;
+      this.transaction = transaction;
+    }
+  }
+
+}
@@ -27,6 +27,69 @@ import java.util.Properties;
  */
 public interface UnconfiguredPersistenceUnitBuilder {
 
+  /**
+   * Defines the timeout of transactions for which the {@link Transactional @Transactional} annotation does not
+   * define a timeout. Default is no timeout.
+   *
+   * @param timeoutSeconds the timeout in seconds. {@code 0} means no timeout.
+   * @return the builder.
+   */
+  UnconfiguredPersistenceUnitBuilder useDefaultTransactionTimeout(int timeoutSeconds);
+
+  /**
+   * Defers the start of resource local transactions until the {@link jakarta.persistence.EntityManager} is
+   * retrieved from the {@link EntityManagerProvider} for the first time. A transaction which never used the entity
+   * manager does not acquire a connection and its commit has no effect.
+   * <p>
+   * Has no effect on global (JTA) transactions. The container acquires the connection on first use anyway.
+   *
+   * @return the builder.
+   */
+  UnconfiguredPersistenceUnitBuilder useLazyTransactionBegin();
+
+  /**
+   * Defines how many reads of {@link ParallelReads} run at the same time. Every read holds a connection while it
+   * runs, so the limit should stay below the size of the connection pool. Default is {@code 4}.
+   *
+   * @param maxParallelReads the maximum number of concurrent reads. Must be positive.
+   * @return the builder.
+   */
+  UnconfiguredPersistenceUnitBuilder useParallelReadLimit(int maxParallelReads);
+
+  /**
+   * Recycles entity managers instead of closing them at the end of every unit of work. Up to the given number of
+   * idle entity managers are kept. An entity manager is cleared before it is kept and is validated when it is reused.
+   * <p>
+   * Recycling saves creating an entity manager per unit of work which pays off for many small units of work. An entity
+   * manager whose settings a unit of work changed, like the flush mode or a property, is closed instead of being kept.
+   * So no unit of work sees the settings of a previous one.
+   *
+   * @param maxIdleEntityManagers the maximum number of idle entity managers to keep. Must be positive.
+   * @return the builder.
+   */
+  UnconfiguredPersistenceUnitBuilder useEntityManagerRecycling(int maxIdleEntityManagers);
+
+  /**
+   * Runs the post commit callbacks added with {@link TransactionHookManager#addPostCommitCallback(Runnable)} on an
+   * executor instead of the committing thread. A slow callback then no longer delays the caller of the transactional
+   * method. Failures of the callbacks are passed to the {@link PostCommitDispatch.FailureHandler} instead of being
+   * thrown to the caller.
+   *
+   * @param dispatch the executor, queue capacity, overflow policy and failure handler. Must not be {@code null}.
+   * @return the builder.
+   */
+  UnconfiguredPersistenceUnitBuilder useAsyncPostCommitCallbacks(PostCommitDispatch dispatch);
+
+  /**
+   * Enables the {@link Outbox} of the persistence unit. The events recorded in a transaction are stored in the
+   * outbox table and relayed to the sink of the given options after the commit. The entity class {@link OutboxEvent}
+   * must be listed in the persistence.xml.
+   *
+   * @param options the sink, batch size and poll interval. Must not be {@code null}.
+   * @return the builder.
+   */
+  UnconfiguredPersistenceUnitBuilder useOutbox(OutboxOptions options);
+
   /**
    * Defines additional properties to use. These properties overrule the ones defined in the persistence.xml
    *
@@ -61,6 +61,7 @@ public interface UnitOfWork {
   /**
    * Begins the unit of work.
    * When a unit of work has already been started for the current thread an {@link IllegalStateException} is thrown.
+   * The {@link EntityManager} is created when it is retrieved for the first time.
    *
    * @throws IllegalStateException if a unit of work is already active for this thread.
    */
@@ -0,0 +1,88 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Decorates executors so that their tasks run within a unit of work of every persistence unit of the
+ * {@link PersistenceModule}. The entity managers are bound to the current thread. Without a decorator a task
+ * submitted to a pool has no unit of work.
+ * <p>
+ * Two modes are supported:
+ * <ul>
+ * <li>
+ * {@link #withReadOnlyUnitOfWork(ExecutorService) Read only} begins a unit of work on the worker thread before the task
+ * and ends it afterwards. Its entity manager is switched into read only mode, so nothing the task loads is written
+ * back. This suits fanning out the reads of a caller; the caller's own entity manager is never handed to another
+ * thread because entity managers are not thread safe.
+ * </li>
+ * <li>
+ * {@link #withOwnUnitOfWork(ExecutorService) Own} begins a unit of work on the worker thread before the task and ends
+ * it afterwards.
+ * </li>
+ * </ul>
+ * In both modes units of work which are already active on the worker thread are left untouched, so running a task
+ * on the submitting thread is supported. Whatever the task does, the worker thread is left without the units of work
+ * of the decorator.
+ * <p>
+ * Usage example:
+ * <pre>
+ *  &#64;Inject UnitOfWorkExecutors unitOfWorkExecutors;
+ *
+ *  ExecutorService executor = unitOfWorkExecutors.withOwnUnitOfWork(Executors.newFixedThreadPool(4));
+ *  executor.submit(() -&gt; emProvider.get().find(MyEntity.class, id));
+ * </pre>
+ */
+public interface UnitOfWorkExecutors {
+
+  /**
+   * Decorates an executor service to run every task in read only units of work of its own.
+   *
+   * @param executor the executor service to decorate. Must not be {@code null}.
+   * @return the decorated executor service. Shutting it down shuts down the given one.
+   */
+  ExecutorService withReadOnlyUnitOfWork(ExecutorService executor);
+
+  /**
+   * Decorates an executor to run every task in read only units of work of its own.
+   *
+   * @param executor the executor to decorate. Must not be {@code null}.
+   * @return the decorated executor.
+   */
+  Executor withReadOnlyUnitOfWork(Executor executor);
+
+  /**
+   * Decorates an executor service to run every task in units of work of its own.
+   *
+   * @param executor the executor service to decorate. Must not be {@code null}.
+   * @return the decorated executor service. Shutting it down shuts down the given one.
+   */
+  ExecutorService withOwnUnitOfWork(ExecutorService executor);
+
+  /**
+   * Decorates an executor to run every task in units of work of its own.
+   *
+   * @param executor the executor to decorate. Must not be {@code null}.
+   * @return the decorated executor.
+   */
+  Executor withOwnUnitOfWork(Executor executor);
+}
@@ -0,0 +1,163 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.common.base.Throwables;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Implementation of {@link UnitOfWorkExecutors}.
+ */
+class UnitOfWorkExecutorsImpl implements UnitOfWorkExecutors {
+
+  /**
+   * All persistence units of the module.
+   */
+  private final TxnParticipant[] participants;
+
+  /**
+   * Storage of the per thread state of the persistence units.
+   */
+  private final ContextStorage contextStorage;
+
+  /**
+   * Decorator beginning read only units of work of its own.
+   */
+  private final DecoratingExecutorService.TaskDecorator readOnly = new DecoratingExecutorService.TaskDecorator() {
+    // @Override
+    public <T> Callable<T> decorate(Callable<T> task) {
+      return beginOwnUnitsOfWork(checkNotNull(task, "task is mandatory!"), true);
+    }
+  };
+
+  /**
+   * Decorator beginning units of work of its own.
+   */
+  private final DecoratingExecutorService.TaskDecorator own = new DecoratingExecutorService.TaskDecorator() {
+    // @Override
+    public <T> Callable<T> decorate(Callable<T> task) {
+      return beginOwnUnitsOfWork(checkNotNull(task, "task is mandatory!"), false);
+    }
+  };
+
+  /**
+   * Constructor.
+   *
+   * @param participants   all persistence units of the module.
+   * @param contextStorage storage of the per thread state of the persistence units.
+   */
+  UnitOfWorkExecutorsImpl(List<TxnParticipant> participants, ContextStorage contextStorage) {
+    this.participants = checkNotNull(participants, "participants is mandatory!").toArray(new TxnParticipant[0]);
+    this.contextStorage = checkNotNull(contextStorage, "contextStorage is mandatory!");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public ExecutorService withReadOnlyUnitOfWork(ExecutorService executor) {
+    return new DecoratingExecutorService(checkNotNull(executor, "executor is mandatory!"), readOnly);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public Executor withReadOnlyUnitOfWork(Executor executor) {
+    checkNotNull(executor, "executor is mandatory!");
+    return command -> executor.execute(readOnly.decorate(command));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public ExecutorService withOwnUnitOfWork(ExecutorService executor) {
+    return new DecoratingExecutorService(checkNotNull(executor, "executor is mandatory!"), own);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  // @Override
+  public Executor withOwnUnitOfWork(Executor executor) {
+    checkNotNull(executor, "executor is mandatory!");
+    return command -> executor.execute(own.decorate(command));
+  }
+
+  /**
+   * Begins the inactive units of work of the thread running the task and ends them after the task.
+   *
+   * @param task     the task to decorate.
+   * @param readOnly whether the entity managers of the units of work are switched into read only mode.
+   * @param <T>      the result type of the task.
+   * @return the decorated task.
+   */
+  private <T> Callable<T> beginOwnUnitsOfWork(Callable<T> task, boolean readOnly) {
+    return () -> {
+      try (ContextStorage.Scope scope = contextStorage.openScope()) {
+        final List<UnitOfWork> begun = new ArrayList<>();
+        Throwable exc = null;
+        T result = null;
+        try {
+          for (TxnParticipant participant : participants) {
+            final UnitOfWork unitOfWork = participant.getUnitOfWork();
+            if (!unitOfWork.isActive()) {
+              if (readOnly) {
+                participant.beginReadOnlyUnitOfWork();
+              } else {
+                unitOfWork.begin();
+              }
+              begun.add(unitOfWork);
+            }
+          }
+          result = task.call();
+        } catch (Throwable taskExc) {
+          exc = taskExc;
+        }
+        for (int i = begun.size() - 1; i >= 0; i--) {
+          try {
+            begun.get(i)
+                .end();
+          } catch (Throwable endExc) {
+            if (exc == null) {
+              exc = endExc;
+            } else {
+              exc.addSuppressed(endExc);
+            }
+          }
+        }
+        if (exc != null) {
+          Throwables.throwIfInstanceOf(exc, Exception.class);
+          Throwables.throwIfUnchecked(exc);
+          throw new RuntimeException(exc);
+        }
+        return result;
+      }
+    };
+  }
+}
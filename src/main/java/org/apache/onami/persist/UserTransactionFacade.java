@@ -23,10 +23,13 @@ import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
+import javax.transaction.InvalidTransactionException;
 import javax.transaction.NotSupportedException;
 import javax.transaction.RollbackException;
 import javax.transaction.Status;
 import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
 import javax.transaction.UserTransaction;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -123,6 +126,57 @@ class UserTransactionFacade {
     }
   }
 
+  /**
+   * @param seconds the timeout for transactions started afterwards by the current thread. {@code 0} restores the
+   *                default of the transaction manager.
+   * @see {@link javax.transaction.UserTransaction#setTransactionTimeout(int)}.
+   */
+  void setTransactionTimeout(int seconds) {
+    try {
+      txn.setTransactionTimeout(seconds);
+    } catch (SystemException e) {
+      throw new RuntimeException("unexpected error occurred", e);
+    }
+  }
+
+  /**
+   * @return {@code true} if {@link #suspend()} is supported, i.e. the user transaction is also a
+   * {@link TransactionManager}.
+   */
+  boolean canSuspend() {
+    return txn instanceof TransactionManager;
+  }
+
+  /**
+   * Suspends the transaction associated with the current thread. This is only possible if the user transaction is
+   * also a {@link TransactionManager}.
+   *
+   * @return handle for resuming the transaction.
+   * @see {@link javax.transaction.TransactionManager#suspend()}.
+   */
+  TransactionFacadeFactory.SuspendedTransaction suspend() {
+    if (!canSuspend()) {
+      throw new IllegalStateException("suspending a transaction requires the user transaction " + txn
+          + " to implement " + TransactionManager.class.getName());
+    }
+    final TransactionManager tm = (TransactionManager) txn;
+    final Transaction suspended;
+    try {
+      suspended = tm.suspend();
+    } catch (SystemException e) {
+      throw new RuntimeException("unexpected error occurred", e);
+    }
+    return () -> {
+      try {
+        tm.resume(suspended);
+      } catch (InvalidTransactionException e) {
+        throw new RuntimeException("the suspended transaction is no longer valid", e);
+      } catch (SystemException e) {
+        throw new RuntimeException("unexpected error occurred", e);
+      }
+    };
+  }
+
   /**
    * @return {@code true} if this transaction may onl roll back. {@code false} otherwise.
    */
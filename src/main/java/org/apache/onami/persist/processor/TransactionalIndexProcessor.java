@@ -0,0 +1,251 @@
+package org.apache.onami.persist.processor;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor which writes an index of all usages of {@code @Transactional} at compile time.
+ * <p>
+ * The index is written to {@value #INDEX_RESOURCE} and can be used by the {@code PersistenceModule} instead of
+ * reflecting on every class and method. The processor is not registered as a service. It has to be enabled
+ * explicitly, for example with the {@code annotationProcessors} of the maven-compiler-plugin or with
+ * {@code javac -processor}.
+ * <p>
+ * Every type compiled together with the processor is recorded, also the ones without any annotation. This allows
+ * the runtime to tell apart a type without {@code @Transactional} from a type which has not been indexed at all.
+ * All classes compiled into one output directory have to be compiled in the same run (no incremental compilation).
+ * <p>
+ * Format of the index (one entry per line, fields separated by a tab):
+ * <pre>
+ * T &lt;binary type name&gt;[	&lt;values of the class level annotation&gt;]
+ * M &lt;binary type name&gt;#&lt;method name&gt;(&lt;parameter types&gt;)	&lt;values of the method level annotation&gt;
+ * </pre>
+ * The values are a {@code ;} separated list of {@code name=tag:value}. The tags are {@code c} (class),
+ * {@code c[]} (class array), {@code e} (enum constant), {@code e[]} (array of enum constants), {@code z} (boolean),
+ * {@code i} (int) and {@code j} (long). Default values are always written out.
+ */
+@SupportedAnnotationTypes("*")
+public class TransactionalIndexProcessor extends AbstractProcessor {
+
+  /**
+   * Location of the index within the class output.
+   */
+  public static final String INDEX_RESOURCE = "META-INF/onami/persist/transactional.idx";
+
+  /**
+   * Fully qualified name of the transactional annotation.
+   */
+  private static final String TRANSACTIONAL = "org.apache.onami.persist.Transactional";
+
+  /**
+   * Indexed types by binary name. The value holds the values of the class level annotation or is empty.
+   */
+  private final Map<String, String> types = new TreeMap<>();
+
+  /**
+   * Indexed methods by key. The value holds the values of the method level annotation.
+   */
+  private final Map<String, String> methods = new TreeMap<>();
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getRootElements()) {
+      indexType(element);
+    }
+    if (roundEnv.processingOver()) {
+      writeIndex();
+    }
+    // never claim any annotation so other processors still see them.
+    return false;
+  }
+
+  private void indexType(Element element) {
+    if (!(element instanceof TypeElement)) {
+      return;
+    }
+    final TypeElement type = (TypeElement) element;
+    final String binaryName = binaryName(type);
+    types.put(binaryName, valuesOf(transactionalOf(type)));
+
+    for (Element enclosed : type.getEnclosedElements()) {
+      if (enclosed.getKind() == ElementKind.METHOD) {
+        final AnnotationMirror transactional = transactionalOf(enclosed);
+        if (transactional != null) {
+          methods.put(binaryName + "#" + signatureOf((ExecutableElement) enclosed), valuesOf(transactional));
+        }
+      } else {
+        indexType(enclosed);
+      }
+    }
+  }
+
+  private AnnotationMirror transactionalOf(Element element) {
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      final TypeElement annotationType = (TypeElement) mirror.getAnnotationType()
+          .asElement();
+      if (annotationType.getQualifiedName()
+          .contentEquals(TRANSACTIONAL)) {
+        return mirror;
+      }
+    }
+    return null;
+  }
+
+  private String signatureOf(ExecutableElement method) {
+    final List<String> parameterTypes = new ArrayList<>();
+    for (VariableElement parameter : method.getParameters()) {
+      parameterTypes.add(typeName(processingEnv.getTypeUtils()
+          .erasure(parameter.asType())));
+    }
+    return method.getSimpleName() + "(" + String.join(",", parameterTypes) + ")";
+  }
+
+  /**
+   * @return the name of the erased type as returned by {@link Class#getTypeName()} at runtime.
+   */
+  private String typeName(TypeMirror type) {
+    if (type.getKind() == TypeKind.ARRAY) {
+      return typeName(((ArrayType) type).getComponentType()) + "[]";
+    }
+    if (type.getKind() == TypeKind.DECLARED) {
+      return binaryName((TypeElement) ((DeclaredType) type).asElement());
+    }
+    return type.toString();
+  }
+
+  private String binaryName(TypeElement type) {
+    return processingEnv.getElementUtils()
+        .getBinaryName(type)
+        .toString();
+  }
+
+  private String valuesOf(AnnotationMirror transactional) {
+    if (transactional == null) {
+      return "";
+    }
+    final Map<? extends ExecutableElement, ? extends AnnotationValue> values = processingEnv.getElementUtils()
+        .getElementValuesWithDefaults(transactional);
+    final Map<String, String> encoded = new TreeMap<>();
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+      encoded.put(entry.getKey()
+          .getSimpleName()
+          .toString(), encode(entry.getValue()
+          .getValue()));
+    }
+    final List<String> result = new ArrayList<>();
+    for (Map.Entry<String, String> entry : encoded.entrySet()) {
+      result.add(entry.getKey() + "=" + entry.getValue());
+    }
+    return String.join(";", result);
+  }
+
+  private String encode(Object value) {
+    if (value instanceof TypeMirror) {
+      return "c:" + typeName((TypeMirror) value);
+    }
+    if (value instanceof VariableElement) {
+      return "e:" + ((VariableElement) value).getSimpleName();
+    }
+    if (value instanceof Boolean) {
+      return "z:" + value;
+    }
+    if (value instanceof Integer) {
+      return "i:" + value;
+    }
+    if (value instanceof Long) {
+      return "j:" + value;
+    }
+    if (value instanceof List) {
+      final List<String> elements = new ArrayList<>();
+      String tag = "c";
+      for (Object element : (List<?>) value) {
+        final String encoded = encode(((AnnotationValue) element).getValue());
+        tag = encoded.substring(0, encoded.indexOf(':'));
+        elements.add(encoded.substring(encoded.indexOf(':') + 1));
+      }
+      return tag + "[]:" + String.join(",", elements);
+    }
+    throw new IllegalArgumentException("unsupported annotation value " + value);
+  }
+
+  private void writeIndex() {
+    final Set<String> lines = new TreeSet<>();
+    for (Map.Entry<String, String> type : types.entrySet()) {
+      lines.add(type.getValue()
+          .isEmpty() ? "T " + type.getKey() : "T " + type.getKey() + "\t" + type.getValue());
+    }
+    for (Map.Entry<String, String> method : methods.entrySet()) {
+      lines.add("M " + method.getKey() + "\t" + method.getValue());
+    }
+    try {
+      final FileObject index = processingEnv.getFiler()
+          .createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+      try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+        for (String line : lines) {
+          writer.write(line);
+          writer.write('\n');
+        }
+      }
+    } catch (IOException e) {
+      processingEnv.getMessager()
+          .printMessage(Diagnostic.Kind.ERROR, "could not write " + INDEX_RESOURCE + ": " + e);
+    }
+  }
+
+}
@@ -0,0 +1,166 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.hibernate.Session;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import jakarta.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for {@link BatchWriterImpl}.
+ */
+public class BatchWriterImplTest {
+
+  private BatchWriterImpl sut;
+
+  private TxnParticipant participant;
+
+  private EntityManager em;
+
+  private Session session;
+
+  private TxnParticipant.Frame frame;
+
+  private final List<String> progress = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Throwable {
+    participant = mock(TxnParticipant.class);
+    em = mock(EntityManager.class);
+    session = mock(Session.class);
+    frame = mock(TxnParticipant.Frame.class);
+
+    final EntityManagerProvider emProvider = mock(EntityManagerProvider.class);
+    doReturn(em).when(emProvider)
+        .get();
+    doReturn(session).when(em)
+        .unwrap(Session.class);
+    doReturn(true).when(session)
+        .isOpen();
+    doReturn(frame).when(participant)
+        .begin(any(TransactionAttribute.class));
+
+    sut = new BatchWriterImpl(participant);
+    sut.init(emProvider);
+  }
+
+  private BatchOptions chunksOf(int chunkSize) {
+    return BatchOptions.chunksOf(chunkSize)
+        .withProgressListener((written, committed) -> progress.add(written + "/" + committed));
+  }
+
+  @Test
+  public void shouldPersistAllEntitiesInChunks() throws Throwable {
+    final long written = sut.persistAll(asList("a", "b", "c", "d", "e"), chunksOf(2));
+
+    assertThat(written, is(5L));
+    final InOrder inOrder = inOrder(em);
+    inOrder.verify(em)
+        .persist("a");
+    inOrder.verify(em)
+        .persist("b");
+    inOrder.verify(em)
+        .flush();
+    inOrder.verify(em)
+        .clear();
+    inOrder.verify(em)
+        .persist("c");
+    verify(em, times(3)).flush();
+    verify(em, times(3)).clear();
+    assertThat(progress, is(asList("2/0", "4/0", "5/0", "5/5")));
+  }
+
+  @Test
+  public void shouldWriteInSingleTransactionByDefault() throws Throwable {
+    sut.mergeAll(asList("a", "b", "c"), chunksOf(1));
+
+    final ArgumentCaptor<TransactionAttribute> attribute = ArgumentCaptor.forClass(TransactionAttribute.class);
+    verify(participant).begin(attribute.capture());
+    assertThat(attribute.getValue()
+        .getPropagation(), is(Propagation.REQUIRED));
+    verify(participant).complete(frame, attribute.getValue(), null);
+    verify(em).merge("c");
+  }
+
+  @Test
+  public void shouldCommitEveryGivenNumberOfChunks() throws Throwable {
+    final long written = sut.persistAll(asList("a", "b", "c", "d", "e"), chunksOf(1).commitEvery(2));
+
+    assertThat(written, is(5L));
+    final ArgumentCaptor<TransactionAttribute> attribute = ArgumentCaptor.forClass(TransactionAttribute.class);
+    verify(participant, times(3)).begin(attribute.capture());
+    assertThat(attribute.getValue()
+        .getPropagation(), is(Propagation.REQUIRES_NEW));
+    verify(participant, times(3)).complete(eq(frame), any(TransactionAttribute.class), eq(null));
+    assertThat(progress, is(asList("1/0", "2/0", "2/2", "3/2", "4/2", "4/4", "5/4", "5/5")));
+  }
+
+  @Test
+  public void shouldUseChunkSizeAsJdbcBatchSize() {
+    doReturn(7).when(session)
+        .getJdbcBatchSize();
+
+    sut.persistAll(asList("a", "b"), chunksOf(20));
+
+    final InOrder inOrder = inOrder(session);
+    inOrder.verify(session)
+        .setJdbcBatchSize(20);
+    inOrder.verify(session)
+        .setJdbcBatchSize(7);
+  }
+
+  @Test
+  public void shouldCompleteTransactionWithFailureOfWrite() throws Throwable {
+    final RuntimeException failure = new RuntimeException();
+    doThrow(failure).when(em)
+        .persist("b");
+    doReturn(failure).when(participant)
+        .complete(eq(frame), any(TransactionAttribute.class), eq(failure));
+
+    try {
+      sut.persistAll(asList("a", "b"));
+      fail("expected RuntimeException to be thrown");
+    } catch (RuntimeException e) {
+      assertThat(e, sameInstance(failure));
+    }
+    verify(participant).complete(eq(frame), any(TransactionAttribute.class), eq(failure));
+  }
+
+}
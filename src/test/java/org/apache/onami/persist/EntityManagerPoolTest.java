@@ -0,0 +1,186 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.FlushModeType;
+
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for {@link EntityManagerPool}.
+ */
+public class EntityManagerPoolTest {
+
+  private EntityManagerPool sut;
+
+  private EntityManagerFactory emf;
+
+  @Before
+  public void setUp() {
+    sut = new EntityManagerPool(2);
+    emf = mock(EntityManagerFactory.class);
+  }
+
+  private EntityManager newEntityManager() {
+    final EntityManager em = mock(EntityManager.class);
+    doReturn(true).when(em)
+        .isOpen();
+    doReturn(emf).when(em)
+        .getEntityManagerFactory();
+    doReturn(FlushModeType.AUTO).when(em)
+        .getFlushMode();
+    return em;
+  }
+
+  private EntityManagerPool.Entry newEntry() {
+    return sut.track(newEntityManager());
+  }
+
+  @Test
+  public void shouldReturnNullIfEmpty() {
+    assertThat(sut.acquire(emf), is(nullValue()));
+  }
+
+  @Test
+  public void shouldClearReleasedEntityManager() {
+    final EntityManagerPool.Entry entry = newEntry();
+
+    assertThat(sut.release(entry), is(true));
+
+    verify(entry.entityManager).clear();
+    assertThat(sut.acquire(emf), sameInstance(entry));
+    assertThat(sut.size(), is(0));
+  }
+
+  @Test
+  public void shouldAcquireMostRecentlyReleasedFirst() {
+    final EntityManagerPool.Entry first = newEntry();
+    final EntityManagerPool.Entry second = newEntry();
+    sut.release(first);
+    sut.release(second);
+
+    assertThat(sut.acquire(emf), sameInstance(second));
+    assertThat(sut.acquire(emf), sameInstance(first));
+  }
+
+  @Test
+  public void shouldNotExceedCapacity() {
+    sut.release(newEntry());
+    sut.release(newEntry());
+
+    assertThat(sut.release(newEntry()), is(false));
+    assertThat(sut.size(), is(2));
+  }
+
+  @Test
+  public void shouldNotKeepEntityManagerJoinedToTransaction() {
+    final EntityManagerPool.Entry entry = newEntry();
+    doReturn(true).when(entry.entityManager)
+        .isJoinedToTransaction();
+
+    assertThat(sut.release(entry), is(false));
+    verify(entry.entityManager, never()).clear();
+  }
+
+  @Test
+  public void shouldNotKeepClosedEntityManager() {
+    final EntityManagerPool.Entry entry = newEntry();
+    doReturn(false).when(entry.entityManager)
+        .isOpen();
+
+    assertThat(sut.release(entry), is(false));
+  }
+
+  @Test
+  public void shouldNotKeepEntityManagerWhichFailsToClear() {
+    final EntityManagerPool.Entry entry = newEntry();
+    doThrow(new IllegalStateException()).when(entry.entityManager)
+        .clear();
+
+    assertThat(sut.release(entry), is(false));
+    assertThat(sut.size(), is(0));
+  }
+
+  @Test
+  public void shouldNotKeepEntityManagerWithChangedFlushMode() {
+    final EntityManagerPool.Entry entry = newEntry();
+    doReturn(FlushModeType.COMMIT).when(entry.entityManager)
+        .getFlushMode();
+
+    assertThat(sut.release(entry), is(false));
+    verify(entry.entityManager, never()).clear();
+    assertThat(sut.size(), is(0));
+  }
+
+  @Test
+  public void shouldNotKeepEntityManagerWithChangedProperties() {
+    final EntityManagerPool.Entry entry = newEntry();
+    doReturn(Collections.singletonMap("jakarta.persistence.query.timeout", 100)).when(entry.entityManager)
+        .getProperties();
+
+    assertThat(sut.release(entry), is(false));
+    verify(entry.entityManager, never()).clear();
+  }
+
+  @Test
+  public void shouldCloseEntityManagerOfOtherFactory() {
+    final EntityManagerPool.Entry entry = newEntry();
+    sut.release(entry);
+
+    assertThat(sut.acquire(mock(EntityManagerFactory.class)), is(nullValue()));
+    verify(entry.entityManager).close();
+  }
+
+  @Test
+  public void shouldCloseEntityManagerClosedWhileIdle() {
+    final EntityManagerPool.Entry entry = newEntry();
+    sut.release(entry);
+    doReturn(false).when(entry.entityManager)
+        .isOpen();
+
+    assertThat(sut.acquire(emf), is(nullValue()));
+    verify(entry.entityManager).close();
+  }
+
+  @Test
+  public void disabledPoolShouldNotKeepAnything() {
+    final EntityManager em = newEntityManager();
+
+    assertThat(EntityManagerPool.DISABLED.track(em), is(nullValue()));
+    assertThat(EntityManagerPool.DISABLED.acquire(emf), is(nullValue()));
+    verify(em, never()).clear();
+  }
+
+}
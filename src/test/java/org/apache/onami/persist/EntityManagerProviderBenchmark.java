@@ -0,0 +1,98 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link EntityManagerProviderImpl#get()} within a running unit of work, compared to reading the entity
+ * manager from a field.
+ * <p>
+ * The state is per thread because the unit of work is bound to the thread which began it.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test -Djmh.args="EntityManagerProviderBenchmark -prof gc"}
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityManagerProviderBenchmark {
+
+  private Injector injector;
+
+  private UnitOfWork unitOfWork;
+
+  private EntityManagerProvider emProvider;
+
+  private EntityManager em;
+
+  @Setup
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    unitOfWork = injector.getInstance(UnitOfWork.class);
+    emProvider = injector.getInstance(EntityManagerProvider.class);
+    unitOfWork.begin();
+    em = emProvider.get();
+  }
+
+  @TearDown
+  public void tearDown() {
+    unitOfWork.end();
+    injector.getInstance(PersistenceService.class)
+        .stop();
+  }
+
+  /**
+   * Baseline: the entity manager held by the caller.
+   */
+  @Benchmark
+  public EntityManager rawEntityManager() {
+    return em;
+  }
+
+  @Benchmark
+  public EntityManager get() {
+    return emProvider.get();
+  }
+}
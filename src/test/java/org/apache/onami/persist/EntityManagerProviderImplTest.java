@@ -21,18 +21,25 @@ package org.apache.onami.persist;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.FlushModeType;
 import java.util.Properties;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -56,9 +63,11 @@ public class EntityManagerProviderImplTest {
     // input
     emfProvider = mock(EntityManagerFactoryProvider.class);
     properties = new Properties();
+    properties.setProperty("key", "value");
 
     // subject under test
-    sut = new EntityManagerProviderImpl(emfProvider, properties);
+    sut = new EntityManagerProviderImpl(emfProvider, properties, new ThreadLocalContextStorage(),
+        EntityManagerPool.DISABLED);
 
     // helpers
     emf = mock(EntityManagerFactory.class);
@@ -86,13 +95,32 @@ public class EntityManagerProviderImplTest {
   public void shouldBeActiveAfterStarting() {
     sut.begin();
 
-    verify(emf).createEntityManager(properties);
+    verify(emf, never()).createEntityManager(properties);
     assertThat(sut.isActive(), is(true));
   }
 
+  @Test
+  public void shouldCreateEntityManagerOnFirstGet() {
+    sut.begin();
+    sut.get();
+    sut.get();
+
+    verify(emf).createEntityManager(properties);
+  }
+
+  @Test
+  public void stoppingShouldNotCreateEntityManager() {
+    sut.begin();
+    sut.end();
+
+    verify(emf, never()).createEntityManager(properties);
+    assertThat(sut.isActive(), is(false));
+  }
+
   @Test
   public void shouldNotBeActiveAfterStartingAndStopping() {
     sut.begin();
+    sut.get();
     sut.end();
 
     verify(emf).createEntityManager(properties);
@@ -107,6 +135,7 @@ public class EntityManagerProviderImplTest {
 
     try {
       sut.begin();
+      sut.get();
       sut.end();
     } catch (RuntimeException e) {
       verify(emf).createEntityManager(properties);
@@ -120,8 +149,10 @@ public class EntityManagerProviderImplTest {
   @Test
   public void restartingShouldWork() {
     sut.begin();
+    sut.get();
     sut.end();
     sut.begin();
+    sut.get();
 
     verify(emf, times(2)).createEntityManager(properties);
     verify(em).close();
@@ -142,30 +173,236 @@ public class EntityManagerProviderImplTest {
     assertThat(result, sameInstance(em));
   }
 
+  @Test
+  public void gettingTheEntityManagerShouldNotifyTheCurrentTransaction() throws Exception {
+    final TransactionFacade transactionFacade = mock(TransactionFacade.class);
+    sut.begin();
+    try (TransactionStateObserver.TransactionHolder ignored = sut.withTransaction(transactionFacade)) {
+      sut.get();
+    }
+    sut.get();
+
+    verify(transactionFacade).beforeEntityManagerUse();
+  }
+
   @Test(expected = IllegalStateException.class)
   public void shouldThrowExceptionWhenGettingEntityManagerAndUnitOfWorkIsNotActive() {
     sut.get();
   }
 
+  @Test
+  public void shouldNotBeActiveAfterSuspending() {
+    sut.begin();
+    sut.suspend();
+
+    assertThat(sut.isActive(), is(false));
+    verify(em, never()).close();
+  }
+
+  @Test
+  public void shouldReturnTheEntityManagerAfterResuming() {
+    sut.begin();
+    final TransactionStateObserver.SuspendedUnitOfWork suspended = sut.suspend();
+    suspended.resume();
+
+    assertThat(sut.get(), sameInstance(em));
+  }
+
+  @Test
+  public void shouldStartNewUnitOfWorkWhileSuspended() {
+    final EntityManager otherEm = mock(EntityManager.class);
+    doReturn(em).doReturn(otherEm)
+        .when(emf)
+        .createEntityManager(properties);
+    sut.begin();
+    sut.get();
+    final TransactionStateObserver.SuspendedUnitOfWork suspended = sut.suspend();
+
+    sut.begin();
+    assertThat(sut.get(), sameInstance(otherEm));
+    sut.end();
+    suspended.resume();
+
+    verify(otherEm).close();
+    assertThat(sut.get(), sameInstance(em));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void suspendingWhenNotActiveShouldThrowException() {
+    sut.suspend();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void resumingWhenActiveShouldThrowException() {
+    sut.begin();
+    final TransactionStateObserver.SuspendedUnitOfWork suspended = sut.suspend();
+    sut.begin();
+
+    suspended.resume();
+  }
+
+  @Test
+  public void readOnlyUnitOfWorkShouldSwitchEntityManagerIntoReadOnlyMode() {
+    doReturn(true).when(em)
+        .isOpen();
+    doReturn(FlushModeType.AUTO).when(em)
+        .getFlushMode();
+    sut.beginReadOnly();
+
+    assertThat(sut.get(), sameInstance(em));
+    verify(em).setFlushMode(FlushModeType.COMMIT);
+
+    sut.end();
+    final InOrder inOrder = inOrder(em);
+    inOrder.verify(em)
+        .setFlushMode(FlushModeType.AUTO);
+    inOrder.verify(em)
+        .close();
+  }
+
+  @Test
+  public void readOnlyUnitOfWorkShouldNotCreateEntityManager() {
+    sut.beginReadOnly();
+    sut.end();
+
+    verify(emf, never()).createEntityManager(properties);
+    assertThat(sut.isActive(), is(false));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void beginningReadOnlyWhenActiveShouldThrowException() {
+    sut.begin();
+
+    sut.beginReadOnly();
+  }
+
   @Test(expected = NullPointerException.class)
   public void entityManagerFactoryProviderIsMandatory() {
-    new EntityManagerProviderImpl(null, properties);
+    new EntityManagerProviderImpl(null, properties, new ThreadLocalContextStorage(),
+        EntityManagerPool.DISABLED);
   }
 
   @Test
   public void propertiesAreOptional() {
-    new EntityManagerProviderImpl(emfProvider, null);
+    new EntityManagerProviderImpl(emfProvider, null, new ThreadLocalContextStorage(),
+        EntityManagerPool.DISABLED);
   }
 
   @Test
   public void shouldCreateEntityManagerWithoutPropertiesIfNull() {
     doReturn(em).when(emf)
         .createEntityManager();
-    sut = new EntityManagerProviderImpl(emfProvider, null);
+    sut = new EntityManagerProviderImpl(emfProvider, null, new ThreadLocalContextStorage(),
+        EntityManagerPool.DISABLED);
+
+    sut.begin();
+    sut.get();
+
+    verify(emf).createEntityManager();
+  }
+
+  @Test
+  public void shouldCreateEntityManagerWithoutPropertiesIfEmpty() {
+    doReturn(em).when(emf)
+        .createEntityManager();
+    sut = new EntityManagerProviderImpl(emfProvider, new Properties(), new ThreadLocalContextStorage(),
+        EntityManagerPool.DISABLED);
 
     sut.begin();
+    sut.get();
 
     verify(emf).createEntityManager();
   }
 
+  @Test
+  public void shouldRecycleEntityManagerIfPoolIsEnabled() {
+    doReturn(true).when(em)
+        .isOpen();
+    doReturn(emf).when(em)
+        .getEntityManagerFactory();
+    sut = new EntityManagerProviderImpl(emfProvider, properties, new ThreadLocalContextStorage(),
+        new EntityManagerPool(1));
+
+    sut.begin();
+    sut.get();
+    sut.end();
+    sut.begin();
+
+    assertThat(sut.get(), sameInstance(em));
+    verify(em, never()).close();
+    verify(em).clear();
+    verify(emf, times(1)).createEntityManager(properties);
+  }
+
+  @Test
+  public void nestedTransactionsShouldReportTheirDepth() throws Exception {
+    sut.begin();
+    try (TransactionStateObserver.TransactionHolder outer = sut.withTransaction(mock(TransactionFacade.class))) {
+      try (TransactionStateObserver.TransactionHolder inner = sut.withTransaction(joiningFacade())) {
+        assertThat(outer.getDepth(), is(1));
+        assertThat(inner.getDepth(), is(2));
+      }
+      try (TransactionStateObserver.TransactionHolder inner = sut.withTransaction(joiningFacade())) {
+        assertThat(inner.getDepth(), is(2));
+      }
+    }
+  }
+
+  @Test
+  public void runningWithoutTransactionShouldNotCountAsTransaction() throws Exception {
+    sut.begin();
+    try (TransactionStateObserver.TransactionHolder supports = sut.withTransaction(NoTransactionFacade.INSTANCE)) {
+      try (TransactionStateObserver.TransactionHolder required = sut.withTransaction(mock(TransactionFacade.class))) {
+        try (TransactionStateObserver.TransactionHolder inner = sut.withTransaction(joiningFacade())) {
+          assertThat(supports.getDepth(), is(0));
+          assertThat(required.getDepth(), is(1));
+          assertThat(inner.getDepth(), is(2));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void joiningTransactionOfSomeoneElseShouldCountAsNested() throws Exception {
+    sut.begin();
+    try (TransactionStateObserver.TransactionHolder inner = sut.withTransaction(joiningFacade())) {
+      assertThat(inner.getDepth(), is(2));
+    }
+  }
+
+  private static TransactionFacade joiningFacade() {
+    final TransactionFacade facade = mock(TransactionFacade.class);
+    doReturn(true).when(facade)
+        .joinsRunningTransaction();
+    return facade;
+  }
+
+  @Test
+  public void endingShouldReportDurationOfUnitOfWork() {
+    final PersistenceMetrics metrics = mock(PersistenceMetrics.class);
+    sut.setMetrics(metrics, new AnnotationHolder(null));
+
+    sut.begin();
+    sut.end();
+
+    verify(metrics).unitOfWorkEnded(isNull(), anyLong(), eq(-1L));
+  }
+
+  @Test
+  public void endingShouldReportLifetimeOfEntityManager() {
+    final InMemoryPersistenceMetrics metrics = new InMemoryPersistenceMetrics();
+    sut.setMetrics(metrics, new AnnotationHolder(null));
+
+    sut.begin();
+    sut.get();
+    sut.end();
+
+    assertThat(metrics.statisticsOf(null)
+        .getUnitOfWork()
+        .getCount(), is(1L));
+    assertThat(metrics.statisticsOf(null)
+        .getEntityManagerLifetime()
+        .getCount(), is(1L));
+  }
+
 }
@@ -51,7 +51,8 @@ public class EntityManagerProviderImplThreadingTest {
     final EntityManagerFactoryProvider emfProvider = mock(EntityManagerFactoryProvider.class);
 
     // subject under test
-    sut = new EntityManagerProviderImpl(emfProvider, null);
+    sut = new EntityManagerProviderImpl(emfProvider, null, new ThreadLocalContextStorage(),
+        EntityManagerPool.DISABLED);
 
     // helpers
     emf = mock(EntityManagerFactory.class);
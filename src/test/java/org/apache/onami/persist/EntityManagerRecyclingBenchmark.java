@@ -0,0 +1,97 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a unit of work which uses its entity manager, with and without recycling the entity managers.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test -Djmh.args="EntityManagerRecyclingBenchmark -prof gc"}
+ * <p>
+ * The {@code gc.alloc.rate.norm} of the gc profiler is the allocation per unit of work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityManagerRecyclingBenchmark {
+
+  @Param({"false", "true"})
+  public boolean recycling;
+
+  private Injector injector;
+
+  private UnitOfWork unitOfWork;
+
+  private EntityManagerProvider emProvider;
+
+  @Setup
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        final UnannotatedPersistenceUnitBuilder builder = bindApplicationManagedPersistenceUnit("testUnit");
+        if (recycling) {
+          builder.useEntityManagerRecycling(4);
+        }
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    unitOfWork = injector.getInstance(UnitOfWork.class);
+    emProvider = injector.getInstance(EntityManagerProvider.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+  }
+
+  @Benchmark
+  public boolean unitOfWork() {
+    unitOfWork.begin();
+    try {
+      final EntityManager em = emProvider.get();
+      return em.isOpen();
+    } finally {
+      unitOfWork.end();
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Named;
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link InMemoryPersistenceMetrics}.
+ */
+public class InMemoryPersistenceMetricsTest {
+
+  private InMemoryPersistenceMetrics sut;
+
+  @Before
+  public void setUp() {
+    sut = new InMemoryPersistenceMetrics();
+  }
+
+  @Test
+  public void shouldCountOutermostTransactions() {
+    sut.transactionBegun(null, 1, 10);
+    sut.transactionBegun(null, 2, 10);
+    sut.transactionCommitted(null, 2, 5, 100);
+    sut.transactionCommitted(null, 1, 20, 200);
+
+    final InMemoryPersistenceMetrics.UnitStatistics statistics = sut.statisticsOf(null);
+    assertThat(statistics.getBegunCount(), is(1L));
+    assertThat(statistics.getJoinedCount(), is(1L));
+    assertThat(statistics.getCommittedCount(), is(1L));
+    assertThat(statistics.getCommit()
+        .getMax(), is(20L));
+    assertThat(statistics.getNestingDepth()
+        .getMax(), is(2L));
+  }
+
+  @Test
+  public void shouldKeepStatisticsPerPersistenceUnit() {
+    sut.transactionRolledBack(Named.class, 1, 5, 50);
+
+    assertThat(sut.statisticsOf(Named.class)
+        .getRolledBackCount(), is(1L));
+    assertThat(sut.statisticsOf(null)
+        .getRolledBackCount(), is(0L));
+    assertThat(sut.statisticsOf(Named.class), sameInstance(sut.statisticsOf(Named.class)));
+  }
+
+  @Test
+  public void shouldNotRecordLifetimeOfUnusedEntityManager() {
+    sut.unitOfWorkEnded(null, 100, -1);
+
+    assertThat(sut.statisticsOf(null)
+        .getUnitOfWork()
+        .getCount(), is(1L));
+    assertThat(sut.statisticsOf(null)
+        .getEntityManagerLifetime()
+        .getCount(), is(0L));
+  }
+
+  @Test
+  public void shouldWritePercentiles() throws Exception {
+    sut.transactionBegun(Named.class, 1, 1_000);
+    sut.transactionCommitted(Named.class, 1, 2_000, 5_000);
+    sut.transactionRetried(null, 2, new RuntimeException(), 0);
+
+    final StringWriter writer = new StringWriter();
+    sut.writeTo(writer);
+
+    final String report = writer.toString();
+    assertThat(report, containsString("retries=1"));
+    assertThat(report, containsString("persistence unit jakarta.inject.Named"));
+    assertThat(report, containsString("begun=1 joined=0 committed=1 rolledBack=0"));
+    assertThat(report, containsString("p99=2.0"));
+  }
+
+}
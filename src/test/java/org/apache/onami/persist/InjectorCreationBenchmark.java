@@ -0,0 +1,158 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import org.apache.onami.persist.test.multipersistenceunits.FirstPU;
+import org.apache.onami.persist.test.multipersistenceunits.SecondPU;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the injector creation with and without the index written by the
+ * {@link org.apache.onami.persist.processor.TransactionalIndexProcessor}.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test -Djmh.args="InjectorCreationBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InjectorCreationBenchmark {
+
+  @Param({"false", "true"})
+  public boolean useIndex;
+
+  @Benchmark
+  public Object createInjector() {
+    return Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        if (useIndex) {
+          useTransactionalIndex();
+        }
+        bindApplicationManagedPersistenceUnit("firstUnit").annotatedWith(FirstPU.class);
+        bindApplicationManagedPersistenceUnit("secondUnit").annotatedWith(SecondPU.class);
+      }
+    }, new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(PlainService.class);
+        bind(FirstUnitService.class);
+        bind(SecondUnitService.class);
+        bind(OtherUnitService.class);
+        bind(AllUnitsService.class);
+      }
+    });
+  }
+
+  public static class PlainService {
+    public void a() {
+    }
+
+    public void b() {
+    }
+
+    public void c() {
+    }
+
+    public void d() {
+    }
+  }
+
+
+  public static class FirstUnitService {
+    @Transactional(onUnits = FirstPU.class)
+    public void a() {
+    }
+
+    public void b() {
+    }
+
+    public void c() {
+    }
+
+    public void d() {
+    }
+  }
+
+
+  @Transactional(onUnits = SecondPU.class)
+  public static class SecondUnitService {
+    public void a() {
+    }
+
+    public void b() {
+    }
+
+    @Transactional(onUnits = FirstPU.class)
+    public void c() {
+    }
+
+    public void d() {
+    }
+  }
+
+
+  public static class OtherUnitService {
+    @Transactional(onUnits = OtherPersistenceUnit.class)
+    public void a() {
+    }
+
+    public void b() {
+    }
+
+    public void c() {
+    }
+
+    public void d() {
+    }
+  }
+
+
+  @Transactional(onUnits = {})
+  public static class AllUnitsService {
+    public void a() {
+    }
+
+    public void b() {
+    }
+
+    public void c() {
+    }
+
+    public void d() {
+    }
+  }
+
+}
@@ -20,13 +20,23 @@ package org.apache.onami.persist;
  */
 
 import de.bechte.junit.runners.context.HierarchicalContextRunner;
+import org.apache.onami.persist.TransactionHookManager.CompletionCallback;
+import org.apache.onami.persist.TransactionHookManager.CompletionStatus;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 
 import jakarta.persistence.EntityManager;
 
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -45,6 +55,8 @@ public class JtaTransactionFacadeProviderTest {
 
   private EntityManager em;
 
+  private TransactionAttribute attribute;
+
   @Before
   public void setUp() {
     // input
@@ -52,12 +64,17 @@ public class JtaTransactionFacadeProviderTest {
     emProvider = mock(EntityManagerProvider.class);
 
     // subject under test
-    sut = new JtaTransactionFacadeFactory(utFacade, emProvider);
+    sut = new JtaTransactionFacadeFactory(utFacade, emProvider, new TransactionDefaults(0, false),
+        new ThreadLocalContextStorage());
 
     // environment
     em = mock(EntityManager.class);
     doReturn(em).when(emProvider)
         .get();
+
+    attribute = mock(TransactionAttribute.class);
+    doReturn(Propagation.REQUIRED).when(attribute)
+        .getPropagation();
   }
 
   public class InnerTransactionTest {
@@ -68,7 +85,7 @@ public class JtaTransactionFacadeProviderTest {
     public void setUp() {
       doReturn(true).when(utFacade)
           .isActive();
-      sut = JtaTransactionFacadeProviderTest.this.sut.createTransactionFacade();
+      sut = JtaTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
     }
 
     @Test
@@ -103,7 +120,7 @@ public class JtaTransactionFacadeProviderTest {
     public void setUp() {
       doReturn(false).when(utFacade)
           .isActive();
-      sut = JtaTransactionFacadeProviderTest.this.sut.createTransactionFacade();
+      sut = JtaTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
     }
 
     @Test
@@ -137,6 +154,302 @@ public class JtaTransactionFacadeProviderTest {
 
       verify(utFacade).rollback();
     }
+
+    @Test
+    public void suspendShouldDetachOuterTransactionUntilResumed() {
+      final Runnable callback = mock(Runnable.class);
+      doReturn(mock(TransactionFacadeFactory.SuspendedTransaction.class)).when(utFacade)
+          .suspend();
+      sut.begin();
+
+      final TransactionFacadeFactory.SuspendedTransaction suspended =
+          JtaTransactionFacadeProviderTest.this.sut.suspendTransaction();
+      doReturn(true).when(utFacade)
+          .isActive();
+      final TransactionFacade detachedInner = JtaTransactionFacadeProviderTest.this.sut.createTransactionFacade(
+          attribute);
+      suspended.resume();
+      final TransactionFacade inner = JtaTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+
+      try {
+        detachedInner.addPostCommitCallback(callback);
+        fail("expected NullPointerException to be thrown");
+      } catch (NullPointerException e) {
+        // expected
+      }
+      inner.addPostCommitCallback(callback);
+      sut.commit();
+      verify(callback).run();
+    }
+
+    @Test
+    public void commitShouldRunBeforeCommitCallbacksBeforeCommitting() {
+      final Runnable callback = mock(Runnable.class);
+      final Runnable addedByCallback = mock(Runnable.class);
+      final CompletionCallback completion = mock(CompletionCallback.class);
+      sut.begin();
+      doReturn(true).when(utFacade)
+          .isActive();
+      sut.addBeforeCommitCallback(() -> {
+        callback.run();
+        sut.addBeforeCommitCallback(addedByCallback);
+      });
+      sut.addAfterCompletionCallback(completion);
+
+      sut.commit();
+
+      final InOrder inOrder = inOrder(callback, addedByCallback, utFacade, completion);
+      inOrder.verify(callback)
+          .run();
+      inOrder.verify(addedByCallback)
+          .run();
+      inOrder.verify(utFacade)
+          .commit();
+      inOrder.verify(completion)
+          .afterCompletion(CompletionStatus.COMMITTED);
+    }
+
+    @Test
+    public void failingBeforeCommitCallbackShouldRollbackTransaction() {
+      final RuntimeException failure = new RuntimeException();
+      final Runnable afterRollback = mock(Runnable.class);
+      final Runnable postCommit = mock(Runnable.class);
+      sut.begin();
+      doReturn(true).when(utFacade)
+          .isActive();
+      sut.addBeforeCommitCallback(() -> {
+        throw failure;
+      });
+      sut.addAfterRollbackCallback(afterRollback);
+      sut.addPostCommitCallback(postCommit);
+
+      try {
+        sut.commit();
+        fail("expected RuntimeException to be thrown");
+      } catch (RuntimeException e) {
+        assertThat(e, sameInstance(failure));
+      }
+      verify(utFacade, never()).commit();
+      verify(utFacade).rollback();
+      verify(afterRollback).run();
+      verify(postCommit, never()).run();
+    }
+
+    @Test
+    public void rollbackShouldRunAfterRollbackAndAfterCompletionCallbacks() {
+      final Runnable beforeCommit = mock(Runnable.class);
+      final Runnable afterRollback = mock(Runnable.class);
+      final CompletionCallback completion = mock(CompletionCallback.class);
+      sut.begin();
+      doReturn(true).when(utFacade)
+          .isActive();
+      sut.addBeforeCommitCallback(beforeCommit);
+      sut.addAfterRollbackCallback(afterRollback);
+      sut.addAfterCompletionCallback(completion);
+
+      sut.rollback();
+
+      final InOrder inOrder = inOrder(utFacade, afterRollback, completion);
+      inOrder.verify(utFacade)
+          .rollback();
+      inOrder.verify(afterRollback)
+          .run();
+      inOrder.verify(completion)
+          .afterCompletion(CompletionStatus.ROLLED_BACK);
+      verify(beforeCommit, never()).run();
+    }
+
+    @Test
+    public void failedCommitShouldRunAfterRollbackCallbacks() {
+      final RuntimeException failure = new RuntimeException();
+      final RuntimeException callbackFailure = new RuntimeException();
+      final CompletionCallback completion = mock(CompletionCallback.class);
+      sut.begin();
+      doReturn(true).when(utFacade)
+          .isActive();
+      doThrow(failure).when(utFacade)
+          .commit();
+      sut.addAfterRollbackCallback(() -> {
+        throw callbackFailure;
+      });
+      sut.addAfterCompletionCallback(completion);
+
+      try {
+        sut.commit();
+        fail("expected RuntimeException to be thrown");
+      } catch (RuntimeException e) {
+        assertThat(e, sameInstance(failure));
+        assertThat(e.getSuppressed()[0], sameInstance((Throwable) callbackFailure));
+      }
+      verify(completion).afterCompletion(CompletionStatus.ROLLED_BACK);
+    }
+  }
+
+
+  public class ReadOnlyOuterTransactionTest {
+
+    private TransactionFacade sut;
+
+    private Session session;
+
+    @Before
+    public void setUp() {
+      doReturn(false).when(utFacade)
+          .isActive();
+      doReturn(true).when(attribute)
+          .isReadOnly();
+      session = mock(Session.class);
+      doReturn(session).when(em)
+          .unwrap(Session.class);
+      doReturn(true).when(session)
+          .isOpen();
+      doReturn(FlushMode.AUTO).when(session)
+          .getHibernateFlushMode();
+      sut = JtaTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+    }
+
+    @Test
+    public void beginShouldSwitchSessionToReadOnly() {
+      sut.begin();
+
+      verify(utFacade).begin();
+      verify(session).setHibernateFlushMode(FlushMode.MANUAL);
+      verify(session).setDefaultReadOnly(true);
+    }
+
+    @Test
+    public void commitShouldRestoreSession() {
+      sut.begin();
+      sut.commit();
+
+      verify(session).setHibernateFlushMode(FlushMode.AUTO);
+      verify(session).setDefaultReadOnly(false);
+    }
+
+    @Test
+    public void rollbackShouldRestoreSession() {
+      sut.begin();
+      sut.rollback();
+
+      verify(utFacade).rollback();
+      verify(session).setHibernateFlushMode(FlushMode.AUTO);
+      verify(session).setDefaultReadOnly(false);
+    }
+  }
+
+
+  public class PropagationTest {
+
+    private void givenTransactionActive(boolean active) {
+      doReturn(active).when(utFacade)
+          .isActive();
+    }
+
+    private TransactionFacade createWith(Propagation propagation) {
+      doReturn(propagation).when(attribute)
+          .getPropagation();
+      return JtaTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+    }
+
+    @Test
+    public void supportsShouldRunWithoutTransactionIfNoneIsRunning() {
+      givenTransactionActive(false);
+
+      assertThat(createWith(Propagation.SUPPORTS), sameInstance((TransactionFacade) NoTransactionFacade.INSTANCE));
+    }
+
+    @Test
+    public void notSupportedShouldRunWithoutTransactionIfNoneIsRunning() {
+      givenTransactionActive(false);
+
+      assertThat(createWith(Propagation.NOT_SUPPORTED),
+          sameInstance((TransactionFacade) NoTransactionFacade.INSTANCE));
+    }
+
+    @Test
+    public void requiresNewShouldStartTransactionIfNoneIsRunning() {
+      givenTransactionActive(false);
+
+      createWith(Propagation.REQUIRES_NEW).begin();
+
+      verify(utFacade).begin();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void mandatoryShouldFailIfNoTransactionIsRunning() {
+      givenTransactionActive(false);
+
+      createWith(Propagation.MANDATORY);
+    }
+
+    @Test
+    public void mandatoryShouldJoinRunningTransaction() {
+      givenTransactionActive(true);
+
+      createWith(Propagation.MANDATORY).begin();
+
+      verify(utFacade, never()).begin();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void neverShouldFailIfTransactionIsRunning() {
+      givenTransactionActive(true);
+
+      createWith(Propagation.NEVER);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void requiresNewShouldFailIfRunningTransactionWasNotSuspended() {
+      givenTransactionActive(true);
+
+      createWith(Propagation.REQUIRES_NEW);
+    }
+  }
+
+
+  public class OuterTransactionWithTimeoutTest {
+
+    private TransactionFacade sut;
+
+    @Before
+    public void setUp() {
+      doReturn(false).when(utFacade)
+          .isActive();
+      doReturn(5).when(attribute)
+          .getTimeout();
+      doReturn(true).when(em)
+          .isOpen();
+      sut = JtaTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+    }
+
+    @Test
+    public void beginShouldSetQueryTimeout() {
+      sut.begin();
+
+      verify(em).setProperty(TransactionTimeout.QUERY_TIMEOUT_HINT, 5000);
+    }
+
+    @Test
+    public void commitShouldResetQueryTimeout() {
+      sut.begin();
+      sut.commit();
+
+      verify(utFacade).commit();
+      verify(em).setProperty(TransactionTimeout.QUERY_TIMEOUT_HINT, 0);
+    }
+
+    @Test
+    public void beginShouldPassTimeoutToUserTransaction() {
+      sut.begin();
+
+      final InOrder inOrder = inOrder(utFacade);
+      inOrder.verify(utFacade)
+          .setTransactionTimeout(5);
+      inOrder.verify(utFacade)
+          .begin();
+      inOrder.verify(utFacade)
+          .setTransactionTimeout(0);
+    }
   }
 
 }
@@ -0,0 +1,95 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+  private LatencyHistogram sut;
+
+  @Before
+  public void setUp() {
+    sut = new LatencyHistogram();
+  }
+
+  @Test
+  public void emptyHistogramShouldReportZero() {
+    assertThat(sut.getCount(), is(0L));
+    assertThat(sut.getValueAtPercentile(99), is(0L));
+    assertThat(sut.getMean(), is(0.0));
+  }
+
+  @Test
+  public void smallValuesShouldBeExact() {
+    for (long i = 1; i <= 10; i++) {
+      sut.record(i);
+    }
+
+    assertThat(sut.getValueAtPercentile(50), is(5L));
+    assertThat(sut.getValueAtPercentile(100), is(10L));
+    assertThat(sut.getMax(), is(10L));
+    assertThat(sut.getMean(), is(5.5));
+  }
+
+  @Test
+  public void largeValuesShouldBeWithinPrecision() {
+    for (long i = 1; i <= 100_000; i++) {
+      sut.record(i * 1000);
+    }
+
+    assertWithinPrecision(sut.getValueAtPercentile(50), 50_000_000);
+    assertWithinPrecision(sut.getValueAtPercentile(99), 99_000_000);
+    assertThat(sut.getValueAtPercentile(100), is(100_000_000L));
+  }
+
+  @Test
+  public void bucketsShouldCoverWholeRange() {
+    assertThat(LatencyHistogram.bucketOf(31), is(31));
+    assertThat(LatencyHistogram.bucketOf(32), is(32));
+    assertThat(LatencyHistogram.bucketOf(64), is(64));
+    assertThat(LatencyHistogram.lowerBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)) <= Long.MAX_VALUE, is(true));
+
+    for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+      final int bucket = LatencyHistogram.bucketOf(value);
+      assertThat(LatencyHistogram.lowerBoundOf(bucket) <= value, is(true));
+      assertThat(LatencyHistogram.lowerBoundOf(bucket + 1) > value, is(true));
+    }
+  }
+
+  @Test
+  public void negativeValuesShouldBeRecordedAsZero() {
+    sut.record(-5);
+
+    assertThat(sut.getValueAtPercentile(100), is(0L));
+  }
+
+  private static void assertWithinPrecision(long actual, long expected) {
+    assertThat(actual + " is not within 4% of " + expected, Math.abs(actual - expected) <= expected / 25, is(true));
+  }
+
+}
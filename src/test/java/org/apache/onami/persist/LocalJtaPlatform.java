@@ -0,0 +1,129 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jakarta.transaction.NotSupportedException;
+import jakarta.transaction.RollbackException;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.Transaction;
+import jakarta.transaction.TransactionManager;
+import jakarta.transaction.UserTransaction;
+import org.hibernate.engine.transaction.jta.platform.spi.JtaPlatform;
+
+import javax.transaction.Status;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Hibernate JTA platform of the {@link LocalUserTransaction}. Lets the entity managers of a JTA persistence unit join
+ * the transactions of the stand-in. Hibernate uses the jakarta transaction API, the stand-in the javax one.
+ */
+class LocalJtaPlatform implements JtaPlatform {
+
+  private final LocalUserTransaction userTransaction;
+
+  private final UserTransaction jakartaUserTransaction;
+
+  LocalJtaPlatform(LocalUserTransaction userTransaction) {
+    this.userTransaction = checkNotNull(userTransaction, "userTransaction is mandatory!");
+    this.jakartaUserTransaction = new JakartaUserTransaction(userTransaction);
+  }
+
+  @Override
+  public TransactionManager retrieveTransactionManager() {
+    return null;
+  }
+
+  @Override
+  public UserTransaction retrieveUserTransaction() {
+    return jakartaUserTransaction;
+  }
+
+  @Override
+  public Object getTransactionIdentifier(Transaction transaction) {
+    return transaction;
+  }
+
+  @Override
+  public boolean canRegisterSynchronization() {
+    return userTransaction.getStatus() == Status.STATUS_ACTIVE;
+  }
+
+  @Override
+  public void registerSynchronization(Synchronization synchronization) {
+    userTransaction.registerSynchronization(synchronization);
+  }
+
+  @Override
+  public int getCurrentStatus() {
+    return userTransaction.getStatus();
+  }
+
+  /**
+   * The {@link LocalUserTransaction} seen through the jakarta transaction API.
+   */
+  private static final class JakartaUserTransaction implements UserTransaction {
+
+    private final LocalUserTransaction delegate;
+
+    JakartaUserTransaction(LocalUserTransaction delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void begin() throws NotSupportedException {
+      try {
+        delegate.begin();
+      } catch (javax.transaction.NotSupportedException e) {
+        throw new NotSupportedException(e.getMessage());
+      }
+    }
+
+    @Override
+    public void commit() throws RollbackException {
+      try {
+        delegate.commit();
+      } catch (javax.transaction.RollbackException e) {
+        throw new RollbackException(e.getMessage());
+      }
+    }
+
+    @Override
+    public void rollback() {
+      delegate.rollback();
+    }
+
+    @Override
+    public void setRollbackOnly() {
+      delegate.setRollbackOnly();
+    }
+
+    @Override
+    public int getStatus() {
+      return delegate.getStatus();
+    }
+
+    @Override
+    public void setTransactionTimeout(int seconds) {
+      delegate.setTransactionTimeout(seconds);
+    }
+  }
+
+}
@@ -0,0 +1,104 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import jakarta.transaction.Synchronization;
+import javax.transaction.NotSupportedException;
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.UserTransaction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the {@link UserTransaction} of an application server. It keeps the status of the current thread and
+ * coordinates no resources, so a benchmark using it measures the overhead of the JTA facade alone. The only
+ * participants are the synchronizations registered through the {@link LocalJtaPlatform}.
+ */
+class LocalUserTransaction implements UserTransaction {
+
+  private final ThreadLocal<int[]> status = ThreadLocal.withInitial(() -> new int[] {Status.STATUS_NO_TRANSACTION});
+
+  private final ThreadLocal<List<Synchronization>> synchronizations = ThreadLocal.withInitial(ArrayList::new);
+
+  @Override
+  public void begin() throws NotSupportedException {
+    final int[] current = status.get();
+    if (current[0] != Status.STATUS_NO_TRANSACTION) {
+      throw new NotSupportedException("nested transactions are not supported");
+    }
+    current[0] = Status.STATUS_ACTIVE;
+  }
+
+  @Override
+  public void commit() throws RollbackException {
+    final int[] current = status.get();
+    if (current[0] == Status.STATUS_ACTIVE) {
+      for (Synchronization synchronization : synchronizations.get()) {
+        synchronization.beforeCompletion();
+      }
+    }
+    final boolean markedForRollback = current[0] == Status.STATUS_MARKED_ROLLBACK;
+    complete(markedForRollback ? Status.STATUS_ROLLEDBACK : Status.STATUS_COMMITTED);
+    if (markedForRollback) {
+      throw new RollbackException("transaction was marked for rollback");
+    }
+  }
+
+  @Override
+  public void rollback() {
+    complete(Status.STATUS_ROLLEDBACK);
+  }
+
+  private void complete(int outcome) {
+    status.get()[0] = Status.STATUS_NO_TRANSACTION;
+    final List<Synchronization> registered = synchronizations.get();
+    for (Synchronization synchronization : registered) {
+      synchronization.afterCompletion(outcome);
+    }
+    registered.clear();
+  }
+
+  /**
+   * Registers a synchronization with the transaction of the current thread.
+   *
+   * @param synchronization the synchronization to notify when the transaction completes.
+   */
+  void registerSynchronization(Synchronization synchronization) {
+    synchronizations.get()
+        .add(synchronization);
+  }
+
+  @Override
+  public void setRollbackOnly() {
+    status.get()[0] = Status.STATUS_MARKED_ROLLBACK;
+  }
+
+  @Override
+  public int getStatus() {
+    return status.get()[0];
+  }
+
+  @Override
+  public void setTransactionTimeout(int seconds) {
+    // timeouts are not supported
+  }
+
+}
@@ -0,0 +1,150 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import org.apache.onami.persist.test.multipersistenceunits.FirstPU;
+import org.apache.onami.persist.test.multipersistenceunits.SecondPU;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of transactional methods in an application with two persistence units. The methods take part in one
+ * or both units depending on {@link Transactional#onUnits()} and use the entity manager of every unit once.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test -Djmh.args="MultiUnitTxnInterceptorBenchmark -prof gc"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiUnitTxnInterceptorBenchmark {
+
+  private Injector injector;
+
+  private EntityManagerFactory emf;
+
+  private FirstUnitService firstUnitService;
+
+  private BothUnitsService bothUnitsService;
+
+  @Setup
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("firstUnit").annotatedWith(FirstPU.class);
+        bindApplicationManagedPersistenceUnit("secondUnit").annotatedWith(SecondPU.class);
+      }
+    });
+    injector.getInstance(Key.get(PersistenceService.class, FirstPU.class))
+        .start();
+    injector.getInstance(Key.get(PersistenceService.class, SecondPU.class))
+        .start();
+    emf = Persistence.createEntityManagerFactory("firstUnit");
+    firstUnitService = injector.getInstance(FirstUnitService.class);
+    bothUnitsService = injector.getInstance(BothUnitsService.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    emf.close();
+    injector.getInstance(Key.get(PersistenceService.class, FirstPU.class))
+        .stop();
+    injector.getInstance(Key.get(PersistenceService.class, SecondPU.class))
+        .stop();
+  }
+
+  /**
+   * Baseline: the work of a resource local transaction on one unit without the library.
+   */
+  @Benchmark
+  public boolean rawEntityManager() {
+    final EntityManager em = emf.createEntityManager();
+    try {
+      em.getTransaction()
+          .begin();
+      final boolean open = em.isOpen();
+      em.getTransaction()
+          .commit();
+      return open;
+    } finally {
+      em.close();
+    }
+  }
+
+  @Benchmark
+  public boolean oneOfTwoUnits() {
+    return firstUnitService.useEntityManager();
+  }
+
+  @Benchmark
+  public boolean bothUnits() {
+    return bothUnitsService.useEntityManagers();
+  }
+
+  public static class FirstUnitService {
+    @Inject
+    @FirstPU
+    private EntityManagerProvider firstEmProvider;
+
+    @Transactional(onUnits = FirstPU.class)
+    public boolean useEntityManager() {
+      return firstEmProvider.get()
+          .isOpen();
+    }
+  }
+
+  public static class BothUnitsService {
+    @Inject
+    @FirstPU
+    private EntityManagerProvider firstEmProvider;
+
+    @Inject
+    @SecondPU
+    private EntityManagerProvider secondEmProvider;
+
+    @Transactional(onUnits = {FirstPU.class, SecondPU.class})
+    public boolean useEntityManagers() {
+      return firstEmProvider.get()
+          .isOpen() && secondEmProvider.get()
+          .isOpen();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import jakarta.persistence.EntityManager;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for {@link OutboxImpl}.
+ */
+public class OutboxImplTest {
+
+  private OutboxImpl sut;
+
+  private OutboxRelay relay;
+
+  private EntityManager em;
+
+  private TransactionHookManager hookManager;
+
+  @Before
+  public void setUp() {
+    relay = mock(OutboxRelay.class);
+    em = mock(EntityManager.class);
+    hookManager = mock(TransactionHookManager.class);
+    final EntityManagerProvider emProvider = mock(EntityManagerProvider.class);
+    doReturn(em).when(emProvider)
+        .get();
+
+    sut = new OutboxImpl(relay);
+    sut.init(emProvider, hookManager);
+  }
+
+  @Test
+  public void recordShouldPersistEventAndWakeUpRelayAfterCommit() {
+    final ArgumentCaptor<Runnable> callback = ArgumentCaptor.forClass(Runnable.class);
+    final ArgumentCaptor<OutboxEvent> event = ArgumentCaptor.forClass(OutboxEvent.class);
+
+    sut.record("topic", "payload");
+
+    final InOrder inOrder = inOrder(hookManager, em);
+    inOrder.verify(hookManager)
+        .addPostCommitCallback(eq(relay), callback.capture());
+    inOrder.verify(em)
+        .persist(event.capture());
+    assertThat(event.getValue()
+        .getTopic(), is("topic"));
+    assertThat(event.getValue()
+        .getPayload(), is("payload"));
+    verify(relay, never()).wakeUp();
+    callback.getValue()
+        .run();
+    verify(relay).wakeUp();
+  }
+
+  @Test
+  public void recordShouldFailWithoutTransaction() {
+    doThrow(new NullPointerException()).when(hookManager)
+        .addPostCommitCallback(any(), any(Runnable.class));
+
+    try {
+      sut.record("topic", "payload");
+      fail("expected NullPointerException to be thrown");
+    } catch (NullPointerException e) {
+      // expected
+    }
+    verify(em, never()).persist(any());
+  }
+
+  @Test
+  public void recordShouldWakeUpRelayOncePerTransaction() {
+    sut.record("topic", "first");
+    sut.record("topic", "second");
+
+    final ArgumentCaptor<Runnable> callback = ArgumentCaptor.forClass(Runnable.class);
+    verify(hookManager, times(2)).addPostCommitCallback(eq(relay), callback.capture());
+    assertThat(callback.getAllValues()
+        .get(1), sameInstance(callback.getAllValues()
+        .get(0)));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void topicIsMandatory() {
+    sut.record(null, "payload");
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void payloadIsMandatory() {
+    sut.record("topic", null);
+  }
+
+}
@@ -0,0 +1,169 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for {@link ParallelReadsImpl}.
+ */
+public class ParallelReadsImplTest {
+
+  private ParallelReadsImpl sut;
+
+  private EntityManagerFactory emf;
+
+  private List<EntityManager> entityManagers;
+
+  @Before
+  public void setUp() {
+    final EntityManagerFactoryProvider emfProvider = mock(EntityManagerFactoryProvider.class);
+    emf = mock(EntityManagerFactory.class);
+    doReturn(emf).when(emfProvider)
+        .get();
+    entityManagers = Collections.synchronizedList(new ArrayList<>());
+    doAnswer(invocation -> {
+      final EntityManager em = mock(EntityManager.class);
+      entityManagers.add(em);
+      return em;
+    }).when(emf)
+        .createEntityManager();
+
+    sut = new ParallelReadsImpl(3);
+    sut.init(emfProvider, null);
+  }
+
+  @Test
+  public void shouldReturnResultsInOrderOfReads() {
+    final List<ParallelReads.Read<String>> reads = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      final String result = "result" + i;
+      reads.add(em -> result);
+    }
+
+    final List<String> results = sut.readAll(reads);
+
+    assertThat(results.size(), is(10));
+    for (int i = 0; i < 10; i++) {
+      assertThat(results.get(i), is("result" + i));
+    }
+  }
+
+  @Test
+  public void shouldRunEveryReadWithEntityManagerOfItsOwn() {
+    final List<EntityManager> used = sut.readAll(Arrays.asList(em -> em, em -> em, em -> em));
+
+    assertThat(used.size(), is(3));
+    assertThat(entityManagers.containsAll(used), is(true));
+    assertThat(entityManagers.size(), is(3));
+    for (EntityManager em : entityManagers) {
+      verify(em).close();
+    }
+  }
+
+  @Test
+  public void shouldRunReadsConcurrently() {
+    final CountDownLatch latch = new CountDownLatch(3);
+    final ParallelReads.Read<Boolean> read = em -> {
+      latch.countDown();
+      return latch.await(5, TimeUnit.SECONDS);
+    };
+
+    assertThat(sut.readAll(Arrays.asList(read, read, read)), is(Arrays.asList(true, true, true)));
+  }
+
+  @Test
+  public void shouldThrowSingleRuntimeException() {
+    final IllegalStateException exc = new IllegalStateException();
+
+    try {
+      sut.readAll(Arrays.<ParallelReads.Read<String>>asList(em -> "a", em -> {
+        throw exc;
+      }, em -> "c"));
+      fail("expected IllegalStateException to be thrown");
+    } catch (IllegalStateException e) {
+      assertThat(e, sameInstance(exc));
+    }
+    verify(emf, times(3)).createEntityManager();
+    for (EntityManager em : entityManagers) {
+      verify(em).close();
+    }
+  }
+
+  @Test
+  public void shouldAggregateMultipleFailures() {
+    try {
+      sut.readAll(Arrays.<ParallelReads.Read<String>>asList(em -> {
+        throw new IOException();
+      }, em -> "b", em -> {
+        throw new IllegalStateException();
+      }));
+      fail("expected AggregatedException to be thrown");
+    } catch (AggregatedException e) {
+      assertThat(e.getNumCauses(), is(2));
+    }
+  }
+
+  @Test
+  public void shouldWrapSingleCheckedException() {
+    try {
+      sut.readAll(Collections.<ParallelReads.Read<String>>singletonList(em -> {
+        throw new IOException();
+      }));
+      fail("expected AggregatedException to be thrown");
+    } catch (AggregatedException e) {
+      assertThat(e.getCauses()[0], instanceOf(IOException.class));
+    }
+  }
+
+  @Test
+  public void shouldReturnEmptyListForNoReads() {
+    assertThat(sut.readAll(Collections.<ParallelReads.Read<String>>emptyList())
+        .isEmpty(), is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void limitMustBePositive() {
+    new ParallelReadsImpl(0);
+  }
+
+}
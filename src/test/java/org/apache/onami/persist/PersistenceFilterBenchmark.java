@@ -0,0 +1,115 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the begin/end cycle of the {@link PersistenceFilter} around a request, compared to creating and
+ * closing a raw entity manager.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test -Djmh.args="PersistenceFilterBenchmark -prof gc"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceFilterBenchmark {
+
+  private Injector injector;
+
+  private EntityManagerFactory emf;
+
+  private PersistenceFilter filter;
+
+  private FilterChain emptyChain;
+
+  private FilterChain chainUsingEntityManager;
+
+  @Setup
+  public void setUp() throws ServletException {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    });
+    filter = injector.getInstance(PersistenceFilter.class);
+    filter.init(null);
+    emf = Persistence.createEntityManagerFactory("testUnit");
+
+    final EntityManagerProvider emProvider = injector.getInstance(EntityManagerProvider.class);
+    emptyChain = (request, response) -> {
+    };
+    chainUsingEntityManager = (request, response) -> emProvider.get()
+        .isOpen();
+  }
+
+  @TearDown
+  public void tearDown() {
+    emf.close();
+    filter.destroy();
+  }
+
+  /**
+   * Baseline: creating and closing an entity manager for a request without the library.
+   */
+  @Benchmark
+  public boolean rawEntityManager() {
+    final EntityManager em = emf.createEntityManager();
+    try {
+      return em.isOpen();
+    } finally {
+      em.close();
+    }
+  }
+
+  @Benchmark
+  public void requestNotUsingEntityManager() throws IOException, ServletException {
+    filter.doFilter(null, null, emptyChain);
+  }
+
+  @Benchmark
+  public void requestUsingEntityManager() throws IOException, ServletException {
+    filter.doFilter(null, null, chainUsingEntityManager);
+  }
+}
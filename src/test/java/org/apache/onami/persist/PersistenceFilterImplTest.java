@@ -47,7 +47,7 @@ public class PersistenceFilterImplTest {
   public void setUp() throws Exception {
     allPersistenceServices = mock(AllPersistenceServices.class);
     allUnitsOfWork = mock(AllUnitsOfWork.class);
-    sut = new PersistenceFilterImpl(allPersistenceServices, allUnitsOfWork);
+    sut = new PersistenceFilterImpl(allPersistenceServices, allUnitsOfWork, new ThreadLocalContextStorage());
   }
 
   @Test
@@ -0,0 +1,171 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for {@link PostCommitCallbacks}.
+ */
+public class PostCommitCallbacksTest {
+
+  private PostCommitCallbacks sut;
+
+  @Before
+  public void setUp() {
+    sut = new PostCommitCallbacks(PostCommitDispatcher.INLINE);
+  }
+
+  @Test
+  public void shouldRunCallbacksOnlyOnce() {
+    final Runnable callback = mock(Runnable.class);
+    sut.add(callback);
+
+    sut.runAll();
+    sut.runAll();
+
+    verify(callback, times(1)).run();
+  }
+
+  @Test
+  public void shouldRunAllCallbacksAndThrowFirstException() {
+    final RuntimeException first = new RuntimeException("first");
+    final RuntimeException second = new RuntimeException("second");
+    final Runnable failingFirst = mock(Runnable.class);
+    final Runnable succeeding = mock(Runnable.class);
+    final Runnable failingSecond = mock(Runnable.class);
+    doThrow(first).when(failingFirst)
+        .run();
+    doThrow(second).when(failingSecond)
+        .run();
+    sut.add(failingFirst);
+    sut.add(succeeding);
+    sut.add(failingSecond);
+
+    try {
+      sut.runAll();
+      fail("expected RuntimeException to be thrown");
+    } catch (RuntimeException e) {
+      assertThat(e, sameInstance(first));
+      assertThat(e.getSuppressed().length, is(1));
+      assertThat(e.getSuppressed()[0], sameInstance((Throwable) second));
+    }
+    verify(succeeding).run();
+  }
+
+  @Test
+  public void callbackAddedByCallbackShouldBeRunOnNextRun() {
+    final Runnable late = mock(Runnable.class);
+    sut.add(() -> sut.add(late));
+
+    sut.runAll();
+    verify(late, times(0)).run();
+    sut.runAll();
+    verify(late).run();
+  }
+
+  @Test
+  public void keyedCallbackShouldBeAddedOncePerKey() {
+    final Runnable first = mock(Runnable.class);
+    final Runnable duplicate = mock(Runnable.class);
+    final Runnable other = mock(Runnable.class);
+    sut.add("key", first);
+    sut.add("key", duplicate);
+    sut.add("other", other);
+
+    sut.runAll();
+
+    verify(first).run();
+    verify(duplicate, never()).run();
+    verify(other).run();
+  }
+
+  @Test
+  public void keysShouldBeForgottenAfterRun() {
+    final Runnable callback = mock(Runnable.class);
+    sut.add("key", callback);
+    sut.runAll();
+    sut.add("key", callback);
+    sut.runAll();
+
+    verify(callback, times(2)).run();
+  }
+
+  @Test
+  public void aggregateShouldReceiveDistinctKeysInOneCallAtPositionOfFirstKey() {
+    final List<Object> calls = new ArrayList<>();
+    final Consumer<Set<Integer>> aggregate = calls::add;
+    sut.addAggregate(1, aggregate);
+    sut.add(() -> calls.add("plain"));
+    for (int i = 0; i < 10000; i++) {
+      sut.addAggregate(i % 3, aggregate);
+    }
+
+    sut.runAll();
+
+    assertThat(calls, is(asList((Object) new LinkedHashSet<>(asList(1, 0, 2)), "plain")));
+  }
+
+  @Test
+  public void aggregatesShouldBeToldApartByCallback() {
+    final List<Set<String>> first = new ArrayList<>();
+    final List<Set<String>> second = new ArrayList<>();
+    final Consumer<Set<String>> firstCallback = first::add;
+    final Consumer<Set<String>> secondCallback = second::add;
+    sut.addAggregate("a", firstCallback);
+    sut.addAggregate("b", secondCallback);
+    sut.addAggregate("c", firstCallback);
+
+    sut.runAll();
+
+    assertThat(first, is(asList((Set<String>) new HashSet<>(asList("a", "c")))));
+    assertThat(second, is(asList((Set<String>) new HashSet<>(asList("b")))));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void callbackIsMandatory() {
+    sut.add(null);
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void keyIsMandatory() {
+    sut.add(null, mock(Runnable.class));
+  }
+
+}
@@ -0,0 +1,237 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import de.bechte.junit.runners.context.HierarchicalContextRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for {@link PostCommitDispatcher}.
+ */
+@RunWith(HierarchicalContextRunner.class)
+public class PostCommitDispatcherTest {
+
+  private List<String> events;
+
+  private List<Runnable> queued;
+
+  private List<Throwable> failures;
+
+  private Executor queueingExecutor;
+
+  private PostCommitDispatch.FailureHandler failureHandler;
+
+  @Before
+  public void setUp() {
+    events = new ArrayList<>();
+    queued = new ArrayList<>();
+    failures = new ArrayList<>();
+    queueingExecutor = queued::add;
+    failureHandler = (callback, failure) -> failures.add(failure);
+  }
+
+  private Runnable event(String name) {
+    return () -> events.add(name);
+  }
+
+  private void runQueued() {
+    final List<Runnable> tasks = new ArrayList<>(queued);
+    queued.clear();
+    tasks.forEach(Runnable::run);
+  }
+
+  public class Async {
+
+    private PostCommitDispatcher sut;
+
+    @Before
+    public void setUp() {
+      sut = PostCommitDispatcher.async(PostCommitDispatch.to(queueingExecutor)
+          .withQueueCapacity(1)
+          .withFailureHandler(failureHandler));
+    }
+
+    @Test
+    public void shouldRunCallbacksOfTransactionInOrderOnExecutor() {
+      sut.dispatch(asList(event("a"), event("b"), event("c")));
+
+      assertThat(events.isEmpty(), is(true));
+      assertThat(queued.size(), is(1));
+      runQueued();
+      assertThat(events, is(asList("a", "b", "c")));
+    }
+
+    @Test
+    public void shouldReportFailureAndRunRemainingCallbacks() {
+      final RuntimeException failure = new RuntimeException();
+
+      sut.dispatch(asList(() -> {
+        throw failure;
+      }, event("b")));
+      runQueued();
+
+      assertThat(failures, is(asList((Throwable) failure)));
+      assertThat(events, is(asList("b")));
+    }
+
+    @Test
+    public void shouldPropagateErrorAndReleasePermit() {
+      final Error error = new Error();
+      sut.dispatch(asList(() -> {
+        throw error;
+      }, event("b")));
+
+      try {
+        runQueued();
+        fail("expected Error to be thrown");
+      } catch (Error e) {
+        assertThat(e, sameInstance(error));
+      }
+      assertThat(failures.isEmpty(), is(true));
+      assertThat(events.isEmpty(), is(true));
+      sut.dispatch(asList(event("c")));
+      assertThat(queued.size(), is(1));
+    }
+
+    @Test
+    public void shouldRunOnCallerIfQueueIsFull() {
+      sut.dispatch(asList(event("queued")));
+
+      sut.dispatch(asList(event("inline")));
+
+      assertThat(events, is(asList("inline")));
+      runQueued();
+      assertThat(events, is(asList("inline", "queued")));
+    }
+
+    @Test
+    public void shouldAcceptAgainAfterQueuedCallbacksHaveRun() {
+      sut.dispatch(asList(event("first")));
+      runQueued();
+
+      sut.dispatch(asList(event("second")));
+
+      assertThat(queued.size(), is(1));
+    }
+
+    @Test
+    public void shouldReportCallbacksRejectedByExecutor() {
+      final RejectedExecutionException rejected = new RejectedExecutionException();
+      sut = PostCommitDispatcher.async(PostCommitDispatch.to(task -> {
+        throw rejected;
+      })
+          .withFailureHandler(failureHandler));
+
+      sut.dispatch(asList(event("a"), event("b")));
+
+      assertThat(failures.size(), is(2));
+      assertThat(failures.get(0), sameInstance((Throwable) rejected));
+      assertThat(events.isEmpty(), is(true));
+    }
+  }
+
+
+  public class AsyncDiscarding {
+
+    private PostCommitDispatcher sut;
+
+    @Before
+    public void setUp() {
+      sut = PostCommitDispatcher.async(PostCommitDispatch.to(queueingExecutor)
+          .withQueueCapacity(1)
+          .onOverflow(PostCommitDispatch.OverflowPolicy.DISCARD)
+          .withFailureHandler(failureHandler));
+    }
+
+    @Test
+    public void shouldReportDiscardedCallbacksIfQueueIsFull() {
+      sut.dispatch(asList(event("queued")));
+
+      sut.dispatch(asList(event("discarded")));
+      runQueued();
+
+      assertThat(events, is(asList("queued")));
+      assertThat(failures.size(), is(1));
+      assertThat(failures.get(0), instanceOf(RejectedExecutionException.class));
+    }
+  }
+
+
+  public class AsyncBlocking {
+
+    private PostCommitDispatcher sut;
+
+    @Before
+    public void setUp() {
+      sut = PostCommitDispatcher.async(PostCommitDispatch.to(queueingExecutor)
+          .withQueueCapacity(1)
+          .onOverflow(PostCommitDispatch.OverflowPolicy.BLOCK)
+          .withFailureHandler(failureHandler));
+    }
+
+    @Test
+    public void interruptedCallerShouldDiscardAndKeepInterrupt() {
+      sut.dispatch(asList(event("queued")));
+
+      Thread.currentThread()
+          .interrupt();
+      try {
+        sut.dispatch(asList(event("discarded")));
+        assertThat(Thread.currentThread()
+            .isInterrupted(), is(true));
+      } finally {
+        Thread.interrupted();
+      }
+      assertThat(failures.size(), is(1));
+      assertThat(queued.size(), is(1));
+    }
+
+    @Test
+    public void shouldWaitForQueuedCallbacks() throws Exception {
+      sut.dispatch(asList(event("queued")));
+      final Thread committer = new Thread(() -> sut.dispatch(asList(event("waiting"))));
+
+      committer.start();
+      committer.join(100);
+      assertThat(committer.isAlive(), is(true));
+      queued.remove(0)
+          .run();
+      committer.join(5000);
+
+      assertThat(committer.isAlive(), is(false));
+      assertThat(events, is(asList("queued")));
+    }
+  }
+
+}
@@ -20,16 +20,28 @@ package org.apache.onami.persist;
  */
 
 import de.bechte.junit.runners.context.HierarchicalContextRunner;
+import org.apache.onami.persist.TransactionHookManager.CompletionCallback;
+import org.apache.onami.persist.TransactionHookManager.CompletionStatus;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityTransaction;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 /**
@@ -42,23 +54,35 @@ public class ResourceLocalTransactionFacadeProviderTest {
 
   private EntityManagerProvider emProvider;
 
+  private TransactionStateObserver unitOfWorkState;
+
   private EntityManager em;
 
+  private TransactionAttribute attribute;
+
   private EntityTransaction txn;
 
   @Before
   public void setUp() {
     // input
     emProvider = mock(EntityManagerProvider.class);
+    unitOfWorkState = mock(TransactionStateObserver.class);
+    doReturn(true).when(unitOfWorkState)
+        .isEntityManagerCreated();
 
     // subject under test
-    sut = new ResourceLocalTransactionFacadeFactory(emProvider);
+    sut = new ResourceLocalTransactionFacadeFactory(emProvider, unitOfWorkState, new TransactionDefaults(0, false),
+        new ThreadLocalContextStorage());
 
     // environment
     em = mock(EntityManager.class);
     doReturn(em).when(emProvider)
         .get();
 
+    attribute = mock(TransactionAttribute.class);
+    doReturn(Propagation.REQUIRED).when(attribute)
+        .getPropagation();
+
     txn = mock(EntityTransaction.class);
     doReturn(txn).when(em)
         .getTransaction();
@@ -72,7 +96,7 @@ public class ResourceLocalTransactionFacadeProviderTest {
     public void setUp() {
       doReturn(true).when(txn)
           .isActive();
-      sut = ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade();
+      sut = ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
     }
 
     @Test
@@ -106,7 +130,7 @@ public class ResourceLocalTransactionFacadeProviderTest {
     public void setUp() {
       doReturn(false).when(txn)
           .isActive();
-      sut = ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade();
+      sut = ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
     }
 
     @Test
@@ -139,6 +163,415 @@ public class ResourceLocalTransactionFacadeProviderTest {
 
       verify(txn).rollback();
     }
+
+    @Test
+    public void commitShouldRunBeforeCommitCallbacksBeforeCommitting() {
+      final Runnable callback = mock(Runnable.class);
+      final CompletionCallback completion = mock(CompletionCallback.class);
+      sut.begin();
+      doReturn(true).when(txn)
+          .isActive();
+      sut.addBeforeCommitCallback(callback);
+      sut.addAfterCompletionCallback(completion);
+
+      sut.commit();
+
+      final InOrder inOrder = inOrder(callback, txn, completion);
+      inOrder.verify(callback)
+          .run();
+      inOrder.verify(txn)
+          .commit();
+      inOrder.verify(completion)
+          .afterCompletion(CompletionStatus.COMMITTED);
+    }
+
+    @Test
+    public void commitOfRollbackOnlyTransactionShouldRunAfterRollbackCallbacks() {
+      final Runnable beforeCommit = mock(Runnable.class);
+      final Runnable afterRollback = mock(Runnable.class);
+      final CompletionCallback completion = mock(CompletionCallback.class);
+      sut.begin();
+      doReturn(true).when(txn)
+          .isActive();
+      doReturn(true).when(txn)
+          .getRollbackOnly();
+      sut.addBeforeCommitCallback(beforeCommit);
+      sut.addAfterRollbackCallback(afterRollback);
+      sut.addAfterCompletionCallback(completion);
+
+      sut.commit();
+
+      verify(beforeCommit, never()).run();
+      verify(afterRollback).run();
+      verify(completion).afterCompletion(CompletionStatus.ROLLED_BACK);
+    }
+
+    @Test
+    public void commitShouldBeRecordedEvenIfPostCommitCallbackFails() {
+      sut.begin();
+      doReturn(true).when(txn)
+          .isActive();
+      sut.addPostCommitCallback(() -> {
+        throw new IllegalStateException();
+      });
+
+      try {
+        sut.commit();
+        fail("expected IllegalStateException to be thrown");
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      assertThat(sut.isCommitted(), is(true));
+    }
+
+    @Test
+    public void commitOfRollbackOnlyTransactionShouldNotBeRecordedAsCommit() {
+      doReturn(true).when(txn)
+          .getRollbackOnly();
+
+      sut.commit();
+
+      assertThat(sut.isCommitted(), is(false));
+    }
+
+    @Test
+    public void failedRollbackShouldStillRunAfterRollbackCallbacks() {
+      final RuntimeException failure = new RuntimeException();
+      final Runnable afterRollback = mock(Runnable.class);
+      sut.begin();
+      doReturn(true).when(txn)
+          .isActive();
+      doThrow(failure).when(txn)
+          .rollback();
+      sut.addAfterRollbackCallback(afterRollback);
+
+      try {
+        sut.rollback();
+        fail("expected RuntimeException to be thrown");
+      } catch (RuntimeException e) {
+        assertThat(e, sameInstance(failure));
+      }
+      verify(afterRollback).run();
+    }
+  }
+
+
+  public class ReadOnlyOuterTransactionTest {
+
+    private TransactionFacade sut;
+
+    private Session session;
+
+    @Before
+    public void setUp() {
+      doReturn(false).when(txn)
+          .isActive();
+      doReturn(true).when(attribute)
+          .isReadOnly();
+      session = mock(Session.class);
+      doReturn(session).when(em)
+          .unwrap(Session.class);
+      doReturn(true).when(session)
+          .isOpen();
+      doReturn(FlushMode.AUTO).when(session)
+          .getHibernateFlushMode();
+      sut = ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+    }
+
+    @Test
+    public void beginShouldSwitchSessionToReadOnly() {
+      sut.begin();
+
+      verify(txn).begin();
+      verify(session).setHibernateFlushMode(FlushMode.MANUAL);
+      verify(session).setDefaultReadOnly(true);
+    }
+
+    @Test
+    public void commitShouldRestoreSession() {
+      sut.begin();
+      sut.commit();
+
+      verify(session).setHibernateFlushMode(FlushMode.AUTO);
+      verify(session).setDefaultReadOnly(false);
+    }
+
+    @Test
+    public void rollbackShouldRestoreSession() {
+      sut.begin();
+      sut.rollback();
+
+      verify(txn).rollback();
+      verify(session).setHibernateFlushMode(FlushMode.AUTO);
+      verify(session).setDefaultReadOnly(false);
+    }
+  }
+
+
+  public class PropagationTest {
+
+    private void givenTransactionActive(boolean active) {
+      doReturn(active).when(txn)
+          .isActive();
+    }
+
+    private TransactionFacade createWith(Propagation propagation) {
+      doReturn(propagation).when(attribute)
+          .getPropagation();
+      return ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+    }
+
+    @Test
+    public void supportsShouldRunWithoutTransactionIfNoneIsRunning() {
+      givenTransactionActive(false);
+
+      assertThat(createWith(Propagation.SUPPORTS), sameInstance((TransactionFacade) NoTransactionFacade.INSTANCE));
+    }
+
+    @Test
+    public void notSupportedShouldRunWithoutTransactionIfNoneIsRunning() {
+      givenTransactionActive(false);
+
+      assertThat(createWith(Propagation.NOT_SUPPORTED),
+          sameInstance((TransactionFacade) NoTransactionFacade.INSTANCE));
+    }
+
+    @Test
+    public void requiresNewShouldStartTransactionIfNoneIsRunning() {
+      givenTransactionActive(false);
+
+      createWith(Propagation.REQUIRES_NEW).begin();
+
+      verify(txn).begin();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void mandatoryShouldFailIfNoTransactionIsRunning() {
+      givenTransactionActive(false);
+
+      createWith(Propagation.MANDATORY);
+    }
+
+    @Test
+    public void mandatoryShouldJoinRunningTransaction() {
+      givenTransactionActive(true);
+
+      createWith(Propagation.MANDATORY).begin();
+
+      verify(txn, never()).begin();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void neverShouldFailIfTransactionIsRunning() {
+      givenTransactionActive(true);
+
+      createWith(Propagation.NEVER);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void requiresNewShouldFailIfRunningTransactionWasNotSuspended() {
+      givenTransactionActive(true);
+
+      createWith(Propagation.REQUIRES_NEW);
+    }
+  }
+
+
+  public class OuterTransactionWithTimeoutTest {
+
+    private TransactionFacade sut;
+
+    @Before
+    public void setUp() {
+      doReturn(false).when(txn)
+          .isActive();
+      doReturn(5).when(attribute)
+          .getTimeout();
+      doReturn(true).when(em)
+          .isOpen();
+      sut = ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+    }
+
+    @Test
+    public void beginShouldSetQueryTimeout() {
+      sut.begin();
+
+      verify(em).setProperty(TransactionTimeout.QUERY_TIMEOUT_HINT, 5000);
+    }
+
+    @Test
+    public void commitShouldResetQueryTimeout() {
+      sut.begin();
+      sut.commit();
+
+      verify(txn).commit();
+      verify(em).setProperty(TransactionTimeout.QUERY_TIMEOUT_HINT, 0);
+    }
+  }
+
+
+  public class LazyOuterTransactionTest {
+
+    private TransactionFacade sut;
+
+    @Before
+    public void setUp() {
+      ResourceLocalTransactionFacadeProviderTest.this.sut =
+          new ResourceLocalTransactionFacadeFactory(emProvider, unitOfWorkState, new TransactionDefaults(0, true),
+              new ThreadLocalContextStorage());
+      doReturn(false).when(txn)
+          .isActive();
+      sut = ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+    }
+
+    @Test
+    public void beginShouldNotBeginTransaction() {
+      sut.begin();
+
+      verify(txn, never()).begin();
+    }
+
+    @Test
+    public void firstUseShouldBeginTransaction() {
+      sut.begin();
+      sut.beforeEntityManagerUse();
+      sut.beforeEntityManagerUse();
+
+      verify(txn).begin();
+    }
+
+    @Test
+    public void commitShouldDoNothingIfTransactionWasNotStarted() {
+      final Runnable callback = mock(Runnable.class);
+      sut.begin();
+      sut.addPostCommitCallback(callback);
+      sut.commit();
+
+      verify(txn, never()).commit();
+      verify(callback).run();
+    }
+
+    @Test
+    public void commitShouldCommitStartedTransaction() {
+      sut.begin();
+      sut.beforeEntityManagerUse();
+      sut.commit();
+
+      verify(txn).commit();
+    }
+
+    @Test
+    public void rollbackShouldDoNothingIfTransactionWasNotStarted() {
+      sut.begin();
+      sut.rollback();
+
+      verify(txn, never()).rollback();
+    }
+
+    @Test
+    public void rollbackShouldRunAfterRollbackCallbacksIfTransactionWasNotStarted() {
+      final Runnable afterRollback = mock(Runnable.class);
+      sut.begin();
+      sut.addAfterRollbackCallback(afterRollback);
+      sut.rollback();
+
+      verify(afterRollback).run();
+    }
+
+    @Test
+    public void beforeCommitCallbackUsingEntityManagerShouldStartTransaction() {
+      sut.begin();
+      sut.addBeforeCommitCallback(sut::beforeEntityManagerUse);
+      sut.commit();
+
+      verify(txn).begin();
+      verify(txn).commit();
+    }
+
+    @Test
+    public void transactionShouldBeActiveWhileDeferred() {
+      sut.begin();
+
+      assertThat(ResourceLocalTransactionFacadeProviderTest.this.sut.isTransactionActive(), is(true));
+      sut.rollback();
+    }
+
+    @Test
+    public void innerTransactionShouldJoinDeferredTransactionWithoutStartingIt() {
+      sut.begin();
+      final TransactionFacade inner =
+          ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+      inner.begin();
+      inner.rollback();
+      inner.commit();
+      sut.commit();
+
+      verify(emProvider).get();
+      verify(txn, never()).begin();
+      verify(txn, never()).setRollbackOnly();
+    }
+
+    @Test
+    public void innerRollbackShouldApplyToTransactionStartedLater() {
+      sut.begin();
+      final TransactionFacade inner =
+          ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+      inner.rollback();
+      inner.beforeEntityManagerUse();
+      sut.commit();
+
+      verify(txn).begin();
+      verify(txn).setRollbackOnly();
+    }
+
+    @Test
+    public void shouldNotRetrieveEntityManagerBeforeFirstUseIfNotCreatedYet() {
+      doReturn(false).when(unitOfWorkState)
+          .isEntityManagerCreated();
+      final TransactionFacade outer =
+          ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+      outer.begin();
+      final TransactionFacade inner =
+          ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+      inner.begin();
+
+      // the facade of the set up has retrieved the entity manager once
+      verify(emProvider).get();
+      inner.beforeEntityManagerUse();
+      inner.commit();
+      outer.commit();
+
+      verify(emProvider, times(2)).get();
+      verify(txn).begin();
+      verify(txn).commit();
+    }
+
+    @Test
+    public void unusedTransactionShouldNotRetrieveEntityManagerIfNotCreatedYet() {
+      doReturn(false).when(unitOfWorkState)
+          .isEntityManagerCreated();
+      final TransactionFacade outer =
+          ResourceLocalTransactionFacadeProviderTest.this.sut.createTransactionFacade(attribute);
+      outer.begin();
+      outer.rollback();
+
+      assertThat(ResourceLocalTransactionFacadeProviderTest.this.sut.isTransactionActive(), is(false));
+      verify(emProvider).get();
+      verify(txn, never()).begin();
+      verify(txn, never()).rollback();
+    }
+
+    @Test
+    public void suspendedDeferredTransactionShouldNotBeJoined() {
+      sut.begin();
+      final TransactionFacadeFactory.SuspendedTransaction suspended =
+          ResourceLocalTransactionFacadeProviderTest.this.sut.suspendTransaction();
+
+      assertThat(ResourceLocalTransactionFacadeProviderTest.this.sut.isTransactionActive(), is(false));
+      suspended.resume();
+      assertThat(ResourceLocalTransactionFacadeProviderTest.this.sut.isTransactionActive(), is(true));
+      sut.rollback();
+    }
   }
 
 }
@@ -0,0 +1,128 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link ScopedContextStorage}.
+ */
+public class ScopedContextStorageTest {
+
+  private ScopedContextStorage sut;
+
+  private ContextStorage.Slot<String> first;
+
+  private ContextStorage.Slot<String> second;
+
+  @Before
+  public void setUp() {
+    sut = new ScopedContextStorage();
+    first = sut.newSlot();
+    second = sut.newSlot();
+  }
+
+  @Test
+  public void slotsShouldHoldTheirOwnValues() {
+    first.set("a");
+    second.set("b");
+
+    assertThat(first.get(), is("a"));
+    assertThat(second.get(), is("b"));
+  }
+
+  @Test
+  public void newSlotShouldBeEmpty() {
+    assertThat(first.get(), is(nullValue()));
+    assertThat(sut.isBound(), is(false));
+  }
+
+  @Test
+  public void carrierShouldBeUnboundWhenLastValueIsRemovedOutsideOfScope() {
+    first.set("a");
+    second.set("b");
+    first.remove();
+
+    assertThat(sut.isBound(), is(true));
+    second.set(null);
+    assertThat(sut.isBound(), is(false));
+  }
+
+  @Test
+  public void carrierShouldStayBoundWithinScope() {
+    try (ContextStorage.Scope scope = sut.openScope()) {
+      first.set("a");
+      first.remove();
+
+      assertThat(sut.isBound(), is(true));
+    }
+    assertThat(sut.isBound(), is(false));
+  }
+
+  @Test
+  public void closingNestedScopeShouldNotUnbindCarrier() {
+    try (ContextStorage.Scope outer = sut.openScope()) {
+      try (ContextStorage.Scope inner = sut.openScope()) {
+        first.set("a");
+      }
+
+      assertThat(first.get(), is("a"));
+    }
+  }
+
+  @Test
+  public void valuesLeftAtTheEndOfScopeShouldSurviveUntilRemoved() {
+    try (ContextStorage.Scope scope = sut.openScope()) {
+      first.set("a");
+    }
+
+    assertThat(first.get(), is("a"));
+    first.remove();
+    assertThat(sut.isBound(), is(false));
+  }
+
+  @Test
+  public void slotCreatedAfterCarrierShouldWork() {
+    try (ContextStorage.Scope scope = sut.openScope()) {
+      final ContextStorage.Slot<String> late = sut.newSlot();
+      late.set("c");
+
+      assertThat(late.get(), is("c"));
+    }
+  }
+
+  @Test
+  public void valuesShouldNotBeVisibleToOtherThreads() throws Exception {
+    first.set("a");
+    final String[] seen = new String[1];
+    final Thread thread = new Thread(() -> seen[0] = first.get());
+    thread.start();
+    thread.join();
+
+    assertThat(seen[0], is(nullValue()));
+    first.remove();
+  }
+
+}
@@ -0,0 +1,169 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for {@link StreamingQueriesImpl}.
+ */
+public class StreamingQueriesImplTest {
+
+  private StreamingQueriesImpl sut;
+
+  private EntityManager em;
+
+  private TypedQuery<String> query;
+
+  private AtomicBoolean closed;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    em = mock(EntityManager.class);
+    query = mock(TypedQuery.class);
+    closed = new AtomicBoolean();
+
+    final EntityManagerProvider emProvider = mock(EntityManagerProvider.class);
+    doReturn(em).when(emProvider)
+        .get();
+    doReturn(Stream.of("a", "b", "c", "d", "e")
+        .onClose(() -> closed.set(true))).when(query)
+        .getResultStream();
+
+    sut = new StreamingQueriesImpl();
+    sut.init(emProvider);
+  }
+
+  @Test
+  public void shouldStreamAllResults() {
+    try (Stream<String> results = sut.stream(query, 2)) {
+      assertThat(results.collect(Collectors.toList()), is(List.of("a", "b", "c", "d", "e")));
+    }
+  }
+
+  @Test
+  public void shouldClearEntityManagerAfterEveryWindow() {
+    try (Stream<String> results = sut.stream(query, 2)) {
+      results.forEach(result -> {
+      });
+    }
+
+    verify(em, times(2)).clear();
+  }
+
+  @Test
+  public void shouldNotClearBeforeWindowHasBeenConsumed() {
+    try (Stream<String> results = sut.stream(query, 2)) {
+      results.limit(2)
+          .forEach(result -> {
+          });
+    }
+
+    verify(em, never()).clear();
+  }
+
+  @Test
+  public void shouldSetHintsOnQuery() {
+    sut.stream(query, 100)
+        .close();
+
+    verify(query).setHint(StreamingQueriesImpl.FETCH_SIZE_HINT, 100);
+    verify(query).setHint(StreamingQueriesImpl.READ_ONLY_HINT, true);
+  }
+
+  @Test
+  public void shouldCloseResultsWhenStreamIsClosed() {
+    sut.stream(query)
+        .close();
+
+    assertThat(closed.get(), is(true));
+  }
+
+  @Test
+  public void shouldFlushPendingChangesOfRunningTransaction() {
+    doReturn(true).when(em)
+        .isJoinedToTransaction();
+
+    sut.stream(query)
+        .close();
+
+    final InOrder inOrder = inOrder(em, query);
+    inOrder.verify(em)
+        .flush();
+    inOrder.verify(query)
+        .getResultStream();
+  }
+
+  @Test
+  public void shouldFlushBeforeEveryClearWithinTransaction() {
+    doReturn(true).when(em)
+        .isJoinedToTransaction();
+
+    try (Stream<String> results = sut.stream(query, 2)) {
+      results.forEach(result -> {
+      });
+    }
+
+    final InOrder inOrder = inOrder(em);
+    inOrder.verify(em)
+        .flush();
+    inOrder.verify(em)
+        .flush();
+    inOrder.verify(em)
+        .clear();
+    inOrder.verify(em)
+        .flush();
+    inOrder.verify(em)
+        .clear();
+  }
+
+  @Test
+  public void shouldNotFlushWithoutTransaction() {
+    sut.stream(query)
+        .close();
+
+    verify(em, never()).flush();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectEmptyWindow() {
+    sut.stream(query, 0);
+  }
+
+}
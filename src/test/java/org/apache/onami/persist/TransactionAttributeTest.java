@@ -20,13 +20,15 @@ package org.apache.onami.persist;
  */
 
 import de.bechte.junit.runners.context.HierarchicalContextRunner;
-import org.aopalliance.intercept.MethodInvocation;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceException;
 import java.lang.annotation.Annotation;
 import java.security.InvalidParameterException;
+import java.sql.SQLTransactionRollbackException;
 import java.util.IllegalFormatException;
 import java.util.MissingFormatArgumentException;
 
@@ -34,34 +36,27 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 /**
- * Test for {@link TransactionalAnnotationHelper}.
+ * Test for {@link TransactionAttribute}.
  */
 @RunWith(HierarchicalContextRunner.class)
-public class TransactionalAnnotationHelperTest {
-
-  private TransactionalAnnotationHelper sut;
-
-  private TransactionalAnnotationReader txnAnnoReader;
+public class TransactionAttributeTest {
 
   Class<? extends Annotation> puAnntoation;
 
-  private MethodInvocation invocation;
-
   private Transactional txnal;
 
   @Before
   public void setUp() throws Exception {
-    // input
-    txnAnnoReader = mock(TransactionalAnnotationReader.class);
-
     // environment
-    invocation = mock(MethodInvocation.class);
     txnal = mock(Transactional.class);
+  }
 
-    doReturn(txnal).when(txnAnnoReader)
-        .readAnnotationFrom(invocation);
+  private boolean participates() {
+    return new TransactionAttribute(txnal).participates(puAnntoation);
   }
 
   public class WithoutPuAnnotation {
@@ -69,16 +64,13 @@ public class TransactionalAnnotationHelperTest {
     public void setUp() throws Exception {
       // input
       puAnntoation = null;
-
-      // subject under test
-      sut = new TransactionalAnnotationHelper(new AnnotationHolder(puAnntoation), txnAnnoReader);
     }
 
     @Test
     public void participatesInTxnWhenUnitsIsNull() {
       doReturn(null).when(txnal)
           .onUnits();
-      final boolean result = sut.persistenceUnitParticipatesInTransactionFor(invocation);
+      final boolean result = participates();
       assertThat(result, is(true));
     }
 
@@ -86,7 +78,7 @@ public class TransactionalAnnotationHelperTest {
     public void participatesInTxnWhenUnitsIsEmpty() {
       doReturn(new Class[] {}).when(txnal)
           .onUnits();
-      final boolean result = sut.persistenceUnitParticipatesInTransactionFor(invocation);
+      final boolean result = participates();
       assertThat(result, is(true));
     }
 
@@ -94,7 +86,7 @@ public class TransactionalAnnotationHelperTest {
     public void participatesInTxnWhenUnitsContainsPuAnnotation() {
       doReturn(new Class[] {TestPersistenceUnit.class}).when(txnal)
           .onUnits();
-      final boolean result = sut.persistenceUnitParticipatesInTransactionFor(invocation);
+      final boolean result = participates();
       assertThat(result, is(true));
     }
 
@@ -102,7 +94,7 @@ public class TransactionalAnnotationHelperTest {
     public void participatesInTxnWhenUnitsContainsNotPuAnnotation() {
       doReturn(new Class[] {OtherPersistenceUnit.class}).when(txnal)
           .onUnits();
-      final boolean result = sut.persistenceUnitParticipatesInTransactionFor(invocation);
+      final boolean result = participates();
       assertThat(result, is(true));
     }
 
@@ -114,16 +106,13 @@ public class TransactionalAnnotationHelperTest {
     public void setUp() throws Exception {
       // input
       puAnntoation = TestPersistenceUnit.class;
-
-      // subject under test
-      sut = new TransactionalAnnotationHelper(new AnnotationHolder(puAnntoation), txnAnnoReader);
     }
 
     @Test
     public void participatesInTxnWhenUnitsIsNull() {
       doReturn(null).when(txnal)
           .onUnits();
-      final boolean result = sut.persistenceUnitParticipatesInTransactionFor(invocation);
+      final boolean result = participates();
       assertThat(result, is(true));
     }
 
@@ -131,7 +120,7 @@ public class TransactionalAnnotationHelperTest {
     public void participatesInTxnWhenUnitsIsEmpty() {
       doReturn(new Class[] {}).when(txnal)
           .onUnits();
-      final boolean result = sut.persistenceUnitParticipatesInTransactionFor(invocation);
+      final boolean result = participates();
       assertThat(result, is(true));
     }
 
@@ -139,7 +128,7 @@ public class TransactionalAnnotationHelperTest {
     public void participatesInTxnWhenUnitsContainsPuAnnotation() {
       doReturn(new Class[] {TestPersistenceUnit.class}).when(txnal)
           .onUnits();
-      final boolean result = sut.persistenceUnitParticipatesInTransactionFor(invocation);
+      final boolean result = participates();
       assertThat(result, is(true));
     }
 
@@ -147,7 +136,7 @@ public class TransactionalAnnotationHelperTest {
     public void participatesNotInTxnWhenUnitsContainsNotPuAnnotation() {
       doReturn(new Class[] {OtherPersistenceUnit.class}).when(txnal)
           .onUnits();
-      final boolean result = sut.persistenceUnitParticipatesInTransactionFor(invocation);
+      final boolean result = participates();
       assertThat(result, is(false));
     }
 
@@ -155,64 +144,125 @@ public class TransactionalAnnotationHelperTest {
 
 
   public class RollbackOnIllegalArgumentExceptionIgnoreIllegalFormatException {
-    @Before
-    public void setUp() throws Exception {
-      // input
-      puAnntoation = null;
 
-      // subject under test
-      sut = new TransactionalAnnotationHelper(new AnnotationHolder(puAnntoation), txnAnnoReader);
+    private TransactionAttribute sut;
 
+    @Before
+    public void setUp() throws Exception {
       doReturn(new Class[] {IllegalArgumentException.class,
           IllegalStateException.class}).when(txnal)
           .rollbackOn();
       doReturn(new Class[] {IllegalFormatException.class,
           NumberFormatException.class}).when(txnal)
           .ignore();
+
+      // subject under test
+      sut = new TransactionAttribute(txnal);
     }
 
     @Test
     public void shouldRollbackOnIllegalArgumentException() {
       Throwable exc = new IllegalArgumentException();
-      final boolean result = sut.isRollbackNecessaryFor(invocation, exc);
+      final boolean result = sut.isRollbackNecessaryFor(exc);
       assertThat(result, is(true));
     }
 
     @Test
     public void shouldRollbackOnIllegalStateException() {
       Throwable exc = new IllegalStateException();
-      final boolean result = sut.isRollbackNecessaryFor(invocation, exc);
+      final boolean result = sut.isRollbackNecessaryFor(exc);
       assertThat(result, is(true));
     }
 
     @Test
     public void shouldRollbackOnInvalidParameterException() {
       Throwable exc = new InvalidParameterException();
-      final boolean result = sut.isRollbackNecessaryFor(invocation, exc);
+      final boolean result = sut.isRollbackNecessaryFor(exc);
       assertThat(result, is(true));
     }
 
     @Test
     public void shouldNotRollbackOnNumberFormatException() {
       Throwable exc = new NumberFormatException();
-      final boolean result = sut.isRollbackNecessaryFor(invocation, exc);
+      final boolean result = sut.isRollbackNecessaryFor(exc);
       assertThat(result, is(false));
     }
 
     @Test
     public void shouldNotRollbackOnMissingFormatArgumentException() {
       Throwable exc = new MissingFormatArgumentException("");
-      final boolean result = sut.isRollbackNecessaryFor(invocation, exc);
+      final boolean result = sut.isRollbackNecessaryFor(exc);
       assertThat(result, is(false));
     }
 
     @Test
     public void shouldNotRollbackOnRuntimeException() {
       Throwable exc = new RuntimeException();
-      final boolean result = sut.isRollbackNecessaryFor(invocation, exc);
+      final boolean result = sut.isRollbackNecessaryFor(exc);
       assertThat(result, is(false));
     }
 
+    @Test
+    public void shouldMemoizeDecisionPerExceptionClass() {
+      for (int i = 0; i < 3; i++) {
+        assertThat(sut.isRollbackNecessaryFor(new IllegalArgumentException()), is(true));
+        assertThat(sut.isRollbackNecessaryFor(new NumberFormatException()), is(false));
+        assertThat(sut.isRollbackNecessaryFor(new RuntimeException()), is(false));
+      }
+      verify(txnal, times(1)).rollbackOn();
+      verify(txnal, times(1)).ignore();
+    }
+
+  }
+
+
+  public class RetryOn {
+
+    private TransactionAttribute sut;
+
+    @Before
+    public void setUp() {
+      doReturn(new Class[] {OptimisticLockException.class, SQLTransactionRollbackException.class}).when(txnal)
+          .retryOn();
+      doReturn(3).when(txnal)
+          .maxAttempts();
+      sut = new TransactionAttribute(txnal);
+    }
+
+    @Test
+    public void shouldBeEnabled() {
+      assertThat(sut.isRetryEnabled(), is(true));
+    }
+
+    @Test
+    public void shouldRetryOnListedException() {
+      assertThat(sut.isRetryNecessaryFor(new OptimisticLockException()), is(true));
+    }
+
+    @Test
+    public void shouldRetryOnListedCause() {
+      final Throwable exc = new PersistenceException(new RuntimeException(new SQLTransactionRollbackException()));
+      assertThat(sut.isRetryNecessaryFor(exc), is(true));
+    }
+
+    @Test
+    public void shouldNotRetryOnOtherException() {
+      assertThat(sut.isRetryNecessaryFor(new PersistenceException(new IllegalStateException())), is(false));
+    }
+
+    @Test
+    public void shouldNotBeEnabledWithoutExceptions() {
+      doReturn(new Class[] {}).when(txnal)
+          .retryOn();
+      assertThat(new TransactionAttribute(txnal).isRetryEnabled(), is(false));
+    }
+
+    @Test
+    public void shouldNotBeEnabledWithSingleAttempt() {
+      doReturn(1).when(txnal)
+          .maxAttempts();
+      assertThat(new TransactionAttribute(txnal).isRetryEnabled(), is(false));
+    }
   }
 
 }
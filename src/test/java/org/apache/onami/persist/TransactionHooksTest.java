@@ -0,0 +1,162 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.onami.persist.TransactionHookManager.CompletionCallback;
+import org.apache.onami.persist.TransactionHookManager.CompletionStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for {@link TransactionHooks}.
+ */
+public class TransactionHooksTest {
+
+  private TransactionHooks sut;
+
+  @Before
+  public void setUp() {
+    sut = new TransactionHooks(PostCommitDispatcher.INLINE);
+  }
+
+  @Test
+  public void beforeCommitShouldRunCallbacksAddedByCallbacks() {
+    final Runnable late = mock(Runnable.class);
+    sut.addBeforeCommit(() -> sut.addBeforeCommit(late));
+
+    assertThat(sut.beforeCommit(), is(true));
+
+    verify(late).run();
+    assertThat(sut.beforeCommit(), is(false));
+  }
+
+  @Test
+  public void beforeCommitShouldStopAtFirstFailure() {
+    final RuntimeException failure = new RuntimeException();
+    final Runnable failing = mock(Runnable.class);
+    final Runnable following = mock(Runnable.class);
+    doThrow(failure).when(failing)
+        .run();
+    sut.addBeforeCommit(failing);
+    sut.addBeforeCommit(following);
+
+    try {
+      sut.beforeCommit();
+      fail("expected RuntimeException to be thrown");
+    } catch (RuntimeException e) {
+      assertThat(e, sameInstance(failure));
+    }
+    verify(following, never()).run();
+  }
+
+  @Test
+  public void committedShouldRunPostCommitThenAfterCompletionCallbacks() {
+    final Runnable postCommit = mock(Runnable.class);
+    final Runnable afterRollback = mock(Runnable.class);
+    final CompletionCallback completion = mock(CompletionCallback.class);
+    sut.addPostCommit(postCommit);
+    sut.addAfterRollback(afterRollback);
+    sut.addAfterCompletion(completion);
+
+    sut.committed();
+
+    final InOrder inOrder = inOrder(postCommit, completion);
+    inOrder.verify(postCommit)
+        .run();
+    inOrder.verify(completion)
+        .afterCompletion(CompletionStatus.COMMITTED);
+    verify(afterRollback, never()).run();
+  }
+
+  @Test
+  public void committedShouldRunAfterCompletionCallbacksIfPostCommitCallbackFails() {
+    final RuntimeException failure = new RuntimeException("post commit");
+    final RuntimeException completionFailure = new RuntimeException("completion");
+    final CompletionCallback completion = mock(CompletionCallback.class);
+    sut.addPostCommit(() -> {
+      throw failure;
+    });
+    sut.addAfterCompletion(status -> {
+      throw completionFailure;
+    });
+    sut.addAfterCompletion(completion);
+
+    try {
+      sut.committed();
+      fail("expected RuntimeException to be thrown");
+    } catch (RuntimeException e) {
+      assertThat(e, sameInstance(failure));
+      assertThat(e.getSuppressed()[0], sameInstance((Throwable) completionFailure));
+    }
+    verify(completion).afterCompletion(CompletionStatus.COMMITTED);
+  }
+
+  @Test
+  public void rolledBackShouldRunAfterRollbackThenAfterCompletionCallbacks() {
+    final Runnable postCommit = mock(Runnable.class);
+    final Runnable afterRollback = mock(Runnable.class);
+    final CompletionCallback completion = mock(CompletionCallback.class);
+    sut.addPostCommit(postCommit);
+    sut.addAfterRollback(afterRollback);
+    sut.addAfterCompletion(completion);
+
+    sut.rolledBack();
+
+    final InOrder inOrder = inOrder(afterRollback, completion);
+    inOrder.verify(afterRollback)
+        .run();
+    inOrder.verify(completion)
+        .afterCompletion(CompletionStatus.ROLLED_BACK);
+    verify(postCommit, never()).run();
+  }
+
+  @Test
+  public void rolledBackAfterShouldAddCallbackFailuresAsSuppressed() {
+    final RuntimeException cause = new RuntimeException("cause");
+    final RuntimeException failure = new RuntimeException("rollback");
+    final Runnable following = mock(Runnable.class);
+    sut.addAfterRollback(() -> {
+      throw failure;
+    });
+    sut.addAfterRollback(following);
+
+    assertThat(sut.rolledBackAfter(cause), sameInstance(cause));
+
+    assertThat(cause.getSuppressed()[0], sameInstance((Throwable) failure));
+    verify(following).run();
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void callbackIsMandatory() {
+    sut.addAfterCompletion(null);
+  }
+
+}
@@ -0,0 +1,103 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.persistence.EntityManager;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.onami.persist.TransactionTimeout.QUERY_TIMEOUT_HINT;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for {@link TransactionTimeout}.
+ */
+public class TransactionTimeoutTest {
+
+  private EntityManager em;
+
+  private TransactionWatchdog watchdog;
+
+  @Before
+  public void setUp() {
+    em = mock(EntityManager.class);
+    doReturn(true).when(em)
+        .isOpen();
+    watchdog = new TransactionWatchdog(5, TimeUnit.MILLISECONDS, 8);
+  }
+
+  @Test
+  public void shouldSetQueryTimeout() {
+    TransactionTimeout.start(em, 3, watchdog);
+
+    verify(em).setProperty(QUERY_TIMEOUT_HINT, 3000);
+  }
+
+  @Test
+  public void shouldRestorePreviousQueryTimeout() {
+    doReturn(Collections.singletonMap(QUERY_TIMEOUT_HINT, 500)).when(em)
+        .getProperties();
+
+    TransactionTimeout.start(em, 3, watchdog)
+        .end();
+
+    verify(em).setProperty(QUERY_TIMEOUT_HINT, 500);
+  }
+
+  @Test
+  public void shouldResetQueryTimeoutIfNoneWasSet() {
+    TransactionTimeout.start(em, 3, watchdog)
+        .end();
+
+    verify(em).setProperty(QUERY_TIMEOUT_HINT, 0);
+  }
+
+  @Test
+  public void shouldNotBeExpiredBeforeTimeout() {
+    final TransactionTimeout sut = TransactionTimeout.start(em, 3, watchdog);
+
+    assertThat(sut.isExpired(), is(false));
+  }
+
+  @Test
+  public void shouldBeExpiredAfterTimeout() throws Exception {
+    final TransactionTimeout sut = TransactionTimeout.start(em, 1, watchdog);
+
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!sut.isExpired() && System.nanoTime() < deadline) {
+      Thread.sleep(20);
+    }
+
+    assertThat(sut.isExpired(), is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void timeoutMustBePositive() {
+    TransactionTimeout.start(em, 0, watchdog);
+  }
+
+}
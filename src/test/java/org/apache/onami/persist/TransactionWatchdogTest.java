@@ -0,0 +1,101 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link TransactionWatchdog}.
+ */
+public class TransactionWatchdogTest {
+
+  private TransactionWatchdog sut;
+
+  @Before
+  public void setUp() {
+    sut = new TransactionWatchdog(5, TimeUnit.MILLISECONDS, 8);
+  }
+
+  @Test
+  public void shouldRunTaskAfterDelay() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final long start = System.nanoTime();
+
+    sut.schedule(latch::countDown, 20, TimeUnit.MILLISECONDS);
+
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20), is(true));
+  }
+
+  @Test
+  public void shouldRunTaskWithDelayLongerThanOneRound() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final long start = System.nanoTime();
+
+    sut.schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100), is(true));
+  }
+
+  @Test
+  public void shouldNotRunCancelledTask() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(1);
+
+    final TransactionWatchdog.Timeout timeout = sut.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+    sut.schedule(latch::countDown, 60, TimeUnit.MILLISECONDS);
+
+    assertThat(timeout.cancel(), is(true));
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(runs.get(), is(0));
+  }
+
+  @Test
+  public void shouldNotCancelTaskWhichHasRun() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+
+    final TransactionWatchdog.Timeout timeout = sut.schedule(latch::countDown, 1, TimeUnit.MILLISECONDS);
+
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(timeout.cancel(), is(false));
+  }
+
+  @Test
+  public void shouldRunRemainingTasksOfBucketWhenOneIsCancelled() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(2);
+
+    sut.schedule(latch::countDown, 30, TimeUnit.MILLISECONDS);
+    final TransactionWatchdog.Timeout cancelled = sut.schedule(latch::countDown, 30, TimeUnit.MILLISECONDS);
+    sut.schedule(latch::countDown, 30, TimeUnit.MILLISECONDS);
+    cancelled.cancel();
+
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+  }
+
+}
@@ -0,0 +1,129 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the reflective lookup of {@link Transactional @Transactional} with the cached
+ * {@link TransactionAttribute}.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test -Djmh.args="TransactionalAnnotationReaderBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionalAnnotationReaderBenchmark {
+
+  private TransactionalAnnotationReader reader;
+
+  private MethodInvocation methodAnnotated;
+
+  private MethodInvocation classAnnotated;
+
+  @Setup
+  public void setUp() throws Exception {
+    reader = new TransactionalAnnotationReader();
+    methodAnnotated = invocationOf(new MethodAnnotatedService(), "run");
+    classAnnotated = invocationOf(new ClassAnnotatedService(), "run");
+  }
+
+  @Benchmark
+  public Object reflectiveMethodAnnotation() {
+    final Transactional transactional = reader.readAnnotationFrom(methodAnnotated);
+    return new TransactionAttribute(transactional);
+  }
+
+  @Benchmark
+  public Object reflectiveClassAnnotation() {
+    final Transactional transactional = reader.readAnnotationFrom(classAnnotated);
+    return new TransactionAttribute(transactional);
+  }
+
+  @Benchmark
+  public Object cachedMethodAnnotation() {
+    return reader.readAttributeFrom(methodAnnotated);
+  }
+
+  @Benchmark
+  public Object cachedClassAnnotation() {
+    return reader.readAttributeFrom(classAnnotated);
+  }
+
+  public static class MethodAnnotatedService {
+    @Transactional(onUnits = TestPersistenceUnit.class, rollbackOn = RuntimeException.class)
+    public void run() {
+      // nop
+    }
+  }
+
+
+  @Transactional(onUnits = TestPersistenceUnit.class, rollbackOn = RuntimeException.class)
+  public static class ClassAnnotatedService {
+    public void run() {
+      // nop
+    }
+  }
+
+
+  private static MethodInvocation invocationOf(final Object instance, String name) throws NoSuchMethodException {
+    final Method method = instance.getClass()
+        .getMethod(name);
+    return new MethodInvocation() {
+      public Method getMethod() {
+        return method;
+      }
+
+      public Object[] getArguments() {
+        return new Object[0];
+      }
+
+      public Object proceed() {
+        return null;
+      }
+
+      public Object getThis() {
+        return instance;
+      }
+
+      public AccessibleObject getStaticPart() {
+        return method;
+      }
+    };
+  }
+
+}
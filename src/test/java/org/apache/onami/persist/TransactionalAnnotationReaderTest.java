@@ -19,6 +19,9 @@ package org.apache.onami.persist;
  * under the License.
  */
 
+import com.google.inject.Guice;
+import com.google.inject.matcher.Matchers;
+import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 import org.junit.Assert;
 import org.junit.Before;
@@ -26,6 +29,12 @@ import org.junit.Test;
 
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 
 /**
  * Test for {@link TransactionalAnnotationReader}.
@@ -79,6 +88,70 @@ public class TransactionalAnnotationReaderTest {
             new Class[] {NullPointerException.class}, new Class[] {}));
   }
 
+  @Test
+  public void shouldReturnSameAttributeForRepeatedInvocations() throws Exception {
+    final MethodInvocation invocation = methodInvocation(new WithMethodAnnotations(), "withAnno");
+    final TransactionAttribute first = sut.readAttributeFrom(invocation);
+    final TransactionAttribute second = sut.readAttributeFrom(invocation);
+
+    Assert.assertThat(second, sameInstance(first));
+  }
+
+  @Test
+  public void shouldResolveClassAnnotationOfSubclass() throws Exception {
+    final MethodInvocation invocation = methodInvocation(new WithClassAnnotations() {
+    }, WithClassAnnotations.class, "noAnno");
+    final TransactionAttribute result = sut.readAttributeFrom(invocation);
+
+    Assert.assertThat(result.participates(TestPersistenceUnit.class), is(true));
+    Assert.assertThat(result.participates(OtherPersistenceUnit.class), is(false));
+    Assert.assertThat(result.isRollbackNecessaryFor(new IllegalArgumentException()), is(true));
+    Assert.assertThat(result.isRollbackNecessaryFor(new IllegalStateException()), is(false));
+  }
+
+  @Test
+  public void shouldResolveDifferentAttributesForSameMethodOnDifferentClasses() throws Exception {
+    final TransactionAttribute annotated = sut.readAttributeFrom(
+        methodInvocation(new WithClassAnnotations(), "noAnno"));
+    final TransactionAttribute overridden = sut.readAttributeFrom(
+        methodInvocation(new WithOtherClassAnnotations(), WithClassAnnotations.class, "noAnno"));
+
+    Assert.assertThat(annotated.participates(OtherPersistenceUnit.class), is(false));
+    Assert.assertThat(overridden.participates(OtherPersistenceUnit.class), is(true));
+  }
+
+  @Test
+  public void shouldResolveClassAnnotationThroughGuiceEnhancedInstance() throws Exception {
+    final List<TransactionAttribute> read = new ArrayList<>();
+    final MethodInterceptor readingInterceptor = invocation -> {
+      read.add(sut.readAttributeFrom(invocation));
+      return invocation.proceed();
+    };
+    final EnhancedWithClassAnnotations enhanced = Guice.createInjector(
+        binder -> binder.bindInterceptor(Matchers.subclassesOf(EnhancedWithClassAnnotations.class), Matchers.any(),
+            readingInterceptor))
+        .getInstance(EnhancedWithClassAnnotations.class);
+
+    enhanced.noAnno();
+    enhanced.noAnno();
+
+    Assert.assertThat(enhanced.getClass()
+        .getName(), containsString("$$EnhancerByGuice$$"));
+    Assert.assertThat(read.size(), is(2));
+    Assert.assertThat(read.get(1), sameInstance(read.get(0)));
+    // the enhanced class shares the cache entry of the class written by the user
+    Assert.assertThat(sut.readAttributeFrom(
+        methodInvocation(new EnhancedWithClassAnnotations(), "noAnno")), sameInstance(read.get(0)));
+    Assert.assertThat(read.get(0)
+        .participates(TestPersistenceUnit.class), is(true));
+    Assert.assertThat(read.get(0)
+        .participates(OtherPersistenceUnit.class), is(false));
+    Assert.assertThat(read.get(0)
+        .isRollbackNecessaryFor(new IllegalArgumentException()), is(true));
+    Assert.assertThat(read.get(0)
+        .isRollbackNecessaryFor(new IllegalStateException()), is(false));
+  }
+
   // classes and methods to pass to the TransactionalAnnotationReader for testing
 
 
@@ -97,6 +170,19 @@ public class TransactionalAnnotationReaderTest {
   }
 
 
+  @Transactional(onUnits = OtherPersistenceUnit.class)
+  private static class WithOtherClassAnnotations extends WithClassAnnotations {
+  }
+
+
+  @Transactional(onUnits = TestPersistenceUnit.class, rollbackOn = IllegalArgumentException.class)
+  public static class EnhancedWithClassAnnotations {
+    public void noAnno() {
+      // nop
+    }
+  }
+
+
   private static class WithMethodAnnotations {
     @Transactional(onUnits = OtherPersistenceUnit.class, rollbackOn = NullPointerException.class)
     public void withAnno() {
@@ -115,9 +201,12 @@ public class TransactionalAnnotationReaderTest {
 
 
   private static MethodInvocation methodInvocation(final Object instance, String name) {
+    return methodInvocation(instance, instance.getClass(), name);
+  }
+
+  private static MethodInvocation methodInvocation(final Object instance, Class<?> declaringClass, String name) {
     try {
-      final Method method = instance.getClass()
-          .getDeclaredMethod(name);
+      final Method method = declaringClass.getDeclaredMethod(name);
       return new MethodInvocation() {
         public Method getMethod() {
           return method;
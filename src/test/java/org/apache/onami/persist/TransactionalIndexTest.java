@@ -0,0 +1,204 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.test.multipersistenceunits.FirstPU;
+import org.apache.onami.persist.test.multipersistenceunits.SecondPU;
+import org.apache.onami.persist.processor.TransactionalIndexProcessor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.onami.persist.TransactionalAnnotationMatcher.transactionalAnnotation;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link TransactionalIndex}. The index of the test classes is written by the
+ * {@link org.apache.onami.persist.processor.TransactionalIndexProcessor} during the test compilation.
+ */
+public class TransactionalIndexTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private TransactionalIndex sut;
+
+  @Before
+  public void setUp() throws Exception {
+    sut = TransactionalIndex.load(getClass().getClassLoader());
+  }
+
+  @Test
+  public void shouldCoverCompiledClasses() {
+    assertThat(sut.covers(MethodAnnotated.class), is(true));
+    assertThat(sut.covers(TransactionalIndexTest.class), is(true));
+  }
+
+  @Test
+  public void shouldNotCoverClassesCompiledElsewhere() {
+    assertThat(sut.covers(String.class), is(false));
+    assertThat(sut.covers(new ClassAnnotated() {
+    }.getClass()), is(false));
+  }
+
+  @Test
+  public void shouldReadMethodAnnotation() throws Exception {
+    final Transactional result = sut.onMethod(MethodAnnotated.class.getMethod("run", String.class, int[].class));
+
+    assertThat(result, transactionalAnnotation(new Class[] {FirstPU.class}, new Class[] {IllegalStateException.class},
+        new Class[] {NumberFormatException.class}));
+  }
+
+  @Test
+  public void shouldReadDefaultsOfMethodAnnotation() throws Exception {
+    final Transactional result = sut.onMethod(MethodAnnotated.class.getMethod("run", List.class));
+
+    assertThat(result, transactionalAnnotation(new Class[] {}, new Class[] {Throwable.class}, new Class[] {}));
+  }
+
+  @Test
+  public void shouldBeEqualToReflectiveAnnotation() throws Exception {
+    final Method method = MethodAnnotated.class.getMethod("run", String.class, int[].class);
+    final Transactional indexed = sut.onMethod(method);
+    final Transactional reflective = method.getAnnotation(Transactional.class);
+
+    assertThat(indexed.equals(reflective), is(true));
+    assertThat(reflective.equals(indexed), is(true));
+    assertThat(indexed.hashCode(), is(reflective.hashCode()));
+    assertThat(indexed.equals(sut.onClass(ClassAnnotated.class)), is(false));
+  }
+
+  @Test
+  public void shouldReturnNullForUnannotatedMethod() throws Exception {
+    assertThat(sut.onMethod(MethodAnnotated.class.getMethod("notTransactional")), is(nullValue()));
+  }
+
+  @Test
+  public void shouldReadClassAnnotation() {
+    assertThat(sut.onClass(ClassAnnotated.class),
+        transactionalAnnotation(new Class[] {SecondPU.class}, new Class[] {Throwable.class}, new Class[] {}));
+  }
+
+  @Test
+  public void shouldReadInheritedClassAnnotation() {
+    assertThat(sut.onClass(ClassAnnotatedSubclass.class),
+        transactionalAnnotation(new Class[] {SecondPU.class}, new Class[] {Throwable.class}, new Class[] {}));
+    assertThat(sut.onClass(new ClassAnnotated() {
+        }.getClass()),
+        transactionalAnnotation(new Class[] {SecondPU.class}, new Class[] {Throwable.class}, new Class[] {}));
+  }
+
+  @Test
+  public void shouldReturnNullForUnannotatedClass() {
+    assertThat(sut.onClass(MethodAnnotated.class), is(nullValue()));
+  }
+
+  @Test
+  public void shouldFallBackToReflectionForMethodsMissingFromStaleIndex() throws Exception {
+    final TransactionalIndex stale = staleIndex("T " + MethodAnnotated.class.getName());
+    final Method method = MethodAnnotated.class.getMethod("run", String.class, int[].class);
+
+    assertThat(stale.covers(MethodAnnotated.class), is(true));
+    assertThat(stale.onMethod(method), sameInstance(method.getAnnotation(Transactional.class)));
+    assertThat(stale.onMethod(MethodAnnotated.class.getMethod("notTransactional")), is(nullValue()));
+  }
+
+  @Test
+  public void shouldFallBackToReflectionForClassesRecordedAsUnannotatedInStaleIndex() throws Exception {
+    final TransactionalIndex stale = staleIndex("T " + ClassAnnotated.class.getName());
+
+    assertThat(stale.onClass(ClassAnnotated.class),
+        sameInstance(ClassAnnotated.class.getAnnotation(Transactional.class)));
+  }
+
+  @Test
+  public void shouldBeUsedByPersistenceModule() {
+    final Injector injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        useTransactionalIndex();
+        bindApplicationManagedPersistenceUnit("firstUnit").annotatedWith(FirstPU.class);
+      }
+    });
+
+    assertThat(injector.getInstance(MethodAnnotated.class)
+        .getClass(), not(sameInstance((Object) MethodAnnotated.class)));
+    assertThat(injector.getInstance(ClassAnnotated.class)
+        .getClass(), sameInstance((Object) ClassAnnotated.class));
+  }
+
+  /**
+   * @param lines the content of the index.
+   * @return an index which only consists of the given lines.
+   */
+  private TransactionalIndex staleIndex(String... lines) throws Exception {
+    final Path dir = temporaryFolder.getRoot()
+        .toPath();
+    final Path index = dir.resolve(TransactionalIndexProcessor.INDEX_RESOURCE);
+    Files.createDirectories(index.getParent());
+    Files.write(index, Arrays.asList(lines), StandardCharsets.UTF_8);
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[] {dir.toUri()
+        .toURL()}, null)) {
+      return TransactionalIndex.load(classLoader);
+    }
+  }
+
+  public static class MethodAnnotated {
+    @Transactional(onUnits = FirstPU.class, rollbackOn = IllegalStateException.class,
+        ignore = NumberFormatException.class)
+    public void run(String name, int[] values) {
+    }
+
+    @Transactional(onUnits = {})
+    public void run(List<String> names) {
+    }
+
+    public void notTransactional() {
+    }
+  }
+
+
+  @Transactional(onUnits = SecondPU.class)
+  public static class ClassAnnotated {
+    public void run() {
+    }
+  }
+
+
+  public static class ClassAnnotatedSubclass extends ClassAnnotated {
+  }
+
+}
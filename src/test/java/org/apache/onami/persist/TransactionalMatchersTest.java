@@ -0,0 +1,160 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.test.multipersistenceunits.FirstPU;
+import org.apache.onami.persist.test.multipersistenceunits.SecondPU;
+import org.junit.Test;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link TransactionalMatchers}.
+ */
+public class TransactionalMatchersTest {
+
+  private final TransactionalMatchers annotatedUnitOnly =
+      new TransactionalMatchers(Collections.<Class<? extends Annotation>>singletonList(TestPersistenceUnit.class),
+          TransactionalAnnotationSource.REFLECTION);
+
+  private final TransactionalMatchers withUnannotatedUnit =
+      new TransactionalMatchers(Arrays.asList(TestPersistenceUnit.class, null),
+          TransactionalAnnotationSource.REFLECTION);
+
+  @Test
+  public void shouldMatchMethodOnParticipatingUnit() throws Exception {
+    assertThat(annotatedUnitOnly.annotatedMethodsWithParticipatingUnits()
+        .matches(Service.class.getMethod("onTestUnit")), is(true));
+  }
+
+  @Test
+  public void shouldMatchMethodOnAllUnits() throws Exception {
+    assertThat(annotatedUnitOnly.annotatedMethodsWithParticipatingUnits()
+        .matches(Service.class.getMethod("onAllUnits")), is(true));
+  }
+
+  @Test
+  public void shouldNotMatchMethodOnOtherUnit() throws Exception {
+    assertThat(annotatedUnitOnly.annotatedMethodsWithParticipatingUnits()
+        .matches(Service.class.getMethod("onOtherUnit")), is(false));
+  }
+
+  @Test
+  public void shouldMatchMethodOnOtherUnitIfUnannotatedUnitIsConfigured() throws Exception {
+    assertThat(withUnannotatedUnit.annotatedMethodsWithParticipatingUnits()
+        .matches(Service.class.getMethod("onOtherUnit")), is(true));
+  }
+
+  @Test
+  public void shouldNotMatchUnannotatedMethod() throws Exception {
+    assertThat(annotatedUnitOnly.annotatedMethodsWithParticipatingUnits()
+        .matches(Service.class.getMethod("notTransactional")), is(false));
+  }
+
+  @Test
+  public void shouldMatchClassOnParticipatingUnit() throws Exception {
+    assertThat(annotatedUnitOnly.annotatedClassesWithParticipatingUnits()
+        .matches(TestUnitService.class), is(true));
+  }
+
+  @Test
+  public void shouldNotMatchClassOnOtherUnit() throws Exception {
+    assertThat(annotatedUnitOnly.annotatedClassesWithParticipatingUnits()
+        .matches(OtherUnitService.class), is(false));
+  }
+
+  @Test
+  public void shouldLeaveAnnotatedMethodsOfAnnotatedClassToMethodMatcher() throws Exception {
+    assertThat(annotatedUnitOnly.unannotatedMethods()
+        .matches(Service.class.getMethod("onTestUnit")), is(false));
+    assertThat(annotatedUnitOnly.unannotatedMethods()
+        .matches(Service.class.getMethod("notTransactional")), is(true));
+  }
+
+  @Test
+  public void shouldNotEnhanceClassesWithoutParticipatingUnits() throws Exception {
+    final Injector injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("firstUnit").annotatedWith(FirstPU.class);
+      }
+    });
+
+    assertThat(injector.getInstance(SecondUnitService.class)
+        .getClass(), sameInstance((Object) SecondUnitService.class));
+    assertThat(injector.getInstance(FirstUnitService.class)
+        .getClass(), not(sameInstance((Object) FirstUnitService.class)));
+  }
+
+  public static class Service {
+    @Transactional(onUnits = TestPersistenceUnit.class)
+    public void onTestUnit() {
+    }
+
+    @Transactional(onUnits = {})
+    public void onAllUnits() {
+    }
+
+    @Transactional(onUnits = OtherPersistenceUnit.class)
+    public void onOtherUnit() {
+    }
+
+    public void notTransactional() {
+    }
+  }
+
+
+  @Transactional(onUnits = TestPersistenceUnit.class)
+  public static class TestUnitService {
+    public void run() {
+    }
+  }
+
+
+  @Transactional(onUnits = OtherPersistenceUnit.class)
+  public static class OtherUnitService {
+    public void run() {
+    }
+  }
+
+
+  @Transactional(onUnits = FirstPU.class)
+  public static class FirstUnitService {
+    public void run() {
+    }
+  }
+
+
+  public static class SecondUnitService {
+    @Transactional(onUnits = SecondPU.class)
+    public void run() {
+    }
+  }
+
+}
@@ -0,0 +1,162 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.hibernate.cfg.AvailableSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a transactional method compared to using a raw entity manager. The method uses the entity manager
+ * once. Resource local and JTA transactions are measured, the latter on the JTA test unit with the
+ * {@link LocalUserTransaction} stand-in. Its entity manager factory is created here to pass the
+ * {@link LocalJtaPlatform}.
+ * <p>
+ * Run with: {@code mvn -Pbenchmark test -Djmh.args="TxnInterceptorBenchmark -prof gc"}
+ * <p>
+ * The sample time mode reports the latency percentiles. The {@code gc.alloc.rate.norm} of the gc profiler is the
+ * allocation per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TxnInterceptorBenchmark {
+
+  @Param({"RESOURCE_LOCAL", "JTA"})
+  public String transactionType;
+
+  private Injector injector;
+
+  private EntityManagerFactory emf;
+
+  private EntityManagerFactory jtaEmf;
+
+  private OuterService outerService;
+
+  private InnerService innerService;
+
+  @Setup
+  public void setUp() {
+    if ("JTA".equals(transactionType)) {
+      final LocalUserTransaction userTransaction = new LocalUserTransaction();
+      jtaEmf = Persistence.createEntityManagerFactory("jtaTestUnit",
+          Collections.singletonMap(AvailableSettings.JTA_PLATFORM, new LocalJtaPlatform(userTransaction)));
+      injector = Guice.createInjector(new PersistenceModule() {
+        @Override
+        protected void configurePersistence() {
+          bindContainerManagedPersistenceUnit(jtaEmf).useGlobalTransaction(userTransaction);
+        }
+      });
+    } else {
+      injector = Guice.createInjector(new PersistenceModule() {
+        @Override
+        protected void configurePersistence() {
+          bindApplicationManagedPersistenceUnit("testUnit");
+        }
+      });
+    }
+    injector.getInstance(PersistenceService.class)
+        .start();
+    emf = Persistence.createEntityManagerFactory("testUnit");
+    outerService = injector.getInstance(OuterService.class);
+    innerService = injector.getInstance(InnerService.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    emf.close();
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    if (jtaEmf != null) {
+      jtaEmf.close();
+    }
+  }
+
+  /**
+   * Baseline: the work of a resource local transaction without the library.
+   */
+  @Benchmark
+  public boolean rawEntityManager() {
+    final EntityManager em = emf.createEntityManager();
+    try {
+      em.getTransaction()
+          .begin();
+      final boolean open = em.isOpen();
+      em.getTransaction()
+          .commit();
+      return open;
+    } finally {
+      em.close();
+    }
+  }
+
+  @Benchmark
+  public boolean singleCall() {
+    return innerService.useEntityManager();
+  }
+
+  @Benchmark
+  public boolean nestedCall() {
+    return outerService.callInner();
+  }
+
+  public static class OuterService {
+    @Inject
+    private InnerService inner;
+
+    @Transactional(onUnits = {})
+    public boolean callInner() {
+      return inner.useEntityManager();
+    }
+  }
+
+  public static class InnerService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Transactional(onUnits = {})
+    public boolean useEntityManager() {
+      return emProvider.get()
+          .isOpen();
+    }
+  }
+}
@@ -26,6 +26,17 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InOrder;
 
+import jakarta.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.UserTransaction;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
@@ -36,6 +47,7 @@ import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 /**
  * Test for {@link TxnInterceptor}
@@ -47,7 +59,9 @@ public class TxnInterceptorTest {
 
   private TransactionStateObserver transactionStateObserver;
 
-  private TransactionalAnnotationHelper txnAnnotationHelper;
+  private TransactionalAnnotationReader txnAnnoReader;
+
+  private TransactionAttribute attribute;
 
   private TransactionFacadeFactory tfProvider;
 
@@ -57,25 +71,37 @@ public class TxnInterceptorTest {
 
   private MethodInvocation invocation;
 
+  private TxnParticipant participant;
+
   @Before
   public void setUp() throws Exception {
     unitOfWork = mock(UnitOfWork.class);
     transactionStateObserver = mock(TransactionStateObserver.class);
     tfProvider = mock(TransactionFacadeFactory.class);
-    txnAnnotationHelper = mock(TransactionalAnnotationHelper.class);
+    doReturn(mock(TransactionStateObserver.TransactionHolder.class)).when(transactionStateObserver)
+        .withTransaction(any());
+    txnAnnoReader = mock(TransactionalAnnotationReader.class);
+    attribute = mock(TransactionAttribute.class);
 
-    sut = new TxnInterceptor();
-    sut.init(unitOfWork, transactionStateObserver, tfProvider, txnAnnotationHelper);
+    participant = new TxnParticipant();
+    participant.init(unitOfWork, transactionStateObserver, tfProvider, new AnnotationHolder(null));
+    sut = new TxnInterceptor(singletonList(participant), txnAnnoReader, new ThreadLocalContextStorage());
 
     invocation = mock(MethodInvocation.class);
+    doReturn(attribute).when(txnAnnoReader)
+        .readAttributeFrom(invocation);
+    doReturn(emptySet()).when(attribute)
+        .getOnUnits();
+    doReturn(Propagation.REQUIRED).when(attribute)
+        .getPropagation();
   }
 
   public class NotParticipatingInTransaction {
 
     @Before
     public void setUp() throws Exception {
-      doReturn(false).when(txnAnnotationHelper)
-          .persistenceUnitParticipatesInTransactionFor(invocation);
+      doReturn(false).when(attribute)
+          .participates(any());
     }
 
     @Test
@@ -92,12 +118,12 @@ public class TxnInterceptorTest {
 
     @Before
     public void setUp() throws Exception {
-      doReturn(true).when(txnAnnotationHelper)
-          .persistenceUnitParticipatesInTransactionFor(invocation);
+      doReturn(true).when(attribute)
+          .participates(any());
 
       txnFacade = mock(TransactionFacade.class);
       doReturn(txnFacade).when(tfProvider)
-          .createTransactionFacade();
+          .createTransactionFacade(any());
     }
 
     public class UnitOfWorkInactive {
@@ -125,6 +151,56 @@ public class TxnInterceptorTest {
             .end();
       }
 
+      private void startsTransaction() {
+        final TransactionStateObserver.TransactionHolder holder = mock(TransactionStateObserver.TransactionHolder.class);
+        doReturn(1).when(holder)
+            .getDepth();
+        doReturn(holder).when(transactionStateObserver)
+            .withTransaction(any());
+        doReturn(true).when(txnFacade)
+            .isCommitted();
+      }
+
+      @Test
+      public void reportsCommittedTransaction() throws Throwable {
+        final InMemoryPersistenceMetrics metrics = new InMemoryPersistenceMetrics();
+        participant.setMetrics(metrics);
+        startsTransaction();
+
+        sut.invoke(invocation);
+
+        final InMemoryPersistenceMetrics.UnitStatistics statistics = metrics.statisticsOf(null);
+        assertThat(statistics.getBegunCount(), is(1L));
+        assertThat(statistics.getCommittedCount(), is(1L));
+        assertThat(statistics.getRolledBackCount(), is(0L));
+        assertThat(statistics.getTransaction()
+            .getCount(), is(1L));
+      }
+
+      @Test
+      public void reportsRolledBackTransaction() throws Throwable {
+        final InMemoryPersistenceMetrics metrics = new InMemoryPersistenceMetrics();
+        participant.setMetrics(metrics);
+        startsTransaction();
+        doThrow(new RuntimeException()).when(invocation)
+            .proceed();
+        doReturn(true).when(attribute)
+            .isRollbackNecessaryFor(any());
+
+        try {
+          sut.invoke(invocation);
+          fail("expected RuntimeException to be thrown");
+        } catch (RuntimeException e) {
+          // expected
+        }
+
+        final InMemoryPersistenceMetrics.UnitStatistics statistics = metrics.statisticsOf(null);
+        assertThat(statistics.getCommittedCount(), is(0L));
+        assertThat(statistics.getRolledBackCount(), is(1L));
+        assertThat(statistics.getRollback()
+            .getCount(), is(1L));
+      }
+
       @Test
       public void processWithException() throws Throwable {
         // given
@@ -233,8 +309,8 @@ public class TxnInterceptorTest {
       @Test
       public void invokeStartsTransactionIfParticipatingInTransaction() throws Throwable {
         // given
-        doReturn(true).when(txnAnnotationHelper)
-            .persistenceUnitParticipatesInTransactionFor(invocation);
+        doReturn(true).when(attribute)
+            .participates(any());
         // when
         sut.invoke(invocation);
         // then
@@ -250,12 +326,12 @@ public class TxnInterceptorTest {
       public void rollbackIfExceptionThrownWhichRequiresRollback() throws Throwable {
         // given
         final RuntimeException exc = new RuntimeException();
-        doReturn(true).when(txnAnnotationHelper)
-            .persistenceUnitParticipatesInTransactionFor(invocation);
+        doReturn(true).when(attribute)
+            .participates(any());
         doThrow(exc).when(invocation)
             .proceed();
-        doReturn(true).when(txnAnnotationHelper)
-            .isRollbackNecessaryFor(invocation, exc);
+        doReturn(true).when(attribute)
+            .isRollbackNecessaryFor(exc);
 
         // when
         try {
@@ -280,12 +356,12 @@ public class TxnInterceptorTest {
       public void commitIfExceptionThrownWhichRequiresNoRollback() throws Throwable {
         // given
         final RuntimeException exc = new RuntimeException();
-        doReturn(true).when(txnAnnotationHelper)
-            .persistenceUnitParticipatesInTransactionFor(invocation);
+        doReturn(true).when(attribute)
+            .participates(any());
         doThrow(exc).when(invocation)
             .proceed();
-        doReturn(false).when(txnAnnotationHelper)
-            .isRollbackNecessaryFor(invocation, exc);
+        doReturn(false).when(attribute)
+            .isRollbackNecessaryFor(exc);
 
         // when
         try {
@@ -310,12 +386,12 @@ public class TxnInterceptorTest {
       public void throwExceptionOfOriginalMethodIfExceptionOccurredInCommit() throws Throwable {
         // given
         final RuntimeException exc = new RuntimeException();
-        doReturn(true).when(txnAnnotationHelper)
-            .persistenceUnitParticipatesInTransactionFor(invocation);
+        doReturn(true).when(attribute)
+            .participates(any());
         doThrow(exc).when(invocation)
             .proceed();
-        doReturn(false).when(txnAnnotationHelper)
-            .isRollbackNecessaryFor(invocation, exc);
+        doReturn(false).when(attribute)
+            .isRollbackNecessaryFor(exc);
         doThrow(new RuntimeException()).when(txnFacade)
             .commit();
 
@@ -342,12 +418,12 @@ public class TxnInterceptorTest {
       public void throwExceptionOfOriginalMethodIfExceptionOccurredInRollback() throws Throwable {
         // given
         final RuntimeException exc = new RuntimeException();
-        doReturn(true).when(txnAnnotationHelper)
-            .persistenceUnitParticipatesInTransactionFor(invocation);
+        doReturn(true).when(attribute)
+            .participates(any());
         doThrow(exc).when(invocation)
             .proceed();
-        doReturn(true).when(txnAnnotationHelper)
-            .isRollbackNecessaryFor(invocation, exc);
+        doReturn(true).when(attribute)
+            .isRollbackNecessaryFor(exc);
         doThrow(new RuntimeException()).when(txnFacade)
             .rollback();
 
@@ -372,6 +448,381 @@ public class TxnInterceptorTest {
 
     }
 
+
+    public class RunningTransactionSuspended {
+
+      private TransactionStateObserver.SuspendedUnitOfWork suspendedUnitOfWork;
+
+      private TransactionFacadeFactory.SuspendedTransaction suspendedTransaction;
+
+      private InOrder inOrder;
+
+      @Before
+      public void setup() {
+        suspendedUnitOfWork = mock(TransactionStateObserver.SuspendedUnitOfWork.class);
+        suspendedTransaction = mock(TransactionFacadeFactory.SuspendedTransaction.class);
+        doReturn(Propagation.REQUIRES_NEW).when(attribute)
+            .getPropagation();
+        doReturn(true).when(unitOfWork)
+            .isActive();
+        doReturn(true).when(tfProvider)
+            .isTransactionActive();
+        doReturn(suspendedTransaction).when(tfProvider)
+            .suspendTransaction();
+        doReturn(suspendedUnitOfWork).when(transactionStateObserver)
+            .suspend();
+        inOrder = inOrder(tfProvider, transactionStateObserver, unitOfWork, txnFacade, invocation, suspendedUnitOfWork,
+            suspendedTransaction);
+      }
+
+      @Test
+      public void runsInNewUnitOfWorkAndResumesAfterwards() throws Throwable {
+        sut.invoke(invocation);
+
+        inOrder.verify(tfProvider)
+            .suspendTransaction();
+        inOrder.verify(transactionStateObserver)
+            .suspend();
+        inOrder.verify(unitOfWork)
+            .begin();
+        inOrder.verify(txnFacade)
+            .begin();
+        inOrder.verify(invocation)
+            .proceed();
+        inOrder.verify(txnFacade)
+            .commit();
+        inOrder.verify(unitOfWork)
+            .end();
+        inOrder.verify(suspendedUnitOfWork)
+            .resume();
+        inOrder.verify(suspendedTransaction)
+            .resume();
+      }
+
+      @Test
+      public void resumesIfBeginFails() throws Throwable {
+        final RuntimeException exc = new RuntimeException();
+        doThrow(exc).when(txnFacade)
+            .begin();
+
+        try {
+          sut.invoke(invocation);
+        } catch (RuntimeException e) {
+          verify(invocation, never()).proceed();
+          verify(unitOfWork).end();
+          verify(suspendedUnitOfWork).resume();
+          verify(suspendedTransaction).resume();
+          assertThat(e, sameInstance(exc));
+          return;
+        }
+        fail("expected RuntimeException to be thrown");
+      }
+
+      @Test
+      public void doesNotSuspendIfNoTransactionIsRunning() throws Throwable {
+        doReturn(false).when(tfProvider)
+            .isTransactionActive();
+
+        sut.invoke(invocation);
+
+        verify(tfProvider, never()).suspendTransaction();
+        verify(transactionStateObserver, never()).suspend();
+        verify(unitOfWork, never()).begin();
+        verify(txnFacade).commit();
+      }
+    }
+
+
+    public class ReturningCompletionStage {
+
+      private TransactionStateObserver.SuspendedUnitOfWork suspendedUnitOfWork;
+
+      private TransactionFacadeFactory.SuspendedTransaction suspendedTransaction;
+
+      private CompletableFuture<Object> stage;
+
+      @Before
+      public void setup() throws Throwable {
+        suspendedUnitOfWork = mock(TransactionStateObserver.SuspendedUnitOfWork.class);
+        suspendedTransaction = mock(TransactionFacadeFactory.SuspendedTransaction.class);
+        doReturn(false).when(unitOfWork)
+            .isActive();
+        doReturn(true).when(tfProvider)
+            .canSuspendTransaction();
+        doReturn(suspendedTransaction).when(tfProvider)
+            .suspendTransaction();
+        doReturn(suspendedUnitOfWork).when(transactionStateObserver)
+            .suspend();
+        stage = new CompletableFuture<>();
+        doReturn(stage).when(invocation)
+            .proceed();
+        doReturn(AsyncService.class.getMethod("future")).when(invocation)
+            .getMethod();
+      }
+
+      @Test
+      public void keepsTransactionOpenUntilStageCompletes() throws Throwable {
+        final CompletionStage<?> result = (CompletionStage<?>) sut.invoke(invocation);
+
+        verify(tfProvider).suspendTransaction();
+        verify(transactionStateObserver).suspend();
+        verify(txnFacade, never()).commit();
+        verify(unitOfWork, never()).end();
+        assertThat(result.toCompletableFuture()
+            .isDone(), is(false));
+
+        stage.complete("value");
+
+        final InOrder inOrder = inOrder(suspendedUnitOfWork, suspendedTransaction, txnFacade, unitOfWork);
+        inOrder.verify(suspendedUnitOfWork)
+            .resume();
+        inOrder.verify(suspendedTransaction)
+            .resume();
+        inOrder.verify(txnFacade)
+            .commit();
+        inOrder.verify(unitOfWork)
+            .end();
+        assertThat(result.toCompletableFuture()
+            .get(), is((Object) "value"));
+      }
+
+      @Test
+      public void rollsBackIfStageCompletesExceptionally() throws Throwable {
+        final RuntimeException exc = new RuntimeException();
+        doReturn(true).when(attribute)
+            .isRollbackNecessaryFor(exc);
+
+        final CompletionStage<?> result = (CompletionStage<?>) sut.invoke(invocation);
+        stage.completeExceptionally(new CompletionException(exc));
+
+        verify(txnFacade).rollback();
+        verify(txnFacade, never()).commit();
+        verify(unitOfWork).end();
+        try {
+          result.toCompletableFuture()
+              .join();
+        } catch (CompletionException e) {
+          assertThat(e.getCause(), sameInstance((Throwable) exc));
+          return;
+        }
+        fail("expected CompletionException to be thrown");
+      }
+
+      @Test
+      public void completesSynchronouslyIfStageIsNotDeclared() throws Throwable {
+        doReturn(AsyncService.class.getMethod("object")).when(invocation)
+            .getMethod();
+
+        final Object result = sut.invoke(invocation);
+
+        assertThat(result, sameInstance((Object) stage));
+        verify(transactionStateObserver, never()).suspend();
+        verify(txnFacade).commit();
+        verify(unitOfWork).end();
+      }
+
+      @Test
+      public void completesSynchronouslyIfRunningTransactionIsJoined() throws Throwable {
+        doReturn(true).when(txnFacade)
+            .joinsRunningTransaction();
+
+        sut.invoke(invocation);
+
+        verify(transactionStateObserver, never()).suspend();
+        verify(txnFacade).commit();
+        verify(unitOfWork).end();
+      }
+
+      @Test
+      public void completesSynchronouslyIfTransactionCannotBeSuspended() throws Throwable {
+        doReturn(false).when(tfProvider)
+            .canSuspendTransaction();
+
+        final Object result = sut.invoke(invocation);
+
+        assertThat(result, sameInstance((Object) stage));
+        verify(transactionStateObserver, never()).suspend();
+        verify(txnFacade).commit();
+        verify(unitOfWork).end();
+      }
+
+      @Test
+      public void completesSynchronouslyOnPlainUserTransaction() throws Throwable {
+        final UserTransaction ut = mock(UserTransaction.class);
+        doReturn(Status.STATUS_NO_TRANSACTION).doReturn(Status.STATUS_ACTIVE)
+            .when(ut)
+            .getStatus();
+        final EntityManagerProvider emProvider = mock(EntityManagerProvider.class);
+        doReturn(mock(EntityManager.class)).when(emProvider)
+            .get();
+        final TxnParticipant jtaParticipant = new TxnParticipant();
+        jtaParticipant.init(unitOfWork, transactionStateObserver,
+            new JtaTransactionFacadeFactory(new UserTransactionFacade(ut), emProvider, new TransactionDefaults(0, false),
+                new ThreadLocalContextStorage()), new AnnotationHolder(null));
+        sut = new TxnInterceptor(singletonList(jtaParticipant), txnAnnoReader, new ThreadLocalContextStorage());
+
+        final Object result = sut.invoke(invocation);
+
+        assertThat(result, sameInstance((Object) stage));
+        verify(transactionStateObserver, never()).suspend();
+        verify(ut).commit();
+        verify(unitOfWork).end();
+      }
+
+      @Test
+      public void completesTransactionIfDetachingFails() throws Throwable {
+        final RuntimeException exc = new RuntimeException();
+        doThrow(exc).when(transactionStateObserver)
+            .suspend();
+        doReturn(true).when(attribute)
+            .isRollbackNecessaryFor(exc);
+
+        try {
+          sut.invoke(invocation);
+        } catch (RuntimeException e) {
+          verify(suspendedTransaction).resume();
+          verify(txnFacade).rollback();
+          verify(unitOfWork).end();
+          assertThat(e, sameInstance(exc));
+          return;
+        }
+        fail("expected RuntimeException to be thrown");
+      }
+    }
+
+  }
+
+
+  public class MultipleParticipants {
+
+    private UnitOfWork otherUnitOfWork;
+
+    private TransactionFacadeFactory otherTfProvider;
+
+    private TransactionFacade otherTxnFacade;
+
+    @Before
+    public void setUp() throws Exception {
+      otherUnitOfWork = mock(UnitOfWork.class);
+      otherTfProvider = mock(TransactionFacadeFactory.class);
+      otherTxnFacade = mock(TransactionFacade.class);
+      txnFacade = mock(TransactionFacade.class);
+      doReturn(txnFacade).when(tfProvider)
+          .createTransactionFacade(any());
+      doReturn(otherTxnFacade).when(otherTfProvider)
+          .createTransactionFacade(any());
+
+      final TxnParticipant first = new TxnParticipant();
+      first.init(unitOfWork, transactionStateObserver, tfProvider, new AnnotationHolder(TestPersistenceUnit.class));
+      final TxnParticipant second = new TxnParticipant();
+      second.init(otherUnitOfWork, transactionStateObserver, otherTfProvider,
+          new AnnotationHolder(OtherPersistenceUnit.class));
+      sut = new TxnInterceptor(Arrays.asList(first, second), txnAnnoReader, new ThreadLocalContextStorage());
+    }
+
+    @Test
+    public void beginsOnlyParticipatingUnits() throws Throwable {
+      // given
+      doReturn(true).when(attribute)
+          .participates(OtherPersistenceUnit.class);
+
+      // when
+      sut.invoke(invocation);
+
+      // then
+      verifyNoInteractions(tfProvider);
+      verify(otherTxnFacade).begin();
+      verify(otherTxnFacade).commit();
+    }
+
+    @Test
+    public void completesUnitsInReverseOrder() throws Throwable {
+      // given
+      doReturn(true).when(attribute)
+          .participates(any());
+      final InOrder inOrder = inOrder(txnFacade, otherTxnFacade, invocation);
+
+      // when
+      sut.invoke(invocation);
+
+      // then
+      inOrder.verify(txnFacade)
+          .begin();
+      inOrder.verify(otherTxnFacade)
+          .begin();
+      inOrder.verify(invocation)
+          .proceed();
+      inOrder.verify(otherTxnFacade)
+          .commit();
+      inOrder.verify(txnFacade)
+          .commit();
+    }
+
+    @Test
+    public void exceptionInInnerCommitIsHandledByOuterUnit() throws Throwable {
+      // given
+      final RuntimeException exc = new RuntimeException();
+      doReturn(true).when(attribute)
+          .participates(any());
+      doReturn(true).when(attribute)
+          .isRollbackNecessaryFor(exc);
+      doThrow(exc).when(otherTxnFacade)
+          .commit();
+
+      // when
+      try {
+        sut.invoke(invocation);
+      }
+
+      // then
+      catch (RuntimeException e) {
+        verify(txnFacade).rollback();
+        verify(txnFacade, never()).commit();
+        assertThat(e, sameInstance(exc));
+        return;
+      }
+      fail("expected RuntimeException to be thrown");
+    }
+
+  }
+
+
+  public class RetryBackoff {
+
+    @Test
+    public void shouldBeRandomizedByUpToHalf() {
+      doReturn(100L).when(attribute)
+          .getRetryBackoff();
+      for (int i = 0; i < 100; i++) {
+        final long result = TxnInterceptor.backoffFor(attribute, 1);
+        assertThat(result >= 50 && result <= 100, is(true));
+      }
+    }
+
+    @Test
+    public void shouldDoubleWithEveryAttempt() {
+      doReturn(100L).when(attribute)
+          .getRetryBackoff();
+      for (int i = 0; i < 100; i++) {
+        final long result = TxnInterceptor.backoffFor(attribute, 3);
+        assertThat(result >= 200 && result <= 400, is(true));
+      }
+    }
+
+    @Test
+    public void shouldBeBounded() {
+      doReturn(100L).when(attribute)
+          .getRetryBackoff();
+      assertThat(TxnInterceptor.backoffFor(attribute, 60) <= 10000, is(true));
+    }
+  }
+
+
+  interface AsyncService {
+
+    CompletableFuture<Object> future();
+
+    Object object();
   }
 
 }
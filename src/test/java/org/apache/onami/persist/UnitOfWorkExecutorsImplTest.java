@@ -0,0 +1,190 @@
+package org.apache.onami.persist;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.common.util.concurrent.MoreExecutors;
+import de.bechte.junit.runners.context.HierarchicalContextRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test for {@link UnitOfWorkExecutorsImpl}.
+ */
+@RunWith(HierarchicalContextRunner.class)
+public class UnitOfWorkExecutorsImplTest {
+
+  private UnitOfWorkExecutorsImpl sut;
+
+  private UnitOfWork unitOfWork;
+
+  private TransactionStateObserver transactionStateObserver;
+
+  private ExecutorService directExecutor;
+
+  @Before
+  public void setUp() {
+    unitOfWork = mock(UnitOfWork.class);
+    transactionStateObserver = mock(TransactionStateObserver.class);
+
+    final TxnParticipant participant = new TxnParticipant();
+    participant.init(unitOfWork, transactionStateObserver, mock(TransactionFacadeFactory.class),
+        new AnnotationHolder(null));
+    sut = new UnitOfWorkExecutorsImpl(asList(participant), new ThreadLocalContextStorage());
+
+    directExecutor = MoreExecutors.newDirectExecutorService();
+  }
+
+  public class WithOwnUnitOfWork {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+      executor = sut.withOwnUnitOfWork(directExecutor);
+    }
+
+    @Test
+    public void shouldRunTaskInUnitOfWork() throws Exception {
+      final Callable<String> task = () -> "result";
+
+      assertThat(executor.submit(task)
+          .get(), is("result"));
+
+      final InOrder inOrder = inOrder(unitOfWork);
+      inOrder.verify(unitOfWork)
+          .begin();
+      inOrder.verify(unitOfWork)
+          .end();
+    }
+
+    @Test
+    public void shouldEndUnitOfWorkIfTaskFails() throws Exception {
+      final RuntimeException exc = new RuntimeException();
+      final Runnable task = () -> {
+        throw exc;
+      };
+
+      try {
+        executor.submit(task)
+            .get();
+        fail("expected ExecutionException to be thrown");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause(), sameInstance((Throwable) exc));
+      }
+      verify(unitOfWork).end();
+    }
+
+    @Test
+    public void shouldPreferExceptionOfTask() throws Exception {
+      final RuntimeException exc = new RuntimeException();
+      final RuntimeException endExc = new RuntimeException();
+      doThrow(endExc).when(unitOfWork)
+          .end();
+
+      try {
+        executor.execute(() -> {
+          throw exc;
+        });
+        fail("expected RuntimeException to be thrown");
+      } catch (RuntimeException e) {
+        assertThat(e, sameInstance(exc));
+        assertThat(e.getSuppressed()[0], sameInstance((Throwable) endExc));
+      }
+    }
+
+    @Test
+    public void shouldNotTouchActiveUnitOfWork() {
+      doReturn(true).when(unitOfWork)
+          .isActive();
+
+      sut.withOwnUnitOfWork((Executor) directExecutor)
+          .execute(() -> {
+          });
+
+      verify(unitOfWork, never()).begin();
+      verify(unitOfWork, never()).end();
+    }
+  }
+
+
+  public class WithReadOnlyUnitOfWork {
+
+    @Test
+    public void shouldRunTaskInReadOnlyUnitOfWork() throws Exception {
+      sut.withReadOnlyUnitOfWork(directExecutor)
+          .submit(() -> {
+          })
+          .get();
+
+      final InOrder inOrder = inOrder(transactionStateObserver, unitOfWork);
+      inOrder.verify(transactionStateObserver)
+          .beginReadOnly();
+      inOrder.verify(unitOfWork)
+          .end();
+      verify(unitOfWork, never()).begin();
+    }
+
+    @Test
+    public void shouldEndUnitOfWorkIfTaskFails() {
+      try {
+        sut.withReadOnlyUnitOfWork((Executor) directExecutor)
+            .execute(() -> {
+              throw new IllegalStateException();
+            });
+        fail("expected IllegalStateException to be thrown");
+      } catch (IllegalStateException e) {
+        verify(unitOfWork).end();
+      }
+    }
+
+    @Test
+    public void shouldNotTouchActiveUnitOfWork() {
+      doReturn(true).when(unitOfWork)
+          .isActive();
+
+      sut.withReadOnlyUnitOfWork((Executor) directExecutor)
+          .execute(() -> {
+          });
+
+      verify(transactionStateObserver, never()).beginReadOnly();
+      verify(unitOfWork, never()).end();
+    }
+  }
+
+}
@@ -27,9 +27,12 @@ import org.mockito.internal.matchers.GreaterThan;
 
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
+import javax.transaction.InvalidTransactionException;
 import javax.transaction.NotSupportedException;
 import javax.transaction.RollbackException;
 import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
 import javax.transaction.UserTransaction;
 
 import static java.lang.System.currentTimeMillis;
@@ -45,11 +48,13 @@ import static javax.transaction.Status.STATUS_ROLLING_BACK;
 import static javax.transaction.Status.STATUS_UNKNOWN;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
 
 /**
  * Test for {@link UserTransactionFacade}.
@@ -247,6 +252,45 @@ public class UserTransactionFacadeTest {
     assertThat(duration, is(greaterThan(1000L)));
   }
 
+  @Test
+  public void canOnlySuspendOnTransactionManager() {
+    final UserTransaction tmTxn = mock(UserTransaction.class, withSettings().extraInterfaces(TransactionManager.class));
+
+    assertThat(sut.canSuspend(), is(false));
+    assertThat(new UserTransactionFacade(tmTxn).canSuspend(), is(true));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void suspendRequiresTransactionManager() throws Exception {
+    sut.suspend();
+  }
+
+  @Test
+  public void suspendAndResumeOnTransactionManager() throws Exception {
+    final UserTransaction tmTxn = mock(UserTransaction.class, withSettings().extraInterfaces(TransactionManager.class));
+    final Transaction suspended = mock(Transaction.class);
+    doReturn(suspended).when((TransactionManager) tmTxn)
+        .suspend();
+    sut = new UserTransactionFacade(tmTxn);
+
+    sut.suspend()
+        .resume();
+
+    verify((TransactionManager) tmTxn).suspend();
+    verify((TransactionManager) tmTxn).resume(suspended);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void resumeWithInvalidTransactionException() throws Exception {
+    final UserTransaction tmTxn = mock(UserTransaction.class, withSettings().extraInterfaces(TransactionManager.class));
+    doThrow(new InvalidTransactionException()).when((TransactionManager) tmTxn)
+        .resume(any());
+    sut = new UserTransactionFacade(tmTxn);
+
+    sut.suspend()
+        .resume();
+  }
+
   private void assertThatRollbackOnlyOf(int status, Matcher<Boolean> expected) throws Exception {
     doReturn(status).when(txn)
         .getStatus();
@@ -0,0 +1,171 @@
+package org.apache.onami.persist.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.BatchOptions;
+import org.apache.onami.persist.BatchWriter;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.UnitOfWork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests writing many entities with the {@link BatchWriter}.
+ */
+public class BatchWriterTest {
+
+  private Injector injector;
+
+  private BatchWriter batchWriter;
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    batchWriter = injector.getInstance(BatchWriter.class);
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void shouldPersistAllEntities() {
+    final long written = batchWriter.persistAll(entities(123, -1), BatchOptions.chunksOf(10));
+
+    assertThat(written, is(123L));
+    assertThat(countEntities(), is(123L));
+  }
+
+  @Test
+  public void shouldReportProgressOfCommits() {
+    final List<Long> committed = new ArrayList<>();
+
+    batchWriter.persistAll(entities(25, -1), BatchOptions.chunksOf(5)
+        .commitEvery(2)
+        .withProgressListener((written, committedSoFar) -> {
+          if (written == committedSoFar) {
+            committed.add(committedSoFar);
+          }
+        }));
+
+    assertThat(committed, is(List.of(10L, 20L, 25L)));
+    assertThat(countEntities(), is(25L));
+  }
+
+  @Test
+  public void shouldRollbackEverythingIfWritingInSingleTransactionFails() {
+    try {
+      batchWriter.persistAll(entities(30, 22), BatchOptions.chunksOf(5));
+      fail("expected IllegalStateException to be thrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    assertThat(countEntities(), is(0L));
+  }
+
+  @Test
+  public void shouldKeepCommittedChunksIfLaterTransactionFails() {
+    try {
+      batchWriter.persistAll(entities(30, 22), BatchOptions.chunksOf(5)
+          .commitEvery(2));
+      fail("expected IllegalStateException to be thrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    assertThat(countEntities(), is(20L));
+  }
+
+  @Test
+  public void shouldMergeEntities() {
+    final List<TestEntity> entities = new ArrayList<>();
+    entities(3, -1).forEach(entities::add);
+    batchWriter.persistAll(entities);
+
+    final long written = batchWriter.mergeAll(entities);
+
+    assertThat(written, is(3L));
+    assertThat(countEntities(), is(3L));
+  }
+
+  private long countEntities() {
+    final UnitOfWork unitOfWork = injector.getInstance(UnitOfWork.class);
+    unitOfWork.begin();
+    try {
+      return injector.getInstance(EntityManagerProvider.class)
+          .get()
+          .createQuery("SELECT COUNT(e) FROM TestEntity e", Long.class)
+          .getSingleResult();
+    } finally {
+      unitOfWork.end();
+    }
+  }
+
+  /**
+   * Creates new entities lazily.
+   *
+   * @param count   the number of entities.
+   * @param failAt  the index at which to fail or {@code -1} to never fail.
+   * @return the entities.
+   */
+  private static Iterable<TestEntity> entities(int count, int failAt) {
+    return () -> new Iterator<TestEntity>() {
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        return index < count;
+      }
+
+      @Override
+      public TestEntity next() {
+        if (index++ == failAt) {
+          throw new IllegalStateException("failed to read entity " + failAt);
+        }
+        return new TestEntity();
+      }
+    };
+  }
+
+}
@@ -0,0 +1,187 @@
+package org.apache.onami.persist.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.Propagation;
+import org.apache.onami.persist.Transactional;
+import org.apache.onami.persist.UnitOfWork;
+import org.apache.onami.persist.test.transaction.testframework.exceptions.RuntimeTestException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests recycling entity managers enabled by
+ * {@link org.apache.onami.persist.UnconfiguredPersistenceUnitBuilder#useEntityManagerRecycling(int)}.
+ */
+public class EntityManagerRecyclingTest {
+
+  private Injector injector;
+
+  private EntityService service;
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit").useEntityManagerRecycling(2);
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    service = injector.getInstance(EntityService.class);
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void shouldReuseEntityManagerOfEndedUnitOfWork() {
+    final TestEntity entity = new TestEntity();
+    final EntityManager first = service.persist(entity);
+
+    final EntityManager second = service.persist(new TestEntity());
+
+    assertThat(second, sameInstance(first));
+    assertThat(first.isOpen(), is(true));
+    assertThat(first.contains(entity), is(false));
+    assertNotNull(find(entity));
+  }
+
+  @Test
+  public void shouldReuseEntityManagerAfterRollback() {
+    final TestEntity rolledBack = new TestEntity();
+    try {
+      service.persistAndFail(rolledBack);
+      fail("expected RuntimeTestException to be thrown");
+    } catch (RuntimeTestException e) {
+      // expected
+    }
+
+    final TestEntity entity = new TestEntity();
+    service.persist(entity);
+
+    assertNull(find(rolledBack));
+    assertNotNull(find(entity));
+  }
+
+  @Test
+  public void shouldNotShareEntityManagerBetweenActiveUnitsOfWork() {
+    final EntityManager idle = service.persist(new TestEntity());
+
+    final EntityManager[] used = service.persistWithNested(new TestEntity(), new TestEntity());
+
+    assertThat(used[0], sameInstance(idle));
+    assertThat(used[1] == used[0], is(false));
+    assertThat(service.persist(new TestEntity()), sameInstance(idle));
+  }
+
+  @Test
+  public void shouldNotPassFlushModeOnToNextUnitOfWork() {
+    final EntityManager changed = service.persistWithFlushMode(new TestEntity(), FlushModeType.COMMIT);
+
+    final EntityManager next = service.persist(new TestEntity());
+
+    assertThat(next == changed, is(false));
+    assertThat(next.getFlushMode(), is(FlushModeType.AUTO));
+    assertThat(changed.isOpen(), is(false));
+  }
+
+  private TestEntity find(TestEntity entity) {
+    final UnitOfWork unitOfWork = injector.getInstance(UnitOfWork.class);
+    unitOfWork.begin();
+    try {
+      return injector.getInstance(EntityManagerProvider.class)
+          .get()
+          .find(TestEntity.class, entity.getId());
+    } finally {
+      unitOfWork.end();
+    }
+  }
+
+  public static class EntityService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Inject
+    private NestedService nestedService;
+
+    @Transactional(onUnits = {})
+    public EntityManager persist(TestEntity entity) {
+      final EntityManager em = emProvider.get();
+      em.persist(entity);
+      return em;
+    }
+
+    @Transactional(onUnits = {})
+    public EntityManager persistWithFlushMode(TestEntity entity, FlushModeType flushMode) {
+      final EntityManager em = persist(entity);
+      em.setFlushMode(flushMode);
+      return em;
+    }
+
+    @Transactional(onUnits = {})
+    public void persistAndFail(TestEntity entity) {
+      emProvider.get()
+          .persist(entity);
+      throw new RuntimeTestException();
+    }
+
+    @Transactional(onUnits = {})
+    public EntityManager[] persistWithNested(TestEntity outer, TestEntity nested) {
+      return new EntityManager[]{persist(outer), nestedService.persist(nested)};
+    }
+  }
+
+
+  public static class NestedService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Transactional(onUnits = {}, propagation = Propagation.REQUIRES_NEW)
+    public EntityManager persist(TestEntity entity) {
+      final EntityManager em = emProvider.get();
+      em.persist(entity);
+      return em;
+    }
+  }
+
+}
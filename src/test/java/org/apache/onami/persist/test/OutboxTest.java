@@ -0,0 +1,164 @@
+package org.apache.onami.persist.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.Outbox;
+import org.apache.onami.persist.OutboxEvent;
+import org.apache.onami.persist.OutboxOptions;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.Transactional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests recording events with the {@link Outbox} and relaying them to an in process sink.
+ */
+public class OutboxTest {
+
+  private Injector injector;
+
+  private OrderService service;
+
+  private final BlockingQueue<List<OutboxEvent>> batches = new LinkedBlockingQueue<>();
+
+  private final AtomicInteger failuresLeft = new AtomicInteger();
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit").useOutbox(OutboxOptions.to(events -> {
+              if (failuresLeft.getAndDecrement() > 0) {
+                throw new IllegalStateException("sink unavailable");
+              }
+              batches.add(new ArrayList<>(events));
+            })
+            .withBatchSize(10)
+            .withPollInterval(50, TimeUnit.MILLISECONDS));
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    service = injector.getInstance(OrderService.class);
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void committedEventsShouldBeRelayedInBatches() throws Exception {
+    service.placeOrders(25, false);
+
+    final List<String> payloads = new ArrayList<>();
+    final List<Integer> sizes = new ArrayList<>();
+    while (payloads.size() < 25) {
+      final List<OutboxEvent> batch = batches.poll(5, TimeUnit.SECONDS);
+      assertThat(batch, notNullValue());
+      sizes.add(batch.size());
+      for (OutboxEvent event : batch) {
+        assertThat(event.getTopic(), is("order-placed"));
+        payloads.add(event.getPayload());
+      }
+    }
+
+    final List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      expected.add("order-" + i);
+    }
+    assertThat(payloads, is(expected));
+    assertThat(sizes, is(List.of(10, 10, 5)));
+    assertThat(batches.poll(200, TimeUnit.MILLISECONDS), nullValue());
+  }
+
+  @Test
+  public void rolledBackEventsShouldNotBeRelayed() throws Exception {
+    try {
+      service.placeOrders(3, true);
+      fail("expected IllegalStateException to be thrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    assertThat(batches.poll(200, TimeUnit.MILLISECONDS), nullValue());
+  }
+
+  @Test
+  public void rejectedBatchShouldBeRelayedAgain() throws Exception {
+    failuresLeft.set(2);
+
+    service.placeOrders(3, false);
+
+    final List<OutboxEvent> batch = batches.poll(5, TimeUnit.SECONDS);
+    assertThat(batch, notNullValue());
+    assertThat(batch.size(), is(3));
+    assertThat(batches.poll(200, TimeUnit.MILLISECONDS), nullValue());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void recordingShouldFailWithoutTransaction() {
+    injector.getInstance(Outbox.class)
+        .record("order-placed", "order");
+  }
+
+  public static class OrderService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Inject
+    private Outbox outbox;
+
+    @Transactional(onUnits = {})
+    public void placeOrders(int count, boolean fail) {
+      for (int i = 0; i < count; i++) {
+        emProvider.get()
+            .persist(new TestEntity());
+        outbox.record("order-placed", "order-" + i);
+      }
+      if (fail) {
+        throw new IllegalStateException();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,140 @@
+package org.apache.onami.persist.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.ParallelReads;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.Transactional;
+import org.apache.onami.persist.UnitOfWork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests reading in parallel with {@link ParallelReads}.
+ */
+public class ParallelReadsTest {
+
+  private Injector injector;
+
+  private ParallelReads parallelReads;
+
+  private final List<TestEntity> entities = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit").useParallelReadLimit(2);
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    parallelReads = injector.getInstance(ParallelReads.class);
+
+    final EntityWriter writer = injector.getInstance(EntityWriter.class);
+    for (int i = 0; i < 5; i++) {
+      entities.add(writer.persist(new TestEntity()));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void shouldFindEntitiesInParallel() {
+    final List<ParallelReads.Read<TestEntity>> reads = new ArrayList<>();
+    for (TestEntity entity : entities) {
+      reads.add(em -> em.find(TestEntity.class, entity.getId()));
+    }
+
+    final List<TestEntity> found = parallelReads.readAll(reads);
+
+    for (int i = 0; i < entities.size(); i++) {
+      assertThat(found.get(i)
+          .getId(), is(entities.get(i)
+          .getId()));
+    }
+  }
+
+  @Test
+  public void shouldNotUseEntityManagerOfUnitOfWork() {
+    final UnitOfWork unitOfWork = injector.getInstance(UnitOfWork.class);
+    unitOfWork.begin();
+    try {
+      final EntityManager em = injector.getInstance(EntityManagerProvider.class)
+          .get();
+      final List<EntityManager> used = new ArrayList<>();
+
+      final List<Boolean> open = parallelReads.readAll(List.<ParallelReads.Read<Boolean>>of(readEm -> {
+        synchronized (used) {
+          used.add(readEm);
+        }
+        return readEm.isOpen();
+      }, readEm -> {
+        synchronized (used) {
+          used.add(readEm);
+        }
+        return readEm.isOpen();
+      }));
+
+      assertThat(open, is(List.of(true, true)));
+      for (EntityManager readEm : used) {
+        assertThat(readEm, not(sameInstance(em)));
+        assertThat(readEm.isOpen(), is(false));
+      }
+      assertThat(em.isOpen(), is(true));
+    } finally {
+      unitOfWork.end();
+    }
+  }
+
+  public static class EntityWriter {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Transactional(onUnits = {})
+    public TestEntity persist(TestEntity entity) {
+      emProvider.get()
+          .persist(entity);
+      return entity;
+    }
+  }
+
+}
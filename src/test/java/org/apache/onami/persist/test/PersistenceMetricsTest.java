@@ -0,0 +1,189 @@
+package org.apache.onami.persist.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.multibindings.OptionalBinder;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.InMemoryPersistenceMetrics;
+import org.apache.onami.persist.PersistenceMetrics;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.Propagation;
+import org.apache.onami.persist.TransactionHookManager;
+import org.apache.onami.persist.Transactional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jakarta.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests recording the transactions of a persistence unit with {@link InMemoryPersistenceMetrics}.
+ */
+public class PersistenceMetricsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Injector injector;
+
+  private InMemoryPersistenceMetrics metrics;
+
+  @Before
+  public void setUp() {
+    metrics = new InMemoryPersistenceMetrics();
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    }, new AbstractModule() {
+      @Override
+      protected void configure() {
+        OptionalBinder.newOptionalBinder(binder(), PersistenceMetrics.class)
+            .setBinding()
+            .toInstance(metrics);
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void shouldRecordNestedTransactions() throws Exception {
+    final OuterService service = injector.getInstance(OuterService.class);
+
+    service.persistTwice();
+    service.persistTwice();
+
+    final InMemoryPersistenceMetrics.UnitStatistics statistics = metrics.statisticsOf(null);
+    assertThat(statistics.getBegunCount(), is(2L));
+    assertThat(statistics.getJoinedCount(), is(4L));
+    assertThat(statistics.getCommittedCount(), is(2L));
+    assertThat(statistics.getNestingDepth()
+        .getMax(), is(2L));
+    assertThat(statistics.getUnitOfWork()
+        .getCount(), is(2L));
+    assertThat(statistics.getEntityManagerLifetime()
+        .getCount(), is(2L));
+
+    final Path file = folder.getRoot()
+        .toPath()
+        .resolve("metrics.txt");
+    metrics.writeTo(file);
+    assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8),
+        containsString("begun=2 joined=4 committed=2 rolledBack=0"));
+  }
+
+  @Test
+  public void shouldNotReportMethodsWithoutTransaction() {
+    final SupportingService service = injector.getInstance(SupportingService.class);
+
+    service.persistTwice();
+
+    final InMemoryPersistenceMetrics.UnitStatistics statistics = metrics.statisticsOf(null);
+    assertThat(statistics.getBegunCount(), is(2L));
+    assertThat(statistics.getJoinedCount(), is(0L));
+    assertThat(statistics.getCommittedCount(), is(2L));
+    assertThat(statistics.getNestingDepth()
+        .getMax(), is(1L));
+  }
+
+  @Test
+  public void failingPostCommitCallbackShouldNotTurnCommitIntoRollback() {
+    final InnerService service = injector.getInstance(InnerService.class);
+
+    try {
+      service.persistWithFailingCallback();
+      fail("expected IllegalStateException to be thrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    final InMemoryPersistenceMetrics.UnitStatistics statistics = metrics.statisticsOf(null);
+    assertThat(statistics.getCommittedCount(), is(1L));
+    assertThat(statistics.getRolledBackCount(), is(0L));
+  }
+
+  public static class SupportingService {
+    @Inject
+    private InnerService inner;
+
+    @Transactional(onUnits = {}, propagation = Propagation.SUPPORTS)
+    public void persistTwice() {
+      inner.persist();
+      inner.persist();
+    }
+  }
+
+  public static class OuterService {
+    @Inject
+    private InnerService inner;
+
+    @Transactional(onUnits = {})
+    public void persistTwice() {
+      inner.persist();
+      inner.persist();
+    }
+  }
+
+  public static class InnerService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Inject
+    private TransactionHookManager hookManager;
+
+    @Transactional(onUnits = {})
+    public void persist() {
+      emProvider.get()
+          .persist(new TestEntity());
+    }
+
+    @Transactional(onUnits = {})
+    public void persistWithFailingCallback() {
+      persist();
+      hookManager.addPostCommitCallback(() -> {
+        throw new IllegalStateException();
+      });
+    }
+  }
+
+}
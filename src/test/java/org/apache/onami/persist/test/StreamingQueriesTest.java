@@ -0,0 +1,167 @@
+package org.apache.onami.persist.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.BatchOptions;
+import org.apache.onami.persist.BatchWriter;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.StreamingQueries;
+import org.apache.onami.persist.UnitOfWork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests streaming query results with {@link StreamingQueries}.
+ */
+public class StreamingQueriesTest {
+
+  private Injector injector;
+
+  private StreamingQueries streamingQueries;
+
+  private UnitOfWork unitOfWork;
+
+  private EntityManagerProvider emProvider;
+
+  private final Set<UUID> ids = new HashSet<>();
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    streamingQueries = injector.getInstance(StreamingQueries.class);
+    unitOfWork = injector.getInstance(UnitOfWork.class);
+    emProvider = injector.getInstance(EntityManagerProvider.class);
+
+    final List<TestEntity> entities = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      final TestEntity entity = new TestEntity();
+      entities.add(entity);
+      ids.add(entity.getId());
+    }
+    injector.getInstance(BatchWriter.class)
+        .persistAll(entities, BatchOptions.chunksOf(10));
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void shouldStreamAllRows() {
+    final Set<UUID> streamed = new HashSet<>();
+    unitOfWork.begin();
+    try (Stream<TestEntity> entities = streamingQueries.stream(
+        emProvider.get()
+            .createQuery("SELECT e FROM TestEntity e", TestEntity.class), 10)) {
+      entities.forEach(entity -> streamed.add(entity.getId()));
+    } finally {
+      unitOfWork.end();
+    }
+
+    assertThat(streamed, is(ids));
+  }
+
+  @Test
+  public void shouldKeepAtMostOneWindowInPersistenceContext() {
+    final List<TestEntity> streamed = new ArrayList<>();
+    unitOfWork.begin();
+    try (Stream<TestEntity> entities = streamingQueries.stream(
+        emProvider.get()
+            .createQuery("SELECT e FROM TestEntity e", TestEntity.class), 10)) {
+      final EntityManager em = emProvider.get();
+      entities.forEach(entity -> {
+        streamed.add(entity);
+        long managed = 0;
+        for (TestEntity previous : streamed) {
+          if (em.contains(previous)) {
+            managed++;
+          }
+        }
+        assertThat(managed <= 10, is(true));
+      });
+    } finally {
+      unitOfWork.end();
+    }
+
+    assertThat(streamed.size(), is(25));
+  }
+
+  @Test
+  public void shouldKeepChangesOfConsumerWithinTransaction() {
+    final Set<UUID> written = new HashSet<>();
+    unitOfWork.begin();
+    try {
+      final EntityManager em = emProvider.get();
+      em.getTransaction()
+          .begin();
+      try (Stream<TestEntity> entities = streamingQueries.stream(
+          em.createQuery("SELECT e FROM TestEntity e WHERE e.id IN :ids", TestEntity.class)
+              .setParameter("ids", ids), 10)) {
+        entities.forEach(entity -> {
+          final TestEntity audit = new TestEntity();
+          em.persist(audit);
+          written.add(audit.getId());
+        });
+      }
+      em.getTransaction()
+          .commit();
+    } finally {
+      unitOfWork.end();
+    }
+
+    unitOfWork.begin();
+    try {
+      final List<TestEntity> found = emProvider.get()
+          .createQuery("SELECT e FROM TestEntity e WHERE e.id IN :ids", TestEntity.class)
+          .setParameter("ids", written)
+          .getResultList();
+      assertThat(found.size(), is(25));
+    } finally {
+      unitOfWork.end();
+    }
+  }
+
+}
@@ -0,0 +1,162 @@
+package org.apache.onami.persist.test;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.UnitOfWork;
+import org.apache.onami.persist.UnitOfWorkExecutors;
+import org.apache.onami.persist.test.multipersistenceunits.FirstPU;
+import org.apache.onami.persist.test.multipersistenceunits.SecondPU;
+import org.junit.After;
+import org.junit.Before;
+import org.hibernate.Session;
+import org.junit.Test;
+
+import jakarta.persistence.EntityManager;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests running tasks on executors decorated by {@link UnitOfWorkExecutors}.
+ */
+public class UnitOfWorkExecutorsTest {
+
+  private Injector injector;
+
+  private ExecutorService pool;
+
+  private UnitOfWorkExecutors unitOfWorkExecutors;
+
+  private EntityManagerProvider firstEmp;
+
+  private EntityManagerProvider secondEmp;
+
+  private UnitOfWork firstUnitOfWork;
+
+  private UnitOfWork secondUnitOfWork;
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("firstUnit").annotatedWith(FirstPU.class);
+        bindApplicationManagedPersistenceUnit("secondUnit").annotatedWith(SecondPU.class);
+      }
+    });
+    injector.getInstance(Key.get(PersistenceService.class, FirstPU.class))
+        .start();
+    injector.getInstance(Key.get(PersistenceService.class, SecondPU.class))
+        .start();
+
+    pool = Executors.newSingleThreadExecutor();
+    unitOfWorkExecutors = injector.getInstance(UnitOfWorkExecutors.class);
+    firstEmp = injector.getInstance(Key.get(EntityManagerProvider.class, FirstPU.class));
+    secondEmp = injector.getInstance(Key.get(EntityManagerProvider.class, SecondPU.class));
+    firstUnitOfWork = injector.getInstance(Key.get(UnitOfWork.class, FirstPU.class));
+    secondUnitOfWork = injector.getInstance(Key.get(UnitOfWork.class, SecondPU.class));
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+    injector.getInstance(Key.get(PersistenceService.class, FirstPU.class))
+        .stop();
+    injector.getInstance(Key.get(PersistenceService.class, SecondPU.class))
+        .stop();
+  }
+
+  @Test
+  public void taskShouldRunInUnitsOfWorkOfItsOwn() throws Exception {
+    final EntityManager[] used = unitOfWorkExecutors.withOwnUnitOfWork(pool)
+        .submit(() -> new EntityManager[]{firstEmp.get(), secondEmp.get()})
+        .get();
+
+    assertThat(used[0].isOpen(), is(false));
+    assertThat(used[1].isOpen(), is(false));
+    assertWorkerHasNoUnitOfWork();
+  }
+
+  @Test
+  public void readOnlyTaskShouldRunInReadOnlyUnitsOfWorkOfItsOwn() throws Exception {
+    final boolean[] readOnly = unitOfWorkExecutors.withReadOnlyUnitOfWork(pool)
+        .submit(() -> new boolean[]{isReadOnly(firstEmp.get()), isReadOnly(secondEmp.get())})
+        .get();
+
+    assertThat(readOnly[0], is(true));
+    assertThat(readOnly[1], is(true));
+    assertWorkerHasNoUnitOfWork();
+  }
+
+  @Test
+  public void readOnlyTaskShouldNotUseEntityManagerOfSubmitter() throws Exception {
+    firstUnitOfWork.begin();
+    try {
+      final EntityManager em = firstEmp.get();
+
+      final EntityManager used = unitOfWorkExecutors.withReadOnlyUnitOfWork(pool)
+          .submit(() -> firstEmp.get())
+          .get();
+
+      assertThat(used, not(sameInstance(em)));
+      assertThat(used.isOpen(), is(false));
+      assertThat(em.isOpen(), is(true));
+      assertThat(isReadOnly(em), is(false));
+      assertWorkerHasNoUnitOfWork();
+    } finally {
+      firstUnitOfWork.end();
+    }
+  }
+
+  @Test
+  public void ownUnitOfWorkShouldNotBeSharedWithSubmitter() throws Exception {
+    firstUnitOfWork.begin();
+    try {
+      final EntityManager used = unitOfWorkExecutors.withOwnUnitOfWork(pool)
+          .submit(() -> firstEmp.get())
+          .get();
+
+      assertThat(used, not(sameInstance(firstEmp.get())));
+    } finally {
+      firstUnitOfWork.end();
+    }
+  }
+
+  private static boolean isReadOnly(EntityManager em) {
+    return em.unwrap(Session.class)
+        .isDefaultReadOnly();
+  }
+
+  private void assertWorkerHasNoUnitOfWork() throws Exception {
+    assertThat(pool.submit(() -> firstUnitOfWork.isActive() || secondUnitOfWork.isActive())
+        .get(), is(false));
+  }
+
+}
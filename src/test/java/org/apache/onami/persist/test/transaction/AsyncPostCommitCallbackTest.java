@@ -0,0 +1,139 @@
+package org.apache.onami.persist.test.transaction;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.PostCommitDispatch;
+import org.apache.onami.persist.TransactionHookManager;
+import org.apache.onami.persist.Transactional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests running post commit callbacks on an executor.
+ */
+public class AsyncPostCommitCallbackTest {
+
+  private Injector injector;
+
+  private ExecutorService executor;
+
+  private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+
+  private final CountDownLatch failureReported = new CountDownLatch(1);
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit").useAsyncPostCommitCallbacks(
+            PostCommitDispatch.to(executor)
+                .withFailureHandler((callback, failure) -> {
+                  failures.add(failure);
+                  failureReported.countDown();
+                }));
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void commitShouldNotWaitForCallbacks() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    final List<String> threads = new CopyOnWriteArrayList<>();
+
+    injector.getInstance(CallbackService.class)
+        .addCallbacks(() -> {
+          awaitQuietly(release);
+          threads.add(Thread.currentThread()
+              .getName());
+        }, done::countDown);
+
+    assertThat(done.getCount(), is(1L));
+    release.countDown();
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(threads.get(0)
+        .equals(Thread.currentThread()
+            .getName()), is(false));
+  }
+
+  @Test
+  public void failingCallbackShouldBeReportedInsteadOfThrown() throws Exception {
+    final RuntimeException failure = new RuntimeException();
+    final CountDownLatch done = new CountDownLatch(1);
+
+    injector.getInstance(CallbackService.class)
+        .addCallbacks(() -> {
+          throw failure;
+        }, done::countDown);
+
+    assertThat(failureReported.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(failures, is(List.of((Throwable) failure)));
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread()
+          .interrupt();
+    }
+  }
+
+  public static class CallbackService {
+    @Inject
+    private TransactionHookManager transactionHookManager;
+
+    @Transactional(onUnits = {})
+    public void addCallbacks(Runnable... callbacks) {
+      for (Runnable callback : callbacks) {
+        transactionHookManager.addPostCommitCallback(callback);
+      }
+    }
+  }
+
+}
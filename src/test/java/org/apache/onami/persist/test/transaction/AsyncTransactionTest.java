@@ -0,0 +1,254 @@
+package org.apache.onami.persist.test.transaction;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.TransactionHookManager;
+import org.apache.onami.persist.Transactional;
+import org.apache.onami.persist.UnitOfWork;
+import org.apache.onami.persist.UnitOfWorkExecutors;
+import org.apache.onami.persist.test.TestEntity;
+import org.apache.onami.persist.test.transaction.testframework.exceptions.RuntimeTestException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests transactional methods returning a {@link CompletableFuture}. The transaction must stay open until the
+ * returned future has completed.
+ */
+public class AsyncTransactionTest {
+
+  private Injector injector;
+
+  private AsyncService service;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    service = injector.getInstance(AsyncService.class);
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void shouldCommitWhenFutureCompletes() {
+    final TestEntity entity = new TestEntity();
+    final CompletableFuture<Void> trigger = new CompletableFuture<>();
+
+    final CompletableFuture<TestEntity> result = service.persistWhen(entity, trigger);
+
+    assertFalse(injector.getInstance(UnitOfWork.class)
+        .isActive());
+    assertTrue(service.em.isOpen());
+    assertFalse(result.isDone());
+
+    trigger.complete(null);
+
+    assertThat(result.join(), is(entity));
+    assertFalse(service.em.isOpen());
+    assertNotNull(find(entity));
+  }
+
+  @Test
+  public void shouldCommitOnThreadCompletingTheFuture() {
+    final TestEntity entity = new TestEntity();
+    final CompletableFuture<Void> trigger = new CompletableFuture<>();
+
+    final CompletableFuture<TestEntity> result = service.persistWhen(entity, trigger);
+    executor.execute(() -> trigger.complete(null));
+
+    result.join();
+    assertNotNull(find(entity));
+  }
+
+  @Test
+  public void shouldRollbackWhenFutureCompletesExceptionally() {
+    final TestEntity entity = new TestEntity();
+    final CompletableFuture<Void> trigger = new CompletableFuture<>();
+
+    final CompletableFuture<TestEntity> result = service.persistWhen(entity, trigger);
+    trigger.completeExceptionally(new RuntimeTestException());
+
+    try {
+      result.join();
+      fail("expected CompletionException to be thrown");
+    } catch (CompletionException e) {
+      assertThat(e.getCause(), instanceOf(RuntimeTestException.class));
+    }
+    assertNull(find(entity));
+  }
+
+  @Test
+  public void shouldCommitAlreadyCompletedFuture() {
+    final TestEntity entity = new TestEntity();
+
+    service.persistWhen(entity, CompletableFuture.completedFuture(null))
+        .join();
+
+    assertFalse(injector.getInstance(UnitOfWork.class)
+        .isActive());
+    assertNotNull(find(entity));
+  }
+
+  @Test
+  public void shouldRunPostCommitCallbackAfterFutureCompletes() {
+    final AtomicBoolean called = new AtomicBoolean();
+    final CompletableFuture<Void> trigger = new CompletableFuture<>();
+
+    service.callback = () -> called.set(true);
+
+    final CompletableFuture<TestEntity> result = service.persistWhen(new TestEntity(), trigger);
+    assertFalse(called.get());
+    trigger.complete(null);
+
+    result.join();
+    assertTrue(called.get());
+  }
+
+  @Test
+  public void shouldNotDisturbUnitOfWorkOfCompletingThread() {
+    final TestEntity entity = new TestEntity();
+    final CompletableFuture<Void> trigger = new CompletableFuture<>();
+    final UnitOfWork unitOfWork = injector.getInstance(UnitOfWork.class);
+
+    final CompletableFuture<TestEntity> result = service.persistWhen(entity, trigger);
+    unitOfWork.begin();
+    try {
+      final EntityManager em = service.emProvider.get();
+      trigger.complete(null);
+      assertThat(service.emProvider.get(), is(em));
+    } finally {
+      unitOfWork.end();
+    }
+
+    result.join();
+    assertNotNull(find(entity));
+  }
+
+  @Test
+  public void continuationOnOtherThreadShouldRunWithoutUnitOfWork() {
+    final CompletableFuture<EntityManager> result = service.entityManagerOn(executor);
+
+    try {
+      result.join();
+      fail("expected CompletionException to be thrown");
+    } catch (CompletionException e) {
+      assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+    }
+  }
+
+  @Test
+  public void continuationOnUnitOfWorkExecutorShouldUseEntityManagerOfItsOwn() throws Exception {
+    final UnitOfWorkExecutors unitOfWorkExecutors = injector.getInstance(UnitOfWorkExecutors.class);
+
+    final EntityManager used = service.entityManagerOn(unitOfWorkExecutors.withOwnUnitOfWork(executor))
+        .join();
+    // the unit of work ends after the future has been completed. wait for it on the single worker thread.
+    executor.submit(() -> {
+    })
+        .get();
+
+    assertThat(used, not(sameInstance(service.em)));
+    assertFalse(used.isOpen());
+    assertFalse(service.em.isOpen());
+  }
+
+  private TestEntity find(TestEntity entity) {
+    final UnitOfWork unitOfWork = injector.getInstance(UnitOfWork.class);
+    unitOfWork.begin();
+    try {
+      return injector.getInstance(EntityManagerProvider.class)
+          .get()
+          .find(TestEntity.class, entity.getId());
+    } finally {
+      unitOfWork.end();
+    }
+  }
+
+  public static class AsyncService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Inject
+    private TransactionHookManager transactionHookManager;
+
+    private EntityManager em;
+
+    private Runnable callback;
+
+    @Transactional(onUnits = {})
+    public CompletableFuture<TestEntity> persistWhen(TestEntity entity, CompletableFuture<Void> trigger) {
+      em = emProvider.get();
+      em.persist(entity);
+      if (callback != null) {
+        transactionHookManager.addPostCommitCallback(callback);
+      }
+      return trigger.thenApply(ignored -> entity);
+    }
+
+    @Transactional(onUnits = {})
+    public CompletableFuture<EntityManager> entityManagerOn(Executor executor) {
+      em = emProvider.get();
+      return CompletableFuture.supplyAsync(() -> emProvider.get(), executor);
+    }
+  }
+
+}
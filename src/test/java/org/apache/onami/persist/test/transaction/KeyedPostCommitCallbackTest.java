@@ -0,0 +1,139 @@
+package org.apache.onami.persist.test.transaction;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.TransactionHookManager;
+import org.apache.onami.persist.Transactional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests coalescing post commit callbacks by key.
+ */
+public class KeyedPostCommitCallbackTest {
+
+  private Injector injector;
+
+  private CacheService service;
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    service = injector.getInstance(CacheService.class);
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void keyedCallbacksShouldRunOncePerTransaction() {
+    service.touchRows(10000, false);
+
+    assertThat(service.tableInvalidations, is(1));
+  }
+
+  @Test
+  public void aggregateShouldReceiveAllKeysOfOuterAndInnerTransactions() {
+    service.touchRows(10000, false);
+
+    assertThat(service.invalidatedRows.size(), is(1));
+    assertThat(service.invalidatedRows.get(0)
+        .size(), is(10000));
+  }
+
+  @Test
+  public void callbacksShouldNotRunAfterRollback() {
+    try {
+      service.touchRows(100, true);
+      fail("expected IllegalStateException to be thrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    assertThat(service.tableInvalidations, is(0));
+    assertThat(service.invalidatedRows.size(), is(0));
+  }
+
+  @Singleton
+  public static class CacheService {
+    @Inject
+    private TransactionHookManager transactionHookManager;
+
+    @Inject
+    private CacheService self;
+
+    private int tableInvalidations;
+
+    private final List<Set<Integer>> invalidatedRows = new ArrayList<>();
+
+    private final Consumer<Set<Integer>> invalidateRows = invalidatedRows::add;
+
+    @Transactional(onUnits = {})
+    public void touchRows(int rows, boolean fail) {
+      for (int row = 0; row < rows / 2; row++) {
+        touchRow(row);
+      }
+      self.touchRemainingRows(rows / 2, rows);
+      if (fail) {
+        throw new IllegalStateException();
+      }
+    }
+
+    @Transactional(onUnits = {})
+    public void touchRemainingRows(int from, int to) {
+      for (int row = from; row < to; row++) {
+        touchRow(row);
+      }
+    }
+
+    private void touchRow(int row) {
+      transactionHookManager.addPostCommitCallback("rows", () -> tableInvalidations++);
+      transactionHookManager.addAggregatePostCommitCallback(row, invalidateRows);
+    }
+  }
+
+}
@@ -0,0 +1,180 @@
+package org.apache.onami.persist.test.transaction;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.Transactional;
+import org.apache.onami.persist.UnitOfWork;
+import org.apache.onami.persist.test.TestEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests transactions of a persistence unit which starts its transactions on the first use of the entity manager.
+ */
+public class LazyBeginTest {
+
+  private Injector injector;
+
+  private UnitOfWork unitOfWork;
+
+  private EntityManager em;
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit").useLazyTransactionBegin();
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    unitOfWork = injector.getInstance(UnitOfWork.class);
+    unitOfWork.begin();
+    // retrieved outside of a transaction in order to inspect the transaction without starting it
+    em = injector.getInstance(EntityManagerProvider.class)
+        .get();
+  }
+
+  @After
+  public void tearDown() {
+    unitOfWork.end();
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void transactionShouldNotBeStartedIfEntityManagerIsNotUsed() {
+    final boolean active = injector.getInstance(LazyService.class)
+        .isTransactionActiveWithoutUse(em);
+
+    assertThat(active, is(false));
+  }
+
+  @Test
+  public void transactionShouldBeStartedOnFirstUse() {
+    final boolean active = injector.getInstance(LazyService.class)
+        .isTransactionActiveAfterUse(em);
+
+    assertThat(active, is(true));
+  }
+
+  @Test
+  public void nestedTransactionShouldNotStartTransaction() {
+    final boolean active = injector.getInstance(LazyService.class)
+        .isTransactionActiveAfterNestedCall(em);
+
+    assertThat(active, is(false));
+  }
+
+  @Test
+  public void shouldCommitTransactionStartedOnFirstUse() {
+    final TestEntity entity = new TestEntity();
+
+    injector.getInstance(LazyService.class)
+        .persist(entity);
+
+    assertNotNull(find(entity));
+  }
+
+  @Test
+  public void shouldRollbackTransactionStartedOnFirstUse() {
+    final TestEntity entity = new TestEntity();
+
+    try {
+      injector.getInstance(LazyService.class)
+          .persistAndFail(entity);
+      fail("expected RuntimeException to be thrown");
+    } catch (RuntimeException e) {
+      // expected
+    }
+
+    assertNull(find(entity));
+  }
+
+  private TestEntity find(TestEntity entity) {
+    em.clear();
+    return em.find(TestEntity.class, entity.getId());
+  }
+
+  public static class LazyService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Inject
+    private NestedService nestedService;
+
+    @Transactional(onUnits = {})
+    public boolean isTransactionActiveWithoutUse(EntityManager em) {
+      return em.getTransaction()
+          .isActive();
+    }
+
+    @Transactional(onUnits = {})
+    public boolean isTransactionActiveAfterUse(EntityManager em) {
+      emProvider.get();
+      return em.getTransaction()
+          .isActive();
+    }
+
+    @Transactional(onUnits = {})
+    public boolean isTransactionActiveAfterNestedCall(EntityManager em) {
+      nestedService.doNothing();
+      return em.getTransaction()
+          .isActive();
+    }
+
+    @Transactional(onUnits = {})
+    public void persist(TestEntity entity) {
+      emProvider.get()
+          .persist(entity);
+    }
+
+    @Transactional(onUnits = {})
+    public void persistAndFail(TestEntity entity) {
+      persist(entity);
+      throw new RuntimeException("failure");
+    }
+  }
+
+  public static class NestedService {
+    @Transactional(onUnits = {})
+    public void doNothing() {
+      // the entity manager is not used
+    }
+  }
+
+}
@@ -0,0 +1,214 @@
+package org.apache.onami.persist.test.transaction;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.Propagation;
+import org.apache.onami.persist.Transactional;
+import org.apache.onami.persist.UnitOfWork;
+import org.apache.onami.persist.test.TestEntity;
+import org.apache.onami.persist.test.transaction.testframework.exceptions.RuntimeTestException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@link Transactional#propagation()} of nested transactions.
+ */
+public class PropagationTest {
+
+  private Injector injector;
+
+  private UnitOfWork unitOfWork;
+
+  private EntityManagerProvider emProvider;
+
+  private OuterService outer;
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(createPersistenceModule());
+    injector.getInstance(PersistenceService.class)
+        .start();
+    unitOfWork = injector.getInstance(UnitOfWork.class);
+    emProvider = injector.getInstance(EntityManagerProvider.class);
+    outer = injector.getInstance(OuterService.class);
+  }
+
+  protected PersistenceModule createPersistenceModule() {
+    return new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    };
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void requiresNewShouldCommitIndependentlyOfRunningTransaction() {
+    final TestEntity outerEntity = new TestEntity();
+    final TestEntity innerEntity = new TestEntity();
+
+    try {
+      outer.persistAndFail(outerEntity, innerEntity);
+      fail("expected RuntimeTestException to be thrown");
+    } catch (RuntimeTestException e) {
+      // expected
+    }
+
+    assertNull(find(outerEntity));
+    assertNotNull(find(innerEntity));
+  }
+
+  @Test
+  public void requiresNewShouldResumeEntityManagerOfRunningTransaction() {
+    outer.assertEntityManagerIsResumedAfterRequiresNew();
+  }
+
+  @Test
+  public void notSupportedShouldRunWithoutTransaction() {
+    outer.assertNotSupportedRunsWithoutTransaction();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void mandatoryShouldFailWithoutRunningTransaction() {
+    injector.getInstance(InnerService.class)
+        .mandatory();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void neverShouldFailWithinRunningTransaction() {
+    outer.callNever();
+  }
+
+  @Test
+  public void supportsShouldRunWithoutTransaction() {
+    assertFalse(injector.getInstance(InnerService.class)
+        .supports()
+        .getTransaction()
+        .isActive());
+  }
+
+  private TestEntity find(TestEntity entity) {
+    unitOfWork.begin();
+    try {
+      return emProvider.get()
+          .find(TestEntity.class, entity.getId());
+    } finally {
+      unitOfWork.end();
+    }
+  }
+
+  public static class OuterService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Inject
+    private InnerService inner;
+
+    @Transactional(onUnits = {})
+    public void persistAndFail(TestEntity outerEntity, TestEntity innerEntity) {
+      emProvider.get()
+          .persist(outerEntity);
+      inner.persistInNewTransaction(innerEntity);
+      throw new RuntimeTestException();
+    }
+
+    @Transactional(onUnits = {})
+    public void assertEntityManagerIsResumedAfterRequiresNew() {
+      final EntityManager em = emProvider.get();
+      assertNotSame(em, inner.persistInNewTransaction(new TestEntity()));
+      assertSame(em, emProvider.get());
+      assertTrue(em.getTransaction()
+          .isActive());
+    }
+
+    @Transactional(onUnits = {})
+    public void assertNotSupportedRunsWithoutTransaction() {
+      final EntityManager em = emProvider.get();
+      final EntityManager innerEm = inner.notSupported();
+      assertNotSame(em, innerEm);
+      assertFalse(innerEm.isOpen());
+      assertSame(em, emProvider.get());
+    }
+
+    @Transactional(onUnits = {})
+    public void callNever() {
+      inner.never();
+    }
+  }
+
+
+  public static class InnerService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Transactional(onUnits = {}, propagation = Propagation.REQUIRES_NEW)
+    public EntityManager persistInNewTransaction(TestEntity entity) {
+      emProvider.get()
+          .persist(entity);
+      return emProvider.get();
+    }
+
+    @Transactional(onUnits = {}, propagation = Propagation.NOT_SUPPORTED)
+    public EntityManager notSupported() {
+      final EntityManager em = emProvider.get();
+      assertFalse(em.getTransaction()
+          .isActive());
+      return em;
+    }
+
+    @Transactional(onUnits = {}, propagation = Propagation.SUPPORTS)
+    public EntityManager supports() {
+      return emProvider.get();
+    }
+
+    @Transactional(onUnits = {}, propagation = Propagation.MANDATORY)
+    public void mandatory() {
+    }
+
+    @Transactional(onUnits = {}, propagation = Propagation.NEVER)
+    public void never() {
+    }
+  }
+
+}
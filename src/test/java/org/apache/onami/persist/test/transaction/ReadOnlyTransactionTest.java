@@ -0,0 +1,159 @@
+package org.apache.onami.persist.test.transaction;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.Transactional;
+import org.apache.onami.persist.UnitOfWork;
+import org.apache.onami.persist.test.TestEntity;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests running transactions marked as {@link Transactional#readOnly()}.
+ */
+public class ReadOnlyTransactionTest {
+
+  private Injector injector;
+
+  private UnitOfWork unitOfWork;
+
+  private EntityManagerProvider emProvider;
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    unitOfWork = injector.getInstance(UnitOfWork.class);
+    emProvider = injector.getInstance(EntityManagerProvider.class);
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void shouldNotFlushChangesOfReadOnlyTransaction() {
+    final TestEntity entity = new TestEntity();
+
+    injector.getInstance(ReadOnlyService.class)
+        .persist(entity);
+
+    assertNull(find(entity));
+  }
+
+  @Test
+  public void shouldLoadEntitiesOfReadOnlyTransaction() {
+    final TestEntity entity = new TestEntity();
+    injector.getInstance(ReadWriteService.class)
+        .persist(entity);
+
+    assertNotNull(injector.getInstance(ReadOnlyService.class)
+        .find(entity));
+  }
+
+  @Test
+  public void shouldRestoreSessionAfterReadOnlyTransaction() {
+    final ReadOnlyService service = injector.getInstance(ReadOnlyService.class);
+    unitOfWork.begin();
+    try {
+      final Session session = emProvider.get()
+          .unwrap(Session.class);
+      final FlushMode flushMode = session.getHibernateFlushMode();
+
+      assertTrue(service.isDefaultReadOnly());
+      assertFalse(session.isDefaultReadOnly());
+      assertEquals(flushMode, session.getHibernateFlushMode());
+    } finally {
+      unitOfWork.end();
+    }
+  }
+
+  private TestEntity find(TestEntity entity) {
+    unitOfWork.begin();
+    try {
+      return emProvider.get()
+          .find(TestEntity.class, entity.getId());
+    } finally {
+      unitOfWork.end();
+    }
+  }
+
+  public static class ReadOnlyService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Transactional(onUnits = {}, readOnly = true)
+    public void persist(TestEntity entity) {
+      emProvider.get()
+          .persist(entity);
+    }
+
+    @Transactional(onUnits = {}, readOnly = true)
+    public TestEntity find(TestEntity entity) {
+      return emProvider.get()
+          .find(TestEntity.class, entity.getId());
+    }
+
+    @Transactional(onUnits = {}, readOnly = true)
+    public boolean isDefaultReadOnly() {
+      final Session session = emProvider.get()
+          .unwrap(Session.class);
+      return session.isDefaultReadOnly() && session.getHibernateFlushMode() == FlushMode.MANUAL;
+    }
+  }
+
+
+  public static class ReadWriteService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Transactional(onUnits = {})
+    public void persist(TestEntity entity) {
+      emProvider.get()
+          .persist(entity);
+    }
+  }
+
+}
@@ -0,0 +1,223 @@
+package org.apache.onami.persist.test.transaction;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.multibindings.OptionalBinder;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceMetrics;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.Transactional;
+import org.apache.onami.persist.UnitOfWork;
+import org.apache.onami.persist.test.TestEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests retrying transactions according to {@link Transactional#retryOn()}.
+ */
+public class RetryTest {
+
+  private Injector injector;
+
+  private RecordingMetrics metrics;
+
+  private FlakyService service;
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    }, new AbstractModule() {
+      @Override
+      protected void configure() {
+        OptionalBinder.newOptionalBinder(binder(), PersistenceMetrics.class)
+            .setBinding()
+            .to(RecordingMetrics.class);
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    metrics = injector.getInstance(RecordingMetrics.class);
+    service = injector.getInstance(FlakyService.class);
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void shouldRetryUntilSuccess() {
+    final TestEntity entity = new TestEntity();
+    service.failures = 2;
+
+    service.persist(entity);
+
+    assertThat(service.entityManagers.size(), is(3));
+    assertNotNull(find(entity));
+    assertEquals(2, metrics.attempts.size());
+    assertThat(metrics.attempts.get(1), is(3));
+  }
+
+  @Test
+  public void shouldUseFreshEntityManagerForEveryAttempt() {
+    service.failures = 1;
+
+    service.persist(new TestEntity());
+
+    assertNotSame(service.entityManagers.get(0), service.entityManagers.get(1));
+  }
+
+  @Test
+  public void shouldGiveUpAfterMaxAttempts() {
+    final TestEntity entity = new TestEntity();
+    service.failures = 5;
+
+    try {
+      service.persist(entity);
+      fail("expected PersistenceException to be thrown");
+    } catch (PersistenceException e) {
+      assertThat(service.entityManagers.size(), is(3));
+    }
+    assertNull(find(entity));
+  }
+
+  @Test
+  public void shouldRetryWithinRunningUnitOfWork() {
+    final UnitOfWork unitOfWork = injector.getInstance(UnitOfWork.class);
+    final TestEntity entity = new TestEntity();
+    service.failures = 1;
+
+    unitOfWork.begin();
+    try {
+      final EntityManager callerEm = injector.getInstance(EntityManagerProvider.class)
+          .get();
+
+      service.persist(entity);
+
+      assertThat(service.entityManagers.size(), is(2));
+      assertNotSame(callerEm, service.entityManagers.get(0));
+      assertNotSame(callerEm, service.entityManagers.get(1));
+      assertSame(callerEm, injector.getInstance(EntityManagerProvider.class)
+          .get());
+      assertTrue(callerEm.isOpen());
+    } finally {
+      unitOfWork.end();
+    }
+    assertNotNull(find(entity));
+  }
+
+  @Test
+  public void shouldNotRetryWithinRunningTransaction() {
+    service.failures = 1;
+
+    try {
+      injector.getInstance(OuterService.class)
+          .persist(new TestEntity());
+      fail("expected PersistenceException to be thrown");
+    } catch (PersistenceException e) {
+      assertThat(service.entityManagers.size(), is(1));
+    }
+  }
+
+  private TestEntity find(TestEntity entity) {
+    final UnitOfWork unitOfWork = injector.getInstance(UnitOfWork.class);
+    unitOfWork.begin();
+    try {
+      return injector.getInstance(EntityManagerProvider.class)
+          .get()
+          .find(TestEntity.class, entity.getId());
+    } finally {
+      unitOfWork.end();
+    }
+  }
+
+  @Singleton
+  public static class RecordingMetrics implements PersistenceMetrics {
+    private final List<Integer> attempts = new ArrayList<>();
+
+    @Override
+    public void transactionRetried(Method method, int attempt, Throwable cause, long backoffNanos) {
+      attempts.add(attempt);
+    }
+  }
+
+
+  public static class OuterService {
+    @Inject
+    private FlakyService service;
+
+    @Transactional(onUnits = {})
+    public void persist(TestEntity entity) {
+      service.persist(entity);
+    }
+  }
+
+
+  @Singleton
+  public static class FlakyService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    private int failures;
+
+    private final List<EntityManager> entityManagers = new ArrayList<>();
+
+    @Transactional(onUnits = {}, retryOn = OptimisticLockException.class, retryBackoff = 1)
+    public void persist(TestEntity entity) {
+      final EntityManager em = emProvider.get();
+      entityManagers.add(em);
+      em.persist(entity);
+      if (failures-- > 0) {
+        throw new PersistenceException(new OptimisticLockException());
+      }
+    }
+  }
+
+}
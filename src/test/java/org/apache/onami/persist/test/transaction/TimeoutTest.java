@@ -0,0 +1,143 @@
+package org.apache.onami.persist.test.transaction;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.TransactionTimedOutException;
+import org.apache.onami.persist.Transactional;
+import org.apache.onami.persist.UnitOfWork;
+import org.apache.onami.persist.test.TestEntity;
+import org.junit.After;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests transactions exceeding their {@link Transactional#timeout()}.
+ */
+public class TimeoutTest {
+
+  private Injector injector;
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void shouldRollbackTransactionExceedingItsTimeout() throws Exception {
+    startPersistenceUnitWithDefaultTimeout(0);
+    final TestEntity entity = new TestEntity();
+
+    try {
+      injector.getInstance(SlowService.class)
+          .persistSlowlyWithTimeout(entity);
+      fail("expected TransactionTimedOutException to be thrown");
+    } catch (TransactionTimedOutException e) {
+      // expected
+    }
+
+    assertNull(find(entity));
+  }
+
+  @Test
+  public void shouldRollbackTransactionExceedingDefaultTimeoutOfPersistenceUnit() throws Exception {
+    startPersistenceUnitWithDefaultTimeout(1);
+    final TestEntity entity = new TestEntity();
+
+    try {
+      injector.getInstance(SlowService.class)
+          .persistSlowly(entity);
+      fail("expected TransactionTimedOutException to be thrown");
+    } catch (TransactionTimedOutException e) {
+      // expected
+    }
+
+    assertNull(find(entity));
+  }
+
+  @Test
+  public void shouldCommitTransactionWithinTimeout() throws Exception {
+    startPersistenceUnitWithDefaultTimeout(10);
+    final TestEntity entity = new TestEntity();
+
+    injector.getInstance(SlowService.class)
+        .persist(entity);
+
+    assertNotNull(find(entity));
+  }
+
+  private void startPersistenceUnitWithDefaultTimeout(final int timeout) {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit").useDefaultTransactionTimeout(timeout);
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+  }
+
+  private TestEntity find(TestEntity entity) {
+    final UnitOfWork unitOfWork = injector.getInstance(UnitOfWork.class);
+    unitOfWork.begin();
+    try {
+      return injector.getInstance(EntityManagerProvider.class)
+          .get()
+          .find(TestEntity.class, entity.getId());
+    } finally {
+      unitOfWork.end();
+    }
+  }
+
+  public static class SlowService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Transactional(onUnits = {}, timeout = 1)
+    public void persistSlowlyWithTimeout(TestEntity entity) throws InterruptedException {
+      persistSlowly(entity);
+    }
+
+    @Transactional(onUnits = {})
+    public void persistSlowly(TestEntity entity) throws InterruptedException {
+      emProvider.get()
+          .persist(entity);
+      Thread.sleep(1300);
+    }
+
+    @Transactional(onUnits = {})
+    public void persist(TestEntity entity) {
+      emProvider.get()
+          .persist(entity);
+    }
+  }
+
+}
@@ -0,0 +1,162 @@
+package org.apache.onami.persist.test.transaction;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.TransactionHookManager;
+import org.apache.onami.persist.Transactional;
+import org.apache.onami.persist.UnitOfWork;
+import org.apache.onami.persist.test.TestEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the before commit, after rollback and after completion callbacks of the {@link TransactionHookManager}.
+ */
+public class TransactionLifecycleHooksTest {
+
+  private Injector injector;
+
+  private HookService service;
+
+  private final List<String> events = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+    service = injector.getInstance(HookService.class);
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void beforeCommitCallbackShouldWriteWithinTransaction() {
+    final TestEntity entity = new TestEntity();
+
+    service.run(() -> service.persistBeforeCommit(entity, events), false);
+
+    assertThat(events, is(List.of("beforeCommit", "postCommit", "afterCompletion:COMMITTED")));
+    assertThat(find(entity), notNullValue());
+  }
+
+  @Test
+  public void rollbackShouldRunAfterRollbackAndAfterCompletionCallbacks() {
+    final TestEntity entity = new TestEntity();
+
+    try {
+      service.run(() -> service.persistBeforeCommit(entity, events), true);
+      fail("expected IllegalStateException to be thrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    assertThat(events, is(List.of("afterRollback", "afterCompletion:ROLLED_BACK")));
+    assertThat(find(entity), nullValue());
+  }
+
+  @Test
+  public void failingBeforeCommitCallbackShouldRollbackTransaction() {
+    final TestEntity entity = new TestEntity();
+    final RuntimeException failure = new RuntimeException();
+
+    try {
+      service.run(() -> {
+        service.persistBeforeCommit(entity, events);
+        service.hooks.addBeforeCommitCallback(() -> {
+          throw failure;
+        });
+      }, false);
+      fail("expected RuntimeException to be thrown");
+    } catch (RuntimeException e) {
+      assertThat(e, sameInstance(failure));
+    }
+
+    assertThat(events, is(List.of("beforeCommit", "afterRollback", "afterCompletion:ROLLED_BACK")));
+    assertThat(find(entity), nullValue());
+  }
+
+  private TestEntity find(TestEntity entity) {
+    final UnitOfWork unitOfWork = injector.getInstance(UnitOfWork.class);
+    unitOfWork.begin();
+    try {
+      return injector.getInstance(EntityManagerProvider.class)
+          .get()
+          .find(TestEntity.class, entity.getId());
+    } finally {
+      unitOfWork.end();
+    }
+  }
+
+  public static class HookService {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Inject
+    private TransactionHookManager hooks;
+
+    @Transactional(onUnits = {})
+    public void run(Runnable work, boolean fail) {
+      work.run();
+      if (fail) {
+        throw new IllegalStateException();
+      }
+    }
+
+    void persistBeforeCommit(TestEntity entity, List<String> events) {
+      hooks.addBeforeCommitCallback(() -> {
+        events.add("beforeCommit");
+        emProvider.get()
+            .persist(entity);
+      });
+      hooks.addPostCommitCallback(() -> events.add("postCommit"));
+      hooks.addAfterRollbackCallback(() -> events.add("afterRollback"));
+      hooks.addAfterCompletionCallback(status -> events.add("afterCompletion:" + status));
+    }
+  }
+
+}
@@ -0,0 +1,218 @@
+package org.apache.onami.persist.test.transaction;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.onami.persist.EntityManagerProvider;
+import org.apache.onami.persist.PersistenceModule;
+import org.apache.onami.persist.PersistenceService;
+import org.apache.onami.persist.TransactionHookManager;
+import org.apache.onami.persist.Transactional;
+import org.apache.onami.persist.test.TestEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeNoException;
+
+/**
+ * Runs a transactional workload on virtual threads and checks that none of them is pinned to its carrier thread by
+ * onami persist.
+ * <p>
+ * Pinning is detected with the {@code jdk.VirtualThreadPinned} flight recorder event. This is the event which is also
+ * reported by {@code -Djdk.tracePinnedThreads}. The in memory database synchronizes its sessions, therefore pinning
+ * within the database driver is ignored.
+ * <p>
+ * The test is skipped if the JDK does not provide virtual threads.
+ */
+public class VirtualThreadPinningTest {
+
+  private static final int TASKS = 200;
+
+  /**
+   * The size of the connection pool of the test unit.
+   */
+  private static final int CONNECTIONS = 2;
+
+  private Injector injector;
+
+  @Before
+  public void setUp() {
+    injector = Guice.createInjector(new PersistenceModule() {
+      @Override
+      protected void configurePersistence() {
+        bindApplicationManagedPersistenceUnit("testUnit");
+      }
+    });
+    injector.getInstance(PersistenceService.class)
+        .start();
+  }
+
+  @After
+  public void tearDown() {
+    injector.getInstance(PersistenceService.class)
+        .stop();
+    injector = null;
+  }
+
+  @Test
+  public void commitShouldNotPinVirtualThreads() throws Exception {
+    final AtomicInteger callbacks = new AtomicInteger();
+    final Worker worker = injector.getInstance(Worker.class);
+    final Path dump = Files.createTempFile("pinning", ".jfr");
+
+    try (Recording recording = new Recording()) {
+      recording.enable("jdk.VirtualThreadPinned")
+          .withThreshold(Duration.ZERO)
+          .withStackTrace();
+      recording.start();
+      runWorkload(worker, callbacks);
+      recording.stop();
+      recording.dump(dump);
+
+      assertThat(callbacks.get(), is(TASKS));
+      assertThat(pinnedStacks(dump), is(""));
+    } finally {
+      Files.deleteIfExists(dump);
+    }
+  }
+
+  private static void runWorkload(Worker worker, AtomicInteger callbacks) throws Exception {
+    final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+    try {
+      final Semaphore connections = new Semaphore(CONNECTIONS);
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < TASKS; i++) {
+        futures.add(executor.submit(() -> {
+          connections.acquire();
+          try {
+            worker.persistWithBlockingCallback(callbacks::incrementAndGet);
+          } finally {
+            connections.release();
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Creates the executor reflectively because virtual threads are a standard API only since JDK 21 while the sources target
+   * JDK 18. The test is skipped on older JDKs.
+   */
+  private static ExecutorService newVirtualThreadPerTaskExecutor() throws Exception {
+    final Method factory;
+    try {
+      factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      assumeNoException("virtual threads are not available", e);
+      throw e;
+    }
+    try {
+      return (ExecutorService) factory.invoke(null);
+    } catch (InvocationTargetException e) {
+      // virtual threads are a preview feature on JDK 19 and 20
+      assumeNoException("virtual threads are not enabled", e.getCause());
+      throw e;
+    }
+  }
+
+  private static String pinnedStacks(Path dump) throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+      if (!"jdk.VirtualThreadPinned".equals(event.getEventType()
+          .getName()) || event.getStackTrace() == null) {
+        continue;
+      }
+      final StringBuilder stack = new StringBuilder("pinned:");
+      boolean inDatabaseDriver = false;
+      for (RecordedFrame frame : event.getStackTrace()
+          .getFrames()) {
+        final String type = frame.getMethod()
+            .getType()
+            .getName();
+        inDatabaseDriver |= type.startsWith("org.hsqldb.");
+        stack.append("\n  at ")
+            .append(type)
+            .append('.')
+            .append(frame.getMethod()
+                .getName());
+      }
+      if (!inDatabaseDriver) {
+        sb.append(stack)
+            .append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  public static class Worker {
+    @Inject
+    private EntityManagerProvider emProvider;
+
+    @Inject
+    private TransactionHookManager hookManager;
+
+    @Transactional(onUnits = {})
+    public void persistWithBlockingCallback(Runnable callback) {
+      emProvider.get()
+          .persist(new TestEntity());
+      hookManager.addPostCommitCallback(() -> {
+        try {
+          // blocking while a monitor is held pins the virtual thread
+          Thread.sleep(1);
+        } catch (InterruptedException e) {
+          Thread.currentThread()
+              .interrupt();
+        }
+        callback.run();
+      });
+    }
+  }
+
+}